@@ -21,11 +21,17 @@ CREATE TABLE DispositivoIoT (
     modelo VARCHAR(50) NOT NULL,
     ubicacion VARCHAR(120) NOT NULL,
     firmwareVersion VARCHAR(30) NULL,
+    -- Mantenidas por MySQL; las bajas lógicas también actualizan updated_at
+    created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
 
     -- Índices para optimizar búsquedas
     INDEX idx_serial (serial),
     INDEX idx_eliminado (eliminado),
-    INDEX idx_ubicacion (ubicacion)
+    INDEX idx_ubicacion (ubicacion),
+    INDEX idx_modelo (modelo),
+    -- Sincronización incremental: cambios posteriores a una marca, paginando por (updated_at, id)
+    INDEX idx_updated_at (updated_at, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- =====================================================
@@ -41,6 +47,8 @@ CREATE TABLE ConfiguracionRed (
     dnsPrimario VARCHAR(45),
     dhcpHabilitado BOOLEAN NOT NULL,
     dispositivo_id BIGINT NOT NULL UNIQUE,
+    created_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
 
     -- Foreign Key con CASCADE para mantener integridad referencial
     CONSTRAINT fk_configuracion_dispositivo
@@ -59,7 +67,207 @@ CREATE TABLE ConfiguracionRed (
     -- Índices para optimizar búsquedas
     INDEX idx_ip (ip),
     INDEX idx_eliminado (eliminado),
-    INDEX idx_dispositivo_id (dispositivo_id)
+    INDEX idx_dispositivo_id (dispositivo_id),
+    INDEX idx_updated_at (updated_at, id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tablas de archivo: DispositivoIoT_archivo y ConfiguracionRed_archivo
+-- Filas dadas de baja hace más de archivo.retencionDias, movidas por
+-- ArchivoService fuera de las tablas principales (mismas columnas, más
+-- archivado_at). Sin claves únicas ni FK: un serial o una IP liberados
+-- pueden volver a usarse y archivarse otra vez.
+-- =====================================================
+CREATE TABLE DispositivoIoT_archivo (
+    id BIGINT PRIMARY KEY,
+    eliminado BOOLEAN NOT NULL,
+    serial VARCHAR(50) NOT NULL,
+    modelo VARCHAR(50) NOT NULL,
+    ubicacion VARCHAR(120) NOT NULL,
+    firmwareVersion VARCHAR(30) NULL,
+    created_at TIMESTAMP(3) NOT NULL,
+    -- Momento de la baja lógica
+    updated_at TIMESTAMP(3) NOT NULL,
+    archivado_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+
+    INDEX idx_archivo_serial (serial)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE ConfiguracionRed_archivo (
+    id BIGINT PRIMARY KEY,
+    eliminado BOOLEAN NOT NULL,
+    ip VARCHAR(45),
+    mascara VARCHAR(45),
+    gateway VARCHAR(45),
+    dnsPrimario VARCHAR(45),
+    dhcpHabilitado BOOLEAN NOT NULL,
+    dispositivo_id BIGINT NOT NULL,
+    created_at TIMESTAMP(3) NOT NULL,
+    updated_at TIMESTAMP(3) NOT NULL,
+    archivado_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+
+    INDEX idx_archivo_dispositivo_id (dispositivo_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tablas de Rollout de firmware por olas
+-- rollout:        un despliegue de firmware para un modelo
+-- rollout_wave:   olas del despliegue (canario 1%, 10%, resto)
+-- rollout_target: un dispositivo objetivo por fila, asignado a una ola
+-- =====================================================
+CREATE TABLE rollout (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    modelo VARCHAR(50) NOT NULL,
+    firmware_destino VARCHAR(30) NOT NULL,
+    estado ENUM('PENDIENTE', 'EN_CURSO', 'PAUSADO', 'ABORTADO', 'COMPLETADO') NOT NULL DEFAULT 'PENDIENTE',
+    ola_actual INT NOT NULL DEFAULT 1,
+    max_concurrencia INT NOT NULL,
+    total_dispositivos BIGINT NOT NULL DEFAULT 0,
+    creado DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    INDEX idx_rollout_estado (estado)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE rollout_wave (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    rollout_id BIGINT NOT NULL,
+    numero INT NOT NULL,
+    porcentaje INT NOT NULL,
+    estado ENUM('PENDIENTE', 'EN_CURSO', 'COMPLETADA') NOT NULL DEFAULT 'PENDIENTE',
+    total BIGINT NOT NULL DEFAULT 0,
+    exitosos BIGINT NOT NULL DEFAULT 0,
+    fallidos BIGINT NOT NULL DEFAULT 0,
+    -- No se despacha la ola antes de este instante (pausa entre olas)
+    inicio DATETIME NULL,
+    fin DATETIME NULL,
+
+    CONSTRAINT fk_wave_rollout
+        FOREIGN KEY (rollout_id)
+        REFERENCES rollout (id)
+        ON DELETE CASCADE,
+    UNIQUE KEY uk_wave_numero (rollout_id, numero)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE rollout_target (
+    rollout_id BIGINT NOT NULL,
+    dispositivo_id BIGINT NOT NULL,
+    ola INT NOT NULL,
+    estado ENUM('PENDIENTE', 'ENVIADO', 'EXITOSO', 'FALLIDO') NOT NULL DEFAULT 'PENDIENTE',
+    enviado_en DATETIME NULL,
+
+    PRIMARY KEY (rollout_id, dispositivo_id),
+    CONSTRAINT fk_target_rollout
+        FOREIGN KEY (rollout_id)
+        REFERENCES rollout (id)
+        ON DELETE CASCADE,
+    -- Despacho paginado y conteos por ola/estado sin recorrer la tabla
+    INDEX idx_target_ola_estado (rollout_id, ola, estado, dispositivo_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tabla: Telemetria
+-- Lecturas reportadas por los dispositivos. Clave (dispositivo_id, ts) con
+-- ts en milisegundos epoch: las inserciones de un mismo dispositivo son
+-- secuenciales en el índice clúster. Sin FK a DispositivoIoT para no
+-- verificar la referencia en cada fila de la ingesta masiva.
+-- =====================================================
+CREATE TABLE Telemetria (
+    dispositivo_id BIGINT NOT NULL,
+    ts BIGINT NOT NULL,
+    valor DOUBLE NOT NULL,
+
+    PRIMARY KEY (dispositivo_id, ts),
+    -- Recorrido por intervalo de tiempo (rollups y retención)
+    INDEX idx_telemetria_ts (ts)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tabla: telemetria_rollup
+-- Agregados por dispositivo en buckets de 1 minuto, 1 hora y 1 día.
+-- bucket = inicio del intervalo (ms epoch, UTC). Se guarda la suma (no el
+-- promedio) para poder combinar buckets en el nivel siguiente.
+-- =====================================================
+CREATE TABLE telemetria_rollup (
+    nivel ENUM('MINUTO', 'HORA', 'DIA') NOT NULL,
+    dispositivo_id BIGINT NOT NULL,
+    bucket BIGINT NOT NULL,
+    minimo DOUBLE NOT NULL,
+    maximo DOUBLE NOT NULL,
+    suma DOUBLE NOT NULL,
+    cantidad BIGINT NOT NULL,
+
+    PRIMARY KEY (nivel, dispositivo_id, bucket),
+    -- Agregación del nivel siguiente por intervalo de tiempo
+    INDEX idx_rollup_bucket (nivel, bucket)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tabla: telemetria_rollup_grupo
+-- Mismos agregados por ubicación o por modelo (clave = valor de la columna).
+-- =====================================================
+CREATE TABLE telemetria_rollup_grupo (
+    nivel ENUM('MINUTO', 'HORA', 'DIA') NOT NULL,
+    dimension ENUM('UBICACION', 'MODELO') NOT NULL,
+    clave VARCHAR(120) NOT NULL,
+    bucket BIGINT NOT NULL,
+    minimo DOUBLE NOT NULL,
+    maximo DOUBLE NOT NULL,
+    suma DOUBLE NOT NULL,
+    cantidad BIGINT NOT NULL,
+
+    PRIMARY KEY (nivel, dimension, clave, bucket),
+    INDEX idx_rollup_grupo_bucket (nivel, bucket)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tabla: telemetria_watermark
+-- Por nivel, instante hasta el cual (exclusive) los datos ya están agregados.
+-- Se avanza en la misma transacción que agrega, así cada intervalo se suma una sola vez.
+-- =====================================================
+CREATE TABLE telemetria_watermark (
+    nivel ENUM('MINUTO', 'HORA', 'DIA') PRIMARY KEY,
+    hasta BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tabla: outbox_evento (change data capture)
+-- Un evento por alta, modificación o baja lógica de DispositivoIoT y
+-- ConfiguracionRed, escrito en la misma transacción que el cambio.
+-- payload: estado de la entidad en JSON (el anterior a la baja, en DELETE).
+-- =====================================================
+CREATE TABLE outbox_evento (
+    secuencia BIGINT PRIMARY KEY,
+    entidad ENUM('DISPOSITIVO', 'CONFIGURACION') NOT NULL,
+    entidad_id BIGINT NOT NULL,
+    operacion ENUM('INSERT', 'UPDATE', 'DELETE') NOT NULL,
+    payload TEXT NOT NULL,
+    creado TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- =====================================================
+-- Tabla: outbox_secuencia
+-- Contador de secuencias del outbox (una sola fila). Reservar secuencias
+-- bloquea la fila hasta el commit, así los eventos se confirman en orden de
+-- secuencia y un consumidor que lee "después de N" nunca se saltea uno que
+-- todavía no estaba confirmado.
+-- =====================================================
+CREATE TABLE outbox_secuencia (
+    id TINYINT PRIMARY KEY,
+    valor BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+INSERT INTO outbox_secuencia (id, valor) VALUES (1, 0);
+
+-- =====================================================
+-- Tabla: last_seen
+-- Última señal (heartbeat) de cada dispositivo, en milisegundos epoch.
+-- La mantiene en memoria HeartbeatTracker y la vuelca por lotes; sin FK
+-- para que el volcado no dependa de DispositivoIoT.
+-- =====================================================
+CREATE TABLE last_seen (
+    dispositivo_id BIGINT PRIMARY KEY,
+    visto BIGINT NOT NULL,
+    INDEX idx_last_seen_visto (visto)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- =====================================================
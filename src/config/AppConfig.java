@@ -0,0 +1,107 @@
+package config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Clase de utilidad que carga una única vez el archivo config.properties
+ * y expone sus valores a todas las capas del sistema.
+ *
+ * Las claves opcionales se leen con un valor por defecto, de modo que un
+ * config.properties antiguo (solo con db.*) sigue funcionando.
+ *
+ * @version 1.0
+ */
+public class AppConfig {
+
+    private static final String CONFIG_FILE = "config.properties";
+    private static final Properties PROPS = new Properties();
+
+    // Bloque estático para cargar la configuración al iniciar la clase
+    static {
+        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
+            PROPS.load(input);
+        } catch (IOException e) {
+            System.err.println("[AppConfig] Error al cargar " + CONFIG_FILE + ": " + e.getMessage());
+            throw new RuntimeException("No se pudo cargar la configuración de la aplicación", e);
+        }
+    }
+
+    /**
+     * Constructor privado para prevenir instanciación.
+     */
+    private AppConfig() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * Obtiene una propiedad obligatoria u opcional sin valor por defecto.
+     *
+     * @param clave nombre de la propiedad
+     * @return valor de la propiedad (sin espacios extremos), o null si no existe
+     */
+    public static String getString(String clave) {
+        String valor = PROPS.getProperty(clave);
+        return valor != null ? valor.trim() : null;
+    }
+
+    /**
+     * Obtiene una propiedad de texto con valor por defecto.
+     *
+     * @param clave nombre de la propiedad
+     * @param porDefecto valor a devolver si la propiedad no existe o está vacía
+     * @return valor de la propiedad o el valor por defecto
+     */
+    public static String getString(String clave, String porDefecto) {
+        String valor = getString(clave);
+        return (valor == null || valor.isEmpty()) ? porDefecto : valor;
+    }
+
+    /**
+     * Obtiene una propiedad entera con valor por defecto.
+     *
+     * @param clave nombre de la propiedad
+     * @param porDefecto valor a devolver si la propiedad no existe o es inválida
+     * @return valor entero de la propiedad
+     */
+    public static int getInt(String clave, int porDefecto) {
+        return (int) getLong(clave, porDefecto);
+    }
+
+    /**
+     * Obtiene una propiedad numérica (long) con valor por defecto.
+     *
+     * @param clave nombre de la propiedad
+     * @param porDefecto valor a devolver si la propiedad no existe o es inválida
+     * @return valor numérico de la propiedad
+     */
+    public static long getLong(String clave, long porDefecto) {
+        String valor = getString(clave);
+        if (valor == null || valor.isEmpty()) {
+            return porDefecto;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            System.err.println("[AppConfig] Valor numérico inválido para '" + clave + "': " + valor);
+            return porDefecto;
+        }
+    }
+
+    /**
+     * Obtiene una propiedad booleana con valor por defecto.
+     *
+     * @param clave nombre de la propiedad
+     * @param porDefecto valor a devolver si la propiedad no existe
+     * @return valor booleano de la propiedad
+     */
+    public static boolean getBoolean(String clave, boolean porDefecto) {
+        String valor = getString(clave);
+        if (valor == null || valor.isEmpty()) {
+            return porDefecto;
+        }
+        return Boolean.parseBoolean(valor);
+    }
+}
@@ -0,0 +1,144 @@
+package config;
+
+import metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool simple de conexiones físicas a MySQL.
+ *
+ * Los servicios siguen llamando a DatabaseConnection.getConnection() y
+ * conn.close(): el close() devuelve la conexión al pool en lugar de cerrarla.
+ * Cada conexión física mantiene su propia caché de PreparedStatement
+ * (ver {@link PooledConnection}), por lo que las consultas repetidas no se
+ * vuelven a preparar.
+ *
+ * Las conexiones ociosas se reutilizan en orden LIFO para aprovechar las
+ * cachés de sentencias más "calientes".
+ *
+ * @version 1.0
+ */
+final class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int tamanoCacheSentencias;
+    private final long esperaMaximaMs;
+    private final int tamanoMaximo;
+
+    private final Semaphore permisos;
+    private final LinkedBlockingDeque<PooledConnection> ociosas = new LinkedBlockingDeque<>();
+    private volatile boolean cerrado;
+
+    /**
+     * @param url URL JDBC
+     * @param user usuario de la BD
+     * @param password contraseña
+     * @param tamanoMaximo cantidad máxima de conexiones simultáneas
+     * @param esperaMaximaMs tiempo máximo de espera por una conexión libre
+     * @param tamanoCacheSentencias sentencias cacheadas por conexión (0 = sin caché)
+     */
+    ConnectionPool(String url, String user, String password, int tamanoMaximo, long esperaMaximaMs,
+                   int tamanoCacheSentencias) {
+        this("ConnectionPool", url, user, password, tamanoMaximo, esperaMaximaMs, tamanoCacheSentencias);
+    }
+
+    /**
+     * @param nombre prefijo de los indicadores del pool (uno por pool, p. ej. por shard)
+     */
+    ConnectionPool(String nombre, String url, String user, String password, int tamanoMaximo, long esperaMaximaMs,
+                   int tamanoCacheSentencias) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.tamanoMaximo = tamanoMaximo;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.tamanoCacheSentencias = tamanoCacheSentencias;
+        this.permisos = new Semaphore(tamanoMaximo, true);
+
+        MetricsRegistry.registrarIndicador(nombre + ".ociosas", () -> ociosas.size());
+        MetricsRegistry.registrarIndicador(nombre + ".enUso",
+                () -> enUso());
+    }
+
+    /**
+     * Obtiene una conexión del pool (o crea una nueva si no hay ociosas).
+     *
+     * @return conexión lógica; su close() la devuelve al pool
+     * @throws SQLException si el pool está agotado o no se puede conectar
+     */
+    Connection obtener() throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        try {
+            if (!permisos.tryAcquire(esperaMaximaMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Pool de conexiones agotado (" + tamanoMaximo
+                        + " en uso) tras esperar " + esperaMaximaMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = ociosas.pollFirst()) != null) {
+                if (pooled.esValida()) {
+                    return pooled.prestar();
+                }
+                pooled.cerrarFisica();
+            }
+            pooled = new PooledConnection(DriverManager.getConnection(url, user, password), this,
+                    tamanoCacheSentencias);
+            return pooled.prestar();
+        } catch (SQLException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return conexiones prestadas en este momento
+     */
+    int enUso() {
+        return tamanoMaximo - permisos.availablePermits();
+    }
+
+    /**
+     * Devuelve una conexión ya restablecida (autocommit activo) al pool.
+     */
+    void devolver(PooledConnection pooled) {
+        if (cerrado) {
+            pooled.cerrarFisica();
+        } else {
+            ociosas.offerFirst(pooled);
+        }
+        permisos.release();
+    }
+
+    /**
+     * Descarta una conexión que quedó en estado inválido.
+     */
+    void descartar(PooledConnection pooled) {
+        pooled.cerrarFisica();
+        permisos.release();
+    }
+
+    /**
+     * Cierra las conexiones ociosas; las que están en uso se cierran al devolverse.
+     */
+    void cerrar() {
+        cerrado = true;
+        PooledConnection pooled;
+        while ((pooled = ociosas.pollFirst()) != null) {
+            pooled.cerrarFisica();
+        }
+    }
+}
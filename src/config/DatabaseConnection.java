@@ -1,27 +1,43 @@
 package config;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Clase Singleton para gestionar la conexión a la base de datos MySQL.
  * Lee la configuración desde el archivo config.properties.
+ * Registra la latencia de obtención de cada conexión en MetricsRegistry y,
+ * si una grabación JFR habilita iot.SentenciaSql, instrumenta las sentencias.
  *
  * @author Gustavo Tiseira
  * @version 1.0
  */
 public class DatabaseConnection {
 
-    private static final String CONFIG_FILE = "config.properties";
+    private static final OperationMetrics METRICA_CONEXION = MetricsRegistry.operacion("DatabaseConnection.getConnection");
+    private static final LongAdder LECTURAS_PRINCIPAL = MetricsRegistry.contador("DatabaseConnection.lecturasPrincipal");
+
+    /** dao.almacen: jdbc (MySQL), memoria o archivo (almacén en memoria, sin o con persistencia local). */
+    private static final String ALMACEN = AppConfig.getString("dao.almacen", "jdbc").trim().toLowerCase(Locale.ROOT);
+    private static final boolean EN_MEMORIA = "memoria".equals(ALMACEN) || "archivo".equals(ALMACEN);
+
     private static String URL;
     private static String USER;
     private static String PASSWORD;
     private static String DRIVER;
+    private static ConnectionPool POOL;
+    private static ShardMap SHARDS;
+    private static ReplicaSet REPLICAS;
+    private static long LECTURA_PROPIA_NANOS;
+
+    /** Última escritura confirmada por el hilo (System.nanoTime), para leer lo propio de db.url. */
+    private static final ThreadLocal<Long> ULTIMA_ESCRITURA = new ThreadLocal<>();
 
     // Bloque estático para cargar la configuración al iniciar la clase
     static {
@@ -36,27 +52,50 @@ public class DatabaseConnection {
     }
 
     /**
-     * Carga la configuración desde el archivo config.properties.
+     * Carga la configuración de conexión desde config.properties (vía AppConfig).
      */
     private static void loadConfiguration() {
-        Properties props = new Properties();
-
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
-            props.load(input);
+        if (EN_MEMORIA) {
+            System.out.println("[DatabaseConnection] Almacén en memoria (dao.almacen=" + ALMACEN + "): sin conexión a MySQL");
+            return;
+        }
+        try {
+            URL = AppConfig.getString("db.url");
+            USER = AppConfig.getString("db.user");
+            PASSWORD = AppConfig.getString("db.password");
+            DRIVER = AppConfig.getString("db.driver");
 
-            URL = props.getProperty("db.url");
-            USER = props.getProperty("db.user");
-            PASSWORD = props.getProperty("db.password");
-            DRIVER = props.getProperty("db.driver");
+            // Sentencias preparadas en el servidor (opt-in): el parseo se hace una sola
+            // vez por conexión y la caché de sentencias del pool las mantiene abiertas
+            if (AppConfig.getBoolean("db.serverPrepStmts", false) && !URL.contains("useServerPrepStmts")) {
+                URL += (URL.contains("?") ? "&" : "?") + "useServerPrepStmts=true&cachePrepStmts=true";
+            }
 
             // Cargar el driver JDBC
             Class.forName(DRIVER);
 
+            int tamanoPool = AppConfig.getInt("db.pool.maxSize", 10);
+            if (tamanoPool > 0) {
+                POOL = new ConnectionPool(URL, USER, PASSWORD, tamanoPool,
+                        AppConfig.getLong("db.pool.timeoutMs", 5000),
+                        AppConfig.getInt("db.statementCache.size", 64));
+            }
+
+            // DispositivoIoT y ConfiguracionRed repartidos en varias BD (shards.cantidad > 0)
+            SHARDS = ShardMap.cargar();
+            if (SHARDS != null) {
+                System.out.println("[DatabaseConnection] " + SHARDS.getCantidad() + " shards de dispositivos");
+            }
+
+            // Réplicas de lectura de db.url (replicas.cantidad > 0)
+            REPLICAS = ReplicaSet.cargar();
+            if (REPLICAS != null) {
+                LECTURA_PROPIA_NANOS = AppConfig.getLong("replicas.lecturaPropiaMs", 2000) * 1_000_000L;
+                System.out.println("[DatabaseConnection] " + REPLICAS.getCantidad() + " réplicas de lectura");
+            }
+
             System.out.println("[DatabaseConnection] Configuración cargada exitosamente");
 
-        } catch (IOException e) {
-            System.err.println("[DatabaseConnection] Error al cargar config.properties: " + e.getMessage());
-            throw new RuntimeException("No se pudo cargar la configuración de la base de datos", e);
         } catch (ClassNotFoundException e) {
             System.err.println("[DatabaseConnection] Driver JDBC no encontrado: " + e.getMessage());
             throw new RuntimeException("Driver JDBC no encontrado", e);
@@ -64,23 +103,108 @@ public class DatabaseConnection {
     }
 
     /**
-     * Obtiene una nueva conexión a la base de datos.
+     * Obtiene una conexión a la base de datos.
+     * Si el pool está habilitado (db.pool.maxSize > 0), la conexión proviene del
+     * pool y su close() la devuelve en lugar de cerrarla. Con shards es una
+     * {@link ShardedConnection}, que abre las conexiones a los shards bajo
+     * demanda. Con dao.almacen=memoria o archivo es una {@link InMemoryConnection}, que solo delimita transacciones.
      *
      * @return Connection objeto de conexión a la BD
      * @throws SQLException si hay un error al conectar
      */
     public static Connection getConnection() throws SQLException {
+        long inicio = System.nanoTime();
         try {
-            Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-            return conn;
+            if (EN_MEMORIA) {
+                return InMemoryConnection.abrir();
+            }
+            if (SHARDS != null) {
+                return ShardedConnection.abrir(SHARDS, DatabaseConnection::conexionPrincipal);
+            }
+            return conexionPrincipal();
         } catch (SQLException e) {
+            METRICA_CONEXION.registrarError();
             System.err.println("[DatabaseConnection] Error al obtener conexión: " + e.getMessage());
             throw e;
+        } finally {
+            METRICA_CONEXION.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene una conexión para una lectura fuera de una transacción: con
+     * réplicas (replicas.cantidad > 0), a una de ellas; sin réplicas, igual que
+     * {@link #getConnection()}.
+     *
+     * Lee de db.url si el hilo confirmó una escritura en los últimos
+     * replicas.lecturaPropiaMs (para ver sus propios cambios aunque la réplica
+     * vaya atrasada) o si ninguna réplica acepta conexiones. Con shards, las
+     * réplicas reemplazan solo a db.url: los dispositivos se leen de los shards.
+     *
+     * @return Connection objeto de conexión a la BD
+     * @throws SQLException si hay un error al conectar
+     */
+    public static Connection getConnectionLectura() throws SQLException {
+        if (REPLICAS == null || EN_MEMORIA) {
+            return getConnection();
+        }
+        long inicio = System.nanoTime();
+        try {
+            if (SHARDS != null) {
+                return ShardedConnection.abrir(SHARDS, DatabaseConnection::conexionLectura);
+            }
+            return conexionLectura();
+        } catch (SQLException e) {
+            METRICA_CONEXION.registrarError();
+            System.err.println("[DatabaseConnection] Error al obtener conexión de lectura: " + e.getMessage());
+            throw e;
+        } finally {
+            METRICA_CONEXION.registrar(inicio);
         }
     }
 
     /**
-     * Obtiene una conexión con credenciales personalizadas.
+     * Registra que el hilo actual confirmó una escritura: sus lecturas de los
+     * próximos replicas.lecturaPropiaMs van a db.url.
+     */
+    public static void registrarEscritura() {
+        if (REPLICAS != null) {
+            ULTIMA_ESCRITURA.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * @return conexión a una réplica o, dentro de la ventana de lectura propia
+     *         o sin réplicas disponibles, a db.url
+     */
+    private static Connection conexionLectura() throws SQLException {
+        Long ultima = ULTIMA_ESCRITURA.get();
+        if (ultima != null) {
+            if (System.nanoTime() - ultima < LECTURA_PROPIA_NANOS) {
+                LECTURAS_PRINCIPAL.increment();
+                return conexionPrincipal();
+            }
+            ULTIMA_ESCRITURA.remove();
+        }
+        try {
+            return REPLICAS.obtener();
+        } catch (SQLException e) {
+            System.err.println("[DatabaseConnection] Réplicas no disponibles, se lee de db.url: " + e.getMessage());
+            LECTURAS_PRINCIPAL.increment();
+            return conexionPrincipal();
+        }
+    }
+
+    /**
+     * @return conexión a db.url (del pool, si está habilitado)
+     */
+    private static Connection conexionPrincipal() throws SQLException {
+        Connection conn = POOL != null ? POOL.obtener() : DriverManager.getConnection(URL, USER, PASSWORD);
+        return InstrumentedConnection.requerida() ? InstrumentedConnection.envolver(conn, true) : conn;
+    }
+
+    /**
+     * Obtiene una conexión con credenciales personalizadas (no usa el pool).
      * Útil para conexiones con usuarios de solo lectura.
      *
      * @param user usuario de la BD
@@ -89,15 +213,47 @@ public class DatabaseConnection {
      * @throws SQLException si hay un error al conectar
      */
     public static Connection getConnection(String user, String password) throws SQLException {
+        long inicio = System.nanoTime();
         try {
             Connection conn = DriverManager.getConnection(URL, user, password);
-            return conn;
+            return InstrumentedConnection.requerida() ? InstrumentedConnection.envolver(conn, true) : conn;
         } catch (SQLException e) {
+            METRICA_CONEXION.registrarError();
             System.err.println("[DatabaseConnection] Error al obtener conexión con credenciales personalizadas: " + e.getMessage());
             throw e;
+        } finally {
+            METRICA_CONEXION.registrar(inicio);
         }
     }
 
+    /**
+     * @return true si los DAOs usan el almacén en memoria (dao.almacen=memoria o archivo)
+     */
+    public static boolean enMemoria() {
+        return EN_MEMORIA;
+    }
+
+    /**
+     * @return el mapa de shards de dispositivos, o null si no hay sharding (shards.cantidad=0)
+     */
+    public static ShardMap shards() {
+        return SHARDS;
+    }
+
+    /**
+     * @return las réplicas de lectura, o null si no hay (replicas.cantidad=0)
+     */
+    public static ReplicaSet replicas() {
+        return REPLICAS;
+    }
+
+    /**
+     * @return valor de dao.almacen (jdbc, memoria o archivo), en minúsculas
+     */
+    public static String almacen() {
+        return ALMACEN;
+    }
+
     /**
      * Verifica si la conexión a la base de datos está disponible.
      *
@@ -128,4 +284,19 @@ public class DatabaseConnection {
             }
         }
     }
+
+    /**
+     * Cierra las conexiones ociosas del pool (y de los pools de los shards y las réplicas). Llamar al finalizar la aplicación.
+     */
+    public static void cerrarPool() {
+        if (POOL != null) {
+            POOL.cerrar();
+        }
+        if (SHARDS != null) {
+            SHARDS.cerrar();
+        }
+        if (REPLICAS != null) {
+            REPLICAS.cerrar();
+        }
+    }
 }
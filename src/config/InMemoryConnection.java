@@ -0,0 +1,180 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conexión (proxy dinámico) que entrega DatabaseConnection con
+ * dao.almacen=memoria o archivo: no habla con ningún servidor, solo delimita
+ * las transacciones de los DAOs en memoria.
+ *
+ * Con autocommit desactivado, cada cambio del almacén registra cómo deshacerse
+ * ({@link #registrarDeshacer(Connection, Runnable)}); rollback los deshace en
+ * orden inverso y commit los descarta. Lo que deba hacerse recién al confirmar
+ * (p. ej. escribir el diario de store.DiarioAlmacen) se registra con
+ * {@link #registrarConfirmacion(Connection, Confirmacion)}. No hay aislamiento: las demás
+ * conexiones ven los cambios antes del commit. Como las conexiones JDBC, no
+ * debe usarse desde varios hilos a la vez.
+ *
+ * Las operaciones JDBC (prepareStatement, createStatement, ...) lanzan
+ * SQLFeatureNotSupportedException: los DAOs que solo existen sobre MySQL
+ * (rollouts, telemetría, outbox) no funcionan en este modo.
+ *
+ * @version 1.0
+ */
+public final class InMemoryConnection implements InvocationHandler {
+
+    /**
+     * Acción que se ejecuta al confirmar la transacción.
+     */
+    @FunctionalInterface
+    public interface Confirmacion {
+
+        void confirmar() throws SQLException;
+    }
+
+    private final List<Runnable> deshacer = new ArrayList<>();
+    private final List<Confirmacion> alConfirmar = new ArrayList<>();
+    private boolean autoCommit = true;
+    private boolean cerrada;
+
+    private InMemoryConnection() {
+    }
+
+    /**
+     * @return una conexión nueva en autocommit
+     */
+    static Connection abrir() {
+        return (Connection) Proxy.newProxyInstance(InMemoryConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InMemoryConnection());
+    }
+
+    /**
+     * Registra cómo deshacer un cambio ya aplicado al almacén, si la conexión
+     * está en una transacción (en autocommit, o si no es una conexión en
+     * memoria, el cambio queda confirmado).
+     *
+     * @param conn conexión con la que se hizo el cambio
+     * @param accion restaura el estado anterior al cambio
+     */
+    public static void registrarDeshacer(Connection conn, Runnable accion) {
+        InMemoryConnection conexion = enTransaccion(conn);
+        if (conexion != null) {
+            conexion.deshacer.add(accion);
+        }
+    }
+
+    /**
+     * Registra una acción para el commit de la transacción en curso. Si la
+     * acción falla, el commit lanza su SQLException y la transacción sigue
+     * abierta (el rollback deshace los cambios).
+     *
+     * @param conn conexión con la que se hizo el cambio
+     * @param accion acción a ejecutar al confirmar
+     * @return false si la conexión no está en una transacción (no se registra nada)
+     */
+    public static boolean registrarConfirmacion(Connection conn, Confirmacion accion) {
+        InMemoryConnection conexion = enTransaccion(conn);
+        if (conexion == null) {
+            return false;
+        }
+        conexion.alConfirmar.add(accion);
+        return true;
+    }
+
+    /**
+     * @return true si es una conexión en memoria con autocommit desactivado
+     */
+    public static boolean esTransaccional(Connection conn) {
+        return enTransaccion(conn) != null;
+    }
+
+    private static InMemoryConnection enTransaccion(Connection conn) {
+        if (conn != null && Proxy.isProxyClass(conn.getClass())
+                && Proxy.getInvocationHandler(conn) instanceof InMemoryConnection) {
+            InMemoryConnection conexion = (InMemoryConnection) Proxy.getInvocationHandler(conn);
+            return conexion.autoCommit ? null : conexion;
+        }
+        return null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "setAutoCommit":
+                boolean nuevo = (Boolean) args[0];
+                if (nuevo && !autoCommit) {
+                    confirmar();  // JDBC: activar autocommit confirma la transacción en curso
+                }
+                autoCommit = nuevo;
+                return null;
+            case "getAutoCommit":
+                return autoCommit;
+            case "commit":
+                confirmar();
+                return null;
+            case "rollback":
+                revertir();
+                return null;
+            case "close":
+                if (!cerrada) {
+                    revertir();
+                    cerrada = true;
+                }
+                return null;
+            case "isClosed":
+                return cerrada;
+            case "isValid":
+                return !cerrada;
+            case "isReadOnly":
+            case "isWrapperFor":
+                return false;
+            case "getTransactionIsolation":
+                return Connection.TRANSACTION_READ_UNCOMMITTED;
+            case "setTransactionIsolation":
+            case "setReadOnly":
+            case "clearWarnings":
+            case "getWarnings":
+                return null;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "InMemoryConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                throw new SQLFeatureNotSupportedException(
+                        "Operación JDBC no disponible sin MySQL (dao.almacen=" + DatabaseConnection.almacen() + "): " + method.getName());
+        }
+    }
+
+    private void confirmar() throws SQLException {
+        for (Confirmacion accion : alConfirmar) {
+            accion.confirmar();
+        }
+        alConfirmar.clear();
+        deshacer.clear();
+    }
+
+    private void revertir() throws SQLException {
+        alConfirmar.clear();
+        RuntimeException error = null;
+        for (int i = deshacer.size() - 1; i >= 0; i--) {
+            try {
+                deshacer.get(i).run();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+        }
+        deshacer.clear();
+        if (error != null) {
+            throw new SQLException("Error al revertir los cambios en memoria: " + error.getMessage(), error);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package config;
+
+import jdk.jfr.EventType;
+import metrics.SentenciaSqlEvent;
+import metrics.SlowQueryLog;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+
+/**
+ * Envoltorio (proxy dinámico) de Connection que instrumenta cada
+ * PreparedStatement creado por los DAOs: mide la ejecución, emite un
+ * {@link SentenciaSqlEvent} con la plantilla SQL, las filas y la duración,
+ * y envía al {@link SlowQueryLog} las ejecuciones que superan el umbral
+ * (junto con los parámetros enlazados; el EXPLAIN solo se pide para las
+ * sentencias ejecutadas en db.url, no en shards ni réplicas).
+ *
+ * Los DAOs no cambian: siguen llamando a conn.prepareStatement(sql).
+ * DatabaseConnection solo envuelve la conexión cuando el evento está
+ * habilitado en alguna grabación JFR o el registro de consultas lentas
+ * está configurado, por lo que el costo en el caso normal es nulo.
+ *
+ * @version 1.0
+ */
+final class InstrumentedConnection implements InvocationHandler {
+
+    private static final EventType TIPO_SENTENCIA = tipoSentencia();
+
+    private final Connection conexion;
+    private final boolean principal;
+
+    private InstrumentedConnection(Connection conexion, boolean principal) {
+        this.conexion = conexion;
+        this.principal = principal;
+    }
+
+    /**
+     * Indica si hay que instrumentar las conexiones nuevas.
+     *
+     * @return true si alguna grabación JFR tiene habilitado iot.SentenciaSql
+     *         o si el registro de consultas lentas está habilitado
+     */
+    static boolean requerida() {
+        return SlowQueryLog.habilitado() || (TIPO_SENTENCIA != null && TIPO_SENTENCIA.isEnabled());
+    }
+
+    /**
+     * Envuelve una conexión para instrumentar sus sentencias.
+     *
+     * @param conexion conexión real
+     * @param principal true si es una conexión a db.url (false para shards y réplicas)
+     * @return conexión instrumentada
+     */
+    static Connection envolver(Connection conexion, boolean principal) {
+        return (Connection) Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InstrumentedConnection(conexion, principal));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object resultado = invocar(conexion, method, args);
+        if (resultado instanceof PreparedStatement && "prepareStatement".equals(method.getName())) {
+            return SentenciaInstrumentada.envolver((PreparedStatement) resultado, (String) args[0], principal);
+        }
+        return resultado;
+    }
+
+    /**
+     * Invoca un método sobre el objeto real propagando la excepción original.
+     */
+    private static Object invocar(Object destino, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static EventType tipoSentencia() {
+        try {
+            return EventType.getEventType(SentenciaSqlEvent.class);
+        } catch (RuntimeException | LinkageError e) {
+            // JVM sin soporte de Flight Recorder: la instrumentación queda deshabilitada
+            return null;
+        }
+    }
+
+    /**
+     * Medición de una ejecución de sentencia. Se finaliza una única vez.
+     */
+    private static final class Ejecucion {
+
+        private final SentenciaSqlEvent evento = new SentenciaSqlEvent();
+        private final boolean principal;
+        private final String sql;
+        private final String tipo;
+        private final Object[] parametros;
+        private final long inicio;
+        private boolean finalizada;
+
+        Ejecucion(boolean principal, String sql, String tipo, Object[] parametros) {
+            this.principal = principal;
+            this.sql = sql;
+            this.tipo = tipo;
+            this.parametros = parametros;
+            this.inicio = System.nanoTime();
+            evento.begin();
+        }
+
+        void finalizar(long filas, boolean error) {
+            if (finalizada) {
+                return;
+            }
+            finalizada = true;
+            long duracion = System.nanoTime() - inicio;
+            if (SlowQueryLog.esLenta(duracion)) {
+                SlowQueryLog.registrar(sql, parametros, filas, duracion, error, principal);
+            }
+            evento.end();
+            if (evento.shouldCommit()) {
+                evento.sql = sql;
+                evento.tipo = tipo;
+                evento.filas = filas;
+                evento.error = error;
+                evento.commit();
+            }
+        }
+    }
+
+    /**
+     * Proxy de PreparedStatement que mide executeQuery/executeUpdate/executeBatch/execute
+     * y recuerda los parámetros enlazados con setXxx(indice, valor).
+     */
+    private static final class SentenciaInstrumentada implements InvocationHandler {
+
+        private static final Object[] SIN_PARAMETROS = new Object[0];
+
+        private final PreparedStatement sentencia;
+        private final String sql;
+        private final boolean principal;
+        private Object[] parametros = SIN_PARAMETROS;
+        private int cantidadParametros;
+        private int lotes;
+        private ResultadoInstrumentado consultaPendiente;
+
+        private SentenciaInstrumentada(PreparedStatement sentencia, String sql, boolean principal) {
+            this.sentencia = sentencia;
+            this.sql = sql;
+            this.principal = principal;
+        }
+
+        static PreparedStatement envolver(PreparedStatement sentencia, String sql, boolean principal) {
+            return (PreparedStatement) Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new SentenciaInstrumentada(sentencia, sql, principal));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nombre = method.getName();
+            String sqlEjecutado = (args != null && args.length > 0 && args[0] instanceof String)
+                    ? (String) args[0] : sql;
+
+            switch (nombre) {
+                case "executeQuery": {
+                    cerrarConsultaPendiente();
+                    Ejecucion ejecucion = new Ejecucion(principal, sqlEjecutado, "QUERY", parametrosActuales());
+                    try {
+                        ResultSet rs = (ResultSet) invocar(sentencia, method, args);
+                        consultaPendiente = new ResultadoInstrumentado(rs, ejecucion);
+                        return consultaPendiente.proxy();
+                    } catch (Throwable t) {
+                        ejecucion.finalizar(0, true);
+                        throw t;
+                    }
+                }
+                case "executeUpdate":
+                case "executeLargeUpdate": {
+                    Ejecucion ejecucion = new Ejecucion(principal, sqlEjecutado, "UPDATE", parametrosActuales());
+                    try {
+                        Object filas = invocar(sentencia, method, args);
+                        ejecucion.finalizar(((Number) filas).longValue(), false);
+                        return filas;
+                    } catch (Throwable t) {
+                        ejecucion.finalizar(0, true);
+                        throw t;
+                    }
+                }
+                case "executeBatch":
+                case "executeLargeBatch": {
+                    // En lotes solo se conservan los parámetros de la última fila agregada
+                    Ejecucion ejecucion = new Ejecucion(principal, sql + " /* lote de " + lotes + " */", "BATCH",
+                            parametrosActuales());
+                    lotes = 0;
+                    try {
+                        Object resultado = invocar(sentencia, method, args);
+                        ejecucion.finalizar(sumarFilas(resultado), false);
+                        return resultado;
+                    } catch (Throwable t) {
+                        ejecucion.finalizar(0, true);
+                        throw t;
+                    }
+                }
+                case "execute": {
+                    Ejecucion ejecucion = new Ejecucion(principal, sqlEjecutado, "EXECUTE", parametrosActuales());
+                    try {
+                        boolean hayResultados = (Boolean) invocar(sentencia, method, args);
+                        ejecucion.finalizar(hayResultados ? -1 : sentencia.getUpdateCount(), false);
+                        return hayResultados;
+                    } catch (Throwable t) {
+                        ejecucion.finalizar(0, true);
+                        throw t;
+                    }
+                }
+                case "addBatch":
+                    lotes++;
+                    return invocar(sentencia, method, args);
+                case "clearParameters":
+                    cantidadParametros = 0;
+                    return invocar(sentencia, method, args);
+                case "close":
+                    cerrarConsultaPendiente();
+                    return invocar(sentencia, method, args);
+                default:
+                    if (nombre.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        recordarParametro((Integer) args[0], nombre.startsWith("setNull") ? null : args[1]);
+                    }
+                    return invocar(sentencia, method, args);
+            }
+        }
+
+        private void recordarParametro(int indice, Object valor) {
+            if (indice < 1) {
+                return;
+            }
+            if (indice > parametros.length) {
+                parametros = Arrays.copyOf(parametros, Math.max(indice, parametros.length * 2));
+            }
+            if (valor instanceof InputStream || valor instanceof Reader
+                    || valor instanceof Blob || valor instanceof Clob) {
+                valor = "<" + valor.getClass().getSimpleName() + ">";
+            }
+            parametros[indice - 1] = valor;
+            cantidadParametros = Math.max(cantidadParametros, indice);
+        }
+
+        /**
+         * Copia de los parámetros actuales (la sentencia puede reutilizarse con otros valores).
+         */
+        private Object[] parametrosActuales() {
+            return cantidadParametros == 0 ? SIN_PARAMETROS : Arrays.copyOf(parametros, cantidadParametros);
+        }
+
+        /**
+         * Cerrar la sentencia cierra implícitamente su ResultSet: se finaliza su medición.
+         */
+        private void cerrarConsultaPendiente() {
+            if (consultaPendiente != null) {
+                consultaPendiente.finalizar();
+                consultaPendiente = null;
+            }
+        }
+
+        private static long sumarFilas(Object resultado) {
+            long total = 0;
+            if (resultado instanceof int[]) {
+                for (int filas : (int[]) resultado) {
+                    total += Math.max(filas, 0);
+                }
+            } else if (resultado instanceof long[]) {
+                for (long filas : (long[]) resultado) {
+                    total += Math.max(filas, 0);
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Proxy de ResultSet que cuenta las filas recorridas y finaliza la medición al cerrarse.
+     */
+    private static final class ResultadoInstrumentado implements InvocationHandler {
+
+        private final ResultSet resultado;
+        private final Ejecucion ejecucion;
+        private long filas;
+
+        ResultadoInstrumentado(ResultSet resultado, Ejecucion ejecucion) {
+            this.resultado = resultado;
+            this.ejecucion = ejecucion;
+        }
+
+        ResultSet proxy() {
+            return (ResultSet) Proxy.newProxyInstance(InstrumentedConnection.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, this);
+        }
+
+        void finalizar() {
+            ejecucion.finalizar(filas, false);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object valor = invocar(resultado, method, args);
+            String nombre = method.getName();
+            if ("next".equals(nombre)) {
+                if ((Boolean) valor) {
+                    filas++;
+                }
+            } else if ("close".equals(nombre)) {
+                finalizar();
+            }
+            return valor;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package config;
+
+import metrics.MetricsRegistry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conexión física del pool con caché LRU de PreparedStatement por SQL.
+ *
+ * Cada préstamo entrega un proxy de Connection: close() devuelve la conexión
+ * al pool, y prepareStatement(sql) / prepareStatement(sql, RETURN_GENERATED_KEYS)
+ * devuelven una sentencia cacheada cuyo close() solo limpia los parámetros.
+ * Así, lecturas repetidas como leer o buscarPorIp no vuelven a parsear ni
+ * preparar el SQL (ni en el cliente ni, con useServerPrepStmts, en el servidor).
+ *
+ * Si la misma sentencia ya está en uso (p. ej. una consulta anidada con el
+ * mismo SQL), se crea una sentencia sin cachear para no pisar su ResultSet.
+ *
+ * Una conexión física solo la usa un hilo a la vez, por lo que la caché no
+ * necesita sincronización.
+ *
+ * @version 1.0
+ */
+final class PooledConnection {
+
+    private static final LongAdder ACIERTOS = MetricsRegistry.contador("StatementCache.aciertos");
+    private static final LongAdder FALLOS = MetricsRegistry.contador("StatementCache.fallos");
+    private static final long VALIDAR_TRAS_MS = 30_000;
+
+    static {
+        MetricsRegistry.registrarIndicador("StatementCache.tasaAciertos", PooledConnection::tasaAciertos);
+    }
+
+    private final Connection fisica;
+    private final ConnectionPool pool;
+    private final int tamanoCache;
+    private final Map<String, EntradaCache> cacheSimple;
+    private final Map<String, EntradaCache> cacheConClaves;
+    private long ultimoUso = System.currentTimeMillis();
+
+    PooledConnection(Connection fisica, ConnectionPool pool, int tamanoCache) {
+        this.fisica = fisica;
+        this.pool = pool;
+        this.tamanoCache = tamanoCache;
+        this.cacheSimple = crearCache();
+        this.cacheConClaves = crearCache();
+    }
+
+    /**
+     * Proporción de prepareStatement resueltos desde la caché.
+     *
+     * @return valor entre 0 y 1 (0 si todavía no hubo llamadas)
+     */
+    static double tasaAciertos() {
+        long aciertos = ACIERTOS.sum();
+        long total = aciertos + FALLOS.sum();
+        return total == 0 ? 0.0 : (double) aciertos / total;
+    }
+
+    /**
+     * Entrega un proxy de Connection para un préstamo.
+     */
+    Connection prestar() {
+        return (Connection) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Prestamo());
+    }
+
+    /**
+     * Verifica la conexión si estuvo ociosa mucho tiempo (MySQL cierra las inactivas).
+     */
+    boolean esValida() {
+        try {
+            if (fisica.isClosed()) {
+                return false;
+            }
+            return System.currentTimeMillis() - ultimoUso < VALIDAR_TRAS_MS || fisica.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Cierra la conexión física (y con ella todas sus sentencias cacheadas).
+     */
+    void cerrarFisica() {
+        cacheSimple.clear();
+        cacheConClaves.clear();
+        DatabaseConnection.closeConnection(fisica);
+    }
+
+    private Map<String, EntradaCache> crearCache() {
+        return new LinkedHashMap<String, EntradaCache>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EntradaCache> eldest) {
+                if (size() <= tamanoCache) {
+                    return false;
+                }
+                eldest.getValue().desalojar();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Obtiene una sentencia desde la caché o la prepara.
+     */
+    private PreparedStatement preparar(String sql, int clavesGeneradas) throws SQLException {
+        if (tamanoCache <= 0) {
+            return prepararFisica(sql, clavesGeneradas);
+        }
+        Map<String, EntradaCache> cache =
+                clavesGeneradas == Statement.RETURN_GENERATED_KEYS ? cacheConClaves : cacheSimple;
+
+        EntradaCache entrada = cache.get(sql);
+        if (entrada != null && !entrada.enUso) {
+            ACIERTOS.increment();
+            return entrada.prestar();
+        }
+
+        FALLOS.increment();
+        PreparedStatement nueva = prepararFisica(sql, clavesGeneradas);
+        if (entrada != null) {
+            // La cacheada está en uso: esta se usa una vez y se cierra normalmente
+            return nueva;
+        }
+        entrada = new EntradaCache(nueva);
+        cache.put(sql, entrada);
+        return entrada.prestar();
+    }
+
+    private PreparedStatement prepararFisica(String sql, int clavesGeneradas) throws SQLException {
+        return clavesGeneradas == Statement.RETURN_GENERATED_KEYS
+                ? fisica.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : fisica.prepareStatement(sql);
+    }
+
+    /**
+     * Recupera las sentencias que el llamador no cerró antes de devolver la conexión.
+     */
+    private static void liberarPrestadas(Map<String, EntradaCache> cache) {
+        for (EntradaCache entrada : cache.values()) {
+            if (entrada.enUso) {
+                entrada.liberar();
+            }
+        }
+    }
+
+    private static Object invocar(Object destino, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Préstamo de la conexión: un proxy por cada getConnection().
+     */
+    private final class Prestamo implements InvocationHandler {
+
+        private boolean cerrada;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nombre = method.getName();
+            switch (nombre) {
+                case "close":
+                    devolver();
+                    return null;
+                case "isClosed":
+                    return cerrada;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + fisica + "]";
+                default:
+                    break;
+            }
+            if (cerrada) {
+                throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+            if ("prepareStatement".equals(nombre) && args.length <= 2
+                    && (args.length == 1 || args[1] instanceof Integer)) {
+                int claves = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                return preparar((String) args[0], claves);
+            }
+            return invocar(fisica, method, args);
+        }
+
+        /**
+         * Restablece el estado de la conexión y la devuelve al pool.
+         */
+        private void devolver() {
+            if (cerrada) {
+                return;
+            }
+            cerrada = true;
+            ultimoUso = System.currentTimeMillis();
+            liberarPrestadas(cacheSimple);
+            liberarPrestadas(cacheConClaves);
+            try {
+                if (!fisica.getAutoCommit()) {
+                    fisica.rollback();
+                    fisica.setAutoCommit(true);
+                }
+                pool.devolver(PooledConnection.this);
+            } catch (SQLException e) {
+                System.err.println("[ConnectionPool] Conexión descartada: " + e.getMessage());
+                pool.descartar(PooledConnection.this);
+            }
+        }
+    }
+
+    /**
+     * Sentencia física cacheada. Solo puede estar prestada una vez a la vez.
+     */
+    private static final class EntradaCache {
+
+        private final PreparedStatement sentencia;
+        private boolean enUso;
+        private boolean desalojada;
+
+        EntradaCache(PreparedStatement sentencia) {
+            this.sentencia = sentencia;
+        }
+
+        PreparedStatement prestar() {
+            enUso = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new SentenciaPrestada(this));
+        }
+
+        /**
+         * Fin de un préstamo: la sentencia queda lista para reutilizarse.
+         */
+        void liberar() {
+            enUso = false;
+            if (desalojada) {
+                cerrarSilenciosamente();
+                return;
+            }
+            try {
+                sentencia.clearParameters();
+                sentencia.clearBatch();
+            } catch (SQLException e) {
+                desalojada = true;
+                cerrarSilenciosamente();
+            }
+        }
+
+        /**
+         * Salida de la caché LRU: se cierra ahora o al terminar el préstamo en curso.
+         */
+        void desalojar() {
+            desalojada = true;
+            if (!enUso) {
+                cerrarSilenciosamente();
+            }
+        }
+
+        private void cerrarSilenciosamente() {
+            try {
+                sentencia.close();
+            } catch (SQLException e) {
+                // La sentencia ya no se usa; un error al cerrarla no afecta al llamador
+            }
+        }
+    }
+
+    /**
+     * Proxy de una sentencia cacheada durante un préstamo.
+     */
+    private static final class SentenciaPrestada implements InvocationHandler {
+
+        private final EntradaCache entrada;
+        private boolean cerrada;
+
+        SentenciaPrestada(EntradaCache entrada) {
+            this.entrada = entrada;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nombre = method.getName();
+            switch (nombre) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        entrada.liberar();
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (cerrada) {
+                throw new SQLException("La sentencia ya fue cerrada");
+            }
+            return invocar(entrada.sentencia, method, args);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package config;
+
+import metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Réplicas de lectura de db.url (replicas.cantidad > 0).
+ *
+ * <ul>
+ *   <li>Cada réplica es una réplica MySQL de db.url (replica.N.url, y
+ *       opcionalmente replica.N.user / replica.N.password; por defecto db.user
+ *       y db.password), con su propio pool de conexiones.</li>
+ *   <li>replicas.seleccion: {@code rotacion} (round robin) o
+ *       {@code menosCargada} (la réplica con menos conexiones prestadas de su
+ *       pool; sin pool se usa rotación).</li>
+ *   <li>Una réplica que no acepta conexiones se saltea durante
+ *       replicas.reintentoMs; si no queda ninguna, {@link #obtener()} falla y
+ *       DatabaseConnection lee de db.url.</li>
+ * </ul>
+ *
+ * Las réplicas pueden ir atrasadas respecto de db.url: las escrituras, las
+ * lecturas dentro de una transacción y las lecturas del mismo hilo durante
+ * replicas.lecturaPropiaMs después de confirmar una escritura van a db.url
+ * (ver DatabaseConnection#getConnectionLectura).
+ *
+ * @version 1.0
+ */
+public final class ReplicaSet {
+
+    private static final LongAdder FALLOS = MetricsRegistry.contador("ReplicaSet.fallos");
+
+    private final int cantidad;
+    private final boolean menosCargada;
+    private final long reintentoNanos;
+    private final String[] urls;
+    private final String[] usuarios;
+    private final String[] contrasenas;
+    private final ConnectionPool[] pools;
+    private final LongAdder[] lecturas;
+    /** Hasta cuándo (System.nanoTime) se saltea cada réplica; 0 = disponible. */
+    private final AtomicLongArray salteadaHasta;
+    private final AtomicInteger siguiente = new AtomicInteger();
+
+    private ReplicaSet(int cantidad, boolean menosCargada, long reintentoMs) {
+        this.cantidad = cantidad;
+        this.menosCargada = menosCargada;
+        this.reintentoNanos = reintentoMs * 1_000_000L;
+        this.urls = new String[cantidad];
+        this.usuarios = new String[cantidad];
+        this.contrasenas = new String[cantidad];
+        this.pools = new ConnectionPool[cantidad];
+        this.lecturas = new LongAdder[cantidad];
+        this.salteadaHasta = new AtomicLongArray(cantidad);
+    }
+
+    /**
+     * Carga las réplicas desde config.properties.
+     *
+     * @return las réplicas, o null si replicas.cantidad es 0 (todo en db.url)
+     * @throws IllegalStateException si falta la URL de una réplica o replicas.seleccion es inválida
+     */
+    static ReplicaSet cargar() {
+        int cantidad = AppConfig.getInt("replicas.cantidad", 0);
+        if (cantidad <= 0) {
+            return null;
+        }
+        String seleccion = AppConfig.getString("replicas.seleccion", "rotacion").trim().toLowerCase(Locale.ROOT);
+        if (!"rotacion".equals(seleccion) && !"menoscargada".equals(seleccion)) {
+            throw new IllegalStateException("replicas.seleccion inválida (rotacion o menosCargada): " + seleccion);
+        }
+        ReplicaSet replicas = new ReplicaSet(cantidad, "menoscargada".equals(seleccion),
+                AppConfig.getLong("replicas.reintentoMs", 5000));
+        int tamanoPool = AppConfig.getInt("replicas.pool.maxSize", AppConfig.getInt("db.pool.maxSize", 10));
+        for (int i = 0; i < cantidad; i++) {
+            String url = AppConfig.getString("replica." + i + ".url");
+            if (url == null || url.trim().isEmpty()) {
+                throw new IllegalStateException("Falta replica." + i + ".url (replicas.cantidad=" + cantidad + ")");
+            }
+            replicas.urls[i] = url;
+            replicas.usuarios[i] = AppConfig.getString("replica." + i + ".user", AppConfig.getString("db.user"));
+            replicas.contrasenas[i] = AppConfig.getString("replica." + i + ".password",
+                    AppConfig.getString("db.password"));
+            if (tamanoPool > 0) {
+                replicas.pools[i] = new ConnectionPool("ConnectionPool.replica" + i, url, replicas.usuarios[i],
+                        replicas.contrasenas[i], tamanoPool, AppConfig.getLong("db.pool.timeoutMs", 5000),
+                        AppConfig.getInt("db.statementCache.size", 64));
+            }
+            replicas.lecturas[i] = MetricsRegistry.contador("ReplicaSet.lecturas.replica" + i);
+        }
+        return replicas;
+    }
+
+    /**
+     * @return cantidad de réplicas
+     */
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Conexión a una réplica elegida según replicas.seleccion; si la elegida
+     * no acepta conexiones, prueba las demás.
+     *
+     * @throws SQLException si ninguna réplica disponible acepta conexiones
+     */
+    Connection obtener() throws SQLException {
+        int primera = elegir();
+        SQLException error = null;
+        for (int i = 0; i < cantidad; i++) {
+            int replica = (primera + i) % cantidad;
+            if (i > 0 && salteada(replica)) {
+                continue;
+            }
+            try {
+                Connection conn = pools[replica] != null ? pools[replica].obtener()
+                        : DriverManager.getConnection(urls[replica], usuarios[replica], contrasenas[replica]);
+                salteadaHasta.set(replica, 0);
+                lecturas[replica].increment();
+                return InstrumentedConnection.requerida() ? InstrumentedConnection.envolver(conn, false) : conn;
+            } catch (SQLException e) {
+                FALLOS.increment();
+                salteadaHasta.set(replica, System.nanoTime() + reintentoNanos);
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.setNextException(e);
+                }
+            }
+        }
+        throw error != null ? error : new SQLException("Ninguna réplica disponible");
+    }
+
+    /**
+     * @return la réplica a probar primero (las salteadas solo si no hay otra)
+     */
+    private int elegir() {
+        int inicio = Math.floorMod(siguiente.getAndIncrement(), cantidad);
+        int elegida = -1;
+        int menorCarga = Integer.MAX_VALUE;
+        for (int i = 0; i < cantidad; i++) {
+            int replica = (inicio + i) % cantidad;
+            if (salteada(replica)) {
+                continue;
+            }
+            if (!menosCargada || pools[replica] == null) {
+                return replica;
+            }
+            // Empates: gana la primera a partir de la rotación, así se reparten
+            int carga = pools[replica].enUso();
+            if (carga < menorCarga) {
+                menorCarga = carga;
+                elegida = replica;
+            }
+        }
+        return elegida >= 0 ? elegida : inicio;
+    }
+
+    private boolean salteada(int replica) {
+        long hasta = salteadaHasta.get(replica);
+        return hasta != 0 && hasta - System.nanoTime() > 0;
+    }
+
+    /**
+     * Cierra los pools de las réplicas.
+     */
+    void cerrar() {
+        for (ConnectionPool pool : pools) {
+            if (pool != null) {
+                pool.cerrar();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package config;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Mapa de shards de DispositivoIoT y ConfiguracionRed (shards.cantidad > 0).
+ *
+ * <ul>
+ *   <li>Cada shard es una BD MySQL con sql/schema.sql (shard.N.url, y
+ *       opcionalmente shard.N.user / shard.N.password; por defecto db.user y
+ *       db.password), con su propio pool de conexiones.</li>
+ *   <li>Un dispositivo vive en el shard {@code crc32(serial) % cantidad}, y su
+ *       configuración de red en el mismo shard (la clave foránea se mantiene).</li>
+ *   <li>Los IDs son globales: cada shard genera IDs con
+ *       {@code auto_increment_increment = cantidad} y
+ *       {@code auto_increment_offset = N + 1} (variables de sesión agregadas a
+ *       la URL), así el shard de un ID es {@code (id - 1) % cantidad} sin
+ *       consultar ningún directorio.</li>
+ *   <li>Las demás tablas (rollouts, telemetría, outbox, ...) siguen en db.url.</li>
+ * </ul>
+ *
+ * Cambiar la cantidad de shards cambia la ubicación de los seriales y de los
+ * IDs: requiere migrar los datos.
+ *
+ * @version 1.0
+ */
+public final class ShardMap {
+
+    private final int cantidad;
+    private final String[] urls;
+    private final String[] usuarios;
+    private final String[] contrasenas;
+    private final ConnectionPool[] pools;
+    private final ExecutorService consultas;
+
+    private ShardMap(int cantidad) {
+        this.cantidad = cantidad;
+        this.urls = new String[cantidad];
+        this.usuarios = new String[cantidad];
+        this.contrasenas = new String[cantidad];
+        this.pools = new ConnectionPool[cantidad];
+        AtomicInteger hilos = new AtomicInteger();
+        // Sin límite de hilos: una consulta dispersa nunca espera detrás de otra
+        this.consultas = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-consulta-" + hilos.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Carga el mapa desde config.properties.
+     *
+     * @return el mapa, o null si shards.cantidad es 0 (sin sharding)
+     * @throws IllegalStateException si falta la URL de un shard
+     */
+    static ShardMap cargar() {
+        int cantidad = AppConfig.getInt("shards.cantidad", 0);
+        if (cantidad <= 0) {
+            return null;
+        }
+        ShardMap mapa = new ShardMap(cantidad);
+        int tamanoPool = AppConfig.getInt("shards.pool.maxSize", AppConfig.getInt("db.pool.maxSize", 10));
+        for (int i = 0; i < cantidad; i++) {
+            String url = AppConfig.getString("shard." + i + ".url");
+            if (url == null || url.trim().isEmpty()) {
+                throw new IllegalStateException("Falta shard." + i + ".url (shards.cantidad=" + cantidad + ")");
+            }
+            url += (url.contains("?") ? "&" : "?") + "sessionVariables=auto_increment_increment=" + cantidad
+                    + ",auto_increment_offset=" + (i + 1);
+            mapa.urls[i] = url;
+            mapa.usuarios[i] = AppConfig.getString("shard." + i + ".user", AppConfig.getString("db.user"));
+            mapa.contrasenas[i] = AppConfig.getString("shard." + i + ".password", AppConfig.getString("db.password"));
+            if (tamanoPool > 0) {
+                mapa.pools[i] = new ConnectionPool("ConnectionPool.shard" + i, url, mapa.usuarios[i],
+                        mapa.contrasenas[i], tamanoPool, AppConfig.getLong("db.pool.timeoutMs", 5000),
+                        AppConfig.getInt("db.statementCache.size", 64));
+            }
+        }
+        return mapa;
+    }
+
+    /**
+     * @return cantidad de shards
+     */
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * @return shard del serial (estable entre ejecuciones y JVMs)
+     */
+    public int shardDeSerial(String serial) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = serial.getBytes(StandardCharsets.UTF_8);
+        crc.update(bytes, 0, bytes.length);
+        return (int) (crc.getValue() % cantidad);
+    }
+
+    /**
+     * @return shard que generó el ID (ver auto_increment_offset)
+     */
+    public int shardDeId(long id) {
+        return (int) Math.floorMod(id - 1, (long) cantidad);
+    }
+
+    /**
+     * Ejecuta una tarea por shard en paralelo y espera todos los resultados.
+     *
+     * @param tareas una tarea por shard (o por grupo de shards)
+     * @return los resultados, en el orden de las tareas
+     * @throws SQLException la primera excepción de las tareas (se esperan todas)
+     */
+    public <T> List<T> enParalelo(List<Callable<T>> tareas) throws SQLException {
+        if (tareas.size() == 1) {
+            try {
+                List<T> resultado = new ArrayList<>(1);
+                resultado.add(tareas.get(0).call());
+                return resultado;
+            } catch (SQLException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException(e.getMessage(), e);
+            }
+        }
+        List<Future<T>> futuros = new ArrayList<>(tareas.size());
+        for (Callable<T> tarea : tareas) {
+            futuros.add(consultas.submit(tarea));
+        }
+        List<T> resultados = new ArrayList<>(tareas.size());
+        Throwable error = null;
+        for (Future<T> futuro : futuros) {
+            try {
+                resultados.add(futuro.get());
+            } catch (ExecutionException e) {
+                error = error != null ? error : e.getCause();
+                resultados.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = error != null ? error : e;
+                resultados.add(null);
+            }
+        }
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new SQLException("Error en la consulta a los shards: " + error.getMessage(), error);
+        }
+        return resultados;
+    }
+
+    /**
+     * Ejecuta una tarea en segundo plano (productores de los recorridos por shard).
+     */
+    public Future<?> enSegundoPlano(Runnable tarea) {
+        return consultas.submit(tarea);
+    }
+
+    /**
+     * @return una conexión al shard (del pool, si está habilitado)
+     */
+    Connection obtener(int shard) throws SQLException {
+        Connection conn = pools[shard] != null ? pools[shard].obtener()
+                : DriverManager.getConnection(urls[shard], usuarios[shard], contrasenas[shard]);
+        return InstrumentedConnection.requerida() ? InstrumentedConnection.envolver(conn, false) : conn;
+    }
+
+    /**
+     * Cierra los pools de los shards y el ejecutor de consultas.
+     */
+    void cerrar() {
+        for (ConnectionPool pool : pools) {
+            if (pool != null) {
+                pool.cerrar();
+            }
+        }
+        consultas.shutdown();
+    }
+}
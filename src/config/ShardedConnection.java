@@ -0,0 +1,272 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Conexión (proxy dinámico) que entrega DatabaseConnection con shards.cantidad > 0.
+ *
+ * Abre bajo demanda una conexión por shard ({@link #shard(Connection, int)},
+ * que usan los DAOs fragmentados) y una a db.url para las demás tablas (toda
+ * operación JDBC directa sobre el proxy va a esa conexión principal).
+ * Autocommit, aislamiento y solo lectura se aplican a todas las conexiones
+ * abiertas y a las que se abran después; commit, rollback y close se propagan
+ * a todas.
+ *
+ * El commit confirma los shards en orden y después la principal, sin
+ * commit en dos fases: una transacción que escribió en varios shards (las
+ * operaciones masivas) puede quedar confirmada en parte si un commit falla.
+ * Ante la primera falla se detiene y revierte las conexiones que faltaban.
+ * Las operaciones de un solo dispositivo escriben en un único shard.
+ *
+ * Las conexiones de distintos shards pueden usarse desde hilos distintos a la
+ * vez (consultas dispersas); cada una, como cualquier conexión JDBC, desde un
+ * solo hilo.
+ *
+ * @version 1.0
+ */
+public final class ShardedConnection implements InvocationHandler {
+
+    /**
+     * Abre la conexión a db.url.
+     */
+    @FunctionalInterface
+    interface FuentePrincipal {
+
+        Connection abrir() throws SQLException;
+    }
+
+    private final ShardMap mapa;
+    private final FuentePrincipal fuentePrincipal;
+    private final Connection[] shards;
+    private Connection principal;
+    private boolean autoCommit = true;
+    private Integer aislamiento;
+    private boolean soloLectura;
+    private boolean cerrada;
+
+    private ShardedConnection(ShardMap mapa, FuentePrincipal fuentePrincipal) {
+        this.mapa = mapa;
+        this.fuentePrincipal = fuentePrincipal;
+        this.shards = new Connection[mapa.getCantidad()];
+    }
+
+    /**
+     * @return una conexión nueva en autocommit (todavía sin conexiones físicas)
+     */
+    static Connection abrir(ShardMap mapa, FuentePrincipal fuentePrincipal) {
+        return (Connection) Proxy.newProxyInstance(ShardedConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ShardedConnection(mapa, fuentePrincipal));
+    }
+
+    /**
+     * Conexión al shard dentro de la misma unidad de trabajo (la abre si hace falta).
+     *
+     * @param conn conexión de DatabaseConnection
+     * @param shard número de shard
+     * @return la conexión al shard; si conn no es fragmentada, conn misma
+     * @throws SQLException si no se puede conectar al shard
+     */
+    public static Connection shard(Connection conn, int shard) throws SQLException {
+        if (conn != null && Proxy.isProxyClass(conn.getClass())
+                && Proxy.getInvocationHandler(conn) instanceof ShardedConnection) {
+            return ((ShardedConnection) Proxy.getInvocationHandler(conn)).abrirShard(shard);
+        }
+        return conn;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "setAutoCommit":
+                cambiarAutoCommit((Boolean) args[0]);
+                return null;
+            case "getAutoCommit":
+                return autoCommit;
+            case "commit":
+                confirmar();
+                return null;
+            case "rollback":
+                if (args == null || args.length == 0) {
+                    revertir();
+                    return null;
+                }
+                break;
+            case "close":
+                cerrar();
+                return null;
+            case "isClosed":
+                return cerrada;
+            case "isValid":
+                return esValida((Integer) args[0]);
+            case "setTransactionIsolation":
+                aislamiento = (Integer) args[0];
+                aplicar(c -> c.setTransactionIsolation(aislamiento));
+                return null;
+            case "getTransactionIsolation":
+                if (aislamiento != null) {
+                    return aislamiento;
+                }
+                break;
+            case "setReadOnly":
+                soloLectura = (Boolean) args[0];
+                aplicar(c -> c.setReadOnly(soloLectura));
+                return null;
+            case "isReadOnly":
+                return soloLectura;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "ShardedConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                break;
+        }
+        try {
+            return method.invoke(abrirPrincipal(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // ===== Conexiones físicas =====
+
+    private synchronized Connection abrirShard(int shard) throws SQLException {
+        verificarAbierta();
+        if (shards[shard] == null) {
+            shards[shard] = preparar(mapa.obtener(shard));
+        }
+        return shards[shard];
+    }
+
+    private synchronized Connection abrirPrincipal() throws SQLException {
+        verificarAbierta();
+        if (principal == null) {
+            principal = preparar(fuentePrincipal.abrir());
+        }
+        return principal;
+    }
+
+    private Connection preparar(Connection conn) throws SQLException {
+        try {
+            if (aislamiento != null) {
+                conn.setTransactionIsolation(aislamiento);
+            }
+            if (soloLectura) {
+                conn.setReadOnly(true);
+            }
+            conn.setAutoCommit(autoCommit);
+            return conn;
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    private void verificarAbierta() throws SQLException {
+        if (cerrada) {
+            throw new SQLException("La conexión está cerrada");
+        }
+    }
+
+    // ===== Transacción =====
+
+    @FunctionalInterface
+    private interface Accion {
+
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Aplica la acción a todas las conexiones abiertas (shards primero, la
+     * principal al final); sigue con las demás si una falla y lanza la primera
+     * excepción. Para rollback, close y autocommit; el commit usa {@link #confirmar()}.
+     */
+    private synchronized void aplicar(Accion accion) throws SQLException {
+        SQLException error = null;
+        for (Connection conn : shards) {
+            error = aplicar(accion, conn, error);
+        }
+        error = aplicar(accion, principal, error);
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static SQLException aplicar(Accion accion, Connection conn, SQLException error) {
+        if (conn == null) {
+            return error;
+        }
+        try {
+            accion.aplicar(conn);
+        } catch (SQLException e) {
+            if (error == null) {
+                return e;
+            }
+            error.setNextException(e);
+        }
+        return error;
+    }
+
+    private void cambiarAutoCommit(boolean nuevo) throws SQLException {
+        autoCommit = nuevo;
+        aplicar(c -> c.setAutoCommit(nuevo));
+    }
+
+    /**
+     * Confirma los shards en orden y la principal al final. Si un commit
+     * falla, no confirma las demás: revierte la que falló y las que faltaban
+     * y lanza el error del commit (las ya confirmadas quedan confirmadas).
+     */
+    private synchronized void confirmar() throws SQLException {
+        Connection[] conexiones = Arrays.copyOf(shards, shards.length + 1);
+        conexiones[shards.length] = principal;
+        for (int i = 0; i < conexiones.length; i++) {
+            if (conexiones[i] == null) {
+                continue;
+            }
+            try {
+                conexiones[i].commit();
+            } catch (SQLException e) {
+                for (int j = i; j < conexiones.length; j++) {
+                    aplicar(Connection::rollback, conexiones[j], e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void revertir() throws SQLException {
+        aplicar(Connection::rollback);
+    }
+
+    private synchronized boolean esValida(int segundos) throws SQLException {
+        if (cerrada) {
+            return false;
+        }
+        // Prueba todos los shards (y la principal): una BD caída invalida la unidad de trabajo
+        for (int i = 0; i < shards.length; i++) {
+            if (!abrirShard(i).isValid(segundos)) {
+                return false;
+            }
+        }
+        return abrirPrincipal().isValid(segundos);
+    }
+
+    private synchronized void cerrar() throws SQLException {
+        if (cerrada) {
+            return;
+        }
+        try {
+            aplicar(Connection::close);
+        } finally {
+            cerrada = true;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package dao;
+
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object para el archivo de bajas lógicas (tablas
+ * DispositivoIoT_archivo y ConfiguracionRed_archivo).
+ *
+ * Cada archivado mueve las filas de un rango de IDs: las bloquea, las copia
+ * al archivo y las borra de la tabla principal, en la transacción del
+ * llamador. Con shards, recibe la conexión del shard (las tablas de archivo
+ * están en cada shard).
+ *
+ * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Cada método público registra su latencia y errores en MetricsRegistry.
+ *
+ * @version 1.0
+ */
+public class ArchivoDao {
+
+    private static final OperationMetrics METRICA_RANGO_IDS = MetricsRegistry.operacion("ArchivoDao.rangoIds");
+    private static final OperationMetrics METRICA_ARCHIVAR_CONFIGURACIONES = MetricsRegistry.operacion("ArchivoDao.archivarConfiguraciones");
+    private static final OperationMetrics METRICA_ARCHIVAR_DISPOSITIVOS = MetricsRegistry.operacion("ArchivoDao.archivarDispositivos");
+    private static final OperationMetrics METRICA_BUSCAR_POR_SERIAL = MetricsRegistry.operacion("ArchivoDao.buscarPorSerial");
+
+    private static final String COLUMNAS_DISPOSITIVO =
+            "id, eliminado, serial, modelo, ubicacion, firmwareVersion, created_at, updated_at";
+    private static final String COLUMNAS_CONFIGURACION =
+            "id, eliminado, ip, mascara, gateway, dnsPrimario, dhcpHabilitado, dispositivo_id, created_at, updated_at";
+
+    private static final RowMapper<Long> MAPPER_ID = new RowMapper<Long>("id") {
+        @Override
+        public Long mapRow(ResultSet rs, int[] c) throws SQLException {
+            return rs.getLong(c[0]);
+        }
+    };
+
+    /**
+     * IDs mínimo y máximo de DispositivoIoT o de ConfiguracionRed.
+     *
+     * @param dispositivos true para DispositivoIoT, false para ConfiguracionRed
+     * @param conn conexión a la BD
+     * @return {mínimo, máximo}; {0, 0} si la tabla está vacía
+     * @throws SQLException si hay un error en la operación
+     */
+    public long[] rangoIds(boolean dispositivos, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String tabla = dispositivos ? "DispositivoIoT" : "ConfiguracionRed";
+            return new long[]{
+                    JdbcTemplate.queryForLong(conn, "SELECT MIN(id) FROM " + tabla,
+                            JdbcTemplate.ParameterSetter.NINGUNO, 0),
+                    JdbcTemplate.queryForLong(conn, "SELECT MAX(id) FROM " + tabla,
+                            JdbcTemplate.ParameterSetter.NINGUNO, 0)};
+        } catch (SQLException | RuntimeException e) {
+            METRICA_RANGO_IDS.registrarError();
+            throw e;
+        } finally {
+            METRICA_RANGO_IDS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Mueve al archivo las configuraciones con ID en [desdeId, hastaId] dadas
+     * de baja antes del corte (también las de dispositivos todavía activos).
+     *
+     * @param conn conexión de la transacción
+     * @return cantidad de configuraciones archivadas
+     * @throws SQLException si hay un error en la operación
+     */
+    public int archivarConfiguraciones(long desdeId, long hastaId, Timestamp corte, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            List<Long> ids = JdbcTemplate.query(conn,
+                    "SELECT id FROM ConfiguracionRed " +
+                    "WHERE id BETWEEN ? AND ? AND eliminado = TRUE AND updated_at < ? FOR UPDATE",
+                    pstmt -> {
+                        pstmt.setLong(1, desdeId);
+                        pstmt.setLong(2, hastaId);
+                        pstmt.setTimestamp(3, corte);
+                    }, MAPPER_ID);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            return mover("ConfiguracionRed", COLUMNAS_CONFIGURACION, "id", ids, conn);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ARCHIVAR_CONFIGURACIONES.registrarError();
+            throw e;
+        } finally {
+            METRICA_ARCHIVAR_CONFIGURACIONES.registrar(inicio);
+        }
+    }
+
+    /**
+     * Mueve al archivo los dispositivos con ID en [desdeId, hastaId] dados de
+     * baja antes del corte, junto con su configuración de red (dada de baja,
+     * aunque sea después del corte). Los que todavía tienen una configuración
+     * activa se dejan: la FK la borraría en cascada.
+     *
+     * @param conn conexión de la transacción
+     * @return cantidad de dispositivos archivados
+     * @throws SQLException si hay un error en la operación
+     */
+    public int archivarDispositivos(long desdeId, long hastaId, Timestamp corte, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            // El bloqueo de los dispositivos frena también altas de configuraciones (la FK los lee)
+            List<Long> ids = JdbcTemplate.query(conn,
+                    "SELECT d.id FROM DispositivoIoT d " +
+                    "WHERE d.id BETWEEN ? AND ? AND d.eliminado = TRUE AND d.updated_at < ? " +
+                    "AND NOT EXISTS (SELECT 1 FROM ConfiguracionRed c " +
+                    "WHERE c.dispositivo_id = d.id AND c.eliminado = FALSE) FOR UPDATE",
+                    pstmt -> {
+                        pstmt.setLong(1, desdeId);
+                        pstmt.setLong(2, hastaId);
+                        pstmt.setTimestamp(3, corte);
+                    }, MAPPER_ID);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            mover("ConfiguracionRed", COLUMNAS_CONFIGURACION, "dispositivo_id", ids, conn);
+            return mover("DispositivoIoT", COLUMNAS_DISPOSITIVO, "id", ids, conn);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ARCHIVAR_DISPOSITIVOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_ARCHIVAR_DISPOSITIVOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Busca en el archivo los dispositivos con un serial (puede haber varios
+     * si el serial se reutilizó), con su configuración de red archivada.
+     *
+     * @param serial serial exacto
+     * @param conn conexión a la BD
+     * @return dispositivos archivados en orden de ID (vacía si no hay)
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<DispositivoIoT> buscarPorSerial(String serial, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            List<DispositivoIoT> dispositivos = JdbcTemplate.query(conn,
+                    "SELECT * FROM DispositivoIoT_archivo WHERE serial = ? ORDER BY id",
+                    pstmt -> pstmt.setString(1, serial), DispositivoIoTDao.MAPPER);
+            if (dispositivos.isEmpty()) {
+                return dispositivos;
+            }
+
+            Map<Long, DispositivoIoT> porId = new HashMap<>();
+            List<Long> ids = new ArrayList<>(dispositivos.size());
+            for (DispositivoIoT dispositivo : dispositivos) {
+                porId.put(dispositivo.getId(), dispositivo);
+                ids.add(dispositivo.getId());
+            }
+            int cantidad = JdbcTemplate.marcadoresPara(ids.size());
+            List<ConfiguracionRed> configuraciones = JdbcTemplate.query(conn,
+                    "SELECT * FROM ConfiguracionRed_archivo " +
+                    "WHERE dispositivo_id IN (" + JdbcTemplate.marcadores(cantidad) + ")",
+                    pstmt -> JdbcTemplate.enlazarLista(pstmt, 1, ids, cantidad), ConfiguracionRedDao.MAPPER);
+            for (ConfiguracionRed configuracion : configuraciones) {
+                porId.get(configuracion.getDispositivoId()).setConfiguracionRed(configuracion);
+            }
+            return dispositivos;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_POR_SERIAL.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_SERIAL.registrar(inicio);
+        }
+    }
+
+    /**
+     * Copia al archivo y borra de la tabla las filas cuya columna está en la lista.
+     * Tabla y columnas son nombres fijos, seguros para concatenar.
+     *
+     * @return filas borradas de la tabla
+     */
+    private static int mover(String tabla, String columnas, String columna, List<Long> ids, Connection conn)
+            throws SQLException {
+        int cantidad = JdbcTemplate.marcadoresPara(ids.size());
+        String filtro = " WHERE " + columna + " IN (" + JdbcTemplate.marcadores(cantidad) + ")";
+        JdbcTemplate.ParameterSetter parametros = pstmt -> JdbcTemplate.enlazarLista(pstmt, 1, ids, cantidad);
+
+        JdbcTemplate.update(conn, "INSERT INTO " + tabla + "_archivo (" + columnas + ") " +
+                "SELECT " + columnas + " FROM " + tabla + filtro, parametros);
+        return JdbcTemplate.update(conn, "DELETE FROM " + tabla + filtro, parametros);
+    }
+}
@@ -1,9 +1,13 @@
 package dao;
 
 import entities.ConfiguracionRed;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 
 /**
@@ -12,136 +16,273 @@ import java.util.List;
  *
  * IMPORTANTE: Usa PreparedStatement para prevenir SQL Injection.
  * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Las sentencias se ejecutan mediante {@link JdbcTemplate} y las filas se mapean
+ * con {@link #MAPPER}, que resuelve los índices de columna una vez por ResultSet.
+ * Cada método público registra su latencia y errores en MetricsRegistry.
  *
  * @author Gustavo Tiseira
  * @version 1.0
  */
 public class ConfiguracionRedDao implements GenericDao<ConfiguracionRed> {
 
-    @Override
-    public void crear(ConfiguracionRed entity, Connection conn) throws SQLException {
-        String sql = "INSERT INTO ConfiguracionRed (eliminado, ip, mascara, gateway, dnsPrimario, dhcpHabilitado, dispositivo_id) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setBoolean(1, entity.getEliminado() != null ? entity.getEliminado() : false);
-            pstmt.setString(2, entity.getIp());
-            pstmt.setString(3, entity.getMascara());
-            pstmt.setString(4, entity.getGateway());
-            pstmt.setString(5, entity.getDnsPrimario());
-            pstmt.setBoolean(6, entity.getDhcpHabilitado());
-            pstmt.setLong(7, entity.getDispositivoId());
+    private static final OperationMetrics METRICA_CREAR = MetricsRegistry.operacion("ConfiguracionRedDao.crear");
+    private static final OperationMetrics METRICA_LEER = MetricsRegistry.operacion("ConfiguracionRedDao.leer");
+    private static final OperationMetrics METRICA_LEER_TODOS = MetricsRegistry.operacion("ConfiguracionRedDao.leerTodos");
+    private static final OperationMetrics METRICA_ACTUALIZAR = MetricsRegistry.operacion("ConfiguracionRedDao.actualizar");
+    private static final OperationMetrics METRICA_ELIMINAR = MetricsRegistry.operacion("ConfiguracionRedDao.eliminar");
+    private static final OperationMetrics METRICA_BUSCAR_POR_IP = MetricsRegistry.operacion("ConfiguracionRedDao.buscarPorIp");
+    private static final OperationMetrics METRICA_BUSCAR_POR_DHCP = MetricsRegistry.operacion("ConfiguracionRedDao.buscarPorDhcp");
+    private static final OperationMetrics METRICA_EXISTE_IP = MetricsRegistry.operacion("ConfiguracionRedDao.existeIp");
+    private static final OperationMetrics METRICA_ESTA_ASOCIADA = MetricsRegistry.operacion("ConfiguracionRedDao.estaAsociada");
+    private static final OperationMetrics METRICA_ELIMINAR_POR_DISPOSITIVOS = MetricsRegistry.operacion("ConfiguracionRedDao.eliminarPorDispositivos");
+    private static final OperationMetrics METRICA_BLOQUEAR_ACTIVAS_POR_DISPOSITIVOS = MetricsRegistry.operacion("ConfiguracionRedDao.bloquearActivasPorDispositivos");
+    private static final OperationMetrics METRICA_BUSCAR_MODIFICADAS_DESDE = MetricsRegistry.operacion("ConfiguracionRedDao.buscarModificadasDesde");
 
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows == 0) {
-                throw new SQLException("Error al crear ConfiguracionRed, ninguna fila afectada.");
-            }
+    /**
+     * Mapea una fila de ConfiguracionRed a la entidad.
+     * Visible en el paquete para que DispositivoIoTDao cargue la configuración en una sola consulta.
+     */
+    static final RowMapper<ConfiguracionRed> MAPPER = new RowMapper<ConfiguracionRed>(
+            "id", "eliminado", "ip", "mascara", "gateway", "dnsPrimario", "dhcpHabilitado", "dispositivo_id",
+            "created_at", "updated_at") {
+        @Override
+        public ConfiguracionRed mapRow(ResultSet rs, int[] c) throws SQLException {
+            ConfiguracionRed configuracion = new ConfiguracionRed();
+            configuracion.setId(rs.getLong(c[0]));
+            configuracion.setEliminado(rs.getBoolean(c[1]));
+            configuracion.setIp(rs.getString(c[2]));
+            configuracion.setMascara(rs.getString(c[3]));
+            configuracion.setGateway(rs.getString(c[4]));
+            configuracion.setDnsPrimario(rs.getString(c[5]));
+            configuracion.setDhcpHabilitado(rs.getBoolean(c[6]));
+            configuracion.setDispositivoId(rs.getLong(c[7]));
+            configuracion.setCreado(rs.getTimestamp(c[8]));
+            configuracion.setActualizado(rs.getTimestamp(c[9]));
+            return configuracion;
+        }
+    };
 
-            // Recuperar el ID generado
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    entity.setId(generatedKeys.getLong(1));
-                } else {
-                    throw new SQLException("Error al crear ConfiguracionRed, no se obtuvo el ID.");
-                }
-            }
+    @Override
+    public void crear(ConfiguracionRed entity, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT INTO ConfiguracionRed (eliminado, ip, mascara, gateway, dnsPrimario, dhcpHabilitado, dispositivo_id) " +
+                         "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+            long id = JdbcTemplate.insert(conn, sql, pstmt -> {
+                pstmt.setBoolean(1, entity.getEliminado() != null ? entity.getEliminado() : false);
+                pstmt.setString(2, entity.getIp());
+                pstmt.setString(3, entity.getMascara());
+                pstmt.setString(4, entity.getGateway());
+                pstmt.setString(5, entity.getDnsPrimario());
+                pstmt.setBoolean(6, entity.getDhcpHabilitado());
+                pstmt.setLong(7, entity.getDispositivoId());
+            });
+
+            entity.setId(id);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CREAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CREAR.registrar(inicio);
         }
     }
 
     @Override
     public ConfiguracionRed leer(long id, Connection conn) throws SQLException {
-        String sql = "SELECT * FROM ConfiguracionRed WHERE id = ?";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, id);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToEntity(rs);
-                }
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM ConfiguracionRed WHERE id = ?";
+
+            return JdbcTemplate.queryForObject(conn, sql, pstmt -> pstmt.setLong(1, id), MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER.registrar(inicio);
         }
-
-        return null;
     }
 
     @Override
     public List<ConfiguracionRed> leerTodos(Connection conn) throws SQLException {
-        List<ConfiguracionRed> configuraciones = new ArrayList<>();
-        String sql = "SELECT * FROM ConfiguracionRed WHERE eliminado = FALSE ORDER BY id";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql);
-             ResultSet rs = pstmt.executeQuery()) {
-
-            while (rs.next()) {
-                configuraciones.add(mapResultSetToEntity(rs));
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM ConfiguracionRed WHERE eliminado = FALSE ORDER BY id";
+
+            return JdbcTemplate.query(conn, sql, JdbcTemplate.ParameterSetter.NINGUNO, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER_TODOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER_TODOS.registrar(inicio);
         }
-
-        return configuraciones;
     }
 
     @Override
     public void actualizar(ConfiguracionRed entity, Connection conn) throws SQLException {
-        String sql = "UPDATE ConfiguracionRed SET ip = ?, mascara = ?, gateway = ?, " +
-                     "dnsPrimario = ?, dhcpHabilitado = ?, dispositivo_id = ?, eliminado = ? WHERE id = ?";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, entity.getIp());
-            pstmt.setString(2, entity.getMascara());
-            pstmt.setString(3, entity.getGateway());
-            pstmt.setString(4, entity.getDnsPrimario());
-            pstmt.setBoolean(5, entity.getDhcpHabilitado());
-            pstmt.setLong(6, entity.getDispositivoId());
-            pstmt.setBoolean(7, entity.getEliminado());
-            pstmt.setLong(8, entity.getId());
-
-            int affectedRows = pstmt.executeUpdate();
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE ConfiguracionRed SET ip = ?, mascara = ?, gateway = ?, " +
+                         "dnsPrimario = ?, dhcpHabilitado = ?, dispositivo_id = ?, eliminado = ? WHERE id = ?";
+
+            int affectedRows = JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setString(1, entity.getIp());
+                pstmt.setString(2, entity.getMascara());
+                pstmt.setString(3, entity.getGateway());
+                pstmt.setString(4, entity.getDnsPrimario());
+                pstmt.setBoolean(5, entity.getDhcpHabilitado());
+                pstmt.setLong(6, entity.getDispositivoId());
+                pstmt.setBoolean(7, entity.getEliminado());
+                pstmt.setLong(8, entity.getId());
+            });
 
             if (affectedRows == 0) {
                 throw new SQLException("Error al actualizar ConfiguracionRed, ninguna fila afectada.");
             }
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ACTUALIZAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_ACTUALIZAR.registrar(inicio);
         }
     }
 
     @Override
     public void eliminar(long id, Connection conn) throws SQLException {
-        String sql = "UPDATE ConfiguracionRed SET eliminado = TRUE WHERE id = ?";
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE ConfiguracionRed SET eliminado = TRUE WHERE id = ?";
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, id);
-
-            int affectedRows = pstmt.executeUpdate();
+            int affectedRows = JdbcTemplate.update(conn, sql, pstmt -> pstmt.setLong(1, id));
 
             if (affectedRows == 0) {
                 throw new SQLException("Error al eliminar ConfiguracionRed, ninguna fila afectada.");
             }
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ELIMINAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR.registrar(inicio);
         }
     }
 
     /**
-     * Busca una configuración de red por su dirección IP.
+     * Elimina lógicamente, en un solo UPDATE, las configuraciones de varios dispositivos.
+     * El llamador es responsable de limitar el tamaño del lote.
      *
-     * @param ip dirección IP a buscar
+     * @param dispositivoIds IDs de los dispositivos (al menos uno)
      * @param conn conexión a la BD
-     * @return la configuración encontrada, o null si no existe
+     * @return cantidad de configuraciones marcadas como eliminadas
      * @throws SQLException si hay un error en la operación
      */
-    public ConfiguracionRed buscarPorIp(String ip, Connection conn) throws SQLException {
-        String sql = "SELECT * FROM ConfiguracionRed WHERE ip = ? AND eliminado = FALSE";
+    public int eliminarPorDispositivos(List<Long> dispositivoIds, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(dispositivoIds.size());
+            String sql = "UPDATE ConfiguracionRed SET eliminado = TRUE " +
+                         "WHERE dispositivo_id IN (" + JdbcTemplate.marcadores(cantidad) + ") AND eliminado = FALSE";
+
+            return JdbcTemplate.update(conn, sql, pstmt -> JdbcTemplate.enlazarLista(pstmt, 1, dispositivoIds, cantidad));
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ELIMINAR_POR_DISPOSITIVOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR_POR_DISPOSITIVOS.registrar(inicio);
+        }
+    }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, ip);
+    /**
+     * Lee y bloquea (SELECT ... FOR UPDATE) las configuraciones activas de
+     * varios dispositivos. Debe usarse dentro de una transacción.
+     * El llamador es responsable de limitar el tamaño del lote.
+     *
+     * @param dispositivoIds IDs de los dispositivos (al menos uno)
+     * @param conn conexión de la transacción
+     * @return configuraciones activas de esos dispositivos
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<ConfiguracionRed> bloquearActivasPorDispositivos(List<Long> dispositivoIds, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(dispositivoIds.size());
+            String sql = "SELECT * FROM ConfiguracionRed " +
+                         "WHERE dispositivo_id IN (" + JdbcTemplate.marcadores(cantidad) + ") AND eliminado = FALSE " +
+                         "ORDER BY id FOR UPDATE";
+
+            return JdbcTemplate.query(conn, sql,
+                    pstmt -> JdbcTemplate.enlazarLista(pstmt, 1, dispositivoIds, cantidad), MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BLOQUEAR_ACTIVAS_POR_DISPOSITIVOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_BLOQUEAR_ACTIVAS_POR_DISPOSITIVOS.registrar(inicio);
+        }
+    }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToEntity(rs);
+    /**
+     * Obtiene, paginando por (updated_at, id), las configuraciones modificadas después de
+     * una marca, incluidas las bajas lógicas (eliminado = TRUE, lápidas) para que
+     * el consumidor las borre de su copia.
+     *
+     * Se omiten las filas modificadas en los últimos {@code margenSegundos}: una
+     * transacción en curso puede confirmar más tarde filas con un updated_at
+     * anterior a la marca que el consumidor ya avanzó.
+     *
+     * @param marca updated_at de la última fila recibida (null para empezar desde el principio)
+     * @param desdeId ID de la última fila recibida (desempata filas con el mismo updated_at)
+     * @param margenSegundos antigüedad mínima de los cambios devueltos
+     * @param limite cantidad máxima de filas
+     * @param conn conexión a la BD
+     * @return filas en orden de (updated_at, id)
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<ConfiguracionRed> buscarModificadasDesde(Timestamp marca, long desdeId, int margenSegundos, int limite,
+            Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM ConfiguracionRed WHERE " +
+                         (marca != null ? "updated_at >= ? AND (updated_at > ? OR id > ?) AND " : "") +
+                         "updated_at < NOW(3) - INTERVAL ? SECOND ORDER BY updated_at, id LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                int p = 1;
+                if (marca != null) {
+                    pstmt.setTimestamp(p++, marca);
+                    pstmt.setTimestamp(p++, marca);
+                    pstmt.setLong(p++, desdeId);
                 }
-            }
+                pstmt.setInt(p++, margenSegundos);
+                pstmt.setInt(p, limite);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_MODIFICADAS_DESDE.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_MODIFICADAS_DESDE.registrar(inicio);
         }
+    }
 
-        return null;
+    /**
+     * Busca una configuración de red por su dirección IP.
+     *
+     * @param ip dirección IP a buscar
+     * @param conn conexión a la BD
+     * @return la configuración encontrada, o null si no existe
+     * @throws SQLException si hay un error en la operación
+     */
+    public ConfiguracionRed buscarPorIp(String ip, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM ConfiguracionRed WHERE ip = ? AND eliminado = FALSE";
+
+            return JdbcTemplate.queryForObject(conn, sql, pstmt -> pstmt.setString(1, ip), MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_POR_IP.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_IP.registrar(inicio);
+        }
     }
 
     /**
@@ -153,20 +294,17 @@ public class ConfiguracionRedDao implements GenericDao<ConfiguracionRed> {
      * @throws SQLException si hay un error en la operación
      */
     public List<ConfiguracionRed> buscarPorDhcp(boolean dhcpHabilitado, Connection conn) throws SQLException {
-        List<ConfiguracionRed> configuraciones = new ArrayList<>();
-        String sql = "SELECT * FROM ConfiguracionRed WHERE dhcpHabilitado = ? AND eliminado = FALSE";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setBoolean(1, dhcpHabilitado);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    configuraciones.add(mapResultSetToEntity(rs));
-                }
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM ConfiguracionRed WHERE dhcpHabilitado = ? AND eliminado = FALSE";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> pstmt.setBoolean(1, dhcpHabilitado), MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_POR_DHCP.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_DHCP.registrar(inicio);
         }
-
-        return configuraciones;
     }
 
     /**
@@ -178,19 +316,17 @@ public class ConfiguracionRedDao implements GenericDao<ConfiguracionRed> {
      * @throws SQLException si hay un error en la operación
      */
     public boolean existeIp(String ip, Connection conn) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM ConfiguracionRed WHERE ip = ? AND eliminado = FALSE";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, ip);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
-                }
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT COUNT(*) FROM ConfiguracionRed WHERE ip = ? AND eliminado = FALSE";
+
+            return JdbcTemplate.queryForLong(conn, sql, pstmt -> pstmt.setString(1, ip), 0) > 0;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_EXISTE_IP.registrarError();
+            throw e;
+        } finally {
+            METRICA_EXISTE_IP.registrar(inicio);
         }
-
-        return false;
     }
 
     /**
@@ -202,39 +338,16 @@ public class ConfiguracionRedDao implements GenericDao<ConfiguracionRed> {
      * @throws SQLException si hay un error en la operación
      */
     public boolean estaAsociada(long configuracionId, Connection conn) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM ConfiguracionRed WHERE id = ? AND dispositivo_id IS NOT NULL";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, configuracionId);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1) > 0;
-                }
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT COUNT(*) FROM ConfiguracionRed WHERE id = ? AND dispositivo_id IS NOT NULL";
+
+            return JdbcTemplate.queryForLong(conn, sql, pstmt -> pstmt.setLong(1, configuracionId), 0) > 0;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ESTA_ASOCIADA.registrarError();
+            throw e;
+        } finally {
+            METRICA_ESTA_ASOCIADA.registrar(inicio);
         }
-
-        return false;
-    }
-
-    /**
-     * Mapea un ResultSet a una entidad ConfiguracionRed.
-     *
-     * @param rs ResultSet con los datos
-     * @return entidad ConfiguracionRed poblada
-     * @throws SQLException si hay un error en la operación
-     */
-    private ConfiguracionRed mapResultSetToEntity(ResultSet rs) throws SQLException {
-        ConfiguracionRed configuracion = new ConfiguracionRed();
-        configuracion.setId(rs.getLong("id"));
-        configuracion.setEliminado(rs.getBoolean("eliminado"));
-        configuracion.setIp(rs.getString("ip"));
-        configuracion.setMascara(rs.getString("mascara"));
-        configuracion.setGateway(rs.getString("gateway"));
-        configuracion.setDnsPrimario(rs.getString("dnsPrimario"));
-        configuracion.setDhcpHabilitado(rs.getBoolean("dhcpHabilitado"));
-        configuracion.setDispositivoId(rs.getLong("dispositivo_id"));
-
-        return configuracion;
     }
 }
@@ -0,0 +1,119 @@
+package dao;
+
+import config.ShardMap;
+import config.ShardedConnection;
+import entities.ConfiguracionRed;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ConfiguracionRedDao repartido en los shards de {@link ShardMap}: cada
+ * configuración vive en el shard de su dispositivo (alta por dispositivo_id,
+ * el resto por ID), y las búsquedas por IP o DHCP consultan todos los shards
+ * en paralelo.
+ *
+ * La unicidad de la IP la garantiza cada shard por separado: la verificación
+ * de los servicios (existeIp) consulta todos, pero dos altas concurrentes con
+ * la misma IP en shards distintos no se detectan.
+ *
+ * @version 1.0
+ */
+public class ConfiguracionRedDaoFragmentado extends ConfiguracionRedDao {
+
+    private static final Comparator<ConfiguracionRed> POR_ID = Comparator.comparing(ConfiguracionRed::getId);
+    private static final Comparator<ConfiguracionRed> POR_ACTUALIZACION =
+            Comparator.comparing(ConfiguracionRed::getActualizado).thenComparing(ConfiguracionRed::getId);
+
+    private final ShardMap mapa;
+
+    /**
+     * @param mapa shards de dispositivos
+     */
+    public ConfiguracionRedDaoFragmentado(ShardMap mapa) {
+        this.mapa = mapa;
+    }
+
+    @Override
+    public void crear(ConfiguracionRed entity, Connection conn) throws SQLException {
+        // Sin dispositivo, el shard 0 rechaza la fila igual que la BD sin shards (columna NOT NULL)
+        int shard = entity.getDispositivoId() != null ? mapa.shardDeId(entity.getDispositivoId()) : 0;
+        super.crear(entity, ShardedConnection.shard(conn, shard));
+    }
+
+    @Override
+    public ConfiguracionRed leer(long id, Connection conn) throws SQLException {
+        return super.leer(id, porId(id, conn));
+    }
+
+    @Override
+    public List<ConfiguracionRed> leerTodos(Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn, super::leerTodos), POR_ID);
+    }
+
+    @Override
+    public void actualizar(ConfiguracionRed entity, Connection conn) throws SQLException {
+        // Un dispositivo_id de otro shard falla por la clave foránea (1452), como un dispositivo inexistente
+        super.actualizar(entity, porId(entity.getId(), conn));
+    }
+
+    @Override
+    public void eliminar(long id, Connection conn) throws SQLException {
+        super.eliminar(id, porId(id, conn));
+    }
+
+    @Override
+    public int eliminarPorDispositivos(List<Long> dispositivoIds, Connection conn) throws SQLException {
+        return DispositivoIoTDaoFragmentado.sumar(ConsultaFragmentada.porGrupos(mapa, conn, dispositivoIds,
+                mapa::shardDeId, super::eliminarPorDispositivos));
+    }
+
+    @Override
+    public List<ConfiguracionRed> bloquearActivasPorDispositivos(List<Long> dispositivoIds, Connection conn)
+            throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.porGrupos(mapa, conn, dispositivoIds,
+                mapa::shardDeId, super::bloquearActivasPorDispositivos), POR_ID);
+    }
+
+    @Override
+    public List<ConfiguracionRed> buscarModificadasDesde(Timestamp marca, long desdeId, int margenSegundos, int limite,
+            Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarModificadasDesde(marca, desdeId, margenSegundos, limite, shard)),
+                POR_ACTUALIZACION, limite);
+    }
+
+    @Override
+    public ConfiguracionRed buscarPorIp(String ip, Connection conn) throws SQLException {
+        for (ConfiguracionRed configuracion : ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarPorIp(ip, shard))) {
+            if (configuracion != null) {
+                return configuracion;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<ConfiguracionRed> buscarPorDhcp(boolean dhcpHabilitado, Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarPorDhcp(dhcpHabilitado, shard)), POR_ID);
+    }
+
+    @Override
+    public boolean existeIp(String ip, Connection conn) throws SQLException {
+        return ConsultaFragmentada.enTodos(mapa, conn, shard -> super.existeIp(ip, shard)).contains(Boolean.TRUE);
+    }
+
+    @Override
+    public boolean estaAsociada(long configuracionId, Connection conn) throws SQLException {
+        return super.estaAsociada(configuracionId, porId(configuracionId, conn));
+    }
+
+    private Connection porId(long id, Connection conn) throws SQLException {
+        return ShardedConnection.shard(conn, mapa.shardDeId(id));
+    }
+}
@@ -0,0 +1,125 @@
+package dao;
+
+import entities.ConfiguracionRed;
+import store.AlmacenMemoria;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ConfiguracionRedDao sobre un {@link AlmacenMemoria} (dao.almacen=memoria o archivo), con
+ * la misma semántica que la versión JDBC: bajas lógicas, IP única, relación
+ * 1:1 con el dispositivo (dispositivo_id único y existente) y los mismos errores.
+ *
+ * @version 1.0
+ */
+public class ConfiguracionRedDaoMemoria extends ConfiguracionRedDao {
+
+    private final AlmacenMemoria almacen;
+
+    public ConfiguracionRedDaoMemoria() {
+        this(AlmacenMemoria.getCompartido());
+    }
+
+    /**
+     * @param almacen almacén de las filas (compartido con DispositivoIoTDaoMemoria)
+     */
+    public ConfiguracionRedDaoMemoria(AlmacenMemoria almacen) {
+        this.almacen = almacen;
+    }
+
+    @Override
+    public void crear(ConfiguracionRed entity, Connection conn) throws SQLException {
+        almacen.insertar(entity, conn);
+    }
+
+    @Override
+    public ConfiguracionRed leer(long id, Connection conn) {
+        return almacen.configuracion(id);
+    }
+
+    @Override
+    public List<ConfiguracionRed> leerTodos(Connection conn) {
+        return almacen.configuracionesActivas();
+    }
+
+    @Override
+    public void actualizar(ConfiguracionRed entity, Connection conn) throws SQLException {
+        boolean existe = almacen.modificarConfiguracion(entity.getId(), configuracion -> {
+            configuracion.setIp(entity.getIp());
+            configuracion.setMascara(entity.getMascara());
+            configuracion.setGateway(entity.getGateway());
+            configuracion.setDnsPrimario(entity.getDnsPrimario());
+            configuracion.setDhcpHabilitado(entity.getDhcpHabilitado());
+            configuracion.setDispositivoId(entity.getDispositivoId());
+            configuracion.setEliminado(entity.getEliminado());
+        }, conn);
+
+        if (!existe) {
+            throw new SQLException("Error al actualizar ConfiguracionRed, ninguna fila afectada.");
+        }
+    }
+
+    @Override
+    public void eliminar(long id, Connection conn) throws SQLException {
+        if (!almacen.modificarConfiguracion(id, configuracion -> configuracion.setEliminado(true), conn)) {
+            throw new SQLException("Error al eliminar ConfiguracionRed, ninguna fila afectada.");
+        }
+    }
+
+    @Override
+    public int eliminarPorDispositivos(List<Long> dispositivoIds, Connection conn) throws SQLException {
+        int cantidad = 0;
+        for (ConfiguracionRed configuracion : bloquearActivasPorDispositivos(dispositivoIds, conn)) {
+            if (almacen.modificarConfiguracion(configuracion.getId(), c -> !c.getEliminado(),
+                    c -> c.setEliminado(true), conn)) {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+
+    @Override
+    public List<ConfiguracionRed> bloquearActivasPorDispositivos(List<Long> dispositivoIds, Connection conn) {
+        List<ConfiguracionRed> configuraciones = new ArrayList<>();
+        for (Long dispositivoId : dispositivoIds) {
+            ConfiguracionRed configuracion = almacen.configuracionActivaDe(dispositivoId);
+            if (configuracion != null) {
+                configuraciones.add(configuracion);
+            }
+        }
+        configuraciones.sort(Comparator.comparing(ConfiguracionRed::getId));
+        return configuraciones;
+    }
+
+    @Override
+    public List<ConfiguracionRed> buscarModificadasDesde(Timestamp marca, long desdeId, int margenSegundos, int limite,
+            Connection conn) {
+        return almacen.configuracionesModificadasDesde(marca, desdeId, margenSegundos, limite);
+    }
+
+    @Override
+    public ConfiguracionRed buscarPorIp(String ip, Connection conn) {
+        return almacen.configuracionActivaPorIp(ip);
+    }
+
+    @Override
+    public List<ConfiguracionRed> buscarPorDhcp(boolean dhcpHabilitado, Connection conn) {
+        return almacen.configuracionesActivasPorDhcp(dhcpHabilitado);
+    }
+
+    @Override
+    public boolean existeIp(String ip, Connection conn) {
+        return almacen.configuracionActivaPorIp(ip) != null;
+    }
+
+    @Override
+    public boolean estaAsociada(long configuracionId, Connection conn) {
+        // dispositivo_id es NOT NULL: toda configuración existente está asociada
+        return almacen.configuracion(configuracionId) != null;
+    }
+}
@@ -0,0 +1,246 @@
+package dao;
+
+import config.ShardMap;
+import config.ShardedConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToIntFunction;
+
+/**
+ * Auxiliares de los DAOs fragmentados: consultas dispersas en paralelo
+ * (una por shard, cada una con la conexión de su shard) y mezcla de los
+ * resultados en el orden de las consultas originales.
+ *
+ * @version 1.0
+ */
+final class ConsultaFragmentada {
+
+    /** Filas que un recorrido por shard puede adelantar al de los demás. */
+    private static final int TAMANO_COLA = 1024;
+
+    private static final Object FIN = new Object();
+
+    /**
+     * Consulta contra la conexión de un shard.
+     *
+     * @param <T> tipo de resultado
+     */
+    @FunctionalInterface
+    interface PorShard<T> {
+
+        T consultar(Connection shard) throws SQLException;
+    }
+
+    /**
+     * Consulta de un grupo de claves contra la conexión de su shard.
+     *
+     * @param <K> tipo de clave
+     * @param <T> tipo de resultado
+     */
+    @FunctionalInterface
+    interface PorGrupo<K, T> {
+
+        T consultar(List<K> claves, Connection shard) throws SQLException;
+    }
+
+    /**
+     * Recorrido en streaming contra la conexión de un shard.
+     *
+     * @param <T> tipo de fila
+     */
+    @FunctionalInterface
+    interface Recorrido<T> {
+
+        long recorrer(Connection shard, JdbcTemplate.RowHandler<T> handler) throws SQLException;
+    }
+
+    private ConsultaFragmentada() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * Ejecuta la consulta en todos los shards en paralelo.
+     *
+     * @return un resultado por shard, en orden de shard
+     */
+    static <T> List<T> enTodos(ShardMap mapa, Connection conn, PorShard<T> consulta) throws SQLException {
+        List<Callable<T>> tareas = new ArrayList<>(mapa.getCantidad());
+        for (int i = 0; i < mapa.getCantidad(); i++) {
+            // La conexión se abre en el hilo llamador: ShardedConnection no se comparte a medio abrir
+            Connection shard = ShardedConnection.shard(conn, i);
+            tareas.add(() -> consulta.consultar(shard));
+        }
+        return mapa.enParalelo(tareas);
+    }
+
+    /**
+     * Agrupa las claves por shard y ejecuta la consulta de cada grupo en
+     * paralelo (solo en los shards con claves).
+     *
+     * @return un resultado por grupo
+     */
+    static <K, T> List<T> porGrupos(ShardMap mapa, Connection conn, List<K> claves, ToIntFunction<K> shardDe,
+            PorGrupo<K, T> consulta) throws SQLException {
+        Map<Integer, List<K>> grupos = new TreeMap<>();
+        for (K clave : claves) {
+            grupos.computeIfAbsent(shardDe.applyAsInt(clave), s -> new ArrayList<>()).add(clave);
+        }
+        List<Callable<T>> tareas = new ArrayList<>(grupos.size());
+        for (Map.Entry<Integer, List<K>> grupo : grupos.entrySet()) {
+            Connection shard = ShardedConnection.shard(conn, grupo.getKey());
+            List<K> delShard = grupo.getValue();
+            tareas.add(() -> consulta.consultar(delShard, shard));
+        }
+        return mapa.enParalelo(tareas);
+    }
+
+    /**
+     * Mezcla listas ya ordenadas (una por shard) y conserva las primeras {@code limite}.
+     */
+    static <T> List<T> mezclar(List<List<T>> listas, Comparator<? super T> orden, int limite) {
+        List<T> resultado = new ArrayList<>();
+        for (List<T> lista : listas) {
+            resultado.addAll(lista);
+        }
+        resultado.sort(orden);
+        return resultado.size() > limite ? new ArrayList<>(resultado.subList(0, limite)) : resultado;
+    }
+
+    static <T> List<T> mezclar(List<List<T>> listas, Comparator<? super T> orden) {
+        return mezclar(listas, orden, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Recorre todos los shards en paralelo y entrega las filas al handler,
+     * en el hilo llamador, mezcladas en orden: cada shard adelanta a lo sumo
+     * {@value #TAMANO_COLA} filas, así la memoria no depende del tamaño de la flota.
+     *
+     * @param orden orden en que cada recorrido entrega sus filas
+     * @return cantidad de filas entregadas
+     * @throws SQLException si falla un recorrido o lo lanza el handler
+     */
+    @SuppressWarnings("unchecked")
+    static <T> long recorrer(ShardMap mapa, Connection conn, Recorrido<T> recorrido, Comparator<? super T> orden,
+            JdbcTemplate.RowHandler<T> handler) throws SQLException {
+        int cantidad = mapa.getCantidad();
+        if (cantidad == 1) {
+            return recorrido.recorrer(ShardedConnection.shard(conn, 0), handler);
+        }
+
+        AtomicBoolean cancelado = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<BlockingQueue<Object>> colas = new ArrayList<>(cantidad);
+        List<Future<?>> productores = new ArrayList<>(cantidad);
+        try {
+            for (int i = 0; i < cantidad; i++) {
+                Connection shard = ShardedConnection.shard(conn, i);
+                BlockingQueue<Object> cola = new ArrayBlockingQueue<>(TAMANO_COLA);
+                colas.add(cola);
+                productores.add(mapa.enSegundoPlano(() -> {
+                    try {
+                        recorrido.recorrer(shard, fila -> poner(cola, fila, cancelado));
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        try {
+                            poner(cola, FIN, cancelado);
+                        } catch (SQLException e) {
+                            // Cancelado: el consumidor ya no espera el fin
+                        }
+                    }
+                }));
+            }
+
+            // Cabezas de cada shard: índice del shard y su fila actual
+            PriorityQueue<Object[]> cabezas = new PriorityQueue<>(cantidad,
+                    (a, b) -> orden.compare((T) a[1], (T) b[1]));
+            for (int i = 0; i < cantidad; i++) {
+                Object fila = tomar(colas.get(i), error);
+                if (fila != FIN) {
+                    cabezas.add(new Object[]{i, fila});
+                }
+            }
+            long entregadas = 0;
+            while (!cabezas.isEmpty()) {
+                Object[] cabeza = cabezas.poll();
+                handler.procesar((T) cabeza[1]);
+                entregadas++;
+                Object siguiente = tomar(colas.get((Integer) cabeza[0]), error);
+                if (siguiente != FIN) {
+                    cabezas.add(new Object[]{cabeza[0], siguiente});
+                }
+            }
+            verificar(error);
+            return entregadas;
+        } finally {
+            cancelado.set(true);
+            for (BlockingQueue<Object> cola : colas) {
+                cola.clear();
+            }
+            // Esperar a los productores: la conexión de cada shard queda libre al volver
+            for (Future<?> productor : productores) {
+                try {
+                    productor.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Ya registrado en error
+                }
+            }
+        }
+    }
+
+    private static void poner(BlockingQueue<Object> cola, Object fila, AtomicBoolean cancelado) throws SQLException {
+        try {
+            while (!cola.offer(fila, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelado.get()) {
+                    throw new SQLException("Recorrido cancelado");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido durante el recorrido", e);
+        }
+    }
+
+    private static Object tomar(BlockingQueue<Object> cola, AtomicReference<Throwable> error) throws SQLException {
+        try {
+            Object fila = cola.take();
+            if (fila == FIN) {
+                verificar(error);
+            }
+            return fila;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido durante el recorrido", e);
+        }
+    }
+
+    private static void verificar(AtomicReference<Throwable> error) throws SQLException {
+        Throwable t = error.get();
+        if (t instanceof SQLException) {
+            throw (SQLException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t != null) {
+            throw new SQLException("Error en el recorrido de un shard: " + t.getMessage(), t);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dao;
+
+import config.DatabaseConnection;
+import config.ShardMap;
+import store.AlmacenMemoria;
+import store.DiarioAlmacen;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Crea los DAOs de DispositivoIoT y ConfiguracionRed según dao.almacen:
+ * {@code jdbc} (por defecto, MySQL; con shards.cantidad > 0,
+ * {@link DispositivoIoTDaoFragmentado} y {@link ConfiguracionRedDaoFragmentado}), {@code memoria} ({@link DispositivoIoTDaoMemoria}
+ * y {@link ConfiguracionRedDaoMemoria} sobre el almacén compartido) o
+ * {@code archivo} (los mismos DAOs sobre un almacén persistido por
+ * {@link DiarioAlmacen}), así los servicios funcionan igual con o sin BD.
+ *
+ * @version 1.0
+ */
+public final class DaoFactory {
+
+    private static AlmacenMemoria almacen;
+    private static DiarioAlmacen diario;
+
+    private DaoFactory() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * @return DAO de dispositivos para el almacén configurado
+     */
+    public static DispositivoIoTDao dispositivos() {
+        if (DatabaseConnection.enMemoria()) {
+            return new DispositivoIoTDaoMemoria(almacen());
+        }
+        ShardMap shards = DatabaseConnection.shards();
+        return shards != null ? new DispositivoIoTDaoFragmentado(shards) : new DispositivoIoTDao();
+    }
+
+    /**
+     * @return DAO de configuraciones de red para el almacén configurado
+     */
+    public static ConfiguracionRedDao configuraciones() {
+        if (DatabaseConnection.enMemoria()) {
+            return new ConfiguracionRedDaoMemoria(almacen());
+        }
+        ShardMap shards = DatabaseConnection.shards();
+        return shards != null ? new ConfiguracionRedDaoFragmentado(shards) : new ConfiguracionRedDao();
+    }
+
+    /**
+     * Abre el almacén de los DAOs en memoria (con dao.almacen=archivo, recupera
+     * el diario); las llamadas siguientes devuelven el mismo.
+     *
+     * @throws IOException si no se puede recuperar el almacén persistente
+     */
+    public static synchronized AlmacenMemoria abrirAlmacen() throws IOException {
+        if (almacen == null) {
+            if ("archivo".equals(DatabaseConnection.almacen())) {
+                diario = DiarioAlmacen.abrir();
+                almacen = diario.getAlmacen();
+            } else {
+                almacen = AlmacenMemoria.getCompartido();
+            }
+        }
+        return almacen;
+    }
+
+    /**
+     * Cierra el diario del almacén persistente (si se abrió), forzándolo a disco.
+     */
+    public static synchronized void cerrar() {
+        if (diario != null) {
+            diario.close();
+            diario = null;
+        }
+    }
+
+    private static AlmacenMemoria almacen() {
+        try {
+            return abrirAlmacen();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el almacén persistente", e);
+        }
+    }
+}
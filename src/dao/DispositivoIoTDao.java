@@ -2,10 +2,17 @@ package dao;
 
 import entities.ConfiguracionRed;
 import entities.DispositivoIoT;
-
-import java.sql.*;
-import java.util.ArrayList;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object para la entidad DispositivoIoT.
@@ -13,12 +20,97 @@ import java.util.List;
  *
  * IMPORTANTE: Usa PreparedStatement para prevenir SQL Injection.
  * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Las sentencias se ejecutan mediante {@link JdbcTemplate} y las filas se mapean
+ * con {@link #MAPPER}, que resuelve los índices de columna una vez por ResultSet.
+ * Cada método público registra su latencia y errores en MetricsRegistry.
  *
  * @author Gustavo Tiseira
  * @version 1.0
  */
 public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
 
+    private static final OperationMetrics METRICA_CREAR = MetricsRegistry.operacion("DispositivoIoTDao.crear");
+    private static final OperationMetrics METRICA_LEER = MetricsRegistry.operacion("DispositivoIoTDao.leer");
+    private static final OperationMetrics METRICA_LEER_TODOS = MetricsRegistry.operacion("DispositivoIoTDao.leerTodos");
+    private static final OperationMetrics METRICA_ACTUALIZAR = MetricsRegistry.operacion("DispositivoIoTDao.actualizar");
+    private static final OperationMetrics METRICA_ELIMINAR = MetricsRegistry.operacion("DispositivoIoTDao.eliminar");
+    private static final OperationMetrics METRICA_BUSCAR_POR_SERIAL = MetricsRegistry.operacion("DispositivoIoTDao.buscarPorSerial");
+    private static final OperationMetrics METRICA_BUSCAR_POR_UBICACION = MetricsRegistry.operacion("DispositivoIoTDao.buscarPorUbicacion");
+    private static final OperationMetrics METRICA_OBTENER_CONFIGURACION_RED = MetricsRegistry.operacion("DispositivoIoTDao.obtenerConfiguracionRed");
+    private static final OperationMetrics METRICA_ELIMINAR_POR_IDS = MetricsRegistry.operacion("DispositivoIoTDao.eliminarPorIds");
+    private static final OperationMetrics METRICA_BUSCAR_IDS_POR_UBICACION = MetricsRegistry.operacion("DispositivoIoTDao.buscarIdsPorUbicacion");
+    private static final OperationMetrics METRICA_BUSCAR_IDS_POR_MODELO = MetricsRegistry.operacion("DispositivoIoTDao.buscarIdsPorModelo");
+    private static final OperationMetrics METRICA_BUSCAR_LOTE_POR_MODELO = MetricsRegistry.operacion("DispositivoIoTDao.buscarLotePorModelo");
+    private static final OperationMetrics METRICA_BLOQUEAR_LOTE_POR_MODELO = MetricsRegistry.operacion("DispositivoIoTDao.bloquearLotePorModelo");
+    private static final OperationMetrics METRICA_BLOQUEAR_ACTIVOS_POR_IDS = MetricsRegistry.operacion("DispositivoIoTDao.bloquearActivosPorIds");
+    private static final OperationMetrics METRICA_ACTUALIZAR_FIRMWARE_POR_IDS = MetricsRegistry.operacion("DispositivoIoTDao.actualizarFirmwarePorIds");
+    private static final OperationMetrics METRICA_CONTAR_POR_UBICACION = MetricsRegistry.operacion("DispositivoIoTDao.contarPorUbicacion");
+    private static final OperationMetrics METRICA_RECORRER_ACTIVOS = MetricsRegistry.operacion("DispositivoIoTDao.recorrerActivos");
+    private static final OperationMetrics METRICA_RECORRER_ACTIVOS_CON_CONFIGURACION = MetricsRegistry.operacion("DispositivoIoTDao.recorrerActivosConConfiguracion");
+    private static final OperationMetrics METRICA_BUSCAR_MODIFICADOS_DESDE = MetricsRegistry.operacion("DispositivoIoTDao.buscarModificadosDesde");
+
+    private static final RowMapper<Long> MAPPER_ID = new RowMapper<Long>("id") {
+        @Override
+        public Long mapRow(ResultSet rs, int[] c) throws SQLException {
+            return rs.getLong(c[0]);
+        }
+    };
+
+    /**
+     * Mapea una fila de DispositivoIoT a la entidad (sin su ConfiguracionRed).
+     */
+    static final RowMapper<DispositivoIoT> MAPPER = new RowMapper<DispositivoIoT>(
+            "id", "eliminado", "serial", "modelo", "ubicacion", "firmwareVersion", "created_at", "updated_at") {
+        @Override
+        public DispositivoIoT mapRow(ResultSet rs, int[] c) throws SQLException {
+            DispositivoIoT dispositivo = new DispositivoIoT();
+            dispositivo.setId(rs.getLong(c[0]));
+            dispositivo.setEliminado(rs.getBoolean(c[1]));
+            dispositivo.setSerial(rs.getString(c[2]));
+            dispositivo.setModelo(rs.getString(c[3]));
+            dispositivo.setUbicacion(rs.getString(c[4]));
+            dispositivo.setFirmwareVersion(rs.getString(c[5]));
+            dispositivo.setCreado(rs.getTimestamp(c[6]));
+            dispositivo.setActualizado(rs.getTimestamp(c[7]));
+            return dispositivo;
+        }
+    };
+
+    /**
+     * Mapea una fila de DispositivoIoT LEFT JOIN ConfiguracionRed (columnas de
+     * la configuración con prefijo c_). Las primeras columnas coinciden con
+     * {@link #MAPPER}, que se reutiliza para el dispositivo.
+     */
+    private static final RowMapper<DispositivoIoT> MAPPER_CON_CONFIGURACION = new RowMapper<DispositivoIoT>(
+            "id", "eliminado", "serial", "modelo", "ubicacion", "firmwareVersion", "created_at", "updated_at",
+            "c_id", "c_ip", "c_mascara", "c_gateway", "c_dnsPrimario", "c_dhcpHabilitado") {
+        @Override
+        public DispositivoIoT mapRow(ResultSet rs, int[] c) throws SQLException {
+            DispositivoIoT dispositivo = MAPPER.mapRow(rs, c);
+            long configuracionId = rs.getLong(c[8]);
+            if (!rs.wasNull()) {
+                ConfiguracionRed configuracion = new ConfiguracionRed();
+                configuracion.setId(configuracionId);
+                configuracion.setIp(rs.getString(c[9]));
+                configuracion.setMascara(rs.getString(c[10]));
+                configuracion.setGateway(rs.getString(c[11]));
+                configuracion.setDnsPrimario(rs.getString(c[12]));
+                configuracion.setDhcpHabilitado(rs.getBoolean(c[13]));
+                configuracion.setDispositivoId(dispositivo.getId());
+                dispositivo.setConfiguracionRed(configuracion);
+            }
+            return dispositivo;
+        }
+    };
+
+    private static final RowMapper<Map.Entry<String, Long>> MAPPER_CANTIDAD_POR_UBICACION =
+            new RowMapper<Map.Entry<String, Long>>("ubicacion", "cantidad") {
+        @Override
+        public Map.Entry<String, Long> mapRow(ResultSet rs, int[] c) throws SQLException {
+            return new AbstractMap.SimpleImmutableEntry<>(rs.getString(c[0]), rs.getLong(c[1]));
+        }
+    };
+
     private final ConfiguracionRedDao configuracionRedDao;
 
     public DispositivoIoTDao() {
@@ -27,30 +119,20 @@ public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
 
     @Override
     public void crear(DispositivoIoT entity, Connection conn) throws SQLException {
-        String sql = "INSERT INTO DispositivoIoT (eliminado, serial, modelo, ubicacion, firmwareVersion) " +
-                     "VALUES (?, ?, ?, ?, ?)";
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT INTO DispositivoIoT (eliminado, serial, modelo, ubicacion, firmwareVersion) " +
+                         "VALUES (?, ?, ?, ?, ?)";
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setBoolean(1, entity.getEliminado() != null ? entity.getEliminado() : false);
-            pstmt.setString(2, entity.getSerial());
-            pstmt.setString(3, entity.getModelo());
-            pstmt.setString(4, entity.getUbicacion());
-            pstmt.setString(5, entity.getFirmwareVersion());
+            long id = JdbcTemplate.insert(conn, sql, pstmt -> {
+                pstmt.setBoolean(1, entity.getEliminado() != null ? entity.getEliminado() : false);
+                pstmt.setString(2, entity.getSerial());
+                pstmt.setString(3, entity.getModelo());
+                pstmt.setString(4, entity.getUbicacion());
+                pstmt.setString(5, entity.getFirmwareVersion());
+            });
 
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows == 0) {
-                throw new SQLException("Error al crear DispositivoIoT, ninguna fila afectada.");
-            }
-
-            // Recuperar el ID generado
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    entity.setId(generatedKeys.getLong(1));
-                } else {
-                    throw new SQLException("Error al crear DispositivoIoT, no se obtuvo el ID.");
-                }
-            }
+            entity.setId(id);
 
             // Si tiene configuración de red, crearla y asociarla
             if (entity.getConfiguracionRed() != null) {
@@ -58,75 +140,87 @@ public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
                 // Actualizar el dispositivo con la FK a la configuración
                 actualizarConfiguracionRed(entity.getId(), entity.getConfiguracionRed().getId(), conn);
             }
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CREAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CREAR.registrar(inicio);
         }
     }
 
     @Override
     public DispositivoIoT leer(long id, Connection conn) throws SQLException {
-        String sql = "SELECT * FROM DispositivoIoT WHERE id = ?";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, id);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToEntity(rs, conn);
-                }
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE id = ?";
+
+            return cargarConfiguracion(JdbcTemplate.queryForObject(conn, sql, pstmt -> pstmt.setLong(1, id), MAPPER), conn);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER.registrar(inicio);
         }
-
-        return null;
     }
 
     @Override
     public List<DispositivoIoT> leerTodos(Connection conn) throws SQLException {
-        List<DispositivoIoT> dispositivos = new ArrayList<>();
-        String sql = "SELECT * FROM DispositivoIoT WHERE eliminado = FALSE ORDER BY id";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql);
-             ResultSet rs = pstmt.executeQuery()) {
-
-            while (rs.next()) {
-                dispositivos.add(mapResultSetToEntity(rs, conn));
-            }
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE eliminado = FALSE ORDER BY id";
+
+            return cargarConfiguraciones(JdbcTemplate.query(conn, sql, JdbcTemplate.ParameterSetter.NINGUNO, MAPPER), conn);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER_TODOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER_TODOS.registrar(inicio);
         }
-
-        return dispositivos;
     }
 
     @Override
     public void actualizar(DispositivoIoT entity, Connection conn) throws SQLException {
-        String sql = "UPDATE DispositivoIoT SET serial = ?, modelo = ?, ubicacion = ?, " +
-                     "firmwareVersion = ?, eliminado = ? WHERE id = ?";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, entity.getSerial());
-            pstmt.setString(2, entity.getModelo());
-            pstmt.setString(3, entity.getUbicacion());
-            pstmt.setString(4, entity.getFirmwareVersion());
-            pstmt.setBoolean(5, entity.getEliminado());
-            pstmt.setLong(6, entity.getId());
-
-            int affectedRows = pstmt.executeUpdate();
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE DispositivoIoT SET serial = ?, modelo = ?, ubicacion = ?, " +
+                         "firmwareVersion = ?, eliminado = ? WHERE id = ?";
+
+            int affectedRows = JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setString(1, entity.getSerial());
+                pstmt.setString(2, entity.getModelo());
+                pstmt.setString(3, entity.getUbicacion());
+                pstmt.setString(4, entity.getFirmwareVersion());
+                pstmt.setBoolean(5, entity.getEliminado());
+                pstmt.setLong(6, entity.getId());
+            });
 
             if (affectedRows == 0) {
                 throw new SQLException("Error al actualizar DispositivoIoT, ninguna fila afectada.");
             }
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ACTUALIZAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_ACTUALIZAR.registrar(inicio);
         }
     }
 
     @Override
     public void eliminar(long id, Connection conn) throws SQLException {
-        String sql = "UPDATE DispositivoIoT SET eliminado = TRUE WHERE id = ?";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, id);
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE DispositivoIoT SET eliminado = TRUE WHERE id = ?";
 
-            int affectedRows = pstmt.executeUpdate();
+            int affectedRows = JdbcTemplate.update(conn, sql, pstmt -> pstmt.setLong(1, id));
 
             if (affectedRows == 0) {
                 throw new SQLException("Error al eliminar DispositivoIoT, ninguna fila afectada.");
             }
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ELIMINAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR.registrar(inicio);
         }
     }
 
@@ -139,19 +233,70 @@ public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
      * @throws SQLException si hay un error en la operación
      */
     public DispositivoIoT buscarPorSerial(String serial, Connection conn) throws SQLException {
-        String sql = "SELECT * FROM DispositivoIoT WHERE serial = ? AND eliminado = FALSE";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, serial);
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE serial = ? AND eliminado = FALSE";
+
+            return cargarConfiguracion(JdbcTemplate.queryForObject(conn, sql, pstmt -> pstmt.setString(1, serial), MAPPER), conn);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_POR_SERIAL.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_SERIAL.registrar(inicio);
+        }
+    }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToEntity(rs, conn);
-                }
-            }
+    /**
+     * Recorre los dispositivos no eliminados en orden de ID sin cargarlos
+     * completos en memoria (sin su ConfiguracionRed).
+     *
+     * @param conn conexión a la BD (no debe usarse desde el handler)
+     * @param handler recibe cada dispositivo
+     * @return cantidad de dispositivos
+     * @throws SQLException si hay un error en la operación
+     */
+    public long recorrerActivos(Connection conn, JdbcTemplate.RowHandler<DispositivoIoT> handler) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE eliminado = FALSE ORDER BY id";
+
+            return JdbcTemplate.stream(conn, sql, JdbcTemplate.ParameterSetter.NINGUNO, MAPPER, handler);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_RECORRER_ACTIVOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_RECORRER_ACTIVOS.registrar(inicio);
         }
+    }
 
-        return null;
+    /**
+     * Recorre en streaming, en orden de ID, los dispositivos activos con su
+     * configuración de red activa (un solo LEFT JOIN, sin una consulta por
+     * dispositivo). La conexión queda ocupada hasta terminar el recorrido.
+     *
+     * @param conn conexión a la BD
+     * @param handler recibe cada dispositivo (con su ConfiguracionRed, si tiene)
+     * @return cantidad de dispositivos recorridos
+     * @throws SQLException si hay un error en la operación o lo lanza el handler
+     */
+    public long recorrerActivosConConfiguracion(Connection conn, JdbcTemplate.RowHandler<DispositivoIoT> handler)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT d.*, c.id AS c_id, c.ip AS c_ip, c.mascara AS c_mascara, c.gateway AS c_gateway, " +
+                         "c.dnsPrimario AS c_dnsPrimario, c.dhcpHabilitado AS c_dhcpHabilitado " +
+                         "FROM DispositivoIoT d " +
+                         "LEFT JOIN ConfiguracionRed c ON c.dispositivo_id = d.id AND c.eliminado = FALSE " +
+                         "WHERE d.eliminado = FALSE ORDER BY d.id";
+
+            return JdbcTemplate.stream(conn, sql, JdbcTemplate.ParameterSetter.NINGUNO, MAPPER_CON_CONFIGURACION,
+                    handler);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_RECORRER_ACTIVOS_CON_CONFIGURACION.registrarError();
+            throw e;
+        } finally {
+            METRICA_RECORRER_ACTIVOS_CON_CONFIGURACION.registrar(inicio);
+        }
     }
 
     /**
@@ -163,20 +308,297 @@ public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
      * @throws SQLException si hay un error en la operación
      */
     public List<DispositivoIoT> buscarPorUbicacion(String ubicacion, Connection conn) throws SQLException {
-        List<DispositivoIoT> dispositivos = new ArrayList<>();
-        String sql = "SELECT * FROM DispositivoIoT WHERE ubicacion LIKE ? AND eliminado = FALSE";
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE ubicacion LIKE ? AND eliminado = FALSE";
+
+            return cargarConfiguraciones(
+                    JdbcTemplate.query(conn, sql, pstmt -> pstmt.setString(1, "%" + ubicacion + "%"), MAPPER), conn);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_POR_UBICACION.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_UBICACION.registrar(inicio);
+        }
+    }
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, "%" + ubicacion + "%");
+    /**
+     * Elimina lógicamente varios dispositivos en un solo UPDATE.
+     * No toca sus configuraciones (ver ConfiguracionRedDao.eliminarPorDispositivos).
+     * El llamador es responsable de limitar el tamaño del lote.
+     *
+     * @param ids IDs de los dispositivos (al menos uno)
+     * @param conn conexión a la BD
+     * @return cantidad de dispositivos marcados como eliminados (los ya eliminados no cuentan)
+     * @throws SQLException si hay un error en la operación
+     */
+    public int eliminarPorIds(List<Long> ids, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(ids.size());
+            String sql = "UPDATE DispositivoIoT SET eliminado = TRUE " +
+                         "WHERE id IN (" + JdbcTemplate.marcadores(cantidad) + ") AND eliminado = FALSE";
+
+            return JdbcTemplate.update(conn, sql, pstmt -> JdbcTemplate.enlazarLista(pstmt, 1, ids, cantidad));
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ELIMINAR_POR_IDS.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR_POR_IDS.registrar(inicio);
+        }
+    }
 
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    dispositivos.add(mapResultSetToEntity(rs, conn));
-                }
+    /**
+     * Obtiene, paginando por ID, los IDs de dispositivos activos en una ubicación exacta.
+     *
+     * @param ubicacion ubicación (coincidencia exacta)
+     * @param desdeId se devuelven IDs mayores a este (0 para empezar)
+     * @param limite cantidad máxima de IDs
+     * @param conn conexión a la BD
+     * @return IDs en orden ascendente
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<Long> buscarIdsPorUbicacion(String ubicacion, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT id FROM DispositivoIoT WHERE ubicacion = ? AND eliminado = FALSE AND id > ? " +
+                         "ORDER BY id LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setString(1, ubicacion);
+                pstmt.setLong(2, desdeId);
+                pstmt.setInt(3, limite);
+            }, MAPPER_ID);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_IDS_POR_UBICACION.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_IDS_POR_UBICACION.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene, paginando por ID, los IDs de dispositivos activos de un modelo.
+     *
+     * @param modelo modelo (coincidencia exacta, ya normalizado)
+     * @param desdeId se devuelven IDs mayores a este (0 para empezar)
+     * @param limite cantidad máxima de IDs
+     * @param conn conexión a la BD
+     * @return IDs en orden ascendente
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<Long> buscarIdsPorModelo(String modelo, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT id FROM DispositivoIoT WHERE modelo = ? AND eliminado = FALSE AND id > ? " +
+                         "ORDER BY id LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setString(1, modelo);
+                pstmt.setLong(2, desdeId);
+                pstmt.setInt(3, limite);
+            }, MAPPER_ID);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_IDS_POR_MODELO.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_IDS_POR_MODELO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Lee, paginando por ID, un lote de dispositivos activos de un modelo
+     * (sin bloquearlos). Los dispositivos se devuelven SIN su ConfiguracionRed.
+     *
+     * @param modelo modelo (coincidencia exacta, ya normalizado)
+     * @param desdeId se devuelven dispositivos con ID mayor a este (0 para empezar)
+     * @param limite cantidad máxima de dispositivos
+     * @param conn conexión a la BD
+     * @return dispositivos en orden ascendente de ID
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<DispositivoIoT> buscarLotePorModelo(String modelo, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE modelo = ? AND eliminado = FALSE AND id > ? " +
+                         "ORDER BY id LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setString(1, modelo);
+                pstmt.setLong(2, desdeId);
+                pstmt.setInt(3, limite);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_LOTE_POR_MODELO.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_LOTE_POR_MODELO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Lee y bloquea (SELECT ... FOR UPDATE), paginando por ID, un lote de
+     * dispositivos activos de un modelo. Debe usarse dentro de una transacción;
+     * los bloqueos se liberan al confirmarla.
+     * Los dispositivos se devuelven SIN su ConfiguracionRed.
+     *
+     * @param modelo modelo (coincidencia exacta, ya normalizado)
+     * @param desdeId se devuelven dispositivos con ID mayor a este (0 para empezar)
+     * @param limite cantidad máxima de dispositivos
+     * @param conn conexión de la transacción
+     * @return dispositivos en orden ascendente de ID
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<DispositivoIoT> bloquearLotePorModelo(String modelo, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE modelo = ? AND eliminado = FALSE AND id > ? " +
+                         "ORDER BY id LIMIT ? FOR UPDATE";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setString(1, modelo);
+                pstmt.setLong(2, desdeId);
+                pstmt.setInt(3, limite);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BLOQUEAR_LOTE_POR_MODELO.registrarError();
+            throw e;
+        } finally {
+            METRICA_BLOQUEAR_LOTE_POR_MODELO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Lee y bloquea (SELECT ... FOR UPDATE) los dispositivos activos de una
+     * lista de IDs. Debe usarse dentro de una transacción.
+     * Los dispositivos se devuelven SIN su ConfiguracionRed.
+     * El llamador es responsable de limitar el tamaño del lote.
+     *
+     * @param ids IDs de los dispositivos (al menos uno)
+     * @param conn conexión de la transacción
+     * @return los dispositivos activos entre esos IDs, en orden ascendente de ID
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<DispositivoIoT> bloquearActivosPorIds(List<Long> ids, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(ids.size());
+            String sql = "SELECT * FROM DispositivoIoT " +
+                         "WHERE id IN (" + JdbcTemplate.marcadores(cantidad) + ") AND eliminado = FALSE " +
+                         "ORDER BY id FOR UPDATE";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> JdbcTemplate.enlazarLista(pstmt, 1, ids, cantidad), MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BLOQUEAR_ACTIVOS_POR_IDS.registrarError();
+            throw e;
+        } finally {
+            METRICA_BLOQUEAR_ACTIVOS_POR_IDS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Actualiza la versión de firmware de varios dispositivos en un solo UPDATE.
+     * El llamador es responsable de limitar el tamaño del lote.
+     *
+     * @param ids IDs de los dispositivos (al menos uno)
+     * @param firmwareVersion nueva versión
+     * @param conn conexión a la BD
+     * @return cantidad de dispositivos actualizados
+     * @throws SQLException si hay un error en la operación
+     */
+    public int actualizarFirmwarePorIds(List<Long> ids, String firmwareVersion, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(ids.size());
+            String sql = "UPDATE DispositivoIoT SET firmwareVersion = ? " +
+                         "WHERE id IN (" + JdbcTemplate.marcadores(cantidad) + ")";
+
+            return JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setString(1, firmwareVersion);
+                JdbcTemplate.enlazarLista(pstmt, 2, ids, cantidad);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ACTUALIZAR_FIRMWARE_POR_IDS.registrarError();
+            throw e;
+        } finally {
+            METRICA_ACTUALIZAR_FIRMWARE_POR_IDS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Cuenta los dispositivos activos de un modelo agrupados por ubicación
+     * (agregado en el servidor: no se leen los dispositivos).
+     *
+     * @param modelo modelo (coincidencia exacta, ya normalizado)
+     * @param conn conexión a la BD
+     * @return cantidad por ubicación, ordenado de menor a mayor cantidad
+     * @throws SQLException si hay un error en la operación
+     */
+    public Map<String, Long> contarPorUbicacion(String modelo, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT ubicacion, COUNT(*) AS cantidad FROM DispositivoIoT " +
+                         "WHERE modelo = ? AND eliminado = FALSE GROUP BY ubicacion ORDER BY cantidad, ubicacion";
+
+            Map<String, Long> cantidades = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> fila : JdbcTemplate.query(conn, sql, pstmt -> pstmt.setString(1, modelo),
+                    MAPPER_CANTIDAD_POR_UBICACION)) {
+                cantidades.put(fila.getKey(), fila.getValue());
             }
+            return cantidades;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CONTAR_POR_UBICACION.registrarError();
+            throw e;
+        } finally {
+            METRICA_CONTAR_POR_UBICACION.registrar(inicio);
         }
+    }
 
-        return dispositivos;
+    /**
+     * Obtiene, paginando por (updated_at, id), los dispositivos (sin su ConfiguracionRed) modificados después de
+     * una marca, incluidas las bajas lógicas (eliminado = TRUE, lápidas) para que
+     * el consumidor las borre de su copia.
+     *
+     * Se omiten las filas modificadas en los últimos {@code margenSegundos}: una
+     * transacción en curso puede confirmar más tarde filas con un updated_at
+     * anterior a la marca que el consumidor ya avanzó.
+     *
+     * @param marca updated_at de la última fila recibida (null para empezar desde el principio)
+     * @param desdeId ID de la última fila recibida (desempata filas con el mismo updated_at)
+     * @param margenSegundos antigüedad mínima de los cambios devueltos
+     * @param limite cantidad máxima de filas
+     * @param conn conexión a la BD
+     * @return filas en orden de (updated_at, id)
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<DispositivoIoT> buscarModificadosDesde(Timestamp marca, long desdeId, int margenSegundos, int limite,
+            Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM DispositivoIoT WHERE " +
+                         (marca != null ? "updated_at >= ? AND (updated_at > ? OR id > ?) AND " : "") +
+                         "updated_at < NOW(3) - INTERVAL ? SECOND ORDER BY updated_at, id LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                int p = 1;
+                if (marca != null) {
+                    pstmt.setTimestamp(p++, marca);
+                    pstmt.setTimestamp(p++, marca);
+                    pstmt.setLong(p++, desdeId);
+                }
+                pstmt.setInt(p++, margenSegundos);
+                pstmt.setInt(p, limite);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_MODIFICADOS_DESDE.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_MODIFICADOS_DESDE.registrar(inicio);
+        }
     }
 
     /**
@@ -188,20 +610,19 @@ public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
      * @throws SQLException si hay un error en la operación
      */
     public ConfiguracionRed obtenerConfiguracionRed(long dispositivoId, Connection conn) throws SQLException {
-        String sql = "SELECT id FROM ConfiguracionRed WHERE dispositivo_id = ? AND eliminado = FALSE";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setLong(1, dispositivoId);
-
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    long configId = rs.getLong("id");
-                    return configuracionRedDao.leer(configId, conn);
-                }
-            }
+        long inicio = System.nanoTime();
+        try {
+            // Una sola consulta: la fila completa se mapea con el mapper de ConfiguracionRedDao
+            String sql = "SELECT * FROM ConfiguracionRed WHERE dispositivo_id = ? AND eliminado = FALSE";
+
+            return JdbcTemplate.queryForObject(conn, sql, pstmt -> pstmt.setLong(1, dispositivoId),
+                    ConfiguracionRedDao.MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_OBTENER_CONFIGURACION_RED.registrarError();
+            throw e;
+        } finally {
+            METRICA_OBTENER_CONFIGURACION_RED.registrar(inicio);
         }
-
-        return null;
     }
 
     /**
@@ -215,40 +636,44 @@ public class DispositivoIoTDao implements GenericDao<DispositivoIoT> {
     private void actualizarConfiguracionRed(long dispositivoId, long configuracionId, Connection conn) throws SQLException {
         String sql = "UPDATE ConfiguracionRed SET dispositivo_id = ? WHERE id = ?";
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        int affectedRows = JdbcTemplate.update(conn, sql, pstmt -> {
             pstmt.setLong(1, dispositivoId);
             pstmt.setLong(2, configuracionId);
+        });
 
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows == 0) {
-                throw new SQLException("Error al asociar configuración de red al dispositivo.");
-            }
+        if (affectedRows == 0) {
+            throw new SQLException("Error al asociar configuración de red al dispositivo.");
         }
     }
 
     /**
-     * Mapea un ResultSet a una entidad DispositivoIoT.
-     * Carga también su ConfiguracionRed asociada si existe.
+     * Carga la ConfiguracionRed asociada de un dispositivo ya mapeado.
+     * Se hace después de cerrar el ResultSet principal para no anidar consultas abiertas.
      *
-     * @param rs ResultSet con los datos
+     * @param dispositivo dispositivo mapeado (puede ser null)
      * @param conn conexión a la BD
-     * @return entidad DispositivoIoT poblada
+     * @return el mismo dispositivo, para encadenar
      * @throws SQLException si hay un error en la operación
      */
-    private DispositivoIoT mapResultSetToEntity(ResultSet rs, Connection conn) throws SQLException {
-        DispositivoIoT dispositivo = new DispositivoIoT();
-        dispositivo.setId(rs.getLong("id"));
-        dispositivo.setEliminado(rs.getBoolean("eliminado"));
-        dispositivo.setSerial(rs.getString("serial"));
-        dispositivo.setModelo(rs.getString("modelo"));
-        dispositivo.setUbicacion(rs.getString("ubicacion"));
-        dispositivo.setFirmwareVersion(rs.getString("firmwareVersion"));
-
-        // Cargar ConfiguracionRed asociada
-        ConfiguracionRed configuracion = obtenerConfiguracionRed(dispositivo.getId(), conn);
-        dispositivo.setConfiguracionRed(configuracion);
-
+    private DispositivoIoT cargarConfiguracion(DispositivoIoT dispositivo, Connection conn) throws SQLException {
+        if (dispositivo != null) {
+            dispositivo.setConfiguracionRed(obtenerConfiguracionRed(dispositivo.getId(), conn));
+        }
         return dispositivo;
     }
+
+    /**
+     * Carga la ConfiguracionRed asociada de cada dispositivo de la lista.
+     *
+     * @param dispositivos dispositivos mapeados
+     * @param conn conexión a la BD
+     * @return la misma lista, para encadenar
+     * @throws SQLException si hay un error en la operación
+     */
+    private List<DispositivoIoT> cargarConfiguraciones(List<DispositivoIoT> dispositivos, Connection conn) throws SQLException {
+        for (DispositivoIoT dispositivo : dispositivos) {
+            cargarConfiguracion(dispositivo, conn);
+        }
+        return dispositivos;
+    }
 }
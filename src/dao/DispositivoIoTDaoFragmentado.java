@@ -0,0 +1,202 @@
+package dao;
+
+import config.ShardMap;
+import config.ShardedConnection;
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DispositivoIoTDao repartido en los shards de {@link ShardMap}: cada
+ * operación se ejecuta con la conexión del shard que corresponde (ver
+ * {@link ShardedConnection#shard}).
+ *
+ * <ul>
+ *   <li>Por serial (alta, búsqueda): shard del serial; por ID: shard del ID.</li>
+ *   <li>Por lista de IDs: una sentencia por shard, en paralelo.</li>
+ *   <li>Listados y búsquedas sin clave de shard: consulta dispersa en paralelo
+ *       y mezcla en el orden de la consulta (ID, o updated_at e ID); las
+ *       paginadas piden {@code limite} filas a cada shard y conservan las
+ *       primeras {@code limite} de la mezcla.</li>
+ * </ul>
+ *
+ * Un cambio de serial que llevaría el dispositivo a otro shard se rechaza:
+ * el ID seguiría apuntando al shard original.
+ *
+ * @version 1.0
+ */
+public class DispositivoIoTDaoFragmentado extends DispositivoIoTDao {
+
+    private static final Comparator<DispositivoIoT> POR_ID = Comparator.comparing(DispositivoIoT::getId);
+    private static final Comparator<DispositivoIoT> POR_ACTUALIZACION =
+            Comparator.comparing(DispositivoIoT::getActualizado).thenComparing(DispositivoIoT::getId);
+
+    private final ShardMap mapa;
+
+    /**
+     * @param mapa shards de dispositivos
+     */
+    public DispositivoIoTDaoFragmentado(ShardMap mapa) {
+        this.mapa = mapa;
+    }
+
+    @Override
+    public void crear(DispositivoIoT entity, Connection conn) throws SQLException {
+        super.crear(entity, porSerial(entity.getSerial(), conn));
+    }
+
+    @Override
+    public DispositivoIoT leer(long id, Connection conn) throws SQLException {
+        return super.leer(id, porId(id, conn));
+    }
+
+    @Override
+    public List<DispositivoIoT> leerTodos(Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn, super::leerTodos), POR_ID);
+    }
+
+    @Override
+    public void actualizar(DispositivoIoT entity, Connection conn) throws SQLException {
+        int shard = mapa.shardDeId(entity.getId());
+        if (entity.getSerial() != null && mapa.shardDeSerial(entity.getSerial()) != shard) {
+            throw new SQLException("El serial " + entity.getSerial() + " corresponde a otro shard: no se puede "
+                    + "asignar al dispositivo " + entity.getId() + " (dé de baja el dispositivo y créelo de nuevo)");
+        }
+        super.actualizar(entity, ShardedConnection.shard(conn, shard));
+    }
+
+    @Override
+    public void eliminar(long id, Connection conn) throws SQLException {
+        super.eliminar(id, porId(id, conn));
+    }
+
+    @Override
+    public DispositivoIoT buscarPorSerial(String serial, Connection conn) throws SQLException {
+        return super.buscarPorSerial(serial, porSerial(serial, conn));
+    }
+
+    @Override
+    public long recorrerActivos(Connection conn, JdbcTemplate.RowHandler<DispositivoIoT> handler) throws SQLException {
+        return ConsultaFragmentada.recorrer(mapa, conn, super::recorrerActivos, POR_ID, handler);
+    }
+
+    @Override
+    public long recorrerActivosConConfiguracion(Connection conn, JdbcTemplate.RowHandler<DispositivoIoT> handler)
+            throws SQLException {
+        return ConsultaFragmentada.recorrer(mapa, conn, super::recorrerActivosConConfiguracion, POR_ID, handler);
+    }
+
+    @Override
+    public List<DispositivoIoT> buscarPorUbicacion(String ubicacion, Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(
+                ConsultaFragmentada.enTodos(mapa, conn, shard -> super.buscarPorUbicacion(ubicacion, shard)), POR_ID);
+    }
+
+    @Override
+    public int eliminarPorIds(List<Long> ids, Connection conn) throws SQLException {
+        return sumar(ConsultaFragmentada.porGrupos(mapa, conn, ids, mapa::shardDeId, super::eliminarPorIds));
+    }
+
+    @Override
+    public List<Long> buscarIdsPorUbicacion(String ubicacion, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarIdsPorUbicacion(ubicacion, desdeId, limite, shard)),
+                Comparator.naturalOrder(), limite);
+    }
+
+    @Override
+    public List<Long> buscarIdsPorModelo(String modelo, long desdeId, int limite, Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarIdsPorModelo(modelo, desdeId, limite, shard)), Comparator.naturalOrder(), limite);
+    }
+
+    @Override
+    public List<DispositivoIoT> buscarLotePorModelo(String modelo, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarLotePorModelo(modelo, desdeId, limite, shard)), POR_ID, limite);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Cada shard bloquea hasta {@code limite} filas; las que quedan fuera de
+     * la mezcla siguen bloqueadas hasta el fin de la transacción.
+     */
+    @Override
+    public List<DispositivoIoT> bloquearLotePorModelo(String modelo, long desdeId, int limite, Connection conn)
+            throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.bloquearLotePorModelo(modelo, desdeId, limite, shard)), POR_ID, limite);
+    }
+
+    @Override
+    public List<DispositivoIoT> bloquearActivosPorIds(List<Long> ids, Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(
+                ConsultaFragmentada.porGrupos(mapa, conn, ids, mapa::shardDeId, super::bloquearActivosPorIds), POR_ID);
+    }
+
+    @Override
+    public int actualizarFirmwarePorIds(List<Long> ids, String firmwareVersion, Connection conn) throws SQLException {
+        return sumar(ConsultaFragmentada.porGrupos(mapa, conn, ids, mapa::shardDeId,
+                (delShard, shard) -> super.actualizarFirmwarePorIds(delShard, firmwareVersion, shard)));
+    }
+
+    @Override
+    public Map<String, Long> contarPorUbicacion(String modelo, Connection conn) throws SQLException {
+        Map<String, Long> cantidades = new LinkedHashMap<>();
+        for (Map<String, Long> delShard : ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.contarPorUbicacion(modelo, shard))) {
+            delShard.forEach((ubicacion, cantidad) -> cantidades.merge(ubicacion, cantidad, Long::sum));
+        }
+        // Mismo orden que la consulta: de menor a mayor cantidad, luego por ubicación
+        List<Map.Entry<String, Long>> filas = new ArrayList<>(cantidades.entrySet());
+        filas.sort(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> ordenadas = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> fila : filas) {
+            ordenadas.put(fila.getKey(), fila.getValue());
+        }
+        return ordenadas;
+    }
+
+    @Override
+    public List<DispositivoIoT> buscarModificadosDesde(Timestamp marca, long desdeId, int margenSegundos, int limite,
+            Connection conn) throws SQLException {
+        return ConsultaFragmentada.mezclar(ConsultaFragmentada.enTodos(mapa, conn,
+                shard -> super.buscarModificadosDesde(marca, desdeId, margenSegundos, limite, shard)),
+                POR_ACTUALIZACION, limite);
+    }
+
+    @Override
+    public ConfiguracionRed obtenerConfiguracionRed(long dispositivoId, Connection conn) throws SQLException {
+        return super.obtenerConfiguracionRed(dispositivoId, porId(dispositivoId, conn));
+    }
+
+    // ===== Auxiliares =====
+
+    private Connection porId(long id, Connection conn) throws SQLException {
+        return ShardedConnection.shard(conn, mapa.shardDeId(id));
+    }
+
+    private Connection porSerial(String serial, Connection conn) throws SQLException {
+        // Sin serial, el shard 0 rechaza la fila igual que la BD sin shards (columna NOT NULL)
+        return ShardedConnection.shard(conn, serial != null ? mapa.shardDeSerial(serial) : 0);
+    }
+
+    static int sumar(List<Integer> cantidades) {
+        int total = 0;
+        for (Integer cantidad : cantidades) {
+            total += cantidad;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,225 @@
+package dao;
+
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+import store.AlmacenMemoria;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DispositivoIoTDao sobre un {@link AlmacenMemoria} (dao.almacen=memoria o archivo), con
+ * la misma semántica que la versión JDBC: bajas lógicas, serial único,
+ * configuración de red cargada en las lecturas y los mismos errores.
+ *
+ * La conexión solo delimita la transacción (ver config.InMemoryConnection):
+ * los bloqueos FOR UPDATE no tienen equivalente y se resuelven con el candado
+ * de escritura del almacén.
+ *
+ * @version 1.0
+ */
+public class DispositivoIoTDaoMemoria extends DispositivoIoTDao {
+
+    private final AlmacenMemoria almacen;
+    private final ConfiguracionRedDaoMemoria configuracionRedDao;
+
+    public DispositivoIoTDaoMemoria() {
+        this(AlmacenMemoria.getCompartido());
+    }
+
+    /**
+     * @param almacen almacén de las filas (compartido con ConfiguracionRedDaoMemoria)
+     */
+    public DispositivoIoTDaoMemoria(AlmacenMemoria almacen) {
+        this.almacen = almacen;
+        this.configuracionRedDao = new ConfiguracionRedDaoMemoria(almacen);
+    }
+
+    @Override
+    public void crear(DispositivoIoT entity, Connection conn) throws SQLException {
+        almacen.insertar(entity, conn);
+
+        // Si tiene configuración de red, crearla asociada al dispositivo
+        if (entity.getConfiguracionRed() != null) {
+            entity.getConfiguracionRed().setDispositivoId(entity.getId());
+            configuracionRedDao.crear(entity.getConfiguracionRed(), conn);
+        }
+    }
+
+    @Override
+    public DispositivoIoT leer(long id, Connection conn) {
+        return cargarConfiguracion(almacen.dispositivo(id));
+    }
+
+    @Override
+    public List<DispositivoIoT> leerTodos(Connection conn) {
+        List<DispositivoIoT> dispositivos = new ArrayList<>();
+        for (DispositivoIoT dispositivo : almacen.dispositivosActivos()) {
+            dispositivos.add(cargarConfiguracion(dispositivo));
+        }
+        return dispositivos;
+    }
+
+    @Override
+    public void actualizar(DispositivoIoT entity, Connection conn) throws SQLException {
+        boolean existe = almacen.modificarDispositivo(entity.getId(), dispositivo -> {
+            dispositivo.setSerial(entity.getSerial());
+            dispositivo.setModelo(entity.getModelo());
+            dispositivo.setUbicacion(entity.getUbicacion());
+            dispositivo.setFirmwareVersion(entity.getFirmwareVersion());
+            dispositivo.setEliminado(entity.getEliminado());
+        }, conn);
+
+        if (!existe) {
+            throw new SQLException("Error al actualizar DispositivoIoT, ninguna fila afectada.");
+        }
+    }
+
+    @Override
+    public void eliminar(long id, Connection conn) throws SQLException {
+        if (!almacen.modificarDispositivo(id, dispositivo -> dispositivo.setEliminado(true), conn)) {
+            throw new SQLException("Error al eliminar DispositivoIoT, ninguna fila afectada.");
+        }
+    }
+
+    @Override
+    public DispositivoIoT buscarPorSerial(String serial, Connection conn) {
+        return cargarConfiguracion(almacen.dispositivoActivoPorSerial(serial));
+    }
+
+    @Override
+    public long recorrerActivos(Connection conn, JdbcTemplate.RowHandler<DispositivoIoT> handler) throws SQLException {
+        long cantidad = 0;
+        for (DispositivoIoT dispositivo : almacen.dispositivosActivos()) {
+            handler.procesar(dispositivo);
+            cantidad++;
+        }
+        return cantidad;
+    }
+
+    @Override
+    public long recorrerActivosConConfiguracion(Connection conn, JdbcTemplate.RowHandler<DispositivoIoT> handler)
+            throws SQLException {
+        long cantidad = 0;
+        for (DispositivoIoT dispositivo : almacen.dispositivosActivos()) {
+            handler.procesar(cargarConfiguracion(dispositivo));
+            cantidad++;
+        }
+        return cantidad;
+    }
+
+    @Override
+    public List<DispositivoIoT> buscarPorUbicacion(String ubicacion, Connection conn) {
+        List<DispositivoIoT> dispositivos = almacen.dispositivosActivosPorUbicacionParcial(ubicacion);
+        for (DispositivoIoT dispositivo : dispositivos) {
+            cargarConfiguracion(dispositivo);
+        }
+        return dispositivos;
+    }
+
+    @Override
+    public int eliminarPorIds(List<Long> ids, Connection conn) throws SQLException {
+        int cantidad = 0;
+        for (Long id : ids) {
+            // Como el UPDATE ... AND eliminado = FALSE: una baja concurrente no se cuenta dos veces
+            if (almacen.modificarDispositivo(id, d -> !d.getEliminado(), d -> d.setEliminado(true), conn)) {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+
+    @Override
+    public List<Long> buscarIdsPorUbicacion(String ubicacion, long desdeId, int limite, Connection conn) {
+        return ids(almacen.dispositivosActivosPorUbicacion(ubicacion, desdeId, limite));
+    }
+
+    @Override
+    public List<Long> buscarIdsPorModelo(String modelo, long desdeId, int limite, Connection conn) {
+        return ids(almacen.dispositivosActivosPorModelo(modelo, desdeId, limite));
+    }
+
+    @Override
+    public List<DispositivoIoT> buscarLotePorModelo(String modelo, long desdeId, int limite, Connection conn) {
+        return almacen.dispositivosActivosPorModelo(modelo, desdeId, limite);
+    }
+
+    @Override
+    public List<DispositivoIoT> bloquearLotePorModelo(String modelo, long desdeId, int limite, Connection conn) {
+        return almacen.dispositivosActivosPorModelo(modelo, desdeId, limite);
+    }
+
+    @Override
+    public List<DispositivoIoT> bloquearActivosPorIds(List<Long> ids, Connection conn) {
+        List<DispositivoIoT> dispositivos = new ArrayList<>();
+        for (Long id : ids) {
+            DispositivoIoT dispositivo = almacen.dispositivo(id);
+            if (dispositivo != null && !dispositivo.getEliminado()) {
+                dispositivos.add(dispositivo);
+            }
+        }
+        dispositivos.sort(Comparator.comparing(DispositivoIoT::getId));
+        return dispositivos;
+    }
+
+    @Override
+    public int actualizarFirmwarePorIds(List<Long> ids, String firmwareVersion, Connection conn) throws SQLException {
+        int cantidad = 0;
+        for (Long id : ids) {
+            if (almacen.modificarDispositivo(id, dispositivo -> dispositivo.setFirmwareVersion(firmwareVersion), conn)) {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+
+    @Override
+    public Map<String, Long> contarPorUbicacion(String modelo, Connection conn) {
+        Map<String, Long> cantidades = new LinkedHashMap<>();
+        for (DispositivoIoT dispositivo : almacen.dispositivosActivosPorModelo(modelo, 0, Integer.MAX_VALUE)) {
+            cantidades.merge(dispositivo.getUbicacion(), 1L, Long::sum);
+        }
+        // Mismo orden que la consulta: de menor a mayor cantidad, luego por ubicación
+        List<Map.Entry<String, Long>> filas = new ArrayList<>(cantidades.entrySet());
+        filas.sort(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        Map<String, Long> ordenadas = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> fila : filas) {
+            ordenadas.put(fila.getKey(), fila.getValue());
+        }
+        return ordenadas;
+    }
+
+    @Override
+    public List<DispositivoIoT> buscarModificadosDesde(Timestamp marca, long desdeId, int margenSegundos, int limite,
+            Connection conn) {
+        return almacen.dispositivosModificadosDesde(marca, desdeId, margenSegundos, limite);
+    }
+
+    @Override
+    public ConfiguracionRed obtenerConfiguracionRed(long dispositivoId, Connection conn) {
+        return almacen.configuracionActivaDe(dispositivoId);
+    }
+
+    // ===== Auxiliares =====
+
+    private DispositivoIoT cargarConfiguracion(DispositivoIoT dispositivo) {
+        if (dispositivo != null) {
+            dispositivo.setConfiguracionRed(almacen.configuracionActivaDe(dispositivo.getId()));
+        }
+        return dispositivo;
+    }
+
+    private static List<Long> ids(List<DispositivoIoT> dispositivos) {
+        List<Long> ids = new ArrayList<>(dispositivos.size());
+        for (DispositivoIoT dispositivo : dispositivos) {
+            ids.add(dispositivo.getId());
+        }
+        return ids;
+    }
+}
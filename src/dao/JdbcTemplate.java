@@ -0,0 +1,334 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Plantilla JDBC que concentra el patrón preparar / enlazar / ejecutar / mapear
+ * / cerrar que antes se repetía en cada método de los DAOs.
+ *
+ * Igual que los DAOs, NO crea ni cierra conexiones: recibe la Connection
+ * externa para participar de la transacción del servicio. Las sentencias se
+ * cierran siempre (con el pool, el cierre las devuelve a la caché de sentencias).
+ *
+ * @version 1.0
+ */
+public final class JdbcTemplate {
+
+    /**
+     * Enlaza los parámetros de una sentencia.
+     */
+    @FunctionalInterface
+    public interface ParameterSetter {
+
+        /** Sentencia sin parámetros. */
+        ParameterSetter NINGUNO = pstmt -> { };
+
+        void setValues(PreparedStatement pstmt) throws SQLException;
+    }
+
+    /**
+     * Enlaza los parámetros de una fila de un lote.
+     *
+     * @param <E> tipo de elemento del lote
+     */
+    @FunctionalInterface
+    public interface BatchSetter<E> {
+
+        void setValues(PreparedStatement pstmt, E elemento) throws SQLException;
+    }
+
+    /**
+     * Procesa una fila a medida que se lee (sin acumular en memoria).
+     *
+     * @param <T> tipo de entidad
+     */
+    @FunctionalInterface
+    public interface RowHandler<T> {
+
+        void procesar(T fila) throws SQLException;
+    }
+
+    /**
+     * Enlaza los parámetros de una fila de un INSERT multi-fila.
+     */
+    @FunctionalInterface
+    public interface FilaSetter {
+
+        /**
+         * @param pstmt sentencia
+         * @param primerParametro índice del primer marcador de la fila
+         * @param fila posición de la fila en los datos del llamador
+         */
+        void setValues(PreparedStatement pstmt, int primerParametro, int fila) throws SQLException;
+    }
+
+    /**
+     * Constructor privado para prevenir instanciación.
+     */
+    private JdbcTemplate() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * Ejecuta una consulta y mapea todas sus filas.
+     *
+     * @param conn conexión a la BD (externa, para transacciones)
+     * @param sql consulta con parámetros '?'
+     * @param parametros enlace de parámetros
+     * @param mapper mapeo de filas
+     * @return lista de entidades (vacía si no hay filas)
+     * @throws SQLException si hay un error en la operación
+     */
+    public static <T> List<T> query(Connection conn, String sql, ParameterSetter parametros,
+                                    RowMapper<T> mapper) throws SQLException {
+        List<T> resultado = new ArrayList<>();
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            parametros.setValues(pstmt);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    int[] indices = mapper.resolverIndices(rs);
+                    do {
+                        resultado.add(mapper.mapRow(rs, indices));
+                    } while (rs.next());
+                }
+            }
+        }
+
+        return resultado;
+    }
+
+    /**
+     * Ejecuta una consulta y mapea solo su primera fila.
+     *
+     * @return la entidad, o null si la consulta no devuelve filas
+     * @throws SQLException si hay un error en la operación
+     */
+    public static <T> T queryForObject(Connection conn, String sql, ParameterSetter parametros,
+                                       RowMapper<T> mapper) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            parametros.setValues(pstmt);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapper.mapRow(rs, mapper.resolverIndices(rs));
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Ejecuta una consulta escalar (ej: COUNT(*), MAX(id)) y devuelve la primera columna.
+     *
+     * @param porDefecto valor a devolver si no hay filas o el valor es NULL
+     * @return valor de la primera columna de la primera fila
+     * @throws SQLException si hay un error en la operación
+     */
+    public static long queryForLong(Connection conn, String sql, ParameterSetter parametros,
+                                    long porDefecto) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            parametros.setValues(pstmt);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    long valor = rs.getLong(1);
+                    return rs.wasNull() ? porDefecto : valor;
+                }
+            }
+        }
+
+        return porDefecto;
+    }
+
+    /**
+     * Ejecuta un INSERT/UPDATE/DELETE.
+     *
+     * @return cantidad de filas afectadas
+     * @throws SQLException si hay un error en la operación
+     */
+    public static int update(Connection conn, String sql, ParameterSetter parametros) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            parametros.setValues(pstmt);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Ejecuta un INSERT y devuelve la clave generada (AUTO_INCREMENT).
+     *
+     * @return ID generado
+     * @throws SQLException si no se insertó ninguna fila o no se generó clave
+     */
+    public static long insert(Connection conn, String sql, ParameterSetter parametros) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            parametros.setValues(pstmt);
+
+            if (pstmt.executeUpdate() == 0) {
+                throw new SQLException("Ninguna fila afectada al ejecutar: " + sql);
+            }
+
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return generatedKeys.getLong(1);
+                }
+            }
+        }
+
+        throw new SQLException("No se obtuvo la clave generada al ejecutar: " + sql);
+    }
+
+    /**
+     * Ejecuta la misma sentencia para cada elemento en un único lote JDBC.
+     * Con rewriteBatchedStatements=true en la URL, MySQL lo envía como
+     * un INSERT/UPDATE multi-fila.
+     *
+     * @return filas afectadas por cada elemento
+     * @throws SQLException si hay un error en la operación
+     */
+    public static <E> int[] batch(Connection conn, String sql, Collection<? extends E> elementos,
+                                  BatchSetter<? super E> setter) throws SQLException {
+        if (elementos.isEmpty()) {
+            return new int[0];
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (E elemento : elementos) {
+                setter.setValues(pstmt, elemento);
+                pstmt.addBatch();
+            }
+            return pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Cantidad de marcadores a usar en una lista IN para n valores: la potencia
+     * de 2 siguiente, de modo que los lotes de distinto tamaño generen pocas
+     * variantes de SQL (y reutilicen la caché de sentencias).
+     *
+     * @param n cantidad de valores (mayor que 0)
+     * @return cantidad de marcadores
+     */
+    public static int marcadoresPara(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Genera los marcadores de una lista IN, ej: "?, ?, ?".
+     *
+     * @param cantidad cantidad de marcadores
+     * @return marcadores separados por coma
+     */
+    public static String marcadores(int cantidad) {
+        StringBuilder sb = new StringBuilder(cantidad * 3);
+        for (int i = 0; i < cantidad; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Enlaza valores en una lista IN de {@code cantidad} marcadores. Si hay
+     * menos valores que marcadores, se repite el último (no altera el resultado).
+     *
+     * @param pstmt sentencia
+     * @param primerIndice índice del primer marcador de la lista
+     * @param valores valores a enlazar (al menos uno)
+     * @param cantidad cantidad de marcadores de la lista
+     * @throws SQLException si hay un error al enlazar
+     */
+    public static void enlazarLista(PreparedStatement pstmt, int primerIndice, List<Long> valores,
+                                    int cantidad) throws SQLException {
+        int ultimo = valores.size() - 1;
+        for (int i = 0; i < cantidad; i++) {
+            pstmt.setLong(primerIndice + i, valores.get(Math.min(i, ultimo)));
+        }
+    }
+
+    /**
+     * Recorre el resultado fila por fila sin cargarlo completo en memoria
+     * (streaming de MySQL Connector/J con fetchSize = Integer.MIN_VALUE).
+     *
+     * IMPORTANTE: mientras dura el recorrido la conexión no admite otras
+     * sentencias, por lo que el handler no debe consultar la BD con la misma conexión.
+     *
+     * @return cantidad de filas procesadas
+     * @throws SQLException si hay un error en la operación o en el handler
+     */
+    public static <T> long stream(Connection conn, String sql, ParameterSetter parametros,
+                                  RowMapper<T> mapper, RowHandler<? super T> handler) throws SQLException {
+        long filas = 0;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+            try {
+                parametros.setValues(pstmt);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        int[] indices = mapper.resolverIndices(rs);
+                        do {
+                            handler.procesar(mapper.mapRow(rs, indices));
+                            filas++;
+                        } while (rs.next());
+                    }
+                }
+            } finally {
+                // La sentencia puede volver a la caché: se restablece el modo normal
+                pstmt.setFetchSize(0);
+            }
+        }
+
+        return filas;
+    }
+
+    /**
+     * Ejecuta una sentencia multi-fila (ej: INSERT ... VALUES (?, ?), (?, ?))
+     * para {@code cantidad} filas. Las filas se envían en bloques de potencia
+     * de 2 (ej: 700 = 512 + 128 + 32 + 16 + 8 + 4), así cada tamaño de lote
+     * reutiliza unas pocas variantes de SQL de la caché de sentencias.
+     *
+     * @param sentencia forma de la sentencia
+     * @param desde posición de la primera fila en los datos del llamador
+     * @param cantidad cantidad de filas
+     * @param setter enlace de cada fila
+     * @return filas afectadas (según MySQL)
+     * @throws SQLException si hay un error en la operación
+     */
+    public static int multiFila(Connection conn, SentenciaMultiFila sentencia, int desde, int cantidad,
+                                FilaSetter setter) throws SQLException {
+        int afectadas = 0;
+        int pos = desde;
+        int restantes = cantidad;
+
+        while (restantes > 0) {
+            int filas = Math.min(Integer.highestOneBit(restantes), sentencia.getMaxFilas());
+            int base = pos;
+
+            afectadas += update(conn, sentencia.sql(filas), pstmt -> {
+                int parametro = 1;
+                for (int fila = base; fila < base + filas; fila++) {
+                    setter.setValues(pstmt, parametro, fila);
+                    parametro += sentencia.getParametrosPorFila();
+                }
+            });
+
+            pos += filas;
+            restantes -= filas;
+        }
+
+        return afectadas;
+    }
+}
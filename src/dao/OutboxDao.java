@@ -0,0 +1,114 @@
+package dao;
+
+import entities.EventoCambio;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Data Access Object para el outbox de cambios (tablas outbox_evento y outbox_secuencia).
+ *
+ * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Cada método público registra su latencia y errores en MetricsRegistry.
+ *
+ * @version 1.0
+ */
+public class OutboxDao {
+
+    /** Máximo de eventos por sentencia (5 parámetros por fila). */
+    public static final int MAX_FILAS_POR_SENTENCIA = 256;
+
+    private static final OperationMetrics METRICA_INSERTAR_LOTE = MetricsRegistry.operacion("OutboxDao.insertarLote");
+    private static final OperationMetrics METRICA_LEER_DESPUES_DE = MetricsRegistry.operacion("OutboxDao.leerDespuesDe");
+
+    private static final SentenciaMultiFila INSERTAR = new SentenciaMultiFila(
+            "INSERT INTO outbox_evento (secuencia, entidad, entidad_id, operacion, payload) VALUES ",
+            "(?, ?, ?, ?, ?)", "", MAX_FILAS_POR_SENTENCIA);
+
+    static final RowMapper<EventoCambio> MAPPER = new RowMapper<EventoCambio>(
+            "secuencia", "entidad", "entidad_id", "operacion", "payload", "creado") {
+        @Override
+        public EventoCambio mapRow(ResultSet rs, int[] c) throws SQLException {
+            EventoCambio evento = new EventoCambio(EventoCambio.Entidad.valueOf(rs.getString(c[1])),
+                    rs.getLong(c[2]), EventoCambio.Operacion.valueOf(rs.getString(c[3])), rs.getString(c[4]));
+            evento.setSecuencia(rs.getLong(c[0]));
+            evento.setCreado(rs.getTimestamp(c[5]));
+            return evento;
+        }
+    };
+
+    /**
+     * Asigna secuencias consecutivas a los eventos y los inserta. La fila de
+     * outbox_secuencia queda bloqueada hasta el fin de la transacción, de modo
+     * que los eventos se confirman en orden de secuencia.
+     *
+     * @param eventos eventos a insertar (se les asigna la secuencia)
+     * @param conn conexión de la transacción del cambio
+     * @throws SQLException si hay un error en la operación
+     */
+    public void insertarLote(List<EventoCambio> eventos, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            if (eventos.isEmpty()) {
+                return;
+            }
+            JdbcTemplate.update(conn, "UPDATE outbox_secuencia SET valor = valor + ? WHERE id = 1",
+                    pstmt -> pstmt.setLong(1, eventos.size()));
+            long ultima = JdbcTemplate.queryForLong(conn, "SELECT valor FROM outbox_secuencia WHERE id = 1",
+                    JdbcTemplate.ParameterSetter.NINGUNO, -1);
+            if (ultima < eventos.size()) {
+                throw new SQLException("Falta la fila de outbox_secuencia (ejecute sql/schema.sql)");
+            }
+
+            long secuencia = ultima - eventos.size();
+            for (EventoCambio evento : eventos) {
+                evento.setSecuencia(++secuencia);
+            }
+
+            JdbcTemplate.multiFila(conn, INSERTAR, 0, eventos.size(), (pstmt, p, i) -> {
+                EventoCambio evento = eventos.get(i);
+                pstmt.setLong(p, evento.getSecuencia());
+                pstmt.setString(p + 1, evento.getEntidad().name());
+                pstmt.setLong(p + 2, evento.getEntidadId());
+                pstmt.setString(p + 3, evento.getOperacion().name());
+                pstmt.setString(p + 4, evento.getPayload());
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_INSERTAR_LOTE.registrarError();
+            throw e;
+        } finally {
+            METRICA_INSERTAR_LOTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene los eventos con secuencia mayor a {@code despuesDe}, en orden.
+     *
+     * @param despuesDe última secuencia ya procesada (0 = desde el principio)
+     * @param limite cantidad máxima de eventos
+     * @param conn conexión a la BD
+     * @return eventos ordenados por secuencia
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<EventoCambio> leerDespuesDe(long despuesDe, int limite, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT secuencia, entidad, entidad_id, operacion, payload, creado FROM outbox_evento " +
+                         "WHERE secuencia > ? ORDER BY secuencia LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, despuesDe);
+                pstmt.setInt(2, limite);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER_DESPUES_DE.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER_DESPUES_DE.registrar(inicio);
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package dao;
+
+import entities.Rollout;
+import entities.RolloutOla;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object para los rollouts de firmware (tablas rollout,
+ * rollout_wave y rollout_target).
+ *
+ * Los objetivos (rollout_target) nunca se cargan completos: se insertan con
+ * INSERT ... SELECT en el servidor, se despachan por páginas y se cuentan
+ * con agregados sobre el índice (rollout_id, ola, estado, dispositivo_id).
+ *
+ * El firmware se aplica con el DAO de dispositivos a los IDs de
+ * {@link #filtrarExitosos}. Con shards, DispositivoIoT no está en la BD de
+ * los rollouts: los objetivos se insertan por lotes de IDs
+ * ({@link #insertarTargetsPorIds}).
+ *
+ * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Cada método público registra su latencia y errores en MetricsRegistry.
+ *
+ * @version 1.0
+ */
+public class RolloutDao {
+
+    /** Estados de rollout_target. */
+    public static final String TARGET_PENDIENTE = "PENDIENTE";
+    public static final String TARGET_ENVIADO = "ENVIADO";
+    public static final String TARGET_EXITOSO = "EXITOSO";
+    public static final String TARGET_FALLIDO = "FALLIDO";
+
+    private static final OperationMetrics METRICA_CREAR = MetricsRegistry.operacion("RolloutDao.crear");
+    private static final OperationMetrics METRICA_LEER = MetricsRegistry.operacion("RolloutDao.leer");
+    private static final OperationMetrics METRICA_BUSCAR_ACTIVOS = MetricsRegistry.operacion("RolloutDao.buscarActivos");
+    private static final OperationMetrics METRICA_CAMBIAR_ESTADO = MetricsRegistry.operacion("RolloutDao.cambiarEstado");
+    private static final OperationMetrics METRICA_ACTUALIZAR_OLA_ACTUAL = MetricsRegistry.operacion("RolloutDao.actualizarOlaActual");
+    private static final OperationMetrics METRICA_CREAR_OLAS = MetricsRegistry.operacion("RolloutDao.crearOlas");
+    private static final OperationMetrics METRICA_LEER_OLAS = MetricsRegistry.operacion("RolloutDao.leerOlas");
+    private static final OperationMetrics METRICA_INICIAR_OLA = MetricsRegistry.operacion("RolloutDao.iniciarOla");
+    private static final OperationMetrics METRICA_COMPLETAR_OLA = MetricsRegistry.operacion("RolloutDao.completarOla");
+    private static final OperationMetrics METRICA_INSERTAR_TARGETS = MetricsRegistry.operacion("RolloutDao.insertarTargets");
+    private static final OperationMetrics METRICA_INSERTAR_TARGETS_POR_IDS = MetricsRegistry.operacion("RolloutDao.insertarTargetsPorIds");
+    private static final OperationMetrics METRICA_FILTRAR_EXITOSOS = MetricsRegistry.operacion("RolloutDao.filtrarExitosos");
+    private static final OperationMetrics METRICA_BUSCAR_PENDIENTES = MetricsRegistry.operacion("RolloutDao.buscarPendientes");
+    private static final OperationMetrics METRICA_MARCAR_ENVIADOS = MetricsRegistry.operacion("RolloutDao.marcarEnviados");
+    private static final OperationMetrics METRICA_REGISTRAR_RESULTADOS = MetricsRegistry.operacion("RolloutDao.registrarResultados");
+    private static final OperationMetrics METRICA_VENCER_ENVIADOS = MetricsRegistry.operacion("RolloutDao.vencerEnviados");
+    private static final OperationMetrics METRICA_CONTAR_POR_ESTADO = MetricsRegistry.operacion("RolloutDao.contarPorEstado");
+
+    static final RowMapper<Rollout> MAPPER = new RowMapper<Rollout>(
+            "id", "modelo", "firmware_destino", "estado", "ola_actual", "max_concurrencia", "total_dispositivos") {
+        @Override
+        public Rollout mapRow(ResultSet rs, int[] c) throws SQLException {
+            Rollout rollout = new Rollout();
+            rollout.setId(rs.getLong(c[0]));
+            rollout.setModelo(rs.getString(c[1]));
+            rollout.setFirmwareDestino(rs.getString(c[2]));
+            rollout.setEstado(Rollout.Estado.valueOf(rs.getString(c[3])));
+            rollout.setOlaActual(rs.getInt(c[4]));
+            rollout.setMaxConcurrencia(rs.getInt(c[5]));
+            rollout.setTotalDispositivos(rs.getLong(c[6]));
+            return rollout;
+        }
+    };
+
+    static final RowMapper<RolloutOla> MAPPER_OLA = new RowMapper<RolloutOla>(
+            "id", "rollout_id", "numero", "porcentaje", "estado", "total", "exitosos", "fallidos", "inicio", "fin") {
+        @Override
+        public RolloutOla mapRow(ResultSet rs, int[] c) throws SQLException {
+            RolloutOla ola = new RolloutOla();
+            ola.setId(rs.getLong(c[0]));
+            ola.setRolloutId(rs.getLong(c[1]));
+            ola.setNumero(rs.getInt(c[2]));
+            ola.setPorcentaje(rs.getInt(c[3]));
+            ola.setEstado(RolloutOla.Estado.valueOf(rs.getString(c[4])));
+            ola.setTotal(rs.getLong(c[5]));
+            ola.setExitosos(rs.getLong(c[6]));
+            ola.setFallidos(rs.getLong(c[7]));
+            ola.setInicio(aFecha(rs.getTimestamp(c[8])));
+            ola.setFin(aFecha(rs.getTimestamp(c[9])));
+            return ola;
+        }
+    };
+
+    private static final RowMapper<Long> MAPPER_DISPOSITIVO_ID = new RowMapper<Long>("dispositivo_id") {
+        @Override
+        public Long mapRow(ResultSet rs, int[] c) throws SQLException {
+            return rs.getLong(c[0]);
+        }
+    };
+
+    /** Fila {índice de estado, cantidad} de contarPorEstado. */
+    private static final RowMapper<long[]> MAPPER_CONTEO = new RowMapper<long[]>("estado", "cantidad") {
+        @Override
+        public long[] mapRow(ResultSet rs, int[] c) throws SQLException {
+            return new long[]{indiceEstado(rs.getString(c[0])), rs.getLong(c[1])};
+        }
+    };
+
+    /**
+     * Crea un rollout.
+     *
+     * @param rollout rollout a crear (se le asigna el ID generado)
+     * @param conn conexión a la BD
+     * @throws SQLException si hay un error en la operación
+     */
+    public void crear(Rollout rollout, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT INTO rollout (modelo, firmware_destino, estado, ola_actual, max_concurrencia, " +
+                         "total_dispositivos) VALUES (?, ?, ?, ?, ?, ?)";
+
+            long id = JdbcTemplate.insert(conn, sql, pstmt -> {
+                pstmt.setString(1, rollout.getModelo());
+                pstmt.setString(2, rollout.getFirmwareDestino());
+                pstmt.setString(3, rollout.getEstado().name());
+                pstmt.setInt(4, rollout.getOlaActual());
+                pstmt.setInt(5, rollout.getMaxConcurrencia());
+                pstmt.setLong(6, rollout.getTotalDispositivos());
+            });
+
+            rollout.setId(id);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CREAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CREAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Lee un rollout por su ID.
+     *
+     * @return el rollout, o null si no existe
+     * @throws SQLException si hay un error en la operación
+     */
+    public Rollout leer(long id, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM rollout WHERE id = ?";
+
+            return JdbcTemplate.queryForObject(conn, sql, pstmt -> pstmt.setLong(1, id), MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene los rollouts que el planificador debe seguir atendiendo
+     * (en curso o pausados), para retomarlos tras un reinicio.
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<Rollout> buscarActivos(Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM rollout WHERE estado IN ('EN_CURSO', 'PAUSADO') ORDER BY id";
+
+            return JdbcTemplate.query(conn, sql, JdbcTemplate.ParameterSetter.NINGUNO, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_ACTIVOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_ACTIVOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Cambia el estado de un rollout solo si está en uno de los estados esperados
+     * (transición atómica, sin leer antes).
+     *
+     * @param id ID del rollout
+     * @param nuevo estado destino
+     * @param esperados estados desde los que se permite la transición
+     * @return true si se cambió el estado
+     * @throws SQLException si hay un error en la operación
+     */
+    public boolean cambiarEstado(long id, Rollout.Estado nuevo, Rollout.Estado[] esperados, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            StringBuilder sql = new StringBuilder("UPDATE rollout SET estado = ? WHERE id = ? AND estado IN (");
+            for (int i = 0; i < esperados.length; i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(')');
+
+            return JdbcTemplate.update(conn, sql.toString(), pstmt -> {
+                pstmt.setString(1, nuevo.name());
+                pstmt.setLong(2, id);
+                for (int i = 0; i < esperados.length; i++) {
+                    pstmt.setString(3 + i, esperados[i].name());
+                }
+            }) > 0;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CAMBIAR_ESTADO.registrarError();
+            throw e;
+        } finally {
+            METRICA_CAMBIAR_ESTADO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Avanza el rollout a otra ola.
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public void actualizarOlaActual(long id, int ola, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE rollout SET ola_actual = ? WHERE id = ?";
+
+            JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setInt(1, ola);
+                pstmt.setLong(2, id);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ACTUALIZAR_OLA_ACTUAL.registrarError();
+            throw e;
+        } finally {
+            METRICA_ACTUALIZAR_OLA_ACTUAL.registrar(inicio);
+        }
+    }
+
+    /**
+     * Crea las olas de un rollout en un solo lote.
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public void crearOlas(long rolloutId, List<RolloutOla> olas, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT INTO rollout_wave (rollout_id, numero, porcentaje, estado, total) VALUES (?, ?, ?, ?, ?)";
+
+            JdbcTemplate.batch(conn, sql, olas, (pstmt, ola) -> {
+                pstmt.setLong(1, rolloutId);
+                pstmt.setInt(2, ola.getNumero());
+                pstmt.setInt(3, ola.getPorcentaje());
+                pstmt.setString(4, ola.getEstado().name());
+                pstmt.setLong(5, ola.getTotal());
+            });
+            for (RolloutOla ola : olas) {
+                ola.setRolloutId(rolloutId);
+            }
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CREAR_OLAS.registrarError();
+            throw e;
+        } finally {
+            METRICA_CREAR_OLAS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene las olas de un rollout, en orden.
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<RolloutOla> leerOlas(long rolloutId, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT * FROM rollout_wave WHERE rollout_id = ? ORDER BY numero";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> pstmt.setLong(1, rolloutId), MAPPER_OLA);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER_OLAS.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER_OLAS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Marca una ola como en curso. No se despacha antes de {@code noAntesDe}.
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public void iniciarOla(long rolloutId, int numero, LocalDateTime noAntesDe, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE rollout_wave SET estado = 'EN_CURSO', inicio = ? WHERE rollout_id = ? AND numero = ?";
+
+            JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setTimestamp(1, Timestamp.valueOf(noAntesDe));
+                pstmt.setLong(2, rolloutId);
+                pstmt.setInt(3, numero);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_INICIAR_OLA.registrarError();
+            throw e;
+        } finally {
+            METRICA_INICIAR_OLA.registrar(inicio);
+        }
+    }
+
+    /**
+     * Marca una ola como completada con sus totales finales.
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public void completarOla(long rolloutId, int numero, long exitosos, long fallidos, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE rollout_wave SET estado = 'COMPLETADA', exitosos = ?, fallidos = ?, fin = NOW() " +
+                         "WHERE rollout_id = ? AND numero = ?";
+
+            JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setLong(1, exitosos);
+                pstmt.setLong(2, fallidos);
+                pstmt.setLong(3, rolloutId);
+                pstmt.setInt(4, numero);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_COMPLETAR_OLA.registrarError();
+            throw e;
+        } finally {
+            METRICA_COMPLETAR_OLA.registrar(inicio);
+        }
+    }
+
+    /**
+     * Inserta los objetivos del rollout con INSERT ... SELECT (en el servidor):
+     * una sentencia por ubicación, todas en un mismo lote JDBC.
+     *
+     * @param rolloutId ID del rollout
+     * @param modelo modelo de los dispositivos
+     * @param olaPorUbicacion ola asignada a cada ubicación
+     * @param conn conexión a la BD
+     * @return cantidad de objetivos insertados (-1 si el driver no informa filas)
+     * @throws SQLException si hay un error en la operación
+     */
+    public long insertarTargets(long rolloutId, String modelo, Map<String, Integer> olaPorUbicacion, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT INTO rollout_target (rollout_id, dispositivo_id, ola, estado) " +
+                         "SELECT ?, id, ?, 'PENDIENTE' FROM DispositivoIoT " +
+                         "WHERE modelo = ? AND ubicacion = ? AND eliminado = FALSE";
+
+            int[] filas = JdbcTemplate.batch(conn, sql, olaPorUbicacion.entrySet(), (pstmt, entrada) -> {
+                pstmt.setLong(1, rolloutId);
+                pstmt.setInt(2, entrada.getValue());
+                pstmt.setString(3, modelo);
+                pstmt.setString(4, entrada.getKey());
+            });
+
+            long total = 0;
+            for (int f : filas) {
+                if (f == Statement.SUCCESS_NO_INFO) {
+                    return -1;
+                }
+                total += f;
+            }
+            return total;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_INSERTAR_TARGETS.registrarError();
+            throw e;
+        } finally {
+            METRICA_INSERTAR_TARGETS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Inserta objetivos PENDIENTE de una lista de dispositivos, en un lote JDBC.
+     * El llamador es responsable de limitar el tamaño del lote.
+     *
+     * @param rolloutId ID del rollout
+     * @param olaPorDispositivo ola asignada a cada ID de dispositivo
+     * @param conn conexión a la BD
+     * @throws SQLException si hay un error en la operación
+     */
+    public void insertarTargetsPorIds(long rolloutId, Map<Long, Integer> olaPorDispositivo, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT INTO rollout_target (rollout_id, dispositivo_id, ola, estado) " +
+                         "VALUES (?, ?, ?, 'PENDIENTE')";
+
+            JdbcTemplate.batch(conn, sql, olaPorDispositivo.entrySet(), (pstmt, entrada) -> {
+                pstmt.setLong(1, rolloutId);
+                pstmt.setLong(2, entrada.getKey());
+                pstmt.setInt(3, entrada.getValue());
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_INSERTAR_TARGETS_POR_IDS.registrarError();
+            throw e;
+        } finally {
+            METRICA_INSERTAR_TARGETS_POR_IDS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene una página de objetivos pendientes de una ola (por índice, sin
+     * recorrer el resto de la tabla).
+     *
+     * @param limite cantidad máxima de objetivos
+     * @return IDs de dispositivo en orden ascendente
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<Long> buscarPendientes(long rolloutId, int ola, int limite, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT dispositivo_id FROM rollout_target " +
+                         "WHERE rollout_id = ? AND ola = ? AND estado = 'PENDIENTE' ORDER BY dispositivo_id LIMIT ?";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, rolloutId);
+                pstmt.setInt(2, ola);
+                pstmt.setInt(3, limite);
+            }, MAPPER_DISPOSITIVO_ID);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_PENDIENTES.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_PENDIENTES.registrar(inicio);
+        }
+    }
+
+    /**
+     * Marca objetivos pendientes como enviados (registra la hora de envío).
+     *
+     * @param dispositivoIds IDs de dispositivo (al menos uno)
+     * @return cantidad de objetivos marcados
+     * @throws SQLException si hay un error en la operación
+     */
+    public int marcarEnviados(long rolloutId, List<Long> dispositivoIds, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(dispositivoIds.size());
+            String sql = "UPDATE rollout_target SET estado = 'ENVIADO', enviado_en = NOW() " +
+                         "WHERE rollout_id = ? AND dispositivo_id IN (" + JdbcTemplate.marcadores(cantidad) + ") " +
+                         "AND estado = 'PENDIENTE'";
+
+            return JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setLong(1, rolloutId);
+                JdbcTemplate.enlazarLista(pstmt, 2, dispositivoIds, cantidad);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_MARCAR_ENVIADOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_MARCAR_ENVIADOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Registra el resultado informado por los dispositivos. Solo cuentan los
+     * objetivos ya enviados: un éxito tardío (tras vencer el plazo) reemplaza
+     * al fallo, un fallo no pisa un éxito y los reportes de objetivos
+     * PENDIENTE (no despachados) se ignoran.
+     *
+     * @param dispositivoIds IDs de dispositivo (al menos uno)
+     * @param exito true para EXITOSO, false para FALLIDO
+     * @return cantidad de objetivos actualizados
+     * @throws SQLException si hay un error en la operación
+     */
+    public int registrarResultados(long rolloutId, List<Long> dispositivoIds, boolean exito, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(dispositivoIds.size());
+            String sql = "UPDATE rollout_target SET estado = ? " +
+                         "WHERE rollout_id = ? AND dispositivo_id IN (" + JdbcTemplate.marcadores(cantidad) + ") " +
+                         (exito ? "AND estado IN ('ENVIADO', 'FALLIDO')" : "AND estado = 'ENVIADO'");
+
+            return JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setString(1, exito ? TARGET_EXITOSO : TARGET_FALLIDO);
+                pstmt.setLong(2, rolloutId);
+                JdbcTemplate.enlazarLista(pstmt, 3, dispositivoIds, cantidad);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_REGISTRAR_RESULTADOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_REGISTRAR_RESULTADOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Filtra los dispositivos que son objetivo EXITOSO del rollout (para
+     * aplicarles el firmware con el DAO de dispositivos).
+     *
+     * @param dispositivoIds IDs de dispositivo (al menos uno)
+     * @return los IDs EXITOSO del rollout, en orden ascendente
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<Long> filtrarExitosos(long rolloutId, List<Long> dispositivoIds, Connection conn)
+            throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            int cantidad = JdbcTemplate.marcadoresPara(dispositivoIds.size());
+            String sql = "SELECT dispositivo_id FROM rollout_target " +
+                         "WHERE rollout_id = ? AND estado = 'EXITOSO' " +
+                         "AND dispositivo_id IN (" + JdbcTemplate.marcadores(cantidad) + ") ORDER BY dispositivo_id";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, rolloutId);
+                JdbcTemplate.enlazarLista(pstmt, 2, dispositivoIds, cantidad);
+            }, MAPPER_DISPOSITIVO_ID);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_FILTRAR_EXITOSOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_FILTRAR_EXITOSOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Marca como FALLIDO los objetivos enviados hace más de {@code segundos}
+     * sin informar resultado.
+     *
+     * @return cantidad de objetivos vencidos
+     * @throws SQLException si hay un error en la operación
+     */
+    public int vencerEnviados(long rolloutId, int ola, int segundos, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE rollout_target SET estado = 'FALLIDO' " +
+                         "WHERE rollout_id = ? AND ola = ? AND estado = 'ENVIADO' " +
+                         "AND enviado_en < NOW() - INTERVAL ? SECOND";
+
+            return JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setLong(1, rolloutId);
+                pstmt.setInt(2, ola);
+                pstmt.setInt(3, segundos);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_VENCER_ENVIADOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_VENCER_ENVIADOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Cuenta los objetivos de una ola por estado.
+     *
+     * @return arreglo {pendientes, enviados, exitosos, fallidos}
+     * @throws SQLException si hay un error en la operación
+     */
+    public long[] contarPorEstado(long rolloutId, int ola, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT estado, COUNT(*) AS cantidad FROM rollout_target " +
+                         "WHERE rollout_id = ? AND ola = ? GROUP BY estado";
+
+            long[] conteos = new long[4];
+            for (long[] fila : JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, rolloutId);
+                pstmt.setInt(2, ola);
+            }, MAPPER_CONTEO)) {
+                conteos[(int) fila[0]] = fila[1];
+            }
+            return conteos;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_CONTAR_POR_ESTADO.registrarError();
+            throw e;
+        } finally {
+            METRICA_CONTAR_POR_ESTADO.registrar(inicio);
+        }
+    }
+
+    private static int indiceEstado(String estado) {
+        switch (estado) {
+            case TARGET_PENDIENTE:
+                return 0;
+            case TARGET_ENVIADO:
+                return 1;
+            case TARGET_EXITOSO:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static LocalDateTime aFecha(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,75 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Convierte filas de un ResultSet en entidades.
+ *
+ * Cada mapper declara los nombres de las columnas que usa; JdbcTemplate
+ * resuelve sus índices una sola vez por ResultSet y luego llama a
+ * {@link #mapRow(ResultSet, int[])} con esos índices, evitando la búsqueda
+ * por nombre de cada columna en cada fila.
+ *
+ * Ejemplo:
+ * <pre>
+ * RowMapper&lt;Foo&gt; MAPPER = new RowMapper&lt;Foo&gt;("id", "nombre") {
+ *     public Foo mapRow(ResultSet rs, int[] c) throws SQLException {
+ *         return new Foo(rs.getLong(c[0]), rs.getString(c[1]));
+ *     }
+ * };
+ * </pre>
+ *
+ * @param <T> tipo de entidad resultante
+ * @version 1.0
+ */
+public abstract class RowMapper<T> {
+
+    private final String[] columnas;
+
+    /**
+     * @param columnas nombres (o alias) de las columnas que lee el mapper, en el
+     *                 orden en que se accederá a ellas mediante el arreglo de índices
+     */
+    protected RowMapper(String... columnas) {
+        this.columnas = columnas;
+    }
+
+    /**
+     * Mapea la fila actual del ResultSet.
+     *
+     * @param rs ResultSet posicionado en la fila a mapear
+     * @param indices índices JDBC de las columnas declaradas, en el mismo orden
+     * @return entidad poblada
+     * @throws SQLException si hay un error al leer la fila
+     */
+    public abstract T mapRow(ResultSet rs, int[] indices) throws SQLException;
+
+    /**
+     * Resuelve los índices de las columnas declaradas para un ResultSet.
+     *
+     * @param rs ResultSet recién obtenido
+     * @return índices JDBC (base 1) de cada columna declarada
+     * @throws SQLException si alguna columna no está presente
+     */
+    int[] resolverIndices(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int total = meta.getColumnCount();
+        int[] indices = new int[columnas.length];
+
+        for (int i = 0; i < columnas.length; i++) {
+            for (int j = 1; j <= total; j++) {
+                if (columnas[i].equalsIgnoreCase(meta.getColumnLabel(j))) {
+                    indices[i] = j;
+                    break;
+                }
+            }
+            if (indices[i] == 0) {
+                throw new SQLException("La columna '" + columnas[i] + "' no está en el resultado");
+            }
+        }
+
+        return indices;
+    }
+}
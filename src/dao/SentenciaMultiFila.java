@@ -0,0 +1,76 @@
+package dao;
+
+/**
+ * Forma de una sentencia multi-fila: prefijo, marcadores de una fila y sufijo,
+ * ej: "INSERT INTO t (a, b) VALUES " + "(?, ?)" + " ON DUPLICATE KEY UPDATE ...".
+ *
+ * Genera (y conserva) el SQL para 1, 2, 4, ... hasta maxFilas filas; ver
+ * {@link JdbcTemplate#multiFila}.
+ *
+ * @version 1.0
+ */
+public final class SentenciaMultiFila {
+
+    private final String prefijo;
+    private final String fila;
+    private final String sufijo;
+    private final int parametrosPorFila;
+    private final int maxFilas;
+    private final String[] sqlPorExponente;
+
+    /**
+     * @param prefijo SQL anterior a las filas
+     * @param fila marcadores de una fila, ej: "(?, ?, ?)"
+     * @param sufijo SQL posterior a las filas (puede ser vacío)
+     * @param maxFilas filas máximas por sentencia (se redondea a la potencia de 2 inferior)
+     */
+    public SentenciaMultiFila(String prefijo, String fila, String sufijo, int maxFilas) {
+        this.prefijo = prefijo;
+        this.fila = fila;
+        this.sufijo = sufijo;
+        this.parametrosPorFila = contarMarcadores(fila);
+        this.maxFilas = Integer.highestOneBit(Math.max(1, maxFilas));
+        this.sqlPorExponente = new String[Integer.numberOfTrailingZeros(this.maxFilas) + 1];
+    }
+
+    int getParametrosPorFila() {
+        return parametrosPorFila;
+    }
+
+    int getMaxFilas() {
+        return maxFilas;
+    }
+
+    /**
+     * SQL para exactamente {@code filas} filas (potencia de 2, hasta maxFilas).
+     * Carrera benigna: dos hilos pueden construir el mismo String.
+     */
+    String sql(int filas) {
+        int exponente = Integer.numberOfTrailingZeros(filas);
+        String sql = sqlPorExponente[exponente];
+        if (sql == null) {
+            StringBuilder sb = new StringBuilder(prefijo.length() + sufijo.length() + filas * (fila.length() + 2));
+            sb.append(prefijo);
+            for (int i = 0; i < filas; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(fila);
+            }
+            sb.append(sufijo);
+            sql = sb.toString();
+            sqlPorExponente[exponente] = sql;
+        }
+        return sql;
+    }
+
+    private static int contarMarcadores(String fila) {
+        int cantidad = 0;
+        for (int i = 0; i < fila.length(); i++) {
+            if (fila.charAt(i) == '?') {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+}
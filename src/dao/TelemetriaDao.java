@@ -0,0 +1,101 @@
+package dao;
+
+import entities.Telemetria;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Data Access Object para la tabla Telemetria.
+ *
+ * La escritura recibe columnas en arreglos primitivos (sin un objeto por
+ * lectura) y las envía como INSERT multi-fila ({@link JdbcTemplate#multiFila}).
+ *
+ * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Cada método público registra su latencia y errores en MetricsRegistry.
+ *
+ * @version 1.0
+ */
+public class TelemetriaDao {
+
+    /** Máximo de filas por sentencia (3 parámetros por fila, muy por debajo del límite de 65535). */
+    public static final int MAX_FILAS_POR_SENTENCIA = 1024;
+
+    private static final OperationMetrics METRICA_INSERTAR_LOTE = MetricsRegistry.operacion("TelemetriaDao.insertarLote");
+    private static final OperationMetrics METRICA_BUSCAR_POR_DISPOSITIVO = MetricsRegistry.operacion("TelemetriaDao.buscarPorDispositivo");
+
+    private static final SentenciaMultiFila INSERTAR = new SentenciaMultiFila(
+            "INSERT INTO Telemetria (dispositivo_id, ts, valor) VALUES ", "(?, ?, ?)",
+            " ON DUPLICATE KEY UPDATE valor = VALUES(valor)", MAX_FILAS_POR_SENTENCIA);
+
+    static final RowMapper<Telemetria> MAPPER = new RowMapper<Telemetria>("dispositivo_id", "ts", "valor") {
+        @Override
+        public Telemetria mapRow(ResultSet rs, int[] c) throws SQLException {
+            return new Telemetria(rs.getLong(c[0]), rs.getLong(c[1]), rs.getDouble(c[2]));
+        }
+    };
+
+    /**
+     * Inserta un lote de lecturas. Una lectura repetida (mismo dispositivo e
+     * instante) reemplaza el valor anterior, de modo que reintentar un lote
+     * es idempotente.
+     *
+     * @param dispositivos IDs de dispositivo
+     * @param marcas instantes en milisegundos epoch
+     * @param valores valores medidos
+     * @param desde posición de la primera lectura en los arreglos
+     * @param cantidad cantidad de lecturas a insertar
+     * @param conn conexión a la BD (externa, para transacciones)
+     * @throws SQLException si hay un error en la operación
+     */
+    public void insertarLote(long[] dispositivos, long[] marcas, double[] valores, int desde, int cantidad,
+                             Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            JdbcTemplate.multiFila(conn, INSERTAR, desde, cantidad, (pstmt, p, i) -> {
+                pstmt.setLong(p, dispositivos[i]);
+                pstmt.setLong(p + 1, marcas[i]);
+                pstmt.setDouble(p + 2, valores[i]);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_INSERTAR_LOTE.registrarError();
+            throw e;
+        } finally {
+            METRICA_INSERTAR_LOTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene las lecturas de un dispositivo en un intervalo [desde, hasta).
+     *
+     * @param dispositivoId ID del dispositivo
+     * @param desdeMs inicio del intervalo (inclusive, milisegundos epoch)
+     * @param hastaMs fin del intervalo (exclusive, milisegundos epoch)
+     * @param conn conexión a la BD
+     * @return lecturas ordenadas por instante
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<Telemetria> buscarPorDispositivo(long dispositivoId, long desdeMs, long hastaMs,
+                                                 Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT dispositivo_id, ts, valor FROM Telemetria " +
+                         "WHERE dispositivo_id = ? AND ts >= ? AND ts < ? ORDER BY ts";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, dispositivoId);
+                pstmt.setLong(2, desdeMs);
+                pstmt.setLong(3, hastaMs);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_POR_DISPOSITIVO.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_DISPOSITIVO.registrar(inicio);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package dao;
+
+import entities.AgregadoTelemetria;
+import entities.AgregadoTelemetria.Dimension;
+import entities.AgregadoTelemetria.Nivel;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Data Access Object para los rollups de telemetría (tablas telemetria_rollup,
+ * telemetria_rollup_grupo y telemetria_watermark).
+ *
+ * La agregación se hace en el servidor con INSERT ... SELECT ... GROUP BY:
+ * MINUTO a partir de Telemetria, y cada nivel siguiente a partir del anterior
+ * (las filas crudas se leen una sola vez). Los grupos de MINUTO se calculan
+ * uniendo con DispositivoIoT; los de HORA y DIA, desde los grupos del nivel
+ * anterior, así un dispositivo que cambia de ubicación no altera buckets ya agregados.
+ *
+ * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Cada método público registra su latencia y errores en MetricsRegistry.
+ *
+ * @version 1.0
+ */
+public class TelemetriaRollupDao {
+
+    /** Valor devuelto cuando un nivel aún no tiene watermark o no hay datos. */
+    public static final long SIN_VALOR = -1L;
+
+    private static final OperationMetrics METRICA_LEER_WATERMARK = MetricsRegistry.operacion("TelemetriaRollupDao.leerWatermark");
+    private static final OperationMetrics METRICA_BLOQUEAR_WATERMARK = MetricsRegistry.operacion("TelemetriaRollupDao.bloquearWatermark");
+    private static final OperationMetrics METRICA_INICIALIZAR_WATERMARK = MetricsRegistry.operacion("TelemetriaRollupDao.inicializarWatermark");
+    private static final OperationMetrics METRICA_GUARDAR_WATERMARK = MetricsRegistry.operacion("TelemetriaRollupDao.guardarWatermark");
+    private static final OperationMetrics METRICA_PRIMER_INSTANTE = MetricsRegistry.operacion("TelemetriaRollupDao.primerInstante");
+    private static final OperationMetrics METRICA_AGREGAR = MetricsRegistry.operacion("TelemetriaRollupDao.agregar");
+    private static final OperationMetrics METRICA_AGREGAR_GRUPOS = MetricsRegistry.operacion("TelemetriaRollupDao.agregarGrupos");
+    private static final OperationMetrics METRICA_BUSCAR = MetricsRegistry.operacion("TelemetriaRollupDao.buscar");
+    private static final OperationMetrics METRICA_BUSCAR_GRUPO = MetricsRegistry.operacion("TelemetriaRollupDao.buscarGrupo");
+    private static final OperationMetrics METRICA_AGREGAR_CRUDO = MetricsRegistry.operacion("TelemetriaRollupDao.agregarCrudo");
+    private static final OperationMetrics METRICA_AGREGAR_CRUDO_GRUPO = MetricsRegistry.operacion("TelemetriaRollupDao.agregarCrudoGrupo");
+    private static final OperationMetrics METRICA_ELIMINAR_CRUDO = MetricsRegistry.operacion("TelemetriaRollupDao.eliminarCrudoAnteriorA");
+    private static final OperationMetrics METRICA_ELIMINAR_ROLLUPS = MetricsRegistry.operacion("TelemetriaRollupDao.eliminarRollupsAnteriorA");
+
+    /**
+     * Combinación de un bucket ya existente con el recién agregado. Las
+     * columnas se califican con la tabla destino porque el SELECT puede leer
+     * de la misma tabla (con otro alias).
+     */
+    private static final String COMBINAR_ROLLUP = combinar("telemetria_rollup");
+    private static final String COMBINAR_GRUPO = combinar("telemetria_rollup_grupo");
+
+    static final RowMapper<AgregadoTelemetria> MAPPER = new RowMapper<AgregadoTelemetria>(
+            "bucket", "minimo", "maximo", "suma", "cantidad") {
+        @Override
+        public AgregadoTelemetria mapRow(ResultSet rs, int[] c) throws SQLException {
+            return new AgregadoTelemetria(rs.getLong(c[0]), rs.getDouble(c[1]), rs.getDouble(c[2]),
+                    rs.getDouble(c[3]), rs.getLong(c[4]));
+        }
+    };
+
+    /**
+     * Lee el watermark de un nivel sin bloquearlo.
+     *
+     * @return instante (exclusive) hasta el que el nivel está agregado, o {@link #SIN_VALOR}
+     * @throws SQLException si hay un error en la operación
+     */
+    public long leerWatermark(Nivel nivel, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT hasta FROM telemetria_watermark WHERE nivel = ?";
+
+            return JdbcTemplate.queryForLong(conn, sql, pstmt -> pstmt.setString(1, nivel.name()), SIN_VALOR);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_LEER_WATERMARK.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER_WATERMARK.registrar(inicio);
+        }
+    }
+
+    /**
+     * Lee el watermark de un nivel bloqueando la fila hasta el fin de la
+     * transacción (dos instancias no agregan el mismo intervalo).
+     *
+     * @return watermark, o {@link #SIN_VALOR} si el nivel aún no lo tiene
+     * @throws SQLException si hay un error en la operación
+     */
+    public long bloquearWatermark(Nivel nivel, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT hasta FROM telemetria_watermark WHERE nivel = ? FOR UPDATE";
+
+            return JdbcTemplate.queryForLong(conn, sql, pstmt -> pstmt.setString(1, nivel.name()), SIN_VALOR);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BLOQUEAR_WATERMARK.registrarError();
+            throw e;
+        } finally {
+            METRICA_BLOQUEAR_WATERMARK.registrar(inicio);
+        }
+    }
+
+    /**
+     * Crea el watermark de un nivel si no existe (si otra instancia lo creó antes, no hace nada).
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public void inicializarWatermark(Nivel nivel, long hasta, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "INSERT IGNORE INTO telemetria_watermark (nivel, hasta) VALUES (?, ?)";
+
+            JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setString(1, nivel.name());
+                pstmt.setLong(2, hasta);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_INICIALIZAR_WATERMARK.registrarError();
+            throw e;
+        } finally {
+            METRICA_INICIALIZAR_WATERMARK.registrar(inicio);
+        }
+    }
+
+    /**
+     * Avanza el watermark de un nivel (la fila debe estar bloqueada por esta transacción).
+     *
+     * @throws SQLException si hay un error en la operación
+     */
+    public void guardarWatermark(Nivel nivel, long hasta, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "UPDATE telemetria_watermark SET hasta = ? WHERE nivel = ?";
+
+            JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setLong(1, hasta);
+                pstmt.setString(2, nivel.name());
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_GUARDAR_WATERMARK.registrarError();
+            throw e;
+        } finally {
+            METRICA_GUARDAR_WATERMARK.registrar(inicio);
+        }
+    }
+
+    /**
+     * Instante del dato más antiguo que alimenta un nivel (lectura cruda para
+     * MINUTO, bucket del nivel anterior para los demás).
+     *
+     * @return instante en milisegundos epoch, o {@link #SIN_VALOR} si no hay datos
+     * @throws SQLException si hay un error en la operación
+     */
+    public long primerInstante(Nivel nivel, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            Nivel anterior = nivel.getAnterior();
+            if (anterior == null) {
+                return JdbcTemplate.queryForLong(conn, "SELECT MIN(ts) FROM Telemetria",
+                        JdbcTemplate.ParameterSetter.NINGUNO, SIN_VALOR);
+            }
+
+            String sql = "SELECT MIN(bucket) FROM telemetria_rollup WHERE nivel = ?";
+            return JdbcTemplate.queryForLong(conn, sql, pstmt -> pstmt.setString(1, anterior.name()), SIN_VALOR);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_PRIMER_INSTANTE.registrarError();
+            throw e;
+        } finally {
+            METRICA_PRIMER_INSTANTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Agrega por dispositivo los datos de [desde, hasta) en buckets del nivel.
+     * Los límites deben estar alineados a buckets del nivel.
+     *
+     * @return filas insertadas o combinadas (según MySQL)
+     * @throws SQLException si hay un error en la operación
+     */
+    public int agregar(Nivel nivel, long desde, long hasta, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            Nivel anterior = nivel.getAnterior();
+            String sql;
+
+            if (anterior == null) {
+                sql = "INSERT INTO telemetria_rollup (nivel, dispositivo_id, bucket, minimo, maximo, suma, cantidad) " +
+                      "SELECT ?, dispositivo_id, ts - MOD(ts, ?) AS b, MIN(valor), MAX(valor), SUM(valor), COUNT(*) " +
+                      "FROM Telemetria t WHERE ts >= ? AND ts < ? GROUP BY dispositivo_id, b" + COMBINAR_ROLLUP;
+            } else {
+                sql = "INSERT INTO telemetria_rollup (nivel, dispositivo_id, bucket, minimo, maximo, suma, cantidad) " +
+                      "SELECT ?, dispositivo_id, bucket - MOD(bucket, ?) AS b, MIN(minimo), MAX(maximo), SUM(suma), SUM(cantidad) " +
+                      "FROM telemetria_rollup r WHERE nivel = '" + anterior.name() + "' AND bucket >= ? AND bucket < ? " +
+                      "GROUP BY dispositivo_id, b" + COMBINAR_ROLLUP;
+            }
+
+            return JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setString(1, nivel.name());
+                pstmt.setLong(2, nivel.getDuracionMs());
+                pstmt.setLong(3, desde);
+                pstmt.setLong(4, hasta);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_AGREGAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_AGREGAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Agrega por ubicación y por modelo los buckets del nivel en [desde, hasta).
+     * Para MINUTO debe llamarse después de {@link #agregar} sobre el mismo intervalo.
+     *
+     * @return filas insertadas o combinadas (según MySQL)
+     * @throws SQLException si hay un error en la operación
+     */
+    public int agregarGrupos(Nivel nivel, long desde, long hasta, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            Nivel anterior = nivel.getAnterior();
+
+            if (anterior != null) {
+                String sql = "INSERT INTO telemetria_rollup_grupo " +
+                             "(nivel, dimension, clave, bucket, minimo, maximo, suma, cantidad) " +
+                             "SELECT ?, dimension, clave, bucket - MOD(bucket, ?) AS b, " +
+                             "MIN(minimo), MAX(maximo), SUM(suma), SUM(cantidad) " +
+                             "FROM telemetria_rollup_grupo g WHERE nivel = ? AND bucket >= ? AND bucket < ? " +
+                             "GROUP BY dimension, clave, b" + COMBINAR_GRUPO;
+
+                return JdbcTemplate.update(conn, sql, pstmt -> {
+                    pstmt.setString(1, nivel.name());
+                    pstmt.setLong(2, nivel.getDuracionMs());
+                    pstmt.setString(3, anterior.name());
+                    pstmt.setLong(4, desde);
+                    pstmt.setLong(5, hasta);
+                });
+            }
+
+            int filas = 0;
+            for (Dimension dimension : Dimension.values()) {
+                String columna = columna(dimension);
+                String sql = "INSERT INTO telemetria_rollup_grupo " +
+                             "(nivel, dimension, clave, bucket, minimo, maximo, suma, cantidad) " +
+                             "SELECT r.nivel, '" + dimension.name() + "', d." + columna + ", r.bucket, " +
+                             "MIN(r.minimo), MAX(r.maximo), SUM(r.suma), SUM(r.cantidad) " +
+                             "FROM telemetria_rollup r JOIN DispositivoIoT d ON d.id = r.dispositivo_id " +
+                             "WHERE r.nivel = ? AND r.bucket >= ? AND r.bucket < ? " +
+                             "GROUP BY r.nivel, d." + columna + ", r.bucket" + COMBINAR_GRUPO;
+
+                filas += JdbcTemplate.update(conn, sql, pstmt -> {
+                    pstmt.setString(1, nivel.name());
+                    pstmt.setLong(2, desde);
+                    pstmt.setLong(3, hasta);
+                });
+            }
+            return filas;
+        } catch (SQLException | RuntimeException e) {
+            METRICA_AGREGAR_GRUPOS.registrarError();
+            throw e;
+        } finally {
+            METRICA_AGREGAR_GRUPOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene los buckets de un dispositivo en un nivel.
+     *
+     * @return agregados ordenados por bucket, con bucket en [desde, hasta)
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<AgregadoTelemetria> buscar(Nivel nivel, long dispositivoId, long desde, long hasta,
+                                           Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT bucket, minimo, maximo, suma, cantidad FROM telemetria_rollup " +
+                         "WHERE nivel = ? AND dispositivo_id = ? AND bucket >= ? AND bucket < ? ORDER BY bucket";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setString(1, nivel.name());
+                pstmt.setLong(2, dispositivoId);
+                pstmt.setLong(3, desde);
+                pstmt.setLong(4, hasta);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene los buckets de una ubicación o modelo en un nivel.
+     *
+     * @return agregados ordenados por bucket, con bucket en [desde, hasta)
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<AgregadoTelemetria> buscarGrupo(Nivel nivel, Dimension dimension, String clave, long desde,
+                                                long hasta, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT bucket, minimo, maximo, suma, cantidad FROM telemetria_rollup_grupo " +
+                         "WHERE nivel = ? AND dimension = ? AND clave = ? AND bucket >= ? AND bucket < ? ORDER BY bucket";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setString(1, nivel.name());
+                pstmt.setString(2, dimension.name());
+                pstmt.setString(3, clave);
+                pstmt.setLong(4, desde);
+                pstmt.setLong(5, hasta);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_BUSCAR_GRUPO.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_GRUPO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Agrega al vuelo la telemetría cruda de un dispositivo (para el tramo aún
+     * no cubierto por los rollups).
+     *
+     * @param duracionMs tamaño de bucket
+     * @return agregados ordenados por bucket
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<AgregadoTelemetria> agregarCrudo(long dispositivoId, long duracionMs, long desde, long hasta,
+                                                 Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT ts - MOD(ts, ?) AS bucket, MIN(valor) AS minimo, MAX(valor) AS maximo, " +
+                         "SUM(valor) AS suma, COUNT(*) AS cantidad FROM Telemetria " +
+                         "WHERE dispositivo_id = ? AND ts >= ? AND ts < ? GROUP BY bucket ORDER BY bucket";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, duracionMs);
+                pstmt.setLong(2, dispositivoId);
+                pstmt.setLong(3, desde);
+                pstmt.setLong(4, hasta);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_AGREGAR_CRUDO.registrarError();
+            throw e;
+        } finally {
+            METRICA_AGREGAR_CRUDO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Agrega al vuelo la telemetría cruda de una ubicación o modelo.
+     *
+     * @param duracionMs tamaño de bucket
+     * @return agregados ordenados por bucket
+     * @throws SQLException si hay un error en la operación
+     */
+    public List<AgregadoTelemetria> agregarCrudoGrupo(Dimension dimension, String clave, long duracionMs, long desde,
+                                                      long hasta, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "SELECT t.ts - MOD(t.ts, ?) AS bucket, MIN(t.valor) AS minimo, MAX(t.valor) AS maximo, " +
+                         "SUM(t.valor) AS suma, COUNT(*) AS cantidad " +
+                         "FROM DispositivoIoT d JOIN Telemetria t ON t.dispositivo_id = d.id " +
+                         "WHERE d." + columna(dimension) + " = ? AND t.ts >= ? AND t.ts < ? " +
+                         "GROUP BY bucket ORDER BY bucket";
+
+            return JdbcTemplate.query(conn, sql, pstmt -> {
+                pstmt.setLong(1, duracionMs);
+                pstmt.setString(2, clave);
+                pstmt.setLong(3, desde);
+                pstmt.setLong(4, hasta);
+            }, MAPPER);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_AGREGAR_CRUDO_GRUPO.registrarError();
+            throw e;
+        } finally {
+            METRICA_AGREGAR_CRUDO_GRUPO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Elimina hasta {@code limite} lecturas crudas anteriores a un instante.
+     *
+     * @return filas eliminadas (menor que el límite cuando no quedan más)
+     * @throws SQLException si hay un error en la operación
+     */
+    public int eliminarCrudoAnteriorA(long hasta, int limite, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            String sql = "DELETE FROM Telemetria WHERE ts < ? LIMIT ?";
+
+            return JdbcTemplate.update(conn, sql, pstmt -> {
+                pstmt.setLong(1, hasta);
+                pstmt.setInt(2, limite);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ELIMINAR_CRUDO.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR_CRUDO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Elimina hasta {@code limite} buckets de un nivel (por dispositivo y por
+     * grupo, cada tabla con su propio límite) anteriores a un instante.
+     *
+     * @return filas eliminadas (menor que el límite cuando no quedan más)
+     * @throws SQLException si hay un error en la operación
+     */
+    public int eliminarRollupsAnteriorA(Nivel nivel, long hasta, int limite, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            JdbcTemplate.ParameterSetter parametros = pstmt -> {
+                pstmt.setString(1, nivel.name());
+                pstmt.setLong(2, hasta);
+                pstmt.setInt(3, limite);
+            };
+
+            int filas = JdbcTemplate.update(conn,
+                    "DELETE FROM telemetria_rollup WHERE nivel = ? AND bucket < ? LIMIT ?", parametros);
+            int filasGrupo = JdbcTemplate.update(conn,
+                    "DELETE FROM telemetria_rollup_grupo WHERE nivel = ? AND bucket < ? LIMIT ?", parametros);
+            return Math.max(filas, filasGrupo);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_ELIMINAR_ROLLUPS.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR_ROLLUPS.registrar(inicio);
+        }
+    }
+
+    private static String combinar(String tabla) {
+        return " ON DUPLICATE KEY UPDATE minimo = LEAST(" + tabla + ".minimo, VALUES(minimo)), " +
+               "maximo = GREATEST(" + tabla + ".maximo, VALUES(maximo)), " +
+               "suma = " + tabla + ".suma + VALUES(suma), cantidad = " + tabla + ".cantidad + VALUES(cantidad)";
+    }
+
+    /**
+     * Columna de DispositivoIoT de cada dimensión (nombres fijos, seguros para concatenar).
+     */
+    private static String columna(Dimension dimension) {
+        return dimension == Dimension.UBICACION ? "ubicacion" : "modelo";
+    }
+}
@@ -0,0 +1,83 @@
+package dao;
+
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data Access Object para la tabla last_seen (última señal de cada dispositivo).
+ *
+ * NO crea ni cierra conexiones (recibe Connection externa para transacciones).
+ * Cada método público registra su latencia y errores en MetricsRegistry.
+ *
+ * @version 1.0
+ */
+public class UltimaSenalDao {
+
+    /** Máximo de filas por sentencia (2 parámetros por fila). */
+    public static final int MAX_FILAS_POR_SENTENCIA = 1024;
+
+    private static final OperationMetrics METRICA_GUARDAR_LOTE = MetricsRegistry.operacion("UltimaSenalDao.guardarLote");
+    private static final OperationMetrics METRICA_RECORRER = MetricsRegistry.operacion("UltimaSenalDao.recorrer");
+
+    // GREATEST: un volcado demorado nunca retrocede una señal más nueva
+    private static final SentenciaMultiFila GUARDAR = new SentenciaMultiFila(
+            "INSERT INTO last_seen (dispositivo_id, visto) VALUES ", "(?, ?)",
+            " ON DUPLICATE KEY UPDATE visto = GREATEST(visto, VALUES(visto))", MAX_FILAS_POR_SENTENCIA);
+
+    /** Fila como par {dispositivo_id, visto}. */
+    private static final RowMapper<long[]> MAPPER = new RowMapper<long[]>("dispositivo_id", "visto") {
+        @Override
+        public long[] mapRow(ResultSet rs, int[] c) throws SQLException {
+            return new long[] {rs.getLong(c[0]), rs.getLong(c[1])};
+        }
+    };
+
+    /**
+     * Inserta o actualiza un lote de últimas señales (upsert multi-fila).
+     *
+     * @param pares pares (id, visto) consecutivos
+     * @param desde posición del primer par
+     * @param cantidad cantidad de pares
+     * @param conn conexión a la BD (externa, para transacciones)
+     * @throws SQLException si hay un error en la operación
+     */
+    public void guardarLote(long[] pares, int desde, int cantidad, Connection conn) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            JdbcTemplate.multiFila(conn, GUARDAR, desde, cantidad, (pstmt, p, i) -> {
+                pstmt.setLong(p, pares[2 * i]);
+                pstmt.setLong(p + 1, pares[2 * i + 1]);
+            });
+        } catch (SQLException | RuntimeException e) {
+            METRICA_GUARDAR_LOTE.registrarError();
+            throw e;
+        } finally {
+            METRICA_GUARDAR_LOTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Recorre todas las últimas señales en orden de instante (streaming).
+     *
+     * @param conn conexión a la BD (no debe usarse desde el handler)
+     * @param handler recibe cada fila como par {dispositivo_id, visto}
+     * @return cantidad de filas
+     * @throws SQLException si hay un error en la operación
+     */
+    public long recorrer(Connection conn, JdbcTemplate.RowHandler<long[]> handler) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            return JdbcTemplate.stream(conn, "SELECT dispositivo_id, visto FROM last_seen ORDER BY visto",
+                    JdbcTemplate.ParameterSetter.NINGUNO, MAPPER, handler);
+        } catch (SQLException | RuntimeException e) {
+            METRICA_RECORRER.registrarError();
+            throw e;
+        } finally {
+            METRICA_RECORRER.registrar(inicio);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package entities;
+
+/**
+ * Agregado de telemetría de un bucket de tiempo (mínimo, máximo, suma y
+ * cantidad de lecturas), de un dispositivo o de un grupo (ubicación/modelo).
+ *
+ * Se guarda la suma en lugar del promedio para poder combinar buckets.
+ *
+ * @version 1.0
+ */
+public class AgregadoTelemetria {
+
+    /**
+     * Resoluciones de rollup, de la más fina a la más gruesa.
+     */
+    public enum Nivel {
+        MINUTO(60_000L),
+        HORA(3_600_000L),
+        DIA(86_400_000L);
+
+        private final long duracionMs;
+
+        Nivel(long duracionMs) {
+            this.duracionMs = duracionMs;
+        }
+
+        public long getDuracionMs() {
+            return duracionMs;
+        }
+
+        /**
+         * @return el nivel del que se agrega este, o null para MINUTO (se agrega de la telemetría cruda)
+         */
+        public Nivel getAnterior() {
+            return ordinal() == 0 ? null : values()[ordinal() - 1];
+        }
+
+        /**
+         * Inicio del bucket de este nivel que contiene el instante (UTC).
+         */
+        public long inicioBucket(long instanteMs) {
+            return Math.floorDiv(instanteMs, duracionMs) * duracionMs;
+        }
+    }
+
+    /**
+     * Agrupaciones de dispositivos para los rollups por grupo.
+     */
+    public enum Dimension {
+        UBICACION,
+        MODELO
+    }
+
+    private long bucket;  // inicio del intervalo, milisegundos epoch
+    private double minimo;
+    private double maximo;
+    private double suma;
+    private long cantidad;
+
+    /**
+     * Constructor vacío requerido por el patrón DAO.
+     */
+    public AgregadoTelemetria() {
+    }
+
+    /**
+     * Constructor completo.
+     *
+     * @param bucket inicio del intervalo (milisegundos epoch)
+     * @param minimo valor mínimo
+     * @param maximo valor máximo
+     * @param suma suma de los valores
+     * @param cantidad cantidad de lecturas
+     */
+    public AgregadoTelemetria(long bucket, double minimo, double maximo, double suma, long cantidad) {
+        this.bucket = bucket;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.suma = suma;
+        this.cantidad = cantidad;
+    }
+
+    /**
+     * Suma a este agregado las lecturas de otro (del mismo bucket o de uno contenido en él).
+     */
+    public void combinar(AgregadoTelemetria otro) {
+        if (otro.cantidad == 0) {
+            return;
+        }
+        if (cantidad == 0) {
+            minimo = otro.minimo;
+            maximo = otro.maximo;
+        } else {
+            minimo = Math.min(minimo, otro.minimo);
+            maximo = Math.max(maximo, otro.maximo);
+        }
+        suma += otro.suma;
+        cantidad += otro.cantidad;
+    }
+
+    /**
+     * @return promedio de las lecturas (NaN si no hay lecturas)
+     */
+    public double getPromedio() {
+        return cantidad == 0 ? Double.NaN : suma / cantidad;
+    }
+
+    // Getters y Setters
+
+    public long getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(long bucket) {
+        this.bucket = bucket;
+    }
+
+    public double getMinimo() {
+        return minimo;
+    }
+
+    public void setMinimo(double minimo) {
+        this.minimo = minimo;
+    }
+
+    public double getMaximo() {
+        return maximo;
+    }
+
+    public void setMaximo(double maximo) {
+        this.maximo = maximo;
+    }
+
+    public double getSuma() {
+        return suma;
+    }
+
+    public void setSuma(double suma) {
+        this.suma = suma;
+    }
+
+    public long getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(long cantidad) {
+        this.cantidad = cantidad;
+    }
+
+    @Override
+    public String toString() {
+        return "AgregadoTelemetria{" +
+                "bucket=" + bucket +
+                ", minimo=" + minimo +
+                ", maximo=" + maximo +
+                ", promedio=" + getPromedio() +
+                ", cantidad=" + cantidad +
+                '}';
+    }
+}
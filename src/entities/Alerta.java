@@ -0,0 +1,61 @@
+package entities;
+
+/**
+ * Alerta emitida cuando un dispositivo cumple una {@link ReglaAlerta}.
+ *
+ * @version 1.0
+ */
+public class Alerta {
+
+    private final String regla;
+    private final long dispositivoId;
+    private final long timestamp;  // milisegundos epoch de la lectura que la disparó
+    private final double valor;
+    private final int consecutivas;
+
+    /**
+     * @param regla nombre de la regla cumplida
+     * @param dispositivoId ID del dispositivo
+     * @param timestamp instante de la lectura que completó la racha
+     * @param valor valor de esa lectura
+     * @param consecutivas lecturas seguidas que cumplieron la condición
+     */
+    public Alerta(String regla, long dispositivoId, long timestamp, double valor, int consecutivas) {
+        this.regla = regla;
+        this.dispositivoId = dispositivoId;
+        this.timestamp = timestamp;
+        this.valor = valor;
+        this.consecutivas = consecutivas;
+    }
+
+    public String getRegla() {
+        return regla;
+    }
+
+    public long getDispositivoId() {
+        return dispositivoId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getValor() {
+        return valor;
+    }
+
+    public int getConsecutivas() {
+        return consecutivas;
+    }
+
+    @Override
+    public String toString() {
+        return "Alerta{" +
+                "regla='" + regla + '\'' +
+                ", dispositivoId=" + dispositivoId +
+                ", timestamp=" + timestamp +
+                ", valor=" + valor +
+                ", consecutivas=" + consecutivas +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package entities;
 
+import java.sql.Timestamp;
+
 /**
  * Representa la configuración de red de un dispositivo IoT.
  * Clase B en la relación unidireccional 1→1 con DispositivoIoT.
@@ -17,6 +19,8 @@ public class ConfiguracionRed {
     private String dnsPrimario;
     private Boolean dhcpHabilitado;
     private Long dispositivoId;  // FK al dispositivo asociado (para relación 1:1)
+    private Timestamp creado;       // created_at (lo asigna la BD)
+    private Timestamp actualizado;  // updated_at (lo asigna la BD)
 
     /**
      * Constructor vacío requerido por el patrón DAO.
@@ -141,6 +145,22 @@ public class ConfiguracionRed {
         this.dispositivoId = dispositivoId;
     }
 
+    public Timestamp getCreado() {
+        return creado;
+    }
+
+    public void setCreado(Timestamp creado) {
+        this.creado = creado;
+    }
+
+    public Timestamp getActualizado() {
+        return actualizado;
+    }
+
+    public void setActualizado(Timestamp actualizado) {
+        this.actualizado = actualizado;
+    }
+
     @Override
     public String toString() {
         return "ConfiguracionRed{" +
@@ -1,5 +1,7 @@
 package entities;
 
+import java.sql.Timestamp;
+
 /**
  * Representa un Dispositivo IoT (Internet of Things) en el sistema.
  * Clase A en la relación unidireccional 1→1 con ConfiguracionRed.
@@ -16,6 +18,8 @@ public class DispositivoIoT {
     private String ubicacion;
     private String firmwareVersion;
     private ConfiguracionRed configuracionRed;  // Relación 1→1 unidireccional
+    private Timestamp creado;       // created_at (lo asigna la BD)
+    private Timestamp actualizado;  // updated_at (lo asigna la BD)
 
     /**
      * Constructor vacío requerido por el patrón DAO.
@@ -115,6 +119,22 @@ public class DispositivoIoT {
         this.configuracionRed = configuracionRed;
     }
 
+    public Timestamp getCreado() {
+        return creado;
+    }
+
+    public void setCreado(Timestamp creado) {
+        this.creado = creado;
+    }
+
+    public Timestamp getActualizado() {
+        return actualizado;
+    }
+
+    public void setActualizado(Timestamp actualizado) {
+        this.actualizado = actualizado;
+    }
+
     /**
      * toString sin recursión - no llama a configuracionRed.toString() para evitar StackOverflow.
      */
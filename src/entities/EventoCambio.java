@@ -0,0 +1,121 @@
+package entities;
+
+import java.sql.Timestamp;
+
+/**
+ * Evento del outbox (change data capture): un alta, modificación o baja
+ * lógica de una entidad del inventario, con el estado de la entidad en JSON.
+ *
+ * Las secuencias son crecientes en orden de commit.
+ *
+ * @version 1.0
+ */
+public class EventoCambio {
+
+    /**
+     * Entidad que cambió.
+     */
+    public enum Entidad {
+        DISPOSITIVO,
+        CONFIGURACION
+    }
+
+    /**
+     * Tipo de cambio (DELETE = baja lógica).
+     */
+    public enum Operacion {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    private long secuencia;
+    private Entidad entidad;
+    private long entidadId;
+    private Operacion operacion;
+    private String payload;
+    private Timestamp creado;
+
+    /**
+     * Constructor vacío requerido por el patrón DAO.
+     */
+    public EventoCambio() {
+    }
+
+    /**
+     * Constructor para eventos nuevos (la secuencia se asigna al registrarlo).
+     *
+     * @param entidad entidad que cambió
+     * @param entidadId ID de la entidad
+     * @param operacion tipo de cambio
+     * @param payload estado de la entidad en JSON
+     */
+    public EventoCambio(Entidad entidad, long entidadId, Operacion operacion, String payload) {
+        this.entidad = entidad;
+        this.entidadId = entidadId;
+        this.operacion = operacion;
+        this.payload = payload;
+    }
+
+    // Getters y Setters
+
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public void setSecuencia(long secuencia) {
+        this.secuencia = secuencia;
+    }
+
+    public Entidad getEntidad() {
+        return entidad;
+    }
+
+    public void setEntidad(Entidad entidad) {
+        this.entidad = entidad;
+    }
+
+    public long getEntidadId() {
+        return entidadId;
+    }
+
+    public void setEntidadId(long entidadId) {
+        this.entidadId = entidadId;
+    }
+
+    public Operacion getOperacion() {
+        return operacion;
+    }
+
+    public void setOperacion(Operacion operacion) {
+        this.operacion = operacion;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Timestamp getCreado() {
+        return creado;
+    }
+
+    public void setCreado(Timestamp creado) {
+        this.creado = creado;
+    }
+
+    @Override
+    public String toString() {
+        return "EventoCambio{" +
+                "secuencia=" + secuencia +
+                ", entidad=" + entidad +
+                ", entidadId=" + entidadId +
+                ", operacion=" + operacion +
+                ", payload=" + payload +
+                ", creado=" + creado +
+                '}';
+    }
+}
@@ -0,0 +1,140 @@
+package entities;
+
+/**
+ * Regla de alerta sobre telemetría: dispara cuando un dispositivo reporta
+ * {@code consecutivas} lecturas seguidas que cumplen la condición
+ * (ej: "valor > 70 en 3 lecturas seguidas, modelo SENSOR-T1 en Planta Norte").
+ *
+ * El modelo y la ubicación son filtros opcionales (null = cualquiera).
+ *
+ * @version 1.0
+ */
+public class ReglaAlerta {
+
+    /**
+     * Comparación de la lectura contra el umbral.
+     */
+    public enum Operador {
+        MAYOR(">"),
+        MAYOR_IGUAL(">="),
+        MENOR("<"),
+        MENOR_IGUAL("<=");
+
+        private final String simbolo;
+
+        Operador(String simbolo) {
+            this.simbolo = simbolo;
+        }
+
+        public String getSimbolo() {
+            return simbolo;
+        }
+
+        /**
+         * @return el operador con ese símbolo, o null si no existe
+         */
+        public static Operador desdeSimbolo(String simbolo) {
+            for (Operador operador : values()) {
+                if (operador.simbolo.equals(simbolo)) {
+                    return operador;
+                }
+            }
+            return null;
+        }
+    }
+
+    private String nombre;
+    private String modelo;
+    private String ubicacion;
+    private Operador operador;
+    private double umbral;
+    private int consecutivas;
+
+    /**
+     * Constructor vacío.
+     */
+    public ReglaAlerta() {
+        this.consecutivas = 1;
+    }
+
+    /**
+     * Constructor completo.
+     *
+     * @param nombre nombre de la regla (aparece en las alertas)
+     * @param modelo modelo al que aplica, o null para todos
+     * @param ubicacion ubicación a la que aplica, o null para todas
+     * @param operador comparación contra el umbral
+     * @param umbral valor de referencia
+     * @param consecutivas lecturas seguidas que deben cumplir la condición
+     */
+    public ReglaAlerta(String nombre, String modelo, String ubicacion, Operador operador, double umbral,
+                       int consecutivas) {
+        this.nombre = nombre;
+        this.modelo = modelo;
+        this.ubicacion = ubicacion;
+        this.operador = operador;
+        this.umbral = umbral;
+        this.consecutivas = consecutivas;
+    }
+
+    // Getters y Setters
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public void setNombre(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getModelo() {
+        return modelo;
+    }
+
+    public void setModelo(String modelo) {
+        this.modelo = modelo;
+    }
+
+    public String getUbicacion() {
+        return ubicacion;
+    }
+
+    public void setUbicacion(String ubicacion) {
+        this.ubicacion = ubicacion;
+    }
+
+    public Operador getOperador() {
+        return operador;
+    }
+
+    public void setOperador(Operador operador) {
+        this.operador = operador;
+    }
+
+    public double getUmbral() {
+        return umbral;
+    }
+
+    public void setUmbral(double umbral) {
+        this.umbral = umbral;
+    }
+
+    public int getConsecutivas() {
+        return consecutivas;
+    }
+
+    public void setConsecutivas(int consecutivas) {
+        this.consecutivas = consecutivas;
+    }
+
+    @Override
+    public String toString() {
+        return "ReglaAlerta{" +
+                "nombre='" + nombre + '\'' +
+                ", condicion='valor " + (operador != null ? operador.getSimbolo() : "?") + " " + umbral + '\'' +
+                ", consecutivas=" + consecutivas +
+                ", modelo='" + modelo + '\'' +
+                ", ubicacion='" + ubicacion + '\'' +
+                '}';
+    }
+}
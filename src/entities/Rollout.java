@@ -0,0 +1,130 @@
+package entities;
+
+/**
+ * Representa un despliegue (rollout) de firmware por olas para un modelo.
+ * Los dispositivos objetivo se guardan en la tabla rollout_target y NO se
+ * cargan en la entidad (un rollout puede tener cientos de miles).
+ *
+ * @version 1.0
+ */
+public class Rollout {
+
+    /**
+     * Estados posibles de un rollout.
+     */
+    public enum Estado {
+        PENDIENTE,
+        EN_CURSO,
+        PAUSADO,
+        ABORTADO,
+        COMPLETADO;
+
+        /**
+         * Indica si el rollout ya no despachará más dispositivos.
+         */
+        public boolean esFinal() {
+            return this == ABORTADO || this == COMPLETADO;
+        }
+    }
+
+    private Long id;
+    private String modelo;
+    private String firmwareDestino;
+    private Estado estado;
+    private int olaActual;
+    private int maxConcurrencia;
+    private long totalDispositivos;
+
+    /**
+     * Constructor vacío requerido por el patrón DAO.
+     */
+    public Rollout() {
+        this.estado = Estado.PENDIENTE;
+        this.olaActual = 1;
+    }
+
+    /**
+     * Constructor para nuevos rollouts.
+     *
+     * @param modelo modelo de dispositivo a actualizar
+     * @param firmwareDestino versión de firmware a desplegar
+     * @param maxConcurrencia dispositivos actualizándose a la vez como máximo
+     */
+    public Rollout(String modelo, String firmwareDestino, int maxConcurrencia) {
+        this();
+        this.modelo = modelo;
+        this.firmwareDestino = firmwareDestino;
+        this.maxConcurrencia = maxConcurrencia;
+    }
+
+    // Getters y Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getModelo() {
+        return modelo;
+    }
+
+    public void setModelo(String modelo) {
+        this.modelo = modelo;
+    }
+
+    public String getFirmwareDestino() {
+        return firmwareDestino;
+    }
+
+    public void setFirmwareDestino(String firmwareDestino) {
+        this.firmwareDestino = firmwareDestino;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public void setEstado(Estado estado) {
+        this.estado = estado;
+    }
+
+    public int getOlaActual() {
+        return olaActual;
+    }
+
+    public void setOlaActual(int olaActual) {
+        this.olaActual = olaActual;
+    }
+
+    public int getMaxConcurrencia() {
+        return maxConcurrencia;
+    }
+
+    public void setMaxConcurrencia(int maxConcurrencia) {
+        this.maxConcurrencia = maxConcurrencia;
+    }
+
+    public long getTotalDispositivos() {
+        return totalDispositivos;
+    }
+
+    public void setTotalDispositivos(long totalDispositivos) {
+        this.totalDispositivos = totalDispositivos;
+    }
+
+    @Override
+    public String toString() {
+        return "Rollout{" +
+                "id=" + id +
+                ", modelo='" + modelo + '\'' +
+                ", firmwareDestino='" + firmwareDestino + '\'' +
+                ", estado=" + estado +
+                ", olaActual=" + olaActual +
+                ", maxConcurrencia=" + maxConcurrencia +
+                ", totalDispositivos=" + totalDispositivos +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+package entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * Representa una ola de un rollout (ej: canario 1%, 10%, resto).
+ * Cada ola agrupa ubicaciones completas, de modo que un sitio se actualiza
+ * en una sola ola.
+ *
+ * @version 1.0
+ */
+public class RolloutOla {
+
+    /**
+     * Estados posibles de una ola.
+     */
+    public enum Estado {
+        PENDIENTE,
+        EN_CURSO,
+        COMPLETADA
+    }
+
+    private Long id;
+    private Long rolloutId;
+    private int numero;
+    private int porcentaje;
+    private Estado estado;
+    private long total;
+    private long exitosos;
+    private long fallidos;
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+
+    /**
+     * Constructor vacío requerido por el patrón DAO.
+     */
+    public RolloutOla() {
+        this.estado = Estado.PENDIENTE;
+    }
+
+    /**
+     * Constructor para nuevas olas.
+     *
+     * @param numero número de ola (1 = canario)
+     * @param porcentaje porcentaje acumulado de dispositivos que cubre la ola
+     */
+    public RolloutOla(int numero, int porcentaje) {
+        this();
+        this.numero = numero;
+        this.porcentaje = porcentaje;
+    }
+
+    // Getters y Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getRolloutId() {
+        return rolloutId;
+    }
+
+    public void setRolloutId(Long rolloutId) {
+        this.rolloutId = rolloutId;
+    }
+
+    public int getNumero() {
+        return numero;
+    }
+
+    public void setNumero(int numero) {
+        this.numero = numero;
+    }
+
+    public int getPorcentaje() {
+        return porcentaje;
+    }
+
+    public void setPorcentaje(int porcentaje) {
+        this.porcentaje = porcentaje;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public void setEstado(Estado estado) {
+        this.estado = estado;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getExitosos() {
+        return exitosos;
+    }
+
+    public void setExitosos(long exitosos) {
+        this.exitosos = exitosos;
+    }
+
+    public long getFallidos() {
+        return fallidos;
+    }
+
+    public void setFallidos(long fallidos) {
+        this.fallidos = fallidos;
+    }
+
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+
+    public void setInicio(LocalDateTime inicio) {
+        this.inicio = inicio;
+    }
+
+    public LocalDateTime getFin() {
+        return fin;
+    }
+
+    public void setFin(LocalDateTime fin) {
+        this.fin = fin;
+    }
+
+    @Override
+    public String toString() {
+        return "RolloutOla{" +
+                "numero=" + numero +
+                ", porcentaje=" + porcentaje +
+                ", estado=" + estado +
+                ", total=" + total +
+                ", exitosos=" + exitosos +
+                ", fallidos=" + fallidos +
+                ", inicio=" + inicio +
+                ", fin=" + fin +
+                '}';
+    }
+}
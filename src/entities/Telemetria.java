@@ -0,0 +1,67 @@
+package entities;
+
+/**
+ * Representa una lectura de telemetría reportada por un dispositivo IoT.
+ *
+ * @version 1.0
+ */
+public class Telemetria {
+
+    private long dispositivoId;
+    private long timestamp;  // milisegundos epoch
+    private double valor;
+
+    /**
+     * Constructor vacío requerido por el patrón DAO.
+     */
+    public Telemetria() {
+    }
+
+    /**
+     * Constructor completo.
+     *
+     * @param dispositivoId ID del dispositivo que reporta
+     * @param timestamp instante de la lectura (milisegundos epoch)
+     * @param valor valor medido
+     */
+    public Telemetria(long dispositivoId, long timestamp, double valor) {
+        this.dispositivoId = dispositivoId;
+        this.timestamp = timestamp;
+        this.valor = valor;
+    }
+
+    // Getters y Setters
+
+    public long getDispositivoId() {
+        return dispositivoId;
+    }
+
+    public void setDispositivoId(long dispositivoId) {
+        this.dispositivoId = dispositivoId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public double getValor() {
+        return valor;
+    }
+
+    public void setValor(double valor) {
+        this.valor = valor;
+    }
+
+    @Override
+    public String toString() {
+        return "Telemetria{" +
+                "dispositivoId=" + dispositivoId +
+                ", timestamp=" + timestamp +
+                ", valor=" + valor +
+                '}';
+    }
+}
@@ -0,0 +1,18 @@
+package exceptions;
+
+/**
+ * Excepción lanzada cuando la base de datos no está disponible y la operación
+ * no puede resolverse en modo degradado (escrituras, o lecturas sin copia local).
+ *
+ * @version 1.0
+ */
+public class ServicioNoDisponibleException extends DataAccessException {
+
+    public ServicioNoDisponibleException(String message) {
+        super(message);
+    }
+
+    public ServicioNoDisponibleException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,8 +2,10 @@ package main;
 
 import entities.ConfiguracionRed;
 import entities.DispositivoIoT;
+import metrics.MetricsRegistry;
 import service.ConfiguracionRedService;
 import service.DispositivoIoTService;
+import service.ModoDegradado;
 import util.InputHelper;
 
 import java.util.List;
@@ -37,6 +39,12 @@ public class AppMenu {
             try {
                 input.mostrarSeparador();
                 System.out.println("    MENÚ PRINCIPAL");
+                ModoDegradado modoDegradado = ModoDegradado.getInstancia();
+                if (modoDegradado.estaDegradado()) {
+                    System.out.println("  ⚠ MODO DEGRADADO: solo lectura, " + (modoDegradado.tieneCopia()
+                            ? "datos de hace " + modoDegradado.getAntiguedadMs() / 60000 + " min"
+                            : "sin copia local"));
+                }
                 input.mostrarSeparador();
                 System.out.println("  1. Gestión de Dispositivos IoT");
                 System.out.println("  2. Gestión de Configuraciones de Red");
@@ -186,10 +194,11 @@ public class AppMenu {
                 input.mostrarEncabezado("OPERACIONES AVANZADAS");
                 System.out.println("  1. Crear dispositivo CON configuración de red (transacción)");
                 System.out.println("  2. Ver estadísticas del sistema");
-                System.out.println("  3. Volver al menú principal");
+                System.out.println("  3. Ver métricas de rendimiento");
+                System.out.println("  4. Volver al menú principal");
                 input.mostrarSeparador();
 
-                int opcion = input.leerIntRango("Seleccione una opción: ", 1, 3);
+                int opcion = input.leerIntRango("Seleccione una opción: ", 1, 4);
 
                 switch (opcion) {
                     case 1:
@@ -199,6 +208,9 @@ public class AppMenu {
                         verEstadisticas();
                         break;
                     case 3:
+                        verMetricas();
+                        break;
+                    case 4:
                         volver = true;
                         break;
                 }
@@ -594,4 +606,17 @@ public class AppMenu {
 
         input.pausar();
     }
+
+    private void verMetricas() {
+        input.mostrarEncabezado("MÉTRICAS DE RENDIMIENTO");
+
+        System.out.print(MetricsRegistry.generarReporte());
+
+        if (input.leerBoolean("\n¿Desea reiniciar las métricas?")) {
+            MetricsRegistry.reiniciar();
+            input.mostrarExito("Métricas reiniciadas");
+        }
+
+        input.pausar();
+    }
 }
@@ -0,0 +1,132 @@
+package main;
+
+import entities.ReglaAlerta;
+import service.MotorReglas;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmark del {@link MotorReglas} (no usa la BD): registra una flota
+ * sintética, evalúa lotes de lecturas como lo hace el escritor de la ingesta
+ * y reporta lecturas por segundo, bytes asignados por lectura y
+ * recolecciones de basura durante la medición.
+ *
+ * Uso: {@code java -cp build main.BenchmarkReglas [dispositivos] [lecturas] [loteFilas]}
+ * (por defecto 100000 dispositivos, 50000000 lecturas, lotes de 5000).
+ *
+ * @version 1.0
+ */
+public class BenchmarkReglas {
+
+    private static final String[] MODELOS = {"SENSOR-T1", "SENSOR-T2", "SENSOR-H1", "GATEWAY-G1", "CAMARA-C1"};
+    private static final int UBICACIONES = 20;
+
+    public static void main(String[] args) throws Exception {
+        int dispositivos = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long lecturas = args.length > 1 ? Long.parseLong(args[1]) : 50_000_000L;
+        int loteFilas = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+
+        StringBuilder definiciones = new StringBuilder();
+        for (int i = 0; i < MODELOS.length; i++) {
+            definiciones.append("alta-").append(i).append(": > 70, x3, modelo=").append(MODELOS[i])
+                    .append(", ubicacion=Planta ").append(i).append(';');
+            definiciones.append("baja-").append(i).append(": <= 2, x5, modelo=").append(MODELOS[i]).append(';');
+        }
+        definiciones.append("critica: >= 95, x2");
+
+        MotorReglas motor = new MotorReglas(MotorReglas.parsear(definiciones.toString()));
+        LongAdder alertas = new LongAdder();
+        motor.setConsumidor(lote -> alertas.add(lote.size()));
+        for (int id = 1; id <= dispositivos; id++) {
+            motor.registrarDispositivo(id, MODELOS[id % MODELOS.length], "Planta " + (id % UBICACIONES));
+        }
+
+        // Lotes pregenerados: la medición no incluye la generación de lecturas
+        Random random = new Random(42);
+        int cantidadLotes = 64;
+        long[][] ids = new long[cantidadLotes][loteFilas];
+        double[][] valores = new double[cantidadLotes][loteFilas];
+        for (int l = 0; l < cantidadLotes; l++) {
+            for (int i = 0; i < loteFilas; i++) {
+                ids[l][i] = 1 + random.nextInt(dispositivos);
+                valores[l][i] = random.nextDouble() * 100;
+            }
+        }
+        long[] marcas = new long[loteFilas];
+
+        System.out.println("Reglas: " + motor.getReglas() + ", dispositivos: " + motor.getDispositivos()
+                + ", lote: " + loteFilas + " lecturas");
+
+        // Calentamiento (compilación JIT)
+        long instante = 0;
+        for (int l = 0; l < 2000; l++) {
+            instante = llenarMarcas(marcas, instante);
+            motor.evaluar(ids[l % cantidadLotes], marcas, valores[l % cantidadLotes], loteFilas);
+        }
+
+        ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        long gcAntes = recolecciones();
+        long gcMsAntes = tiempoRecolecciones();
+        long bytesAntes = bytesAsignados(hilos);
+        long alertasAntes = alertas.sum();
+        long inicio = System.nanoTime();
+
+        long lotes = lecturas / loteFilas;
+        for (long l = 0; l < lotes; l++) {
+            instante = llenarMarcas(marcas, instante);
+            int k = (int) (l % cantidadLotes);
+            motor.evaluar(ids[k], marcas, valores[k], loteFilas);
+        }
+
+        long nanos = System.nanoTime() - inicio;
+        long bytes = bytesAsignados(hilos) - bytesAntes;
+        long evaluadas = lotes * loteFilas;
+
+        System.out.printf("Lecturas evaluadas: %,d en %.2f s -> %,.0f lecturas/s%n",
+                evaluadas, nanos / 1e9, evaluadas * 1e9 / nanos);
+        System.out.printf("Alertas emitidas: %,d%n", alertas.sum() - alertasAntes);
+        if (bytes >= 0) {
+            System.out.printf("Bytes asignados: %,d (%.3f por lectura; incluye alertas y métricas)%n",
+                    bytes, (double) bytes / evaluadas);
+        }
+        System.out.printf("Recolecciones de basura: %d (%d ms)%n",
+                recolecciones() - gcAntes, tiempoRecolecciones() - gcMsAntes);
+    }
+
+    private static long llenarMarcas(long[] marcas, long instante) {
+        for (int i = 0; i < marcas.length; i++) {
+            marcas[i] = ++instante;
+        }
+        return instante;
+    }
+
+    private static long recolecciones() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long tiempoRecolecciones() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * @return bytes asignados por el hilo actual, o -1 si la JVM no lo informa
+     */
+    private static long bytesAsignados(ThreadMXBean hilos) {
+        if (hilos instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) hilos).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
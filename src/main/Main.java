@@ -1,6 +1,24 @@
 package main;
 
+import config.AppConfig;
 import config.DatabaseConnection;
+import dao.DaoFactory;
+import entities.DispositivoIoT;
+import metrics.MetricsReporter;
+import net.ConsumidorTramas;
+import net.Protocolo;
+import net.ServidorDispositivos;
+import service.ArchivoService;
+import service.DispositivoIoTService;
+import service.HeartbeatTracker;
+import service.ModoDegradado;
+import service.MotorReglas;
+import service.ObservadorDispositivos;
+import service.RolloutScheduler;
+import service.TelemetriaIngestor;
+import service.TelemetriaRollupService;
+
+import java.io.IOException;
 
 /**
  * Clase principal del sistema de gestión de dispositivos IoT.
@@ -15,7 +33,18 @@ public class Main {
         mostrarBanner();
 
         // Verificar conexión a la base de datos
-        if (!DatabaseConnection.testConnection()) {
+        boolean bdDisponible = DatabaseConnection.testConnection();
+        // Servicios en segundo plano que escriben en tablas de MySQL (sin BD o con dao.almacen=memoria/archivo no se inician)
+        boolean conMySql = bdDisponible && !DatabaseConnection.enMemoria();
+
+        // Modo degradado: lecturas desde la copia local mientras la BD no esté disponible
+        ModoDegradado modoDegradado = ModoDegradado.getInstancia();
+        if (AppConfig.getBoolean("degradado.enabled", true) && !DatabaseConnection.enMemoria()) {
+            modoDegradado.iniciar(AppConfig.getLong("degradado.verificacionSegundos", 10),
+                    AppConfig.getLong("degradado.refrescoSegundos", 300));
+        }
+
+        if (!bdDisponible && !modoDegradado.tieneCopia()) {
             System.err.println("\n❌ ERROR: No se pudo conectar a la base de datos.");
             System.err.println("Verifique:");
             System.err.println("  1. El archivo config.properties existe y tiene las credenciales correctas");
@@ -24,16 +53,198 @@ public class Main {
             System.exit(1);
         }
 
-        System.out.println("✅ Conexión a la base de datos exitosa\n");
+        if (DatabaseConnection.enMemoria()) {
+            try {
+                DaoFactory.abrirAlmacen();
+            } catch (IOException e) {
+                System.err.println("\n❌ ERROR: No se pudo recuperar el almacén persistente: " + e.getMessage());
+                System.exit(1);
+            }
+            System.out.println("archivo".equals(DatabaseConnection.almacen())
+                    ? "✅ Almacén persistente (dao.almacen=archivo): sin MySQL; los datos se guardan en un diario local y"
+                    : "✅ Almacén en memoria (dao.almacen=memoria): sin MySQL; los datos no persisten y");
+            System.out.println("   rollouts, telemetría, heartbeats y outbox quedan deshabilitados\n");
+        } else if (bdDisponible) {
+            System.out.println("✅ Conexión a la base de datos exitosa\n");
+        } else {
+            System.err.println("\n⚠ No se pudo conectar a la base de datos: MODO DEGRADADO (solo lectura)");
+            System.err.println("  Consultas desde la copia local de hace " + modoDegradado.getAntiguedadMs() / 60000
+                    + " min; las altas, modificaciones y bajas se rechazan hasta que vuelva la conexión.");
+            System.err.println("  Los servicios en segundo plano que escriben en la BD no se inician.\n");
+        }
+
+        // Volcado periódico de métricas (deshabilitado si el intervalo es 0)
+        MetricsReporter reporter = null;
+        long intervaloMetricas = AppConfig.getLong("metrics.report.intervalSeconds", 0);
+        if (intervaloMetricas > 0) {
+            reporter = new MetricsReporter(AppConfig.getString("metrics.report.file", "metrics.log"), intervaloMetricas);
+            reporter.iniciar();
+        }
+
+        // Retomar los rollouts de firmware en curso
+        if (conMySql && AppConfig.getBoolean("rollout.scheduler.enabled", true)) {
+            RolloutScheduler.getInstancia().iniciar();
+        }
+
+        // Escritor de la ingesta de telemetría, con las reglas de alerta configuradas
+        if (conMySql && AppConfig.getBoolean("telemetria.enabled", true)) {
+            iniciarMotorReglas();
+            TelemetriaIngestor.getInstancia().iniciar();
+        }
+
+        // Rollups periódicos de telemetría (deshabilitados si el intervalo es 0)
+        TelemetriaRollupService rollups = null;
+        long intervaloRollups = AppConfig.getLong("rollup.intervaloSegundos", 60);
+        if (conMySql && intervaloRollups > 0) {
+            rollups = new TelemetriaRollupService();
+            rollups.iniciar(intervaloRollups);
+        }
+
+        // Últimas señales de los dispositivos (volcado deshabilitado si el intervalo es 0)
+        long volcadoHeartbeats = AppConfig.getLong("heartbeat.volcadoSegundos", 30);
+        if (conMySql && volcadoHeartbeats > 0) {
+            HeartbeatTracker.getInstancia().iniciar(volcadoHeartbeats);
+        }
+
+        // Archivo de bajas lógicas antiguas (deshabilitado si el intervalo es 0)
+        ArchivoService archivo = null;
+        long intervaloArchivo = AppConfig.getLong("archivo.intervaloSegundos", 3600);
+        if (conMySql && intervaloArchivo > 0) {
+            archivo = new ArchivoService();
+            archivo.iniciar(intervaloArchivo);
+        }
+
+        // Servidor de tramas de los dispositivos (heartbeats y telemetría)
+        ServidorDispositivos servidor = null;
+        if (conMySql && AppConfig.getBoolean("red.enabled", false)) {
+            servidor = iniciarServidorDispositivos();
+        }
 
         // Iniciar el menú principal
         AppMenu menu = new AppMenu();
         menu.mostrarMenuPrincipal();
 
+        if (reporter != null) {
+            reporter.detener();
+        }
+        if (rollups != null) {
+            rollups.detener();
+        }
+        if (archivo != null) {
+            archivo.detener();
+        }
+        if (servidor != null) {
+            servidor.detener();
+        }
+        RolloutScheduler.getInstancia().detener();
+        HeartbeatTracker.getInstancia().detener();
+        TelemetriaIngestor.getInstancia().detener(AppConfig.getLong("telemetria.esperaCierreMs", 10000));
+        modoDegradado.detener();
+        DaoFactory.cerrar();
+        DatabaseConnection.cerrarPool();
+
         System.out.println("\n¡Gracias por usar el Sistema de Gestión de Dispositivos IoT!");
         System.out.println("Desarrollado por: Gustavo Tiseira, David Vergara, Mauricio López");
     }
 
+    /**
+     * Compila las reglas de alertas.reglas (si hay) y las asigna a la ingesta.
+     * Los cambios de dispositivos que confirma DispositivoIoTService actualizan el motor.
+     * Una regla inválida deja la ingesta sin alertas, pero no impide arrancar.
+     */
+    private static void iniciarMotorReglas() {
+        String definiciones = AppConfig.getString("alertas.reglas", "");
+        if (definiciones.trim().isEmpty()) {
+            return;
+        }
+        MotorReglas motor;
+        try {
+            motor = new MotorReglas(MotorReglas.parsear(definiciones));
+        } catch (Exception e) {
+            System.err.println("⚠ Reglas de alerta deshabilitadas: " + e.getMessage());
+            return;
+        }
+        // Registrado antes de la carga, igual que el mapa de seriales del servidor
+        ObservadorDispositivos registro = new ObservadorDispositivos() {
+            @Override
+            public void registrado(DispositivoIoT dispositivo) {
+                motor.registrarDispositivo(dispositivo.getId(), dispositivo.getModelo(), dispositivo.getUbicacion());
+            }
+
+            @Override
+            public void eliminado(DispositivoIoT dispositivo) {
+                motor.eliminarDispositivo(dispositivo.getId());
+            }
+
+            @Override
+            public void serialCambiado(DispositivoIoT anterior, DispositivoIoT dispositivo) {
+                // Mismo ID: el motor no usa el serial, conserva las rachas
+                registrado(dispositivo);
+            }
+        };
+        DispositivoIoTService.agregarObservador(registro);
+        try {
+            long dispositivos = motor.cargarDispositivos();
+            TelemetriaIngestor.getInstancia().setMotorReglas(motor);
+            System.out.println("✅ Reglas de alerta: " + motor.getReglas() + " (" + dispositivos + " dispositivos)\n");
+        } catch (Exception e) {
+            DispositivoIoTService.quitarObservador(registro);
+            System.err.println("⚠ Reglas de alerta deshabilitadas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Abre el servidor de dispositivos: los heartbeats van a HeartbeatTracker
+     * y la telemetría a TelemetriaIngestor. Los cambios de dispositivos que
+     * confirma DispositivoIoTService actualizan su mapa de seriales.
+     *
+     * @return el servidor iniciado, o null si no se pudo abrir
+     */
+    private static ServidorDispositivos iniciarServidorDispositivos() {
+        ServidorDispositivos servidor = new ServidorDispositivos(
+                AppConfig.getString("red.host", "127.0.0.1"), AppConfig.getInt("red.puerto", 7070),
+                new ConsumidorTramas() {
+                    @Override
+                    public void heartbeat(long dispositivoId, long recibido) {
+                        HeartbeatTracker.getInstancia().registrar(dispositivoId, recibido);
+                    }
+
+                    @Override
+                    public void telemetria(long dispositivoId, long instante, double valor) {
+                        TelemetriaIngestor.getInstancia().ofrecer(dispositivoId, instante, valor);
+                    }
+                });
+        // Altas, bajas y cambios de serial confirmados mientras corre (registrado antes
+        // de cargar los seriales, así no se pierden los que confirman durante la carga)
+        ObservadorDispositivos seriales = new ObservadorDispositivos() {
+            @Override
+            public void registrado(DispositivoIoT dispositivo) {
+                if (dispositivo.getSerial().length() == Protocolo.LONGITUD_SERIAL) {
+                    servidor.registrarSerial(dispositivo.getSerial(), dispositivo.getId());
+                }
+            }
+
+            @Override
+            public void eliminado(DispositivoIoT dispositivo) {
+                if (dispositivo.getSerial().length() == Protocolo.LONGITUD_SERIAL) {
+                    servidor.olvidarSerial(dispositivo.getSerial());
+                }
+            }
+        };
+        DispositivoIoTService.agregarObservador(seriales);
+        try {
+            long cargados = servidor.cargarSeriales();
+            servidor.iniciar();
+            System.out.println("✅ Servidor de dispositivos en el puerto " + servidor.getPuerto()
+                    + " (" + cargados + " seriales)\n");
+            return servidor;
+        } catch (Exception e) {
+            DispositivoIoTService.quitarObservador(seriales);
+            System.err.println("⚠ Servidor de dispositivos deshabilitado: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Muestra el banner de bienvenida de la aplicación.
      */
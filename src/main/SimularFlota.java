@@ -0,0 +1,117 @@
+package main;
+
+import config.AppConfig;
+import entities.DispositivoIoT;
+import exceptions.DuplicateEntityException;
+import net.ConsumidorTramas;
+import net.ServidorDispositivos;
+import service.DispositivoIoTService;
+import sim.SimuladorFlota;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de carga de la ingesta con una flota simulada ({@link SimuladorFlota}).
+ *
+ * Uso: {@code java -cp build:lib/* main.SimularFlota [dispositivos] [conexiones] [segundos] [modo]}
+ * (por defecto 100000 dispositivos, 1000 conexiones, 60 segundos). Modos:
+ * <ul>
+ *   <li>{@code local} (por defecto): levanta un ServidorDispositivos en esta
+ *       JVM, en un puerto libre de 127.0.0.1, que solo cuenta las tramas. No usa la BD.</li>
+ *   <li>{@code remoto}: envía a red.host:red.puerto (la aplicación con red.enabled=true).</li>
+ *   <li>{@code provisionar}: da de alta en la BD los dispositivos simulados
+ *       que falten (para que el servidor remoto conozca sus seriales) y termina.</li>
+ * </ul>
+ * Los parámetros de envío (intervalos, jitter, desfase, tormentas) son las claves sim.*.
+ *
+ * @version 1.0
+ */
+public class SimularFlota {
+
+    public static void main(String[] args) throws Exception {
+        int dispositivos = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int conexiones = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long segundos = args.length > 2 ? Long.parseLong(args[2]) : 60;
+        String modo = args.length > 3 ? args[3] : "local";
+
+        String host = AppConfig.getString("red.host", "127.0.0.1");
+        int puerto = AppConfig.getInt("red.puerto", 7070);
+        ServidorDispositivos servidor = null;
+        LongAdder recibidas = new LongAdder();
+
+        if ("provisionar".equals(modo)) {
+            provisionar(new SimuladorFlota(host, puerto, dispositivos, conexiones));
+            return;
+        }
+        if ("local".equals(modo)) {
+            servidor = new ServidorDispositivos("127.0.0.1", 0, new ConsumidorTramas() {
+                @Override
+                public void heartbeat(long dispositivoId, long recibido) {
+                    recibidas.increment();
+                }
+
+                @Override
+                public void telemetria(long dispositivoId, long instante, double valor) {
+                    recibidas.increment();
+                }
+            });
+            servidor.iniciar();
+            host = "127.0.0.1";
+            puerto = servidor.getPuerto();
+        }
+
+        SimuladorFlota flota = new SimuladorFlota(host, puerto, dispositivos, conexiones);
+        if (servidor != null) {
+            for (int i = 0; i < dispositivos; i++) {
+                servidor.registrarSerial(flota.serial(i), i + 1);
+            }
+        }
+
+        System.out.println("Simulando " + dispositivos + " dispositivos en " + conexiones
+                + " conexiones hacia " + host + ":" + puerto + " durante " + segundos + " s");
+        flota.iniciar();
+
+        long enviadasAntes = 0;
+        for (long s = 1; s <= segundos; s++) {
+            Thread.sleep(1000);
+            long enviadas = flota.getHeartbeats() + flota.getLecturas();
+            System.out.printf("[%3d s] enviadas/s: %,d  heartbeats: %,d  lecturas: %,d  descartadas: %,d  "
+                            + "reconexiones: %,d  errores: %,d%s%n",
+                    s, enviadas - enviadasAntes, flota.getHeartbeats(), flota.getLecturas(), flota.getDescartadas(),
+                    flota.getReconexiones(), flota.getErroresConexion(),
+                    servidor != null ? String.format("  recibidas: %,d  conexiones: %,d",
+                            recibidas.sum(), servidor.getConexionesAbiertas()) : "");
+            enviadasAntes = enviadas;
+        }
+
+        flota.detener();
+        if (servidor != null) {
+            Thread.sleep(500);
+            servidor.detener();
+            System.out.printf("Total enviadas: %,d  recibidas: %,d%n",
+                    flota.getHeartbeats() + flota.getLecturas(), recibidas.sum());
+        }
+    }
+
+    /**
+     * Da de alta los dispositivos simulados que no existen en la BD.
+     */
+    private static void provisionar(SimuladorFlota flota) throws Exception {
+        DispositivoIoTService servicio = new DispositivoIoTService();
+        int creados = 0;
+        for (int i = 0; i < flota.getDispositivos(); i++) {
+            DispositivoIoT dispositivo = new DispositivoIoT();
+            dispositivo.setSerial(flota.serial(i));
+            dispositivo.setModelo(flota.modelo(i));
+            dispositivo.setUbicacion("Simulador " + (i % 100));
+            dispositivo.setFirmwareVersion("v1.0.0");
+            try {
+                servicio.insertar(dispositivo);
+                creados++;
+            } catch (DuplicateEntityException e) {
+                // Ya provisionado en una corrida anterior
+            }
+        }
+        System.out.println("Dispositivos simulados creados: " + creados + " de " + flota.getDispositivos());
+    }
+}
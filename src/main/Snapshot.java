@@ -0,0 +1,116 @@
+package main;
+
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+import service.SnapshotService;
+import store.EscritorSnapshot;
+import store.SnapshotFlota;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Herramienta de snapshots binarios de la flota ({@link SnapshotFlota}).
+ *
+ * Uso: {@code java -cp build:lib/* main.Snapshot <comando> [archivo] ...}
+ * (archivo por defecto: snapshot.archivo). Comandos:
+ * <ul>
+ *   <li>{@code exportar [archivo]}: exporta los dispositivos activos de la BD.</li>
+ *   <li>{@code consultar [archivo] id|serial|ip <valor>}: carga el snapshot y busca un dispositivo.</li>
+ *   <li>{@code generar [archivo] [dispositivos]}: escribe un snapshot sintético
+ *       (por defecto 1.000.000 de dispositivos, sin BD) y mide su carga y búsquedas.</li>
+ * </ul>
+ *
+ * @version 1.0
+ */
+public class Snapshot {
+
+    public static void main(String[] args) throws Exception {
+        String comando = args.length > 0 ? args[0] : "";
+        Path archivo = args.length > 1 ? Paths.get(args[1]) : SnapshotService.archivoConfigurado();
+        SnapshotService servicio = new SnapshotService();
+
+        switch (comando) {
+            case "exportar":
+                servicio.exportar(archivo);
+                break;
+            case "consultar":
+                if (args.length < 4) {
+                    uso();
+                    return;
+                }
+                SnapshotFlota snapshot = servicio.cargar(archivo);
+                DispositivoIoT dispositivo;
+                if ("id".equals(args[2])) {
+                    dispositivo = snapshot.porId(Long.parseLong(args[3]));
+                } else if ("serial".equals(args[2])) {
+                    dispositivo = snapshot.porSerial(args[3].toUpperCase());
+                } else {
+                    dispositivo = snapshot.porIp(args[3]);
+                }
+                System.out.println(dispositivo != null ? dispositivo.toDetailedString() : "No encontrado");
+                break;
+            case "generar":
+                generar(servicio, archivo, args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+                break;
+            default:
+                uso();
+        }
+    }
+
+    private static void uso() {
+        System.out.println("Uso: main.Snapshot exportar [archivo]");
+        System.out.println("     main.Snapshot consultar [archivo] id|serial|ip <valor>");
+        System.out.println("     main.Snapshot generar [archivo] [dispositivos]");
+    }
+
+    /**
+     * Escribe un snapshot sintético y mide la carga y las búsquedas.
+     */
+    private static void generar(SnapshotService servicio, Path archivo, int dispositivos) throws Exception {
+        long inicio = System.nanoTime();
+        try (EscritorSnapshot escritor = new EscritorSnapshot(archivo)) {
+            for (int i = 0; i < dispositivos; i++) {
+                escritor.agregar(sintetico(i));
+            }
+            escritor.terminar();
+        }
+        System.out.printf("Generados %,d dispositivos en %d ms%n", dispositivos, (System.nanoTime() - inicio) / 1_000_000);
+
+        SnapshotFlota snapshot = servicio.cargar(archivo);
+        int encontrados = 0;
+        inicio = System.nanoTime();
+        for (int i = 0; i < dispositivos; i++) {
+            DispositivoIoT dispositivo = sintetico(i);
+            if (snapshot.porId(dispositivo.getId()) != null
+                    && snapshot.porSerial(dispositivo.getSerial()) != null
+                    && (dispositivo.getConfiguracionRed().getDhcpHabilitado()
+                        || snapshot.porIp(dispositivo.getConfiguracionRed().getIp()) != null)) {
+                encontrados++;
+            }
+        }
+        long nanos = System.nanoTime() - inicio;
+        System.out.printf("Búsquedas por id, serial e ip: %,d de %,d encontrados, %.0f ns por dispositivo%n",
+                encontrados, dispositivos, (double) nanos / dispositivos);
+    }
+
+    private static DispositivoIoT sintetico(int i) {
+        String base36 = Integer.toString(i, 36).toUpperCase();
+        String serial = "SNP-" + "0000".substring(Math.min(4, base36.length())) + base36;
+        DispositivoIoT dispositivo = new DispositivoIoT(serial, "SENSORTEMP", "Planta " + (i % 500), "v1.2." + (i % 7));
+        dispositivo.setId((long) i + 1);
+
+        ConfiguracionRed configuracion = new ConfiguracionRed();
+        configuracion.setId((long) i + 1);
+        configuracion.setDispositivoId((long) i + 1);
+        configuracion.setDhcpHabilitado(i % 4 == 0);
+        if (!configuracion.getDhcpHabilitado()) {
+            configuracion.setIp("10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF));
+            configuracion.setMascara("255.0.0.0");
+            configuracion.setGateway("10.0.0.1");
+            configuracion.setDnsPrimario("8.8.8.8");
+        }
+        dispositivo.setConfiguracionRed(configuracion);
+        return dispositivo;
+    }
+}
@@ -0,0 +1,166 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias de estilo HDR (log-lineal) con registro sin bloqueos.
+ *
+ * Los valores (en nanosegundos) se agrupan en buckets cuyo ancho crece en
+ * potencias de 2: cada potencia se divide en 64 sub-buckets lineales, lo que
+ * da un error relativo máximo de ~1.6% en cualquier percentil. El registro es
+ * un único incremento atómico sobre un arreglo fijo, sin locks ni asignaciones.
+ *
+ * Los valores superiores a {@link #VALOR_MAXIMO} (2^43 - 1 ns, ~146 minutos) se acumulan en
+ * el último bucket.
+ *
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    // 2^7 = 128 valores exactos; a partir de ahí, 64 sub-buckets por potencia de 2
+    private static final int BITS_SUB_BUCKET = 7;
+    private static final int MITAD_SUB_BUCKETS = 1 << (BITS_SUB_BUCKET - 1);
+    private static final int BIT_MAXIMO = 42;
+
+    /** Mayor valor (en ns) que se registra con precisión. */
+    public static final long VALOR_MAXIMO = (1L << (BIT_MAXIMO + 1)) - 1;
+
+    private static final int CANTIDAD_BUCKETS = indiceDe(VALOR_MAXIMO) + 1;
+
+    private final AtomicLongArray conteos = new AtomicLongArray(CANTIDAD_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * Registra un valor en el histograma. Seguro para uso concurrente.
+     *
+     * @param valorNanos latencia en nanosegundos (los negativos se registran como 0)
+     */
+    public void registrar(long valorNanos) {
+        long valor = valorNanos < 0 ? 0 : Math.min(valorNanos, VALOR_MAXIMO);
+        conteos.incrementAndGet(indiceDe(valor));
+        total.increment();
+        suma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    /**
+     * Obtiene una copia consistente por bucket del estado actual.
+     * La copia no es atómica entre buckets, lo cual es aceptable para métricas.
+     *
+     * @return instantánea del histograma
+     */
+    public Snapshot snapshot() {
+        long[] copia = new long[CANTIDAD_BUCKETS];
+        long cantidad = 0;
+        for (int i = 0; i < CANTIDAD_BUCKETS; i++) {
+            copia[i] = conteos.get(i);
+            cantidad += copia[i];
+        }
+        return new Snapshot(copia, cantidad, suma.sum(), maximo.get());
+    }
+
+    /**
+     * Reinicia todos los contadores a cero.
+     */
+    public void reiniciar() {
+        for (int i = 0; i < CANTIDAD_BUCKETS; i++) {
+            conteos.set(i, 0);
+        }
+        total.reset();
+        suma.reset();
+        maximo.reset();
+    }
+
+    /**
+     * Cantidad de valores registrados.
+     *
+     * @return total de registros
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Calcula el bucket que corresponde a un valor.
+     */
+    static int indiceDe(long valor) {
+        if (valor < (1L << BITS_SUB_BUCKET)) {
+            return (int) valor;
+        }
+        int exponente = (63 - Long.numberOfLeadingZeros(valor)) - (BITS_SUB_BUCKET - 1);
+        return exponente * MITAD_SUB_BUCKETS + (int) (valor >>> exponente);
+    }
+
+    /**
+     * Mayor valor que cae dentro de un bucket.
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < (1 << BITS_SUB_BUCKET)) {
+            return indice;
+        }
+        int exponente = indice / MITAD_SUB_BUCKETS - 1;
+        long mantisa = indice % MITAD_SUB_BUCKETS + MITAD_SUB_BUCKETS;
+        return ((mantisa + 1) << exponente) - 1;
+    }
+
+    /**
+     * Instantánea inmutable de un histograma, sobre la que se calculan percentiles.
+     */
+    public static class Snapshot {
+
+        private final long[] conteos;
+        private final long total;
+        private final long suma;
+        private final long maximo;
+
+        Snapshot(long[] conteos, long total, long suma, long maximo) {
+            this.conteos = conteos;
+            this.total = total;
+            this.suma = suma;
+            this.maximo = maximo;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMaximo() {
+            return maximo;
+        }
+
+        /**
+         * Latencia promedio en nanosegundos.
+         *
+         * @return promedio, o 0 si no hay registros
+         */
+        public double getPromedio() {
+            return total == 0 ? 0.0 : (double) suma / total;
+        }
+
+        /**
+         * Calcula un percentil (ej: 50, 99, 99.9).
+         *
+         * @param percentil valor entre 0 y 100
+         * @return latencia en nanosegundos del percentil pedido, o 0 si no hay registros
+         */
+        public long percentil(double percentil) {
+            if (total == 0) {
+                return 0;
+            }
+            double p = Math.max(0.0, Math.min(100.0, percentil));
+            long rango = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+            long acumulado = 0;
+            for (int i = 0; i < conteos.length; i++) {
+                acumulado += conteos[i];
+                if (acumulado >= rango) {
+                    return Math.min(limiteSuperior(i), maximo);
+                }
+            }
+            return maximo;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registro global de métricas por operación.
+ *
+ * Cada DAO, servicio y DatabaseConnection obtiene su {@link OperationMetrics}
+ * una sola vez (en un campo static final), por lo que el registro de cada
+ * invocación no hace búsquedas en el mapa.
+ *
+ * Además de latencias, admite contadores simples (ej: aciertos de caché) e
+ * indicadores calculados al momento de generar el reporte (ej: tasa de aciertos).
+ *
+ * @version 1.0
+ */
+public class MetricsRegistry {
+
+    private static final ConcurrentMap<String, OperationMetrics> OPERACIONES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> CONTADORES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, DoubleSupplier> INDICADORES = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor privado para prevenir instanciación.
+     */
+    private MetricsRegistry() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * Obtiene (o crea) las métricas de una operación.
+     *
+     * @param nombre nombre de la operación, ej: "DispositivoIoTDao.leer"
+     * @return métricas de la operación
+     */
+    public static OperationMetrics operacion(String nombre) {
+        OperationMetrics metricas = OPERACIONES.get(nombre);
+        if (metricas == null) {
+            metricas = OPERACIONES.computeIfAbsent(nombre, OperationMetrics::new);
+        }
+        return metricas;
+    }
+
+    /**
+     * Obtiene (o crea) un contador.
+     *
+     * @param nombre nombre del contador, ej: "StatementCache.aciertos"
+     * @return contador (conviene guardarlo en un campo static final)
+     */
+    public static LongAdder contador(String nombre) {
+        LongAdder contador = CONTADORES.get(nombre);
+        if (contador == null) {
+            contador = CONTADORES.computeIfAbsent(nombre, k -> new LongAdder());
+        }
+        return contador;
+    }
+
+    /**
+     * Registra un indicador cuyo valor se calcula al momento de leerlo.
+     *
+     * @param nombre nombre del indicador, ej: "StatementCache.tasaAciertos"
+     * @param valor función que calcula el valor actual
+     */
+    public static void registrarIndicador(String nombre, DoubleSupplier valor) {
+        INDICADORES.put(nombre, valor);
+    }
+
+    /**
+     * Obtiene el valor actual de un contador.
+     *
+     * @param nombre nombre del contador
+     * @return valor, o 0 si el contador no existe
+     */
+    public static long valorContador(String nombre) {
+        LongAdder contador = CONTADORES.get(nombre);
+        return contador != null ? contador.sum() : 0;
+    }
+
+    /**
+     * Obtiene el valor actual de un indicador.
+     *
+     * @param nombre nombre del indicador
+     * @return valor, o NaN si el indicador no existe
+     */
+    public static double valorIndicador(String nombre) {
+        DoubleSupplier valor = INDICADORES.get(nombre);
+        return valor != null ? valor.getAsDouble() : Double.NaN;
+    }
+
+    /**
+     * Obtiene instantáneas de todas las operaciones, ordenadas por nombre.
+     *
+     * @return lista de instantáneas
+     */
+    public static List<OperationMetrics.Snapshot> snapshots() {
+        List<OperationMetrics.Snapshot> resultado = new ArrayList<>();
+        for (OperationMetrics metricas : OPERACIONES.values()) {
+            resultado.add(metricas.snapshot());
+        }
+        Collections.sort(resultado, Comparator.comparing(OperationMetrics.Snapshot::getNombre));
+        return resultado;
+    }
+
+    /**
+     * Obtiene la instantánea de una operación.
+     *
+     * @param nombre nombre de la operación
+     * @return instantánea, o null si la operación nunca fue registrada
+     */
+    public static OperationMetrics.Snapshot snapshot(String nombre) {
+        OperationMetrics metricas = OPERACIONES.get(nombre);
+        return metricas != null ? metricas.snapshot() : null;
+    }
+
+    /**
+     * Reinicia las métricas de todas las operaciones y los contadores.
+     */
+    public static void reiniciar() {
+        for (OperationMetrics metricas : OPERACIONES.values()) {
+            metricas.reiniciar();
+        }
+        for (LongAdder contador : CONTADORES.values()) {
+            contador.reset();
+        }
+    }
+
+    /**
+     * Genera un reporte de texto con las operaciones invocadas al menos una vez.
+     * Las latencias se expresan en milisegundos.
+     *
+     * @return reporte en formato tabla
+     */
+    public static String generarReporte() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("  %-52s %9s %7s %9s %9s %9s %9s %9s%n",
+                "OPERACIÓN", "CANTIDAD", "ERRORES", "PROM(ms)", "P50(ms)", "P99(ms)", "P999(ms)", "MAX(ms)"));
+
+        for (OperationMetrics.Snapshot s : snapshots()) {
+            if (s.getInvocaciones() == 0) {
+                continue;
+            }
+            sb.append(String.format("  %-52s %9d %7d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    s.getNombre(),
+                    s.getInvocaciones(),
+                    s.getErrores(),
+                    s.getPromedioNanos() / 1_000_000.0,
+                    s.getP50Nanos() / 1_000_000.0,
+                    s.getP99Nanos() / 1_000_000.0,
+                    s.getP999Nanos() / 1_000_000.0,
+                    s.getMaximoNanos() / 1_000_000.0));
+        }
+
+        if (!CONTADORES.isEmpty() || !INDICADORES.isEmpty()) {
+            sb.append(String.format("%n  %-52s %15s%n", "CONTADOR / INDICADOR", "VALOR"));
+            for (String nombre : new TreeSet<>(CONTADORES.keySet())) {
+                sb.append(String.format("  %-52s %15d%n", nombre, valorContador(nombre)));
+            }
+            for (String nombre : new TreeSet<>(INDICADORES.keySet())) {
+                sb.append(String.format("  %-52s %15.3f%n", nombre, valorIndicador(nombre)));
+            }
+        }
+        return sb.toString();
+    }
+}
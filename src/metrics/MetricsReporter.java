@@ -0,0 +1,74 @@
+package metrics;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vuelca periódicamente el reporte de MetricsRegistry a un archivo de texto.
+ *
+ * Se escribe a archivo (y no a la consola) para no interferir con el menú
+ * interactivo. El hilo es daemon, así que no impide la salida de la aplicación.
+ *
+ * @version 1.0
+ */
+public class MetricsReporter {
+
+    private final String archivo;
+    private final long intervaloSegundos;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param archivo ruta del archivo donde se agregan los reportes
+     * @param intervaloSegundos intervalo entre volcados
+     */
+    public MetricsReporter(String archivo, long intervaloSegundos) {
+        this.archivo = archivo;
+        this.intervaloSegundos = intervaloSegundos;
+    }
+
+    /**
+     * Inicia el volcado periódico.
+     */
+    public synchronized void iniciar() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::volcar, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+        System.out.println("[MetricsReporter] Volcando métricas cada " + intervaloSegundos + "s en " + archivo);
+    }
+
+    /**
+     * Detiene el volcado periódico y realiza un último volcado.
+     */
+    public synchronized void detener() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        volcar();
+    }
+
+    /**
+     * Agrega el reporte actual al archivo.
+     */
+    public void volcar() {
+        try (PrintWriter out = new PrintWriter(new FileWriter(archivo, true))) {
+            out.println("=== Métricas " + LocalDateTime.now() + " ===");
+            out.print(MetricsRegistry.generarReporte());
+            out.println();
+        } catch (IOException e) {
+            System.err.println("[MetricsReporter] Error al escribir " + archivo + ": " + e.getMessage());
+        }
+    }
+}
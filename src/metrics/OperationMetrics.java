@@ -0,0 +1,142 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de una operación concreta (ej: "DispositivoIoTDao.leer"):
+ * histograma de latencias, cantidad de invocaciones y cantidad de errores.
+ *
+ * Patrón de uso (sin asignaciones por llamada):
+ * <pre>
+ * long inicio = System.nanoTime();
+ * try {
+ *     ...
+ * } catch (SQLException e) {
+ *     METRICA.registrarError();
+ *     throw e;
+ * } finally {
+ *     METRICA.registrar(inicio);
+ * }
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class OperationMetrics {
+
+    private final String nombre;
+    private final LatencyHistogram histograma = new LatencyHistogram();
+    private final LongAdder errores = new LongAdder();
+
+    OperationMetrics(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Registra una invocación finalizada (exitosa o no).
+     *
+     * @param inicioNanos valor de System.nanoTime() al comenzar la operación
+     */
+    public void registrar(long inicioNanos) {
+        histograma.registrar(System.nanoTime() - inicioNanos);
+    }
+
+    /**
+     * Registra una invocación con una duración ya calculada.
+     *
+     * @param duracionNanos duración de la operación en nanosegundos
+     */
+    public void registrarDuracion(long duracionNanos) {
+        histograma.registrar(duracionNanos);
+    }
+
+    /**
+     * Cuenta una invocación que terminó con excepción.
+     * La latencia se registra igualmente con {@link #registrar(long)}.
+     */
+    public void registrarError() {
+        errores.increment();
+    }
+
+    /**
+     * Obtiene una instantánea de la operación.
+     *
+     * @return instantánea con conteos y percentiles
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(nombre, histograma.snapshot(), errores.sum());
+    }
+
+    /**
+     * Reinicia histograma y contadores.
+     */
+    public void reiniciar() {
+        histograma.reiniciar();
+        errores.reset();
+    }
+
+    /**
+     * Instantánea inmutable de las métricas de una operación.
+     */
+    public static class Snapshot {
+
+        private final String nombre;
+        private final LatencyHistogram.Snapshot histograma;
+        private final long errores;
+
+        Snapshot(String nombre, LatencyHistogram.Snapshot histograma, long errores) {
+            this.nombre = nombre;
+            this.histograma = histograma;
+            this.errores = errores;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public long getInvocaciones() {
+            return histograma.getTotal();
+        }
+
+        public long getErrores() {
+            return errores;
+        }
+
+        public double getPromedioNanos() {
+            return histograma.getPromedio();
+        }
+
+        public long getMaximoNanos() {
+            return histograma.getMaximo();
+        }
+
+        public long getP50Nanos() {
+            return histograma.percentil(50.0);
+        }
+
+        public long getP90Nanos() {
+            return histograma.percentil(90.0);
+        }
+
+        public long getP99Nanos() {
+            return histograma.percentil(99.0);
+        }
+
+        public long getP999Nanos() {
+            return histograma.percentil(99.9);
+        }
+
+        /**
+         * Percentil arbitrario en nanosegundos.
+         *
+         * @param percentil valor entre 0 y 100
+         * @return latencia del percentil
+         */
+        public long percentilNanos(double percentil) {
+            return histograma.percentil(percentil);
+        }
+    }
+}
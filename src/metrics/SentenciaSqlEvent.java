@@ -0,0 +1,43 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento de Java Flight Recorder emitido por cada sentencia SQL ejecutada
+ * desde los DAOs (plantilla SQL con '?', filas y duración).
+ *
+ * Para consultas, la duración abarca desde executeQuery hasta el cierre del
+ * ResultSet, y las filas son las efectivamente recorridas.
+ *
+ * Deshabilitado por defecto: mientras ninguna grabación lo active, las
+ * conexiones no se instrumentan (ver config.DatabaseConnection).
+ *
+ * @version 1.0
+ */
+@Name("iot.SentenciaSql")
+@Label("Sentencia SQL")
+@Description("Ejecución de un PreparedStatement desde la capa DAO")
+@Category({"IoT", "Base de Datos"})
+@Enabled(false)
+@StackTrace(true)
+public class SentenciaSqlEvent extends Event {
+
+    @Label("SQL")
+    public String sql;
+
+    @Label("Tipo")
+    @Description("QUERY, UPDATE, BATCH o EXECUTE")
+    public String tipo;
+
+    @Label("Filas")
+    public long filas;
+
+    @Label("Error")
+    public boolean error;
+}
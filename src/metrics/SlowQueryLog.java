@@ -0,0 +1,307 @@
+package metrics;
+
+import config.AppConfig;
+import config.DatabaseConnection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de consultas lentas.
+ *
+ * Cada sentencia cuya duración supera {@code slowquery.thresholdMs} se escribe
+ * como una línea JSON (SQL, parámetros, filas, duración, método de servicio
+ * que la originó y, opcionalmente, el plan EXPLAIN) en un archivo rotativo.
+ * El EXPLAIN se ejecuta en db.url: se omite para las sentencias que corrieron
+ * en un shard o una réplica (otra BD, con otros datos o estadísticas).
+ *
+ * La escritura y el EXPLAIN se hacen en un hilo propio con cola acotada, así
+ * que la operación lenta no se demora aún más; si la cola se llena, el
+ * registro se descarta y se contabiliza.
+ *
+ * Configuración (config.properties):
+ * <pre>
+ * slowquery.thresholdMs=200      # -1 = deshabilitado, 0 = registrar todo
+ * slowquery.file=slow-queries.log
+ * slowquery.maxBytes=10485760
+ * slowquery.maxFiles=5
+ * slowquery.explain=false
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class SlowQueryLog {
+
+    private static final long UMBRAL_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            AppConfig.getLong("slowquery.thresholdMs", -1));
+    private static final boolean HABILITADO = UMBRAL_NANOS >= 0;
+    private static final boolean EXPLAIN = AppConfig.getBoolean("slowquery.explain", false);
+    private static final Path ARCHIVO = Paths.get(AppConfig.getString("slowquery.file", "slow-queries.log"));
+    private static final long MAX_BYTES = AppConfig.getLong("slowquery.maxBytes", 10L * 1024 * 1024);
+    private static final int MAX_ARCHIVOS = AppConfig.getInt("slowquery.maxFiles", 5);
+
+    private static final LongAdder DESCARTADOS = new LongAdder();
+    private static final ThreadPoolExecutor ESCRITOR = crearEscritor();
+
+    /**
+     * Constructor privado para prevenir instanciación.
+     */
+    private SlowQueryLog() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * Indica si el registro está habilitado en la configuración.
+     *
+     * @return true si slowquery.thresholdMs es mayor o igual a 0
+     */
+    public static boolean habilitado() {
+        return HABILITADO;
+    }
+
+    /**
+     * Indica si una duración supera el umbral configurado.
+     *
+     * @param duracionNanos duración de la sentencia
+     * @return true si debe registrarse
+     */
+    public static boolean esLenta(long duracionNanos) {
+        return HABILITADO && duracionNanos >= UMBRAL_NANOS;
+    }
+
+    /**
+     * Cantidad de registros descartados por cola llena.
+     *
+     * @return total de descartes
+     */
+    public static long getDescartados() {
+        return DESCARTADOS.sum();
+    }
+
+    /**
+     * Registra una sentencia lenta. Debe llamarse desde el hilo que la ejecutó,
+     * para poder identificar el método de servicio que la originó.
+     *
+     * @param sql plantilla SQL
+     * @param parametros parámetros enlazados (índice 0 = parámetro 1)
+     * @param filas filas afectadas o recorridas
+     * @param duracionNanos duración de la ejecución
+     * @param error true si la sentencia terminó con excepción
+     * @param principal true si se ejecutó en db.url (solo entonces se pide el EXPLAIN)
+     */
+    public static void registrar(String sql, Object[] parametros, long filas, long duracionNanos, boolean error,
+                                 boolean principal) {
+        if (!HABILITADO || sql.regionMatches(true, 0, "EXPLAIN", 0, 7)) {
+            return;
+        }
+        Registro registro = new Registro(Instant.now(), sql, parametros, filas, duracionNanos, error,
+                principal, metodoLlamador());
+        try {
+            ESCRITOR.execute(() -> escribir(registro));
+        } catch (RuntimeException e) {
+            DESCARTADOS.increment();
+        }
+    }
+
+    /**
+     * Primer método de la capa service en la pila actual (o de dao si no hay
+     * servicio). Se saltean las lambdas sintéticas ({@code lambda$...}) y
+     * TransactionTemplate, para llegar al método que pidió la operación.
+     */
+    private static String metodoLlamador() {
+        String dao = null;
+        for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+            String clase = frame.getClassName();
+            if (frame.getMethodName().startsWith("lambda$") || clase.equals("service.TransactionTemplate")) {
+                continue;
+            }
+            if (clase.startsWith("service.")) {
+                return clase + "." + frame.getMethodName();
+            }
+            if (dao == null && clase.startsWith("dao.")) {
+                dao = clase + "." + frame.getMethodName();
+            }
+        }
+        return dao != null ? dao : "desconocido";
+    }
+
+    private static void escribir(Registro registro) {
+        String plan = null;
+        if (EXPLAIN && registro.principal && admiteExplain(registro.sql)) {
+            plan = explicar(registro.sql, registro.parametros);
+        }
+        String linea = registro.toJson(plan);
+
+        try {
+            rotarSiCorresponde();
+            try (BufferedWriter out = Files.newBufferedWriter(ARCHIVO, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(linea);
+                out.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("[SlowQueryLog] Error al escribir " + ARCHIVO + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean admiteExplain(String sql) {
+        String inicio = sql.trim();
+        return inicio.regionMatches(true, 0, "SELECT", 0, 6)
+                || inicio.regionMatches(true, 0, "UPDATE", 0, 6)
+                || inicio.regionMatches(true, 0, "DELETE", 0, 6);
+    }
+
+    /**
+     * Ejecuta EXPLAIN FORMAT=JSON con los mismos parámetros y devuelve el plan.
+     */
+    private static String explicar(String sql, Object[] parametros) {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("EXPLAIN FORMAT=JSON " + sql)) {
+            for (int i = 0; parametros != null && i < parametros.length; i++) {
+                pstmt.setObject(i + 1, parametros[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                return rs.next() && meta.getColumnCount() > 0 ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private static void rotarSiCorresponde() throws IOException {
+        if (!Files.exists(ARCHIVO) || Files.size(ARCHIVO) < MAX_BYTES) {
+            return;
+        }
+        for (int i = MAX_ARCHIVOS - 1; i >= 1; i--) {
+            Path origen = Paths.get(ARCHIVO + "." + i);
+            if (Files.exists(origen)) {
+                Files.move(origen, Paths.get(ARCHIVO + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (MAX_ARCHIVOS > 0) {
+            Files.move(ARCHIVO, Paths.get(ARCHIVO + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(ARCHIVO);
+        }
+    }
+
+    private static ThreadPoolExecutor crearEscritor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+                    Thread t = new Thread(r, "slow-query-log");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.setRejectedExecutionHandler((r, e) -> DESCARTADOS.increment());
+        return executor;
+    }
+
+    /**
+     * Datos de una sentencia lenta.
+     */
+    private static final class Registro {
+
+        private final Instant momento;
+        private final String sql;
+        private final Object[] parametros;
+        private final long filas;
+        private final long duracionNanos;
+        private final boolean error;
+        private final boolean principal;
+        private final String llamador;
+
+        Registro(Instant momento, String sql, Object[] parametros, long filas, long duracionNanos,
+                 boolean error, boolean principal, String llamador) {
+            this.momento = momento;
+            this.sql = sql;
+            this.parametros = parametros;
+            this.filas = filas;
+            this.duracionNanos = duracionNanos;
+            this.error = error;
+            this.principal = principal;
+            this.llamador = llamador;
+        }
+
+        String toJson(String plan) {
+            StringBuilder sb = new StringBuilder(256);
+            sb.append("{\"ts\":\"").append(momento).append('"');
+            sb.append(",\"elapsedMs\":").append(String.format(Locale.ROOT, "%.3f", duracionNanos / 1_000_000.0));
+            sb.append(",\"rows\":").append(filas);
+            sb.append(",\"error\":").append(error);
+            sb.append(",\"caller\":");
+            json(sb, llamador);
+            sb.append(",\"sql\":");
+            json(sb, sql);
+            sb.append(",\"params\":[");
+            for (int i = 0; parametros != null && i < parametros.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                Object valor = parametros[i];
+                if (valor == null) {
+                    sb.append("null");
+                } else if (valor instanceof Number || valor instanceof Boolean) {
+                    sb.append(valor);
+                } else {
+                    json(sb, valor.toString());
+                }
+            }
+            sb.append(']');
+            if (plan != null) {
+                // EXPLAIN FORMAT=JSON ya devuelve JSON válido
+                sb.append(",\"explain\":").append(plan.replace('\n', ' '));
+            }
+            sb.append('}');
+            return sb.toString();
+        }
+
+        private static void json(StringBuilder sb, String valor) {
+            sb.append('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento de Java Flight Recorder emitido por cada transacción de un servicio
+ * (commit o rollback), para relacionar picos de latencia con operaciones concretas.
+ *
+ * Deshabilitado por defecto: se activa en la grabación con
+ * {@code jfr configure +iot.Transaccion#enabled=true} o desde un archivo .jfc.
+ * Cuando está deshabilitado, begin/end/commit no tienen costo apreciable.
+ *
+ * @version 1.0
+ */
+@Name("iot.Transaccion")
+@Label("Transacción de servicio")
+@Description("Transacción JDBC ejecutada por un servicio (commit o rollback)")
+@Category({"IoT", "Base de Datos"})
+@Enabled(false)
+@StackTrace(false)
+public class TransaccionEvent extends Event {
+
+    @Label("Operación")
+    String operacion;
+
+    @Label("ID de entidad")
+    long entidadId;
+
+    @Label("Resultado")
+    String resultado = "ROLLBACK";
+
+    /**
+     * Crea el evento e inicia la medición de la transacción.
+     *
+     * @param operacion nombre de la operación, ej: "DispositivoIoTService.insertar"
+     * @return evento iniciado
+     */
+    public static TransaccionEvent iniciar(String operacion) {
+        TransaccionEvent evento = new TransaccionEvent();
+        evento.operacion = operacion;
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Marca la transacción como confirmada (commit exitoso).
+     */
+    public void confirmar() {
+        resultado = "COMMIT";
+    }
+
+    /**
+     * Finaliza la medición y registra el evento si la grabación lo solicita.
+     * Si no se llamó a {@link #confirmar()}, el resultado queda como ROLLBACK.
+     *
+     * @param id ID de la entidad afectada (puede ser null si no llegó a generarse)
+     */
+    public void finalizar(Long id) {
+        end();
+        if (shouldCommit()) {
+            entidadId = id != null ? id : 0L;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package net;
+
+/**
+ * Recibe las tramas decodificadas por el {@link ServidorDispositivos}, con el
+ * serial ya resuelto al ID del dispositivo.
+ *
+ * Se llama desde el hilo del selector: una implementación no debe bloquear
+ * (ej: dejar la lectura en un buffer, como TelemetriaIngestor.ofrecer).
+ *
+ * @version 1.0
+ */
+public interface ConsumidorTramas {
+
+    /**
+     * @param dispositivoId ID del dispositivo
+     * @param recibido instante de recepción (milisegundos epoch)
+     */
+    void heartbeat(long dispositivoId, long recibido);
+
+    /**
+     * @param dispositivoId ID del dispositivo
+     * @param instante instante informado por el dispositivo (milisegundos epoch)
+     * @param valor valor medido (finito)
+     */
+    void telemetria(long dispositivoId, long instante, double valor);
+}
@@ -0,0 +1,98 @@
+package net;
+
+/**
+ * Mapa serial empaquetado → ID de dispositivo sobre arreglos primitivos
+ * (direccionamiento abierto con sondeo lineal y borrado por desplazamiento).
+ * Lo usa solo el hilo del selector, así que no es thread-safe.
+ *
+ * @version 1.0
+ */
+final class MapaSeriales {
+
+    static final long AUSENTE = -1;
+
+    private long[] claves;
+    private long[] ids;
+    private int mascara;
+    private int tamano;
+
+    MapaSeriales() {
+        claves = new long[1024];
+        ids = new long[1024];
+        mascara = claves.length - 1;
+    }
+
+    /**
+     * @return el ID del dispositivo, o {@link #AUSENTE}
+     */
+    long get(long serial) {
+        for (int i = hash(serial) & mascara; ; i = (i + 1) & mascara) {
+            if (claves[i] == serial) {
+                return ids[i];
+            }
+            if (claves[i] == 0) {
+                return AUSENTE;
+            }
+        }
+    }
+
+    void put(long serial, long id) {
+        int i = hash(serial) & mascara;
+        while (claves[i] != 0) {
+            if (claves[i] == serial) {
+                ids[i] = id;
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+        claves[i] = serial;
+        ids[i] = id;
+        if (++tamano * 2 > claves.length) {
+            redimensionar();
+        }
+    }
+
+    void remove(long serial) {
+        int hueco = hash(serial) & mascara;
+        while (claves[hueco] != serial) {
+            if (claves[hueco] == 0) {
+                return;
+            }
+            hueco = (hueco + 1) & mascara;
+        }
+
+        for (int i = (hueco + 1) & mascara; claves[i] != 0; i = (i + 1) & mascara) {
+            int ideal = hash(claves[i]) & mascara;
+            if (((i - ideal) & mascara) >= ((i - hueco) & mascara)) {
+                claves[hueco] = claves[i];
+                ids[hueco] = ids[i];
+                hueco = i;
+            }
+        }
+        claves[hueco] = 0;
+        tamano--;
+    }
+
+    int tamano() {
+        return tamano;
+    }
+
+    private void redimensionar() {
+        long[] clavesViejas = claves;
+        long[] idsViejos = ids;
+        claves = new long[clavesViejas.length * 2];
+        ids = new long[clavesViejas.length * 2];
+        mascara = claves.length - 1;
+        tamano = 0;
+        for (int j = 0; j < clavesViejas.length; j++) {
+            if (clavesViejas[j] != 0) {
+                put(clavesViejas[j], idsViejos[j]);
+            }
+        }
+    }
+
+    private static int hash(long serial) {
+        long h = serial * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,75 @@
+package net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocolo binario de los dispositivos: tramas de tamaño fijo, big-endian,
+ * identificadas por el serial del dispositivo (8 caracteres ASCII, ej: "ABC-1234").
+ *
+ * <pre>
+ * Heartbeat   'H'  serial[8]                                  9 bytes
+ * Telemetría  'T'  serial[8]  instante:int64  valor:float64   25 bytes
+ * </pre>
+ *
+ * El instante de la telemetría lo informa el dispositivo (milisegundos epoch);
+ * el de un heartbeat es el de recepción en el servidor.
+ *
+ * @version 1.0
+ */
+public final class Protocolo {
+
+    public static final byte HEARTBEAT = 'H';
+    public static final byte TELEMETRIA = 'T';
+
+    public static final int LONGITUD_SERIAL = 8;
+    public static final int TAMANO_HEARTBEAT = 1 + LONGITUD_SERIAL;
+    public static final int TAMANO_TELEMETRIA = 1 + LONGITUD_SERIAL + 8 + 8;
+    public static final int TAMANO_MAXIMO = TAMANO_TELEMETRIA;
+
+    private Protocolo() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * @return tamaño de la trama de ese tipo, o -1 si el tipo no existe
+     */
+    public static int tamanoTrama(byte tipo) {
+        switch (tipo) {
+            case HEARTBEAT:
+                return TAMANO_HEARTBEAT;
+            case TELEMETRIA:
+                return TAMANO_TELEMETRIA;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Empaqueta un serial de 8 caracteres ASCII en un long (clave del mapa de
+     * seriales, sin crear Strings al decodificar tramas).
+     *
+     * @throws IllegalArgumentException si el serial no tiene 8 caracteres ASCII
+     */
+    public static long empaquetarSerial(String serial) {
+        byte[] bytes = serial.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length != LONGITUD_SERIAL || serial.length() != LONGITUD_SERIAL) {
+            throw new IllegalArgumentException("Serial inválido para el protocolo: " + serial);
+        }
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+
+    /**
+     * Escribe una trama de heartbeat en {@code destino}.
+     */
+    public static void escribirHeartbeat(ByteBuffer destino, long serialEmpaquetado) {
+        destino.put(HEARTBEAT).putLong(serialEmpaquetado);
+    }
+
+    /**
+     * Escribe una trama de telemetría en {@code destino}.
+     */
+    public static void escribirTelemetria(ByteBuffer destino, long serialEmpaquetado, long instante, double valor) {
+        destino.put(TELEMETRIA).putLong(serialEmpaquetado).putLong(instante).putDouble(valor);
+    }
+}
@@ -0,0 +1,428 @@
+package net;
+
+import config.AppConfig;
+import config.DatabaseConnection;
+import dao.DaoFactory;
+import dao.DispositivoIoTDao;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.sql.Connection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servidor TCP no bloqueante para los dispositivos: recibe tramas de
+ * heartbeat y telemetría ({@link Protocolo}), resuelve el serial al ID del
+ * dispositivo y las entrega a los {@link ConsumidorTramas}.
+ *
+ * <ul>
+ *   <li>Un único hilo con un {@link Selector} atiende todas las conexiones
+ *       (sin un hilo por conexión).</li>
+ *   <li>Las lecturas usan un único ByteBuffer directo compartido; de cada
+ *       conexión solo se guarda la trama incompleta que quedó al final de la
+ *       última lectura (a lo sumo {@link Protocolo#TAMANO_MAXIMO} bytes), así
+ *       que diez mil conexiones ocupan poca memoria.</li>
+ *   <li>El mapa serial → ID vive en memoria (arreglos primitivos, sin Strings
+ *       por trama) y lo modifica solo el hilo del selector: las altas y bajas
+ *       se encolan con {@link #registrarSerial}/{@link #olvidarSerial}.</li>
+ *   <li>Las tramas de seriales desconocidos se descartan; un tipo de trama
+ *       inválido cierra la conexión. Las conexiones sin datos durante
+ *       red.inactividadSegundos se cierran.</li>
+ * </ul>
+ *
+ * @version 1.0
+ */
+public class ServidorDispositivos {
+
+    private static final OperationMetrics METRICA_CARGAR_SERIALES = MetricsRegistry.operacion("ServidorDispositivos.cargarSeriales");
+
+    private static final LongAdder ACEPTADAS = MetricsRegistry.contador("Red.conexionesAceptadas");
+    private static final LongAdder RECHAZADAS = MetricsRegistry.contador("Red.conexionesRechazadas");
+    private static final LongAdder TRAMAS = MetricsRegistry.contador("Red.tramas");
+    private static final LongAdder SERIAL_DESCONOCIDO = MetricsRegistry.contador("Red.serialDesconocido");
+    private static final LongAdder ERRORES_PROTOCOLO = MetricsRegistry.contador("Red.erroresProtocolo");
+    private static final LongAdder ERRORES_CONSUMIDOR = MetricsRegistry.contador("Red.erroresConsumidor");
+
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    /**
+     * Estado de una conexión: la trama incompleta pendiente.
+     */
+    private static final class Conexion {
+
+        private final byte[] resto = new byte[Protocolo.TAMANO_MAXIMO];
+        private int restoBytes;
+        private long ultimaActividad;
+    }
+
+    /**
+     * Alta (id > 0) o baja (id = AUSENTE) en el mapa de seriales.
+     */
+    private static final class CambioSerial {
+
+        private final long serial;
+        private final long id;
+
+        CambioSerial(long serial, long id) {
+            this.serial = serial;
+            this.id = id;
+        }
+    }
+
+    private final String host;
+    private final int puerto;
+    private final ConsumidorTramas[] consumidores;
+    private final int maxConexiones = Math.max(1, AppConfig.getInt("red.maxConexiones", 20000));
+    private final long inactividadMs = TimeUnit.SECONDS.toMillis(
+            Math.max(0, AppConfig.getLong("red.inactividadSegundos", 300)));
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_BUFFER);
+    private final MapaSeriales seriales = new MapaSeriales();
+    private final ConcurrentLinkedQueue<CambioSerial> cambios = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private final DispositivoIoTDao dispositivoDao = DaoFactory.dispositivos();
+
+    private volatile boolean activo;
+    private Selector selector;
+    private ServerSocketChannel servidor;
+    private Thread hilo;
+    private volatile int puertoLocal;
+
+    /**
+     * @param host dirección a escuchar (ej: 127.0.0.1)
+     * @param puerto puerto TCP (0 = uno libre, ver {@link #getPuerto()})
+     * @param consumidores destinos de las tramas, en orden
+     */
+    public ServidorDispositivos(String host, int puerto, ConsumidorTramas... consumidores) {
+        this.host = host;
+        this.puerto = puerto;
+        this.consumidores = consumidores.clone();
+        MetricsRegistry.registrarIndicador("Red.conexionesAbiertas", abiertas::get);
+    }
+
+    /**
+     * Abre el puerto e inicia el hilo del selector (no hace nada si ya está iniciado).
+     *
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public synchronized void iniciar() throws IOException {
+        if (hilo != null) {
+            return;
+        }
+        selector = Selector.open();
+        servidor = ServerSocketChannel.open();
+        servidor.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        servidor.bind(new InetSocketAddress(host, puerto), 1024);
+        servidor.configureBlocking(false);
+        servidor.register(selector, SelectionKey.OP_ACCEPT);
+        puertoLocal = ((InetSocketAddress) servidor.getLocalAddress()).getPort();
+
+        activo = true;
+        hilo = new Thread(this::atender, "red-selector");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Cierra el puerto y todas las conexiones.
+     */
+    public synchronized void detener() {
+        if (hilo == null) {
+            return;
+        }
+        activo = false;
+        selector.wakeup();
+        try {
+            hilo.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        hilo = null;
+    }
+
+    /**
+     * Asocia un serial a un dispositivo (se aplica en el próximo ciclo del selector).
+     *
+     * @throws IllegalArgumentException si el serial no es válido para el protocolo o el ID no es positivo
+     */
+    public void registrarSerial(String serial, long dispositivoId) {
+        if (dispositivoId <= 0) {
+            throw new IllegalArgumentException("ID de dispositivo inválido: " + dispositivoId);
+        }
+        cambios.add(new CambioSerial(Protocolo.empaquetarSerial(serial), dispositivoId));
+        despertar();
+    }
+
+    /**
+     * Quita un serial del mapa (ej: al eliminar el dispositivo).
+     */
+    public void olvidarSerial(String serial) {
+        cambios.add(new CambioSerial(Protocolo.empaquetarSerial(serial), MapaSeriales.AUSENTE));
+        despertar();
+    }
+
+    /**
+     * Registra los seriales de los dispositivos activos de la BD.
+     *
+     * @return cantidad de seriales registrados
+     * @throws Exception si hay un error de BD
+     */
+    public long cargarSeriales() throws Exception {
+        long inicio = System.nanoTime();
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return dispositivoDao.recorrerActivos(conn, d -> {
+                if (d.getSerial() != null && d.getSerial().length() == Protocolo.LONGITUD_SERIAL) {
+                    cambios.add(new CambioSerial(Protocolo.empaquetarSerial(d.getSerial()), d.getId()));
+                }
+            });
+        } catch (Exception e) {
+            METRICA_CARGAR_SERIALES.registrarError();
+            throw e;
+        } finally {
+            despertar();
+            METRICA_CARGAR_SERIALES.registrar(inicio);
+        }
+    }
+
+    /**
+     * @return puerto en el que escucha (útil si se pidió el puerto 0)
+     */
+    public int getPuerto() {
+        return puertoLocal;
+    }
+
+    /**
+     * @return conexiones abiertas
+     */
+    public int getConexionesAbiertas() {
+        return abiertas.get();
+    }
+
+    private void despertar() {
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    // ===== Hilo del selector =====
+
+    private void atender() {
+        long proximaRevision = System.currentTimeMillis() + Math.max(1000, inactividadMs / 4);
+        try {
+            while (activo) {
+                selector.select(1000);
+                aplicarCambios();
+                long ahora = System.currentTimeMillis();
+
+                Iterator<SelectionKey> listas = selector.selectedKeys().iterator();
+                while (listas.hasNext()) {
+                    SelectionKey clave = listas.next();
+                    listas.remove();
+                    if (!clave.isValid()) {
+                        continue;
+                    }
+                    if (clave.isAcceptable()) {
+                        aceptar(ahora);
+                    } else if (clave.isReadable()) {
+                        leer(clave, ahora);
+                    }
+                }
+
+                if (inactividadMs > 0 && ahora >= proximaRevision) {
+                    cerrarInactivas(ahora);
+                    proximaRevision = ahora + Math.max(1000, inactividadMs / 4);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[ServidorDispositivos] Error en el selector: " + e.getMessage());
+        } finally {
+            cerrarTodo();
+        }
+    }
+
+    private void aplicarCambios() {
+        CambioSerial cambio;
+        while ((cambio = cambios.poll()) != null) {
+            if (cambio.id == MapaSeriales.AUSENTE) {
+                seriales.remove(cambio.serial);
+            } else {
+                seriales.put(cambio.serial, cambio.id);
+            }
+        }
+    }
+
+    /**
+     * Acepta las conexiones pendientes. Un error al aceptar o preparar una
+     * conexión (ej: "Too many open files") la rechaza y deja las demás para la
+     * próxima vuelta del selector, sin afectar a las conexiones abiertas.
+     */
+    private void aceptar(long ahora) {
+        while (true) {
+            SocketChannel canal;
+            try {
+                canal = servidor.accept();
+            } catch (IOException e) {
+                RECHAZADAS.increment();
+                return;
+            }
+            if (canal == null) {
+                return;
+            }
+            if (abiertas.get() >= maxConexiones) {
+                RECHAZADAS.increment();
+                cerrarCanal(canal);
+                continue;
+            }
+            try {
+                canal.configureBlocking(false);
+                Conexion conexion = new Conexion();
+                conexion.ultimaActividad = ahora;
+                canal.register(selector, SelectionKey.OP_READ, conexion);
+            } catch (IOException e) {
+                RECHAZADAS.increment();
+                cerrarCanal(canal);
+                return;
+            }
+            abiertas.incrementAndGet();
+            ACEPTADAS.increment();
+        }
+    }
+
+    private static void cerrarCanal(SocketChannel canal) {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // El canal se descarta igual
+        }
+    }
+
+    private void leer(SelectionKey clave, long ahora) {
+        SocketChannel canal = (SocketChannel) clave.channel();
+        Conexion conexion = (Conexion) clave.attachment();
+
+        buffer.clear();
+        buffer.put(conexion.resto, 0, conexion.restoBytes);
+        int leidos;
+        try {
+            leidos = canal.read(buffer);
+        } catch (IOException e) {
+            leidos = -1;
+        }
+        if (leidos < 0) {
+            cerrar(clave);
+            return;
+        }
+        conexion.ultimaActividad = ahora;
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            int posicion = buffer.position();
+            int tamano = Protocolo.tamanoTrama(buffer.get(posicion));
+            if (tamano < 0) {
+                ERRORES_PROTOCOLO.increment();
+                cerrar(clave);
+                return;
+            }
+            if (buffer.remaining() < tamano) {
+                break;
+            }
+            procesarTrama(posicion, ahora);
+            buffer.position(posicion + tamano);
+        }
+
+        conexion.restoBytes = buffer.remaining();
+        buffer.get(conexion.resto, 0, conexion.restoBytes);
+    }
+
+    /**
+     * Decodifica la trama que empieza en {@code posicion} (lecturas absolutas,
+     * sin mover el buffer) y la entrega a los consumidores. Un error de un
+     * consumidor se cuenta en Red.erroresConsumidor y no detiene el servidor.
+     */
+    private void procesarTrama(int posicion, long ahora) {
+        byte tipo = buffer.get(posicion);
+        long id = seriales.get(buffer.getLong(posicion + 1));
+        if (id == MapaSeriales.AUSENTE) {
+            SERIAL_DESCONOCIDO.increment();
+            return;
+        }
+        TRAMAS.increment();
+
+        if (tipo == Protocolo.HEARTBEAT) {
+            for (ConsumidorTramas consumidor : consumidores) {
+                try {
+                    consumidor.heartbeat(id, ahora);
+                } catch (RuntimeException e) {
+                    ERRORES_CONSUMIDOR.increment();
+                }
+            }
+        } else {
+            long instante = buffer.getLong(posicion + 1 + Protocolo.LONGITUD_SERIAL);
+            double valor = buffer.getDouble(posicion + 1 + Protocolo.LONGITUD_SERIAL + 8);
+            if (Double.isNaN(valor) || Double.isInfinite(valor)) {
+                ERRORES_PROTOCOLO.increment();
+                return;
+            }
+            for (ConsumidorTramas consumidor : consumidores) {
+                try {
+                    consumidor.telemetria(id, instante, valor);
+                } catch (RuntimeException e) {
+                    ERRORES_CONSUMIDOR.increment();
+                }
+            }
+        }
+    }
+
+    private void cerrarInactivas(long ahora) {
+        for (SelectionKey clave : selector.keys()) {
+            Object adjunto = clave.attachment();
+            if (adjunto instanceof Conexion && ahora - ((Conexion) adjunto).ultimaActividad > inactividadMs) {
+                cerrar(clave);
+            }
+        }
+    }
+
+    private void cerrar(SelectionKey clave) {
+        if (!clave.isValid()) {
+            return;
+        }
+        clave.cancel();
+        try {
+            clave.channel().close();
+        } catch (IOException e) {
+            // La conexión ya no se usa
+        }
+        if (clave.attachment() instanceof Conexion) {
+            abiertas.decrementAndGet();
+        }
+    }
+
+    private void cerrarTodo() {
+        for (SelectionKey clave : selector.keys()) {
+            cerrar(clave);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("[ServidorDispositivos] Error al cerrar el selector: " + e.getMessage());
+        }
+        try {
+            servidor.close();
+        } catch (IOException e) {
+            System.err.println("[ServidorDispositivos] Error al cerrar el puerto: " + e.getMessage());
+        }
+    }
+}
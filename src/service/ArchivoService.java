@@ -0,0 +1,221 @@
+package service;
+
+import config.AppConfig;
+import config.DatabaseConnection;
+import config.ShardMap;
+import config.ShardedConnection;
+import dao.ArchivoDao;
+import entities.DispositivoIoT;
+import exceptions.DataAccessException;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import util.Validator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Archivo de bajas lógicas: mueve los dispositivos y configuraciones de red
+ * dados de baja hace más de archivo.retencionDias a DispositivoIoT_archivo y
+ * ConfiguracionRed_archivo, así las tablas principales (y idx_eliminado) solo
+ * crecen con las filas activas y las bajas recientes.
+ *
+ * <h3>Pasada de archivado</h3>
+ * Recorre cada tabla por rangos de archivo.rangoIds IDs, un rango por
+ * transacción: bloquea las filas del rango que cumplen la retención, las copia
+ * al archivo y las borra. Primero las configuraciones y después los
+ * dispositivos (cada uno con su configuración dada de baja; los que todavía
+ * tienen una configuración activa esperan a la próxima pasada). Entre rangos
+ * espera archivo.pausaMs, y al menos lo que tardó el rango, para no competir
+ * con las operaciones de los usuarios. Con shards, recorre cada shard.
+ *
+ * Las filas archivadas desaparecen también de la sincronización incremental
+ * (las lápidas de {@code modificadosDesde}): la retención debe superar el
+ * tiempo máximo entre sincronizaciones de un cliente. El outbox no registra
+ * el archivado (la baja ya se publicó).
+ *
+ * @version 1.0
+ */
+public class ArchivoService {
+
+    private static final OperationMetrics METRICA_ARCHIVAR = MetricsRegistry.operacion("ArchivoService.archivar");
+    private static final OperationMetrics METRICA_BUSCAR_ARCHIVADOS_POR_SERIAL = MetricsRegistry.operacion("ArchivoService.buscarArchivadosPorSerial");
+    private static final LongAdder DISPOSITIVOS_ARCHIVADOS = MetricsRegistry.contador("ArchivoService.dispositivosArchivados");
+    private static final LongAdder CONFIGURACIONES_ARCHIVADAS = MetricsRegistry.contador("ArchivoService.configuracionesArchivadas");
+
+    private static final long MS_POR_DIA = TimeUnit.DAYS.toMillis(1);
+
+    private final int retencionDias = Math.max(1, AppConfig.getInt("archivo.retencionDias", 90));
+    private final int rangoIds = Math.max(1, AppConfig.getInt("archivo.rangoIds", 1000));
+    private final long pausaMs = Math.max(0, AppConfig.getLong("archivo.pausaMs", 50));
+
+    private final ArchivoDao archivoDao = new ArchivoDao();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Programa una pasada de {@link #archivar()} cada {@code intervaloSegundos}
+     * en un hilo daemon (no hace nada si ya está programado).
+     */
+    public synchronized void iniciar(long intervaloSegundos) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "archivo-bajas");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                ResultadoMasivo resultado = archivar();
+                if (resultado.getDispositivos() > 0 || resultado.getConfiguraciones() > 0) {
+                    System.out.println("[ArchivoService] Bajas archivadas: " + resultado);
+                }
+            } catch (Exception e) {
+                System.err.println("[ArchivoService] Error al archivar bajas: " + e.getMessage());
+            }
+        }, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Detiene el archivado periódico (una pasada en curso se interrumpe entre rangos).
+     */
+    public synchronized void detener() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Archiva las bajas anteriores a la retención en todas las tablas (y shards).
+     *
+     * @return filas archivadas por tabla y cantidad de rangos (transacciones) recorridos
+     * @throws Exception si hay un error de BD (los rangos ya confirmados quedan archivados)
+     */
+    public ResultadoMasivo archivar() throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Timestamp corte = new Timestamp(System.currentTimeMillis() - retencionDias * MS_POR_DIA);
+            ShardMap shards = DatabaseConnection.shards();
+            int cantidadShards = shards != null ? shards.getCantidad() : 1;
+
+            ResultadoMasivo resultado = new ResultadoMasivo();
+            for (int shard = 0; shard < cantidadShards; shard++) {
+                if (!archivarTabla(false, shard, cantidadShards, corte, resultado)
+                        || !archivarTabla(true, shard, cantidadShards, corte, resultado)) {
+                    break;
+                }
+            }
+            return resultado;
+        } catch (Exception e) {
+            METRICA_ARCHIVAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_ARCHIVAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Busca en el archivo los dispositivos con un serial, con su configuración
+     * de red archivada. Puede haber varios si el serial se dio de alta de nuevo
+     * después de archivarse.
+     *
+     * @param serial serial del dispositivo
+     * @return dispositivos archivados en orden de ID (vacía si no hay)
+     * @throws Exception si el serial es inválido o hay un error de BD
+     */
+    public List<DispositivoIoT> buscarArchivadosPorSerial(String serial) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Validator.validarNoVacio(serial, "Serial");
+            String buscado = serial.trim();
+            ShardMap shards = DatabaseConnection.shards();
+
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexionLectura();
+                // El dispositivo se archiva en el shard de su serial
+                Connection shard = shards != null ? ShardedConnection.shard(conn, shards.shardDeSerial(buscado)) : conn;
+                return archivoDao.buscarPorSerial(buscado, shard);
+
+            } catch (SQLException e) {
+                throw new DataAccessException("Error al buscar dispositivos archivados", e);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_BUSCAR_ARCHIVADOS_POR_SERIAL.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_ARCHIVADOS_POR_SERIAL.registrar(inicio);
+        }
+    }
+
+    /**
+     * Recorre una tabla de un shard por rangos de IDs, un rango por transacción.
+     *
+     * @return false si la pasada se interrumpió (detener)
+     */
+    private boolean archivarTabla(boolean dispositivos, int shard, int cantidadShards, Timestamp corte,
+                                  ResultadoMasivo resultado) throws Exception {
+        long[] rango = TransactionTemplate.ejecutar(() -> archivoDao.rangoIds(dispositivos, conexion(shard)));
+        if (rango[1] == 0) {
+            return true;
+        }
+        // Con shards, cada shard tiene uno de cada cantidadShards IDs: el rango se amplía en proporción
+        long paso = (long) rangoIds * cantidadShards;
+
+        for (long desde = rango[0]; desde <= rango[1]; desde += paso) {
+            long desdeId = desde;
+            long hastaId = desde + paso - 1;
+            long inicioRango = System.nanoTime();
+
+            int archivadas = TransactionTemplate.ejecutar(() -> dispositivos
+                    ? archivoDao.archivarDispositivos(desdeId, hastaId, corte, conexion(shard))
+                    : archivoDao.archivarConfiguraciones(desdeId, hastaId, corte, conexion(shard)));
+            if (dispositivos) {
+                resultado.sumarLote(archivadas, 0);
+                DISPOSITIVOS_ARCHIVADOS.add(archivadas);
+            } else {
+                resultado.sumarLote(0, archivadas);
+                CONFIGURACIONES_ARCHIVADAS.add(archivadas);
+            }
+
+            if (!pausar(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioRango))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Espera entre rangos: archivo.pausaMs, y al menos lo que tardó el rango
+     * (si la BD está cargada, los rangos tardan más y el archivado se espacia).
+     *
+     * @return false si el hilo fue interrumpido
+     */
+    private boolean pausar(long duracionRangoMs) {
+        long espera = Math.max(pausaMs, duracionRangoMs);
+        if (espera == 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        try {
+            Thread.sleep(espera);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Connection conexion(int shard) throws SQLException {
+        return ShardedConnection.shard(TransactionTemplate.conexionActual(), shard);
+    }
+}
@@ -1,229 +1,277 @@
 package service;
 
-import config.DatabaseConnection;
 import dao.ConfiguracionRedDao;
+import dao.DaoFactory;
 import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+import entities.EventoCambio.Operacion;
 import exceptions.*;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import metrics.TransaccionEvent;
+import store.SnapshotFlota;
 import util.Validator;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Servicio para la gestión de ConfiguracionRed.
  * Implementa la lógica de negocio, validaciones y transacciones.
+ * Cada operación pública registra su latencia y errores en MetricsRegistry,
+ * y cada transacción emite un evento JFR (TransaccionEvent).
+ * Las conexiones se obtienen de TransactionTemplate: dentro de una unidad de
+ * trabajo, las operaciones se unen a su transacción en lugar de confirmar por separado.
+ * Cada alta, modificación o baja registra su evento en el outbox (OutboxService)
+ * dentro de la misma transacción.
+ * Si la BD no está disponible, las lecturas se responden desde la copia local
+ * del inventario y las escrituras se rechazan (ver {@link ModoDegradado}).
  *
  * @author David Vergara
  * @version 1.0
  */
 public class ConfiguracionRedService implements GenericService<ConfiguracionRed> {
 
+    private static final OperationMetrics METRICA_INSERTAR = MetricsRegistry.operacion("ConfiguracionRedService.insertar");
+    private static final OperationMetrics METRICA_ACTUALIZAR = MetricsRegistry.operacion("ConfiguracionRedService.actualizar");
+    private static final OperationMetrics METRICA_ELIMINAR = MetricsRegistry.operacion("ConfiguracionRedService.eliminar");
+    private static final OperationMetrics METRICA_GET_BY_ID = MetricsRegistry.operacion("ConfiguracionRedService.getById");
+    private static final OperationMetrics METRICA_GET_ALL = MetricsRegistry.operacion("ConfiguracionRedService.getAll");
+    private static final OperationMetrics METRICA_BUSCAR_POR_IP = MetricsRegistry.operacion("ConfiguracionRedService.buscarPorIp");
+    private static final OperationMetrics METRICA_BUSCAR_POR_DHCP = MetricsRegistry.operacion("ConfiguracionRedService.buscarPorDhcp");
+    private static final OperationMetrics METRICA_MODIFICADAS_DESDE = MetricsRegistry.operacion("ConfiguracionRedService.modificadasDesde");
+
     private final ConfiguracionRedDao configuracionDao;
+    private final OutboxService outbox;
+    private final ModoDegradado modoDegradado = ModoDegradado.getInstancia();
 
     public ConfiguracionRedService() {
-        this.configuracionDao = new ConfiguracionRedDao();
+        this.configuracionDao = DaoFactory.configuraciones();
+        this.outbox = new OutboxService();
     }
 
     @Override
     public void insertar(ConfiguracionRed entity) throws Exception {
-        // Validaciones
-        validarConfiguracion(entity);
-
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
+            // Validaciones
+            validarConfiguracion(entity);
 
-            // Verificar que la IP no exista (si no es DHCP)
-            if (!entity.getDhcpHabilitado() && configuracionDao.existeIp(entity.getIp(), conn)) {
-                throw new DuplicateEntityException("Ya existe una configuración con la IP: " + entity.getIp());
-            }
+            TransaccionEvent evento = TransaccionEvent.iniciar("ConfiguracionRedService.insertar");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
 
-            // Crear la configuración
-            configuracionDao.crear(entity, conn);
-
-            conn.commit();
-            System.out.println("[ConfiguracionRedService] Configuración creada exitosamente con ID: " + entity.getId());
+                // Verificar que la IP no exista (si no es DHCP)
+                if (!entity.getDhcpHabilitado() && configuracionDao.existeIp(entity.getIp(), conn)) {
+                    throw new DuplicateEntityException("Ya existe una configuración con la IP: " + entity.getIp());
+                }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("[ConfiguracionRedService] Rollback ejecutado debido a error SQL");
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // Crear la configuración
+                configuracionDao.crear(entity, conn);
+                outbox.registrar(OutboxService.evento(Operacion.INSERT, entity), conn);
+
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                System.out.println("[ConfiguracionRedService] Configuración creada exitosamente con ID: " + entity.getId());
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                        System.out.println("[ConfiguracionRedService] Rollback ejecutado debido a error SQL");
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("[ConfiguracionRedService] Rollback ejecutado debido a error: " + e.getMessage());
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                        System.out.println("[ConfiguracionRedService] Rollback ejecutado debido a error: " + e.getMessage());
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(entity.getId());
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_INSERTAR.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_INSERTAR.registrar(inicio);
         }
     }
 
     @Override
     public void actualizar(ConfiguracionRed entity) throws Exception {
-        // Validaciones
-        validarConfiguracion(entity);
-        Validator.validarId(entity.getId());
-
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // Verificar que la configuración exista
-            ConfiguracionRed existente = configuracionDao.leer(entity.getId(), conn);
-            if (existente == null) {
-                throw new EntityNotFoundException("No se encontró la configuración con ID: " + entity.getId());
-            }
-
-            // Verificar que la IP no esté duplicada (excepto la actual)
-            if (!entity.getDhcpHabilitado()) {
-                ConfiguracionRed configuracionConIp = configuracionDao.buscarPorIp(entity.getIp(), conn);
-                if (configuracionConIp != null && !configuracionConIp.getId().equals(entity.getId())) {
-                    throw new DuplicateEntityException("Ya existe otra configuración con la IP: " + entity.getIp());
+            // Validaciones
+            validarConfiguracion(entity);
+            Validator.validarId(entity.getId());
+
+            TransaccionEvent evento = TransaccionEvent.iniciar("ConfiguracionRedService.actualizar");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
+
+                // Verificar que la configuración exista
+                ConfiguracionRed existente = configuracionDao.leer(entity.getId(), conn);
+                if (existente == null) {
+                    throw new EntityNotFoundException("No se encontró la configuración con ID: " + entity.getId());
                 }
-            }
 
-            // Actualizar la configuración
-            configuracionDao.actualizar(entity, conn);
-
-            conn.commit();
-            System.out.println("[ConfiguracionRedService] Configuración actualizada exitosamente");
+                // Verificar que la IP no esté duplicada (excepto la actual)
+                if (!entity.getDhcpHabilitado()) {
+                    ConfiguracionRed configuracionConIp = configuracionDao.buscarPorIp(entity.getIp(), conn);
+                    if (configuracionConIp != null && !configuracionConIp.getId().equals(entity.getId())) {
+                        throw new DuplicateEntityException("Ya existe otra configuración con la IP: " + entity.getIp());
+                    }
+                }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // Actualizar la configuración
+                configuracionDao.actualizar(entity, conn);
+                outbox.registrar(OutboxService.evento(Operacion.UPDATE, entity), conn);
+
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                System.out.println("[ConfiguracionRedService] Configuración actualizada exitosamente");
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(entity.getId());
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_ACTUALIZAR.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_ACTUALIZAR.registrar(inicio);
         }
     }
 
     @Override
     public void eliminar(long id) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // Verificar que la configuración exista
-            ConfiguracionRed configuracion = configuracionDao.leer(id, conn);
-            if (configuracion == null) {
-                throw new EntityNotFoundException("No se encontró la configuración con ID: " + id);
-            }
-
-            // Verificar si está asociada a un dispositivo
-            if (configuracionDao.estaAsociada(id, conn)) {
-                throw new ValidationException("No se puede eliminar la configuración porque está asociada a un dispositivo");
-            }
-
-            // Eliminar lógicamente la configuración
-            configuracionDao.eliminar(id, conn);
+            TransaccionEvent evento = TransaccionEvent.iniciar("ConfiguracionRedService.eliminar");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
+
+                // Verificar que la configuración exista
+                ConfiguracionRed configuracion = configuracionDao.leer(id, conn);
+                if (configuracion == null) {
+                    throw new EntityNotFoundException("No se encontró la configuración con ID: " + id);
+                }
 
-            conn.commit();
-            System.out.println("[ConfiguracionRedService] Configuración eliminada lógicamente");
+                // Verificar si está asociada a un dispositivo
+                if (configuracionDao.estaAsociada(id, conn)) {
+                    throw new ValidationException("No se puede eliminar la configuración porque está asociada a un dispositivo");
+                }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // Eliminar lógicamente la configuración
+                configuracionDao.eliminar(id, conn);
+                outbox.registrar(OutboxService.evento(Operacion.DELETE, configuracion), conn);
+
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                System.out.println("[ConfiguracionRedService] Configuración eliminada lógicamente");
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(id);
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_ELIMINAR.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_ELIMINAR.registrar(inicio);
         }
     }
 
     @Override
     public ConfiguracionRed getById(long id) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            ConfiguracionRed configuracion = configuracionDao.leer(id, conn);
+            ConfiguracionRed configuracion = modoDegradado.leer(
+                    conn -> configuracionDao.leer(id, conn),
+                    copia -> {
+                        List<ConfiguracionRed> encontradas = filtrar(copia, c -> c.getId() == id);
+                        return encontradas.isEmpty() ? null : encontradas.get(0);
+                    },
+                    "Error al obtener la configuración");
 
             if (configuracion == null) {
                 throw new EntityNotFoundException("No se encontró la configuración con ID: " + id);
             }
 
             return configuracion;
-
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al obtener la configuración", e);
+        } catch (Exception e) {
+            METRICA_GET_BY_ID.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_GET_BY_ID.registrar(inicio);
         }
     }
 
     @Override
     public List<ConfiguracionRed> getAll() throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            return configuracionDao.leerTodos(conn);
-
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al obtener la lista de configuraciones", e);
+            return modoDegradado.leer(
+                    configuracionDao::leerTodos,
+                    copia -> filtrar(copia, configuracion -> true),
+                    "Error al obtener la lista de configuraciones");
+        } catch (Exception e) {
+            METRICA_GET_ALL.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_GET_ALL.registrar(inicio);
         }
     }
 
@@ -235,21 +283,26 @@ public class ConfiguracionRedService implements GenericService<ConfiguracionRed>
      * @throws Exception si no se encuentra o hay un error
      */
     public ConfiguracionRed buscarPorIp(String ip) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            ConfiguracionRed configuracion = configuracionDao.buscarPorIp(ip, conn);
+            ConfiguracionRed configuracion = modoDegradado.leer(
+                    conn -> configuracionDao.buscarPorIp(ip, conn),
+                    copia -> {
+                        DispositivoIoT dispositivo = copia.porIp(ip);
+                        return dispositivo != null ? dispositivo.getConfiguracionRed() : null;
+                    },
+                    "Error al buscar la configuración por IP");
 
             if (configuracion == null) {
                 throw new EntityNotFoundException("No se encontró la configuración con IP: " + ip);
             }
 
             return configuracion;
-
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al buscar la configuración por IP", e);
+        } catch (Exception e) {
+            METRICA_BUSCAR_POR_IP.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_BUSCAR_POR_IP.registrar(inicio);
         }
     }
 
@@ -261,15 +314,65 @@ public class ConfiguracionRedService implements GenericService<ConfiguracionRed>
      * @throws Exception si hay un error
      */
     public List<ConfiguracionRed> buscarPorDhcp(boolean dhcpHabilitado) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
+        try {
+            return modoDegradado.leer(
+                    conn -> configuracionDao.buscarPorDhcp(dhcpHabilitado, conn),
+                    copia -> filtrar(copia, configuracion -> configuracion.getDhcpHabilitado() == dhcpHabilitado),
+                    "Error al buscar configuraciones por DHCP");
+        } catch (Exception e) {
+            METRICA_BUSCAR_POR_DHCP.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_DHCP.registrar(inicio);
+        }
+    }
+
+    /**
+     * Sincronización incremental: configuraciones modificadas después de una marca,
+     * incluidas las dadas de baja (eliminado = true, lápidas), en páginas
+     * ordenadas por (actualizado, id). Para recorrer todos los cambios se
+     * llama con la marca y el último ID de la página anterior mientras
+     * {@link PaginaCambios#hayMas()}.
+     *
+     * Los cambios de los últimos sync.margenSegundos se entregan en una
+     * llamada posterior, para no saltear transacciones que confirman tarde.
+     * Se lee de db.url y no de una réplica: con el atraso de la réplica, el
+     * margen no alcanzaría y se perderían cambios.
+     *
+     * @param marca marca de la página anterior (null para empezar desde el principio)
+     * @param ultimoId último ID de la página anterior (0 para empezar)
+     * @param limite cantidad máxima de filas (1 a 10000)
+     * @return página de cambios con la marca siguiente
+     * @throws Exception si los parámetros son inválidos o hay un error de BD
+     */
+    public PaginaCambios<ConfiguracionRed> modificadasDesde(Timestamp marca, long ultimoId, int limite) throws Exception {
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            return configuracionDao.buscarPorDhcp(dhcpHabilitado, conn);
+            if (ultimoId < 0) {
+                throw new ValidationException("El último ID no puede ser negativo: " + ultimoId);
+            }
+            if (limite <= 0 || limite > PaginaCambios.MAX_LIMITE) {
+                throw new ValidationException("El límite debe estar entre 1 y " + PaginaCambios.MAX_LIMITE + ": " + limite);
+            }
 
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al buscar configuraciones por DHCP", e);
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexionPrincipal();
+                List<ConfiguracionRed> cambios = configuracionDao.buscarModificadasDesde(marca, ultimoId,
+                        PaginaCambios.MARGEN_SEGUNDOS, limite, conn);
+                return PaginaCambios.de(cambios, marca, ultimoId, limite, ConfiguracionRed::getActualizado, ConfiguracionRed::getId);
+
+            } catch (SQLException e) {
+                throw new DataAccessException("Error al obtener las configuraciones modificadas", e);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_MODIFICADAS_DESDE.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_MODIFICADAS_DESDE.registrar(inicio);
         }
     }
 
@@ -308,6 +411,21 @@ public class ConfiguracionRedService implements GenericService<ConfiguracionRed>
         }
     }
 
+    /**
+     * Lectura sobre la copia local del modo degradado: configuraciones de los
+     * dispositivos activos.
+     */
+    private static List<ConfiguracionRed> filtrar(SnapshotFlota copia, Predicate<ConfiguracionRed> filtro) {
+        List<ConfiguracionRed> resultado = new ArrayList<>();
+        copia.recorrer(dispositivo -> {
+            ConfiguracionRed configuracion = dispositivo.getConfiguracionRed();
+            if (configuracion != null && filtro.test(configuracion)) {
+                resultado.add(configuracion);
+            }
+        });
+        return resultado;
+    }
+
     /**
      * Maneja errores SQL y los convierte en excepciones de negocio.
      *
@@ -315,6 +433,11 @@ public class ConfiguracionRedService implements GenericService<ConfiguracionRed>
      * @return excepción de negocio correspondiente
      */
     private Exception manejarErrorSQL(SQLException e) {
+        if (ModoDegradado.esFallaDeConexion(e)) {
+            ModoDegradado.getInstancia().registrarFallo(e);
+            return new ServicioNoDisponibleException("Base de datos no disponible: " + e.getMessage(), e);
+        }
+
         int errorCode = e.getErrorCode();
         String mensaje = e.getMessage();
 
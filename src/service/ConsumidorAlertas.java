@@ -0,0 +1,23 @@
+package service;
+
+import entities.Alerta;
+
+import java.util.List;
+
+/**
+ * Recibe las alertas emitidas por el {@link MotorReglas}.
+ *
+ * Se llama desde el hilo que evalúa las lecturas (el escritor de la ingesta),
+ * fuera de todo lock y de toda transacción: una implementación lenta demora
+ * la escritura de telemetría, así que conviene encolar y procesar aparte.
+ *
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface ConsumidorAlertas {
+
+    /**
+     * @param alertas alertas de un lote de lecturas, en orden de evaluación
+     */
+    void recibir(List<Alerta> alertas);
+}
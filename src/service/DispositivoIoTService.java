@@ -1,84 +1,162 @@
 package service;
 
-import config.DatabaseConnection;
+import config.AppConfig;
 import dao.ConfiguracionRedDao;
+import dao.DaoFactory;
 import dao.DispositivoIoTDao;
 import entities.ConfiguracionRed;
 import entities.DispositivoIoT;
+import entities.EventoCambio;
+import entities.EventoCambio.Operacion;
 import exceptions.*;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import metrics.TransaccionEvent;
+import store.SnapshotFlota;
 import util.Validator;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Servicio para la gestión de DispositivoIoT.
  * Implementa la lógica de negocio, validaciones y transacciones.
+ * Cada operación pública registra su latencia y errores en MetricsRegistry,
+ * y cada transacción emite un evento JFR (TransaccionEvent).
+ * Las conexiones se obtienen de TransactionTemplate: dentro de una unidad de
+ * trabajo, las operaciones se unen a su transacción en lugar de confirmar por separado.
+ * Cada alta, modificación o baja registra su evento en el outbox (OutboxService)
+ * dentro de la misma transacción.
+ * Las altas, bajas (también las masivas) y modificaciones se avisan a los
+ * {@link ObservadorDispositivos} registrados después del commit.
+ * Si la BD no está disponible, las lecturas se responden desde la copia local
+ * del inventario y las escrituras se rechazan (ver {@link ModoDegradado}).
  *
  * @author David Vergara
  * @version 1.0
  */
 public class DispositivoIoTService implements GenericService<DispositivoIoT> {
 
+    private static final OperationMetrics METRICA_INSERTAR = MetricsRegistry.operacion("DispositivoIoTService.insertar");
+    private static final OperationMetrics METRICA_INSERTAR_DISPOSITIVO_CON_CONFIGURACION = MetricsRegistry.operacion("DispositivoIoTService.insertarDispositivoConConfiguracion");
+    private static final OperationMetrics METRICA_ACTUALIZAR = MetricsRegistry.operacion("DispositivoIoTService.actualizar");
+    private static final OperationMetrics METRICA_ELIMINAR = MetricsRegistry.operacion("DispositivoIoTService.eliminar");
+    private static final OperationMetrics METRICA_GET_BY_ID = MetricsRegistry.operacion("DispositivoIoTService.getById");
+    private static final OperationMetrics METRICA_GET_ALL = MetricsRegistry.operacion("DispositivoIoTService.getAll");
+    private static final OperationMetrics METRICA_BUSCAR_POR_SERIAL = MetricsRegistry.operacion("DispositivoIoTService.buscarPorSerial");
+    private static final OperationMetrics METRICA_BUSCAR_POR_UBICACION = MetricsRegistry.operacion("DispositivoIoTService.buscarPorUbicacion");
+    private static final OperationMetrics METRICA_ELIMINAR_POR_IDS = MetricsRegistry.operacion("DispositivoIoTService.eliminarPorIds");
+    private static final OperationMetrics METRICA_ELIMINAR_POR_UBICACION = MetricsRegistry.operacion("DispositivoIoTService.eliminarPorUbicacion");
+    private static final OperationMetrics METRICA_ELIMINAR_POR_MODELO = MetricsRegistry.operacion("DispositivoIoTService.eliminarPorModelo");
+    private static final OperationMetrics METRICA_ACTUALIZAR_FIRMWARE_POR_MODELO = MetricsRegistry.operacion("DispositivoIoTService.actualizarFirmwarePorModelo");
+    private static final OperationMetrics METRICA_MODIFICADOS_DESDE = MetricsRegistry.operacion("DispositivoIoTService.modificadosDesde");
+
+    /** Dispositivos por lote (y por transacción) en las operaciones masivas. */
+    private static final int TAMANO_LOTE = Math.max(1, AppConfig.getInt("bulk.chunkSize", 1000));
+
+    /**
+     * Obtiene una página de IDs de dispositivos para una operación masiva.
+     */
+    @FunctionalInterface
+    private interface BuscadorIds {
+
+        List<Long> buscar(long desdeId, int limite, Connection conn) throws SQLException;
+    }
+
+    /** Observadores de todas las instancias del servicio (ver {@link #agregarObservador}). */
+    private static final List<ObservadorDispositivos> OBSERVADORES = new CopyOnWriteArrayList<>();
+
     private final DispositivoIoTDao dispositivoDao;
     private final ConfiguracionRedDao configuracionDao;
+    private final OutboxService outbox;
+    private final ModoDegradado modoDegradado = ModoDegradado.getInstancia();
 
     public DispositivoIoTService() {
-        this.dispositivoDao = new DispositivoIoTDao();
-        this.configuracionDao = new ConfiguracionRedDao();
+        this.dispositivoDao = DaoFactory.dispositivos();
+        this.configuracionDao = DaoFactory.configuraciones();
+        this.outbox = new OutboxService();
+    }
+
+    /**
+     * Registra un observador de los cambios confirmados de dispositivos (ej: el
+     * mapa de seriales del servidor de dispositivos).
+     */
+    public static void agregarObservador(ObservadorDispositivos observador) {
+        OBSERVADORES.add(observador);
+    }
+
+    /**
+     * Quita un observador registrado con {@link #agregarObservador}.
+     */
+    public static void quitarObservador(ObservadorDispositivos observador) {
+        OBSERVADORES.remove(observador);
     }
 
     @Override
     public void insertar(DispositivoIoT entity) throws Exception {
-        // Validaciones
-        validarDispositivo(entity);
-
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // Verificar que el serial no exista
-            if (existeSerial(entity.getSerial(), conn)) {
-                throw new DuplicateEntityException("Ya existe un dispositivo con el serial: " + entity.getSerial());
-            }
+            // Validaciones
+            validarDispositivo(entity);
 
-            // Crear el dispositivo
-            dispositivoDao.crear(entity, conn);
+            TransaccionEvent evento = TransaccionEvent.iniciar("DispositivoIoTService.insertar");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
 
-            conn.commit();
-            System.out.println("[DispositivoIoTService] Dispositivo creado exitosamente con ID: " + entity.getId());
+                // Verificar que el serial no exista
+                if (existeSerial(entity.getSerial(), conn)) {
+                    throw new DuplicateEntityException("Ya existe un dispositivo con el serial: " + entity.getSerial());
+                }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error SQL");
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // Crear el dispositivo
+                dispositivoDao.crear(entity, conn);
+                outbox.registrar(OutboxService.evento(Operacion.INSERT, entity), conn);
+
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                avisarRegistrado(null, entity);
+                System.out.println("[DispositivoIoTService] Dispositivo creado exitosamente con ID: " + entity.getId());
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                        System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error SQL");
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error: " + e.getMessage());
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                        System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error: " + e.getMessage());
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(entity.getId());
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_INSERTAR.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_INSERTAR.registrar(inicio);
         }
     }
 
@@ -92,219 +170,244 @@ public class DispositivoIoTService implements GenericService<DispositivoIoT> {
      */
     public void insertarDispositivoConConfiguracion(DispositivoIoT dispositivo, ConfiguracionRed configuracion)
             throws Exception {
-        // Validaciones
-        validarDispositivo(dispositivo);
-        validarConfiguracion(configuracion);
-
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // 1. Verificar que el serial no exista
-            if (existeSerial(dispositivo.getSerial(), conn)) {
-                throw new DuplicateEntityException("Ya existe un dispositivo con el serial: " + dispositivo.getSerial());
-            }
-
-            // 2. Verificar que la IP no exista (si no es DHCP)
-            if (!configuracion.getDhcpHabilitado() && configuracionDao.existeIp(configuracion.getIp(), conn)) {
-                throw new DuplicateEntityException("Ya existe una configuración con la IP: " + configuracion.getIp());
-            }
-
-            // 3. Crear el DispositivoIoT PRIMERO para obtener su ID
-            dispositivoDao.crear(dispositivo, conn);
-            System.out.println("[DispositivoIoTService] DispositivoIoT creado con ID: " + dispositivo.getId());
-
-            // 4. Setear el dispositivo_id en la configuración (FK requerida)
-            configuracion.setDispositivoId(dispositivo.getId());
-
-            // 5. Crear la ConfiguracionRed con el dispositivo_id válido
-            configuracionDao.crear(configuracion, conn);
-            System.out.println("[DispositivoIoTService] ConfiguracionRed creada con ID: " + configuracion.getId());
-
-            // 6. Asociar la configuración al dispositivo en memoria (para retornar completo)
-            dispositivo.setConfiguracionRed(configuracion);
+            // Validaciones
+            validarDispositivo(dispositivo);
+            validarConfiguracion(configuracion);
+
+            TransaccionEvent evento = TransaccionEvent.iniciar("DispositivoIoTService.insertarDispositivoConConfiguracion");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
+
+                // 1. Verificar que el serial no exista
+                if (existeSerial(dispositivo.getSerial(), conn)) {
+                    throw new DuplicateEntityException("Ya existe un dispositivo con el serial: " + dispositivo.getSerial());
+                }
 
-            // 7. Commit de la transacción
-            conn.commit();
-            System.out.println("[DispositivoIoTService] Transacción completada exitosamente");
+                // 2. Verificar que la IP no exista (si no es DHCP)
+                if (!configuracion.getDhcpHabilitado() && configuracionDao.existeIp(configuracion.getIp(), conn)) {
+                    throw new DuplicateEntityException("Ya existe una configuración con la IP: " + configuracion.getIp());
+                }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error SQL");
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // 3. Crear el DispositivoIoT PRIMERO para obtener su ID
+                dispositivoDao.crear(dispositivo, conn);
+                System.out.println("[DispositivoIoTService] DispositivoIoT creado con ID: " + dispositivo.getId());
+
+                // 4. Setear el dispositivo_id en la configuración (FK requerida)
+                configuracion.setDispositivoId(dispositivo.getId());
+
+                // 5. Crear la ConfiguracionRed con el dispositivo_id válido
+                configuracionDao.crear(configuracion, conn);
+                System.out.println("[DispositivoIoTService] ConfiguracionRed creada con ID: " + configuracion.getId());
+
+                // 6. Asociar la configuración al dispositivo en memoria (para retornar completo)
+                dispositivo.setConfiguracionRed(configuracion);
+
+                // 7. Registrar ambas altas en el outbox
+                outbox.registrar(Arrays.asList(OutboxService.evento(Operacion.INSERT, dispositivo),
+                        OutboxService.evento(Operacion.INSERT, configuracion)), conn);
+
+                // 8. Commit de la transacción
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                avisarRegistrado(null, dispositivo);
+                System.out.println("[DispositivoIoTService] Transacción completada exitosamente");
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                        System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error SQL");
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                    System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error: " + e.getMessage());
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                        System.out.println("[DispositivoIoTService] Rollback ejecutado debido a error: " + e.getMessage());
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(dispositivo.getId());
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_INSERTAR_DISPOSITIVO_CON_CONFIGURACION.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_INSERTAR_DISPOSITIVO_CON_CONFIGURACION.registrar(inicio);
         }
     }
 
     @Override
     public void actualizar(DispositivoIoT entity) throws Exception {
-        // Validaciones
-        validarDispositivo(entity);
-        Validator.validarId(entity.getId());
-
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // Verificar que el dispositivo exista
-            DispositivoIoT existente = dispositivoDao.leer(entity.getId(), conn);
-            if (existente == null) {
-                throw new EntityNotFoundException("No se encontró el dispositivo con ID: " + entity.getId());
-            }
-
-            // Verificar que el serial no esté duplicado (excepto el actual)
-            DispositivoIoT dispositivoConSerial = dispositivoDao.buscarPorSerial(entity.getSerial(), conn);
-            if (dispositivoConSerial != null && !dispositivoConSerial.getId().equals(entity.getId())) {
-                throw new DuplicateEntityException("Ya existe otro dispositivo con el serial: " + entity.getSerial());
-            }
-
-            // Actualizar el dispositivo
-            dispositivoDao.actualizar(entity, conn);
+            // Validaciones
+            validarDispositivo(entity);
+            Validator.validarId(entity.getId());
+
+            TransaccionEvent evento = TransaccionEvent.iniciar("DispositivoIoTService.actualizar");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
+
+                // Verificar que el dispositivo exista
+                DispositivoIoT existente = dispositivoDao.leer(entity.getId(), conn);
+                if (existente == null) {
+                    throw new EntityNotFoundException("No se encontró el dispositivo con ID: " + entity.getId());
+                }
 
-            conn.commit();
-            System.out.println("[DispositivoIoTService] Dispositivo actualizado exitosamente");
+                // Verificar que el serial no esté duplicado (excepto el actual)
+                DispositivoIoT dispositivoConSerial = dispositivoDao.buscarPorSerial(entity.getSerial(), conn);
+                if (dispositivoConSerial != null && !dispositivoConSerial.getId().equals(entity.getId())) {
+                    throw new DuplicateEntityException("Ya existe otro dispositivo con el serial: " + entity.getSerial());
+                }
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // Actualizar el dispositivo
+                dispositivoDao.actualizar(entity, conn);
+                outbox.registrar(OutboxService.evento(Operacion.UPDATE, entity), conn);
+
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                avisarRegistrado(existente, entity);
+                System.out.println("[DispositivoIoTService] Dispositivo actualizado exitosamente");
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(entity.getId());
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_ACTUALIZAR.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_ACTUALIZAR.registrar(inicio);
         }
     }
 
     @Override
     public void eliminar(long id) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            conn.setAutoCommit(false);
-
-            // Verificar que el dispositivo exista
-            DispositivoIoT dispositivo = dispositivoDao.leer(id, conn);
-            if (dispositivo == null) {
-                throw new EntityNotFoundException("No se encontró el dispositivo con ID: " + id);
-            }
-
-            // Eliminar lógicamente el dispositivo
-            dispositivoDao.eliminar(id, conn);
-
-            // También eliminar la configuración de red asociada
-            if (dispositivo.getConfiguracionRed() != null) {
-                configuracionDao.eliminar(dispositivo.getConfiguracionRed().getId(), conn);
-            }
+            TransaccionEvent evento = TransaccionEvent.iniciar("DispositivoIoTService.eliminar");
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexion();
+
+                // Verificar que el dispositivo exista
+                DispositivoIoT dispositivo = dispositivoDao.leer(id, conn);
+                if (dispositivo == null) {
+                    throw new EntityNotFoundException("No se encontró el dispositivo con ID: " + id);
+                }
 
-            conn.commit();
-            System.out.println("[DispositivoIoTService] Dispositivo eliminado lógicamente");
+                // Eliminar lógicamente el dispositivo
+                dispositivoDao.eliminar(id, conn);
 
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                // También eliminar la configuración de red asociada
+                List<EventoCambio> eventos = new ArrayList<>();
+                eventos.add(OutboxService.evento(Operacion.DELETE, dispositivo));
+                if (dispositivo.getConfiguracionRed() != null) {
+                    configuracionDao.eliminar(dispositivo.getConfiguracionRed().getId(), conn);
+                    eventos.add(OutboxService.evento(Operacion.DELETE, dispositivo.getConfiguracionRed()));
                 }
-            }
-            throw manejarErrorSQL(e);
-        } catch (Exception e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                outbox.registrar(eventos, conn);
+
+                TransactionTemplate.confirmar(conn);
+                evento.confirmar();
+                avisarEliminados(Collections.singletonList(dispositivo));
+                System.out.println("[DispositivoIoTService] Dispositivo eliminado lógicamente");
+
+            } catch (SQLException e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+                throw manejarErrorSQL(e);
+            } catch (Exception e) {
+                if (conn != null) {
+                    try {
+                        TransactionTemplate.revertir(conn);
+                    } catch (SQLException ex) {
+                        ex.printStackTrace();
+                    }
                 }
+                throw e;
+            } finally {
+                evento.finalizar(id);
+                TransactionTemplate.liberar(conn);
             }
+        } catch (Exception e) {
+            METRICA_ELIMINAR.registrarError();
             throw e;
         } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            }
+            METRICA_ELIMINAR.registrar(inicio);
         }
     }
 
     @Override
     public DispositivoIoT getById(long id) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            DispositivoIoT dispositivo = dispositivoDao.leer(id, conn);
+            DispositivoIoT dispositivo = modoDegradado.leer(
+                    conn -> dispositivoDao.leer(id, conn),
+                    copia -> copia.porId(id),
+                    "Error al obtener el dispositivo");
 
             if (dispositivo == null) {
                 throw new EntityNotFoundException("No se encontró el dispositivo con ID: " + id);
             }
 
             return dispositivo;
-
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al obtener el dispositivo", e);
+        } catch (Exception e) {
+            METRICA_GET_BY_ID.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_GET_BY_ID.registrar(inicio);
         }
     }
 
     @Override
     public List<DispositivoIoT> getAll() throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            return dispositivoDao.leerTodos(conn);
-
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al obtener la lista de dispositivos", e);
+            return modoDegradado.leer(
+                    dispositivoDao::leerTodos,
+                    copia -> filtrar(copia, dispositivo -> true),
+                    "Error al obtener la lista de dispositivos");
+        } catch (Exception e) {
+            METRICA_GET_ALL.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_GET_ALL.registrar(inicio);
         }
     }
 
@@ -316,21 +419,23 @@ public class DispositivoIoTService implements GenericService<DispositivoIoT> {
      * @throws Exception si no se encuentra o hay un error
      */
     public DispositivoIoT buscarPorSerial(String serial) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            DispositivoIoT dispositivo = dispositivoDao.buscarPorSerial(serial, conn);
+            DispositivoIoT dispositivo = modoDegradado.leer(
+                    conn -> dispositivoDao.buscarPorSerial(serial, conn),
+                    copia -> copia.porSerial(serial),
+                    "Error al buscar el dispositivo por serial");
 
             if (dispositivo == null) {
                 throw new EntityNotFoundException("No se encontró el dispositivo con serial: " + serial);
             }
 
             return dispositivo;
-
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al buscar el dispositivo por serial", e);
+        } catch (Exception e) {
+            METRICA_BUSCAR_POR_SERIAL.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_BUSCAR_POR_SERIAL.registrar(inicio);
         }
     }
 
@@ -342,15 +447,396 @@ public class DispositivoIoTService implements GenericService<DispositivoIoT> {
      * @throws Exception si hay un error
      */
     public List<DispositivoIoT> buscarPorUbicacion(String ubicacion) throws Exception {
-        Connection conn = null;
+        long inicio = System.nanoTime();
         try {
-            conn = DatabaseConnection.getConnection();
-            return dispositivoDao.buscarPorUbicacion(ubicacion, conn);
+            return modoDegradado.leer(
+                    conn -> dispositivoDao.buscarPorUbicacion(ubicacion, conn),
+                    copia -> filtrar(copia, dispositivo -> dispositivo.getUbicacion().toLowerCase()
+                            .contains(ubicacion.toLowerCase())),
+                    "Error al buscar dispositivos por ubicación");
+        } catch (Exception e) {
+            METRICA_BUSCAR_POR_UBICACION.registrarError();
+            throw e;
+        } finally {
+            METRICA_BUSCAR_POR_UBICACION.registrar(inicio);
+        }
+    }
 
-        } catch (SQLException e) {
-            throw new DataAccessException("Error al buscar dispositivos por ubicación", e);
+    /**
+     * Sincronización incremental: dispositivos (sin su ConfiguracionRed; la relación viaja en las configuraciones) modificados después de una marca,
+     * incluidas las dadas de baja (eliminado = true, lápidas), en páginas
+     * ordenadas por (actualizado, id). Para recorrer todos los cambios se
+     * llama con la marca y el último ID de la página anterior mientras
+     * {@link PaginaCambios#hayMas()}.
+     *
+     * Los cambios de los últimos sync.margenSegundos se entregan en una
+     * llamada posterior, para no saltear transacciones que confirman tarde.
+     * Se lee de db.url y no de una réplica: con el atraso de la réplica, el
+     * margen no alcanzaría y se perderían cambios.
+     *
+     * @param marca marca de la página anterior (null para empezar desde el principio)
+     * @param ultimoId último ID de la página anterior (0 para empezar)
+     * @param limite cantidad máxima de filas (1 a 10000)
+     * @return página de cambios con la marca siguiente
+     * @throws Exception si los parámetros son inválidos o hay un error de BD
+     */
+    public PaginaCambios<DispositivoIoT> modificadosDesde(Timestamp marca, long ultimoId, int limite) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            if (ultimoId < 0) {
+                throw new ValidationException("El último ID no puede ser negativo: " + ultimoId);
+            }
+            if (limite <= 0 || limite > PaginaCambios.MAX_LIMITE) {
+                throw new ValidationException("El límite debe estar entre 1 y " + PaginaCambios.MAX_LIMITE + ": " + limite);
+            }
+
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexionPrincipal();
+                List<DispositivoIoT> cambios = dispositivoDao.buscarModificadosDesde(marca, ultimoId,
+                        PaginaCambios.MARGEN_SEGUNDOS, limite, conn);
+                return PaginaCambios.de(cambios, marca, ultimoId, limite, DispositivoIoT::getActualizado, DispositivoIoT::getId);
+
+            } catch (SQLException e) {
+                throw new DataAccessException("Error al obtener los dispositivos modificados", e);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_MODIFICADOS_DESDE.registrarError();
+            throw e;
+        } finally {
+            METRICA_MODIFICADOS_DESDE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Elimina lógicamente varios dispositivos y sus configuraciones de red.
+     * Se procesan en lotes de bulk.chunkSize, cada uno en su propia transacción
+     * con dos UPDATE (configuraciones y dispositivos). Dentro de una unidad de
+     * trabajo (TransactionTemplate) todos los lotes se unen a ella.
+     *
+     * @param ids IDs de los dispositivos (los inexistentes o ya eliminados se ignoran)
+     * @return cantidad de dispositivos y configuraciones eliminados
+     * @throws Exception si algún ID es inválido o hay un error de BD
+     */
+    public ResultadoMasivo eliminarPorIds(Collection<Long> ids) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Validator.validarNoNulo(ids, "IDs");
+            List<Long> unicos = new ArrayList<>(new LinkedHashSet<>(ids));
+            for (Long id : unicos) {
+                Validator.validarId(id);
+            }
+
+            ResultadoMasivo resultado = new ResultadoMasivo();
+            for (int desde = 0; desde < unicos.size(); desde += TAMANO_LOTE) {
+                List<Long> lote = unicos.subList(desde, Math.min(desde + TAMANO_LOTE, unicos.size()));
+                TransactionTemplate.ejecutar(() -> {
+                    eliminarLote(lote, TransactionTemplate.conexionActual(), resultado);
+                    return null;
+                });
+            }
+
+            System.out.println("[DispositivoIoTService] Eliminación masiva por IDs: " + resultado);
+            return resultado;
+        } catch (Exception e) {
+            METRICA_ELIMINAR_POR_IDS.registrarError();
+            throw e;
         } finally {
-            DatabaseConnection.closeConnection(conn);
+            METRICA_ELIMINAR_POR_IDS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Elimina lógicamente todos los dispositivos activos de una ubicación
+     * (coincidencia exacta) y sus configuraciones de red, en lotes.
+     *
+     * @param ubicacion ubicación a dar de baja
+     * @return cantidad de dispositivos y configuraciones eliminados
+     * @throws Exception si la ubicación es inválida o hay un error de BD
+     */
+    public ResultadoMasivo eliminarPorUbicacion(String ubicacion) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Validator.validarNoVacio(ubicacion, "Ubicación");
+            String ubicacionExacta = ubicacion.trim();
+
+            ResultadoMasivo resultado = eliminarPorFiltro((desdeId, limite, conn) ->
+                    dispositivoDao.buscarIdsPorUbicacion(ubicacionExacta, desdeId, limite, conn));
+
+            System.out.println("[DispositivoIoTService] Eliminación masiva en '" + ubicacionExacta + "': " + resultado);
+            return resultado;
+        } catch (Exception e) {
+            METRICA_ELIMINAR_POR_UBICACION.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR_POR_UBICACION.registrar(inicio);
+        }
+    }
+
+    /**
+     * Elimina lógicamente todos los dispositivos activos de un modelo y sus
+     * configuraciones de red, en lotes.
+     *
+     * @param modelo modelo a dar de baja (se normaliza a mayúsculas)
+     * @return cantidad de dispositivos y configuraciones eliminados
+     * @throws Exception si el modelo es inválido o hay un error de BD
+     */
+    public ResultadoMasivo eliminarPorModelo(String modelo) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Validator.validarNoVacio(modelo, "Modelo");
+            String modeloNormalizado = Validator.normalizarString(modelo);
+
+            ResultadoMasivo resultado = eliminarPorFiltro((desdeId, limite, conn) ->
+                    dispositivoDao.buscarIdsPorModelo(modeloNormalizado, desdeId, limite, conn));
+
+            System.out.println("[DispositivoIoTService] Eliminación masiva del modelo " + modeloNormalizado + ": " + resultado);
+            return resultado;
+        } catch (Exception e) {
+            METRICA_ELIMINAR_POR_MODELO.registrarError();
+            throw e;
+        } finally {
+            METRICA_ELIMINAR_POR_MODELO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Actualiza el firmware de todos los dispositivos activos de un modelo cuya
+     * versión actual sea menor a la indicada. Ver
+     * {@link #actualizarFirmwarePorModelo(String, String, String, long, Consumer)}.
+     *
+     * @param modelo modelo a actualizar
+     * @param firmwareNuevo versión a aplicar (vX.Y.Z)
+     * @param firmwareMenorA solo se actualizan los dispositivos con versión menor a esta (vX.Y.Z)
+     * @return resultado con la cantidad de dispositivos actualizados
+     * @throws Exception si los parámetros son inválidos o hay un error de BD
+     */
+    public ResultadoMasivo actualizarFirmwarePorModelo(String modelo, String firmwareNuevo, String firmwareMenorA)
+            throws Exception {
+        return actualizarFirmwarePorModelo(modelo, firmwareNuevo, firmwareMenorA, 0, null);
+    }
+
+    /**
+     * Actualiza el firmware de los dispositivos activos de un modelo cuya versión
+     * actual sea menor a firmwareMenorA (comparación numérica; los dispositivos
+     * sin versión también se actualizan y los de versión con formato inválido se omiten).
+     *
+     * Se recorre por rangos de ID en lotes de bulk.chunkSize; cada lote es una
+     * transacción corta (SELECT ... FOR UPDATE + un UPDATE) para no retener
+     * bloqueos sobre todo el modelo. La operación es idempotente: si se
+     * interrumpe, basta con reanudarla desde el último ID confirmado
+     * (ResultadoMasivo.getUltimoId, informado en cada lote) o repetirla completa.
+     *
+     * @param modelo modelo a actualizar
+     * @param firmwareNuevo versión a aplicar (vX.Y.Z)
+     * @param firmwareMenorA solo se actualizan los dispositivos con versión menor a esta (vX.Y.Z)
+     * @param desdeId reanudar a partir de este ID (0 para empezar)
+     * @param progreso recibe el resultado acumulado tras cada lote confirmado
+     *                 (null = informar por consola)
+     * @return resultado con la cantidad de dispositivos revisados y actualizados
+     * @throws Exception si los parámetros son inválidos o hay un error de BD
+     */
+    public ResultadoMasivo actualizarFirmwarePorModelo(String modelo, String firmwareNuevo, String firmwareMenorA,
+                                                       long desdeId, Consumer<ResultadoMasivo> progreso)
+            throws Exception {
+        long inicio = System.nanoTime();
+        ResultadoMasivo resultado = new ResultadoMasivo();
+        try {
+            // Validaciones (una sola vez para toda la operación)
+            Validator.validarNoVacio(modelo, "Modelo");
+            Validator.validarNoVacio(firmwareNuevo, "Firmware nuevo");
+            Validator.validarNoVacio(firmwareMenorA, "Firmware menor a");
+            Validator.validarFormatoFirmware(firmwareNuevo);
+            Validator.validarFormatoFirmware(firmwareMenorA);
+            if (desdeId < 0) {
+                throw new ValidationException("El ID de reanudación no puede ser negativo: " + desdeId);
+            }
+            String modeloNormalizado = Validator.normalizarString(modelo);
+
+            long ultimoId = desdeId;
+            while (true) {
+                long desde = ultimoId;
+                // {revisados, actualizados, último ID}
+                long[] lote = TransactionTemplate.ejecutar(() -> {
+                    Connection conn = TransactionTemplate.conexionActual();
+                    try {
+                        List<DispositivoIoT> dispositivos =
+                                dispositivoDao.bloquearLotePorModelo(modeloNormalizado, desde, TAMANO_LOTE, conn);
+                        if (dispositivos.isEmpty()) {
+                            return new long[]{0, 0, desde};
+                        }
+
+                        List<Long> ids = new ArrayList<>();
+                        List<EventoCambio> eventos = new ArrayList<>();
+                        for (DispositivoIoT dispositivo : dispositivos) {
+                            if (requiereFirmware(dispositivo.getFirmwareVersion(), firmwareMenorA)) {
+                                ids.add(dispositivo.getId());
+                                dispositivo.setFirmwareVersion(firmwareNuevo);
+                                eventos.add(OutboxService.evento(Operacion.UPDATE, dispositivo));
+                            }
+                        }
+                        int actualizados = ids.isEmpty() ? 0
+                                : dispositivoDao.actualizarFirmwarePorIds(ids, firmwareNuevo, conn);
+                        outbox.registrar(eventos, conn);
+
+                        return new long[]{dispositivos.size(), actualizados,
+                                dispositivos.get(dispositivos.size() - 1).getId()};
+                    } catch (SQLException e) {
+                        throw manejarErrorSQL(e);
+                    }
+                });
+
+                if (lote[0] == 0) {
+                    break;
+                }
+                resultado.sumarLote(lote[1], 0);
+                resultado.avanzar(lote[0], lote[0] - lote[1], lote[2]);
+                if (progreso != null) {
+                    progreso.accept(resultado);
+                } else {
+                    System.out.println("[DispositivoIoTService] Firmware " + modeloNormalizado + " -> " + firmwareNuevo
+                            + ": lote " + resultado.getLotes() + ", revisados " + resultado.getRevisados()
+                            + ", actualizados " + resultado.getDispositivos() + ", último ID " + resultado.getUltimoId());
+                }
+                if (lote[0] < TAMANO_LOTE) {
+                    break;
+                }
+                ultimoId = lote[2];
+            }
+
+            System.out.println("[DispositivoIoTService] Actualización de firmware completada: " + resultado);
+            return resultado;
+        } catch (Exception e) {
+            METRICA_ACTUALIZAR_FIRMWARE_POR_MODELO.registrarError();
+            if (resultado.getLotes() > 0) {
+                System.err.println("[DispositivoIoTService] Actualización de firmware interrumpida; "
+                        + "reanudar desde ID " + resultado.getUltimoId());
+            }
+            throw e;
+        } finally {
+            METRICA_ACTUALIZAR_FIRMWARE_POR_MODELO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Indica si un dispositivo con la versión dada debe recibir el firmware nuevo.
+     *
+     * @param actual versión actual del dispositivo (puede ser null)
+     * @param firmwareMenorA umbral: se actualizan las versiones menores a esta
+     * @return true si debe actualizarse
+     */
+    private boolean requiereFirmware(String actual, String firmwareMenorA) {
+        if (actual == null || actual.isEmpty()) {
+            return true;
+        }
+        return Validator.esFirmwareValido(actual) && Validator.compararFirmware(actual, firmwareMenorA) < 0;
+    }
+
+    /**
+     * Recorre por ID (keyset) los dispositivos que cumplen un filtro y los elimina
+     * lote por lote. Cada lote (SELECT de IDs + dos UPDATE) es una transacción corta.
+     *
+     * @param buscador obtiene la siguiente página de IDs
+     * @return resultado acumulado
+     * @throws Exception si hay un error de BD
+     */
+    private ResultadoMasivo eliminarPorFiltro(BuscadorIds buscador) throws Exception {
+        ResultadoMasivo resultado = new ResultadoMasivo();
+        long ultimoId = 0;
+
+        while (true) {
+            long desdeId = ultimoId;
+            List<Long> lote = TransactionTemplate.ejecutar(() -> {
+                Connection conn = TransactionTemplate.conexionActual();
+                List<Long> ids;
+                try {
+                    ids = buscador.buscar(desdeId, TAMANO_LOTE, conn);
+                } catch (SQLException e) {
+                    throw manejarErrorSQL(e);
+                }
+                if (!ids.isEmpty()) {
+                    eliminarLote(ids, conn, resultado);
+                }
+                return ids;
+            });
+
+            if (lote.size() < TAMANO_LOTE) {
+                return resultado;
+            }
+            ultimoId = lote.get(lote.size() - 1);
+        }
+    }
+
+    /**
+     * Elimina un lote: un UPDATE para las configuraciones y otro para los dispositivos.
+     * Con el outbox habilitado (o con observadores), antes se leen y bloquean
+     * las filas activas del lote para registrar un evento (y avisar) por cada
+     * fila que realmente se elimina.
+     *
+     * @param ids IDs del lote
+     * @param conn conexión de la transacción del lote
+     * @param resultado acumulador
+     * @throws Exception excepción de negocio correspondiente al error SQL
+     */
+    private void eliminarLote(List<Long> ids, Connection conn, ResultadoMasivo resultado) throws Exception {
+        try {
+            List<EventoCambio> eventos = new ArrayList<>();
+            List<DispositivoIoT> activos = OutboxService.HABILITADO || !OBSERVADORES.isEmpty()
+                    ? dispositivoDao.bloquearActivosPorIds(ids, conn) : Collections.emptyList();
+            if (OutboxService.HABILITADO) {
+                for (DispositivoIoT dispositivo : activos) {
+                    eventos.add(OutboxService.evento(Operacion.DELETE, dispositivo));
+                }
+                for (ConfiguracionRed configuracion : configuracionDao.bloquearActivasPorDispositivos(ids, conn)) {
+                    eventos.add(OutboxService.evento(Operacion.DELETE, configuracion));
+                }
+            }
+
+            int configuraciones = configuracionDao.eliminarPorDispositivos(ids, conn);
+            int dispositivos = dispositivoDao.eliminarPorIds(ids, conn);
+            outbox.registrar(eventos, conn);
+            resultado.sumarLote(dispositivos, configuraciones);
+            avisarEliminados(activos);
+        } catch (SQLException e) {
+            throw manejarErrorSQL(e);
+        }
+    }
+
+    /**
+     * Avisa a los observadores un alta o modificación, cuando la transacción
+     * confirme (con {@link ObservadorDispositivos#serialCambiado} si cambió el serial).
+     *
+     * @param anterior dispositivo antes de la modificación (null en un alta)
+     * @param dispositivo dispositivo confirmado
+     */
+    private static void avisarRegistrado(DispositivoIoT anterior, DispositivoIoT dispositivo) {
+        boolean cambioSerial = anterior != null && !anterior.getSerial().equals(dispositivo.getSerial());
+        for (ObservadorDispositivos observador : OBSERVADORES) {
+            TransactionTemplate.despuesDeConfirmar(() -> {
+                if (cambioSerial) {
+                    observador.serialCambiado(anterior, dispositivo);
+                } else {
+                    observador.registrado(dispositivo);
+                }
+            });
+        }
+    }
+
+    /**
+     * Avisa a los observadores las bajas, cuando la transacción confirme.
+     */
+    private static void avisarEliminados(List<DispositivoIoT> dispositivos) {
+        if (dispositivos.isEmpty()) {
+            return;
+        }
+        for (ObservadorDispositivos observador : OBSERVADORES) {
+            TransactionTemplate.despuesDeConfirmar(() -> {
+                for (DispositivoIoT dispositivo : dispositivos) {
+                    observador.eliminado(dispositivo);
+                }
+            });
         }
     }
 
@@ -417,6 +903,19 @@ public class DispositivoIoTService implements GenericService<DispositivoIoT> {
         return dispositivoDao.buscarPorSerial(serial, conn) != null;
     }
 
+    /**
+     * Lectura sobre la copia local del modo degradado.
+     */
+    private static List<DispositivoIoT> filtrar(SnapshotFlota copia, Predicate<DispositivoIoT> filtro) {
+        List<DispositivoIoT> resultado = new ArrayList<>();
+        copia.recorrer(dispositivo -> {
+            if (filtro.test(dispositivo)) {
+                resultado.add(dispositivo);
+            }
+        });
+        return resultado;
+    }
+
     /**
      * Maneja errores SQL y los convierte en excepciones de negocio.
      *
@@ -424,6 +923,11 @@ public class DispositivoIoTService implements GenericService<DispositivoIoT> {
      * @return excepción de negocio correspondiente
      */
     private Exception manejarErrorSQL(SQLException e) {
+        if (ModoDegradado.esFallaDeConexion(e)) {
+            ModoDegradado.getInstancia().registrarFallo(e);
+            return new ServicioNoDisponibleException("Base de datos no disponible: " + e.getMessage(), e);
+        }
+
         int errorCode = e.getErrorCode();
         String mensaje = e.getMessage();
 
@@ -0,0 +1,273 @@
+package service;
+
+import config.AppConfig;
+import dao.UltimaSenalDao;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Seguimiento de heartbeats: guarda en memoria el instante de la última señal
+ * de cada dispositivo y lo persiste en la tabla last_seen.
+ *
+ * <ul>
+ *   <li>Las señales se registran en memoria, sin tocar la BD, en
+ *       {@value #FRANJAS} franjas ({@link IndiceUltimaSenal}) elegidas por
+ *       hash del ID, así los hilos que registran casi no compiten por el lock.</li>
+ *   <li>Cada heartbeat.volcadoSegundos se vuelcan solo las entradas que
+ *       cambiaron desde el volcado anterior, con upserts multi-fila en
+ *       transacciones de bulk.chunkSize filas. Si un lote falla, sus entradas
+ *       quedan pendientes para el volcado siguiente.</li>
+ *   <li>"Dispositivos silenciosos hace más de N minutos" se responde desde
+ *       memoria en O(silenciosos): cada franja mantiene sus dispositivos
+ *       ordenados por última señal.</li>
+ * </ul>
+ *
+ * Al iniciar se cargan las señales persistidas. Los dispositivos eliminados
+ * siguen en el índice hasta que se llame a {@link #olvidar}.
+ *
+ * @version 1.0
+ */
+public class HeartbeatTracker {
+
+    private static final OperationMetrics METRICA_VOLCAR = MetricsRegistry.operacion("HeartbeatTracker.volcar");
+    private static final OperationMetrics METRICA_CARGAR = MetricsRegistry.operacion("HeartbeatTracker.cargar");
+
+    private static final LongAdder REGISTRADOS = MetricsRegistry.contador("Heartbeat.registrados");
+    private static final LongAdder VOLCADOS = MetricsRegistry.contador("Heartbeat.volcados");
+
+    private static final int FRANJAS = 16;
+
+    private static final HeartbeatTracker INSTANCIA = new HeartbeatTracker();
+
+    private final int tamanoLote = Math.max(1, AppConfig.getInt("bulk.chunkSize", 1000));
+
+    private final IndiceUltimaSenal[] franjas = new IndiceUltimaSenal[FRANJAS];
+    private final UltimaSenalDao ultimaSenalDao = new UltimaSenalDao();
+    private ScheduledExecutorService scheduler;
+
+    private HeartbeatTracker() {
+        for (int i = 0; i < FRANJAS; i++) {
+            franjas[i] = new IndiceUltimaSenal();
+        }
+        MetricsRegistry.registrarIndicador("Heartbeat.dispositivos", this::cantidad);
+    }
+
+    /**
+     * @return el tracker compartido por toda la aplicación
+     */
+    public static HeartbeatTracker getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Carga las señales persistidas y programa el volcado periódico cada
+     * {@code volcadoSegundos} en un hilo daemon (no hace nada si ya está iniciado).
+     */
+    public synchronized void iniciar(long volcadoSegundos) {
+        if (scheduler != null) {
+            return;
+        }
+        try {
+            cargar();
+        } catch (Exception e) {
+            System.err.println("[HeartbeatTracker] No se pudieron cargar las últimas señales: " + e.getMessage());
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat-volcado");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                volcar();
+            } catch (Exception e) {
+                System.err.println("[HeartbeatTracker] Error al volcar últimas señales: " + e.getMessage());
+            }
+        }, volcadoSegundos, volcadoSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Detiene el volcado periódico y vuelca lo pendiente.
+     */
+    public synchronized void detener() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+
+        try {
+            volcar();
+        } catch (Exception e) {
+            System.err.println("[HeartbeatTracker] Error al volcar últimas señales: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registra un heartbeat recibido ahora.
+     *
+     * @param dispositivoId ID del dispositivo (mayor que 0)
+     * @throws IllegalArgumentException si el ID es inválido
+     */
+    public void registrar(long dispositivoId) {
+        registrar(dispositivoId, System.currentTimeMillis());
+    }
+
+    /**
+     * Registra un heartbeat. Una señal anterior a la ya registrada se ignora.
+     *
+     * @param dispositivoId ID del dispositivo (mayor que 0)
+     * @param instante instante de la señal (milisegundos epoch)
+     * @throws IllegalArgumentException si el ID es inválido
+     */
+    public void registrar(long dispositivoId, long instante) {
+        if (dispositivoId <= 0) {
+            throw new IllegalArgumentException("ID de dispositivo inválido: " + dispositivoId);
+        }
+        franja(dispositivoId).registrar(dispositivoId, instante, true);
+        REGISTRADOS.increment();
+    }
+
+    /**
+     * @return instante de la última señal (milisegundos epoch), o -1 si no hay señales
+     */
+    public long ultimaSenal(long dispositivoId) {
+        return franja(dispositivoId).ultimaSenal(dispositivoId);
+    }
+
+    /**
+     * Dispositivos sin señales en los últimos {@code minutos}, del más
+     * silencioso al más reciente dentro de cada franja.
+     *
+     * @param minutos minutos sin señales (mayor o igual que 0)
+     * @return IDs de los dispositivos silenciosos
+     * @throws IllegalArgumentException si los minutos son negativos
+     */
+    public List<Long> silenciosos(long minutos) {
+        if (minutos < 0) {
+            throw new IllegalArgumentException("Minutos inválidos: " + minutos);
+        }
+        long antesDe = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutos);
+
+        List<Long> resultado = new ArrayList<>();
+        for (IndiceUltimaSenal franja : franjas) {
+            franja.silenciosos(antesDe, resultado);
+        }
+        return resultado;
+    }
+
+    /**
+     * Deja de seguir un dispositivo (ej: al eliminarlo). Su fila en last_seen
+     * no se borra.
+     *
+     * @return true si estaba registrado
+     */
+    public boolean olvidar(long dispositivoId) {
+        return franja(dispositivoId).olvidar(dispositivoId);
+    }
+
+    /**
+     * @return cantidad de dispositivos con señales
+     */
+    public int cantidad() {
+        int total = 0;
+        for (IndiceUltimaSenal franja : franjas) {
+            total += franja.tamano();
+        }
+        return total;
+    }
+
+    /**
+     * Vuelca a last_seen las entradas modificadas desde el volcado anterior.
+     *
+     * @return cantidad de entradas volcadas
+     * @throws Exception si falla algún lote (sus entradas quedan pendientes)
+     */
+    public int volcar() throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            long[][] sucios = new long[FRANJAS][];
+            for (int i = 0; i < FRANJAS; i++) {
+                sucios[i] = franjas[i].tomarSucios();
+            }
+
+            int volcados = 0;
+            Exception error = null;
+            for (long[] pares : sucios) {
+                int filas = pares.length / 2;
+                for (int desde = 0; desde < filas; desde += tamanoLote) {
+                    int cantidad = Math.min(tamanoLote, filas - desde);
+                    if (error == null) {
+                        try {
+                            guardarLote(pares, desde, cantidad);
+                            volcados += cantidad;
+                            continue;
+                        } catch (Exception e) {
+                            error = e;
+                        }
+                    }
+                    remarcar(pares, desde, cantidad);
+                }
+            }
+
+            VOLCADOS.add(volcados);
+            if (error != null) {
+                throw error;
+            }
+            return volcados;
+        } catch (Exception e) {
+            METRICA_VOLCAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_VOLCAR.registrar(inicio);
+        }
+    }
+
+    private void guardarLote(long[] pares, int desde, int cantidad) throws Exception {
+        TransactionTemplate.ejecutar(() -> {
+            ultimaSenalDao.guardarLote(pares, desde, cantidad, TransactionTemplate.conexionActual());
+            return null;
+        });
+    }
+
+    private void remarcar(long[] pares, int desde, int cantidad) {
+        for (int i = desde; i < desde + cantidad; i++) {
+            long id = pares[2 * i];
+            franja(id).remarcar(id, pares[2 * i + 1]);
+        }
+    }
+
+    private void cargar() throws Exception {
+        long inicio = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = TransactionTemplate.obtenerConexionLectura();
+            ultimaSenalDao.recorrer(conn, par -> franja(par[0]).registrar(par[0], par[1], false));
+        } catch (Exception e) {
+            METRICA_CARGAR.registrarError();
+            throw e;
+        } finally {
+            TransactionTemplate.liberar(conn);
+            METRICA_CARGAR.registrar(inicio);
+        }
+    }
+
+    private IndiceUltimaSenal franja(long dispositivoId) {
+        // Bits altos del hash: la tabla de cada franja usa los bajos
+        return franjas[(int) ((dispositivoId * 0x9E3779B97F4A7C15L) >>> 60)];
+    }
+}
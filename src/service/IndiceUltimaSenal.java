@@ -0,0 +1,299 @@
+package service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Última señal de cada dispositivo, en arreglos primitivos (sin un objeto por
+ * dispositivo): una tabla hash de direccionamiento abierto ID → nodo y una
+ * lista doblemente enlazada de nodos ordenada por instante.
+ *
+ * Una señal nueva mueve el nodo al final de la lista, así los dispositivos
+ * silenciosos quedan al principio y se recorren en O(silenciosos). Los nodos
+ * modificados se anotan como "sucios" para volcar solo esos a la BD.
+ *
+ * Es una franja de {@link HeartbeatTracker}: todos los métodos se sincronizan
+ * sobre la instancia y cada operación es O(1) salvo las señales fuera de orden.
+ *
+ * @version 1.0
+ */
+final class IndiceUltimaSenal {
+
+    private static final int NINGUNO = -1;
+
+    // Tabla hash (clave 0 = libre; los IDs son positivos)
+    private long[] claves;
+    private int[] nodosPorClave;
+    private int mascara;
+
+    // Nodos
+    private long[] ids;
+    private long[] vistos;
+    private int[] anterior;
+    private int[] siguiente;
+    private boolean[] sucio;
+    private int proximoNodo;
+    private int libre = NINGUNO;
+
+    private int cabeza = NINGUNO;
+    private int cola = NINGUNO;
+    private int tamano;
+
+    private int[] sucios = new int[64];
+    private int cantidadSucios;
+
+    IndiceUltimaSenal() {
+        claves = new long[64];
+        nodosPorClave = new int[64];
+        mascara = 63;
+        ids = new long[32];
+        vistos = new long[32];
+        anterior = new int[32];
+        siguiente = new int[32];
+        sucio = new boolean[32];
+    }
+
+    /**
+     * Registra una señal. Una señal más antigua que la ya registrada se ignora.
+     *
+     * @param marcarSucio si debe volcarse a la BD (false al cargar desde la BD)
+     */
+    synchronized void registrar(long id, long visto, boolean marcarSucio) {
+        int nodo = buscar(id);
+
+        if (nodo == NINGUNO) {
+            nodo = crearNodo(id);
+            vistos[nodo] = visto;
+            insertarOrdenado(nodo);
+        } else {
+            if (visto <= vistos[nodo]) {
+                return;
+            }
+            vistos[nodo] = visto;
+            if (nodo != cola) {
+                desenlazar(nodo);
+                insertarOrdenado(nodo);
+            }
+        }
+
+        if (marcarSucio) {
+            marcarSucio(nodo);
+        }
+    }
+
+    /**
+     * @return instante de la última señal, o -1 si el dispositivo no tiene señales
+     */
+    synchronized long ultimaSenal(long id) {
+        int nodo = buscar(id);
+        return nodo == NINGUNO ? -1 : vistos[nodo];
+    }
+
+    /**
+     * Agrega a {@code destino} los dispositivos sin señales desde {@code antesDe}.
+     */
+    synchronized void silenciosos(long antesDe, List<Long> destino) {
+        for (int nodo = cabeza; nodo != NINGUNO && vistos[nodo] < antesDe; nodo = siguiente[nodo]) {
+            destino.add(ids[nodo]);
+        }
+    }
+
+    /**
+     * Deja de seguir un dispositivo.
+     *
+     * @return true si estaba registrado
+     */
+    synchronized boolean olvidar(long id) {
+        int posicion = posicionDe(id);
+        if (posicion == NINGUNO) {
+            return false;
+        }
+
+        int nodo = nodosPorClave[posicion];
+        eliminarDeTabla(posicion);
+        desenlazar(nodo);
+        sucio[nodo] = false;
+        siguiente[nodo] = libre;
+        libre = nodo;
+        tamano--;
+        return true;
+    }
+
+    /**
+     * Entrega los nodos modificados desde la llamada anterior y los marca limpios.
+     *
+     * @return pares (id, visto) consecutivos
+     */
+    synchronized long[] tomarSucios() {
+        long[] pares = new long[cantidadSucios * 2];
+        int n = 0;
+        for (int i = 0; i < cantidadSucios; i++) {
+            int nodo = sucios[i];
+            if (sucio[nodo]) {
+                sucio[nodo] = false;
+                pares[n++] = ids[nodo];
+                pares[n++] = vistos[nodo];
+            }
+        }
+        cantidadSucios = 0;
+        return n == pares.length ? pares : Arrays.copyOf(pares, n);
+    }
+
+    /**
+     * Vuelve a marcar como sucio un par que no se pudo volcar, salvo que el
+     * dispositivo se haya olvidado (o ya tenga una señal posterior, que ya está sucia).
+     */
+    synchronized void remarcar(long id, long visto) {
+        int nodo = buscar(id);
+        if (nodo != NINGUNO && vistos[nodo] == visto) {
+            marcarSucio(nodo);
+        }
+    }
+
+    synchronized int tamano() {
+        return tamano;
+    }
+
+    // ===== Lista ordenada por instante =====
+
+    /**
+     * Inserta el nodo en su lugar, buscando desde el final: con señales en
+     * orden (el caso normal) queda al final en O(1).
+     */
+    private void insertarOrdenado(int nodo) {
+        int previo = cola;
+        while (previo != NINGUNO && vistos[previo] > vistos[nodo]) {
+            previo = anterior[previo];
+        }
+
+        int proximo = previo == NINGUNO ? cabeza : siguiente[previo];
+        anterior[nodo] = previo;
+        siguiente[nodo] = proximo;
+        if (previo == NINGUNO) {
+            cabeza = nodo;
+        } else {
+            siguiente[previo] = nodo;
+        }
+        if (proximo == NINGUNO) {
+            cola = nodo;
+        } else {
+            anterior[proximo] = nodo;
+        }
+    }
+
+    private void desenlazar(int nodo) {
+        int previo = anterior[nodo];
+        int proximo = siguiente[nodo];
+        if (previo == NINGUNO) {
+            cabeza = proximo;
+        } else {
+            siguiente[previo] = proximo;
+        }
+        if (proximo == NINGUNO) {
+            cola = previo;
+        } else {
+            anterior[proximo] = previo;
+        }
+    }
+
+    private void marcarSucio(int nodo) {
+        if (sucio[nodo]) {
+            return;
+        }
+        sucio[nodo] = true;
+        if (cantidadSucios == sucios.length) {
+            sucios = Arrays.copyOf(sucios, sucios.length * 2);
+        }
+        sucios[cantidadSucios++] = nodo;
+    }
+
+    private int crearNodo(long id) {
+        int nodo;
+        if (libre != NINGUNO) {
+            nodo = libre;
+            libre = siguiente[nodo];
+        } else {
+            if (proximoNodo == ids.length) {
+                int capacidad = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacidad);
+                vistos = Arrays.copyOf(vistos, capacidad);
+                anterior = Arrays.copyOf(anterior, capacidad);
+                siguiente = Arrays.copyOf(siguiente, capacidad);
+                sucio = Arrays.copyOf(sucio, capacidad);
+            }
+            nodo = proximoNodo++;
+        }
+
+        ids[nodo] = id;
+        sucio[nodo] = false;
+        tamano++;
+        if (tamano * 2 > claves.length) {
+            redimensionar(claves.length * 2);
+        }
+        insertarEnTabla(id, nodo);
+        return nodo;
+    }
+
+    // ===== Tabla hash (sondeo lineal) =====
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int buscar(long id) {
+        int posicion = posicionDe(id);
+        return posicion == NINGUNO ? NINGUNO : nodosPorClave[posicion];
+    }
+
+    private int posicionDe(long id) {
+        for (int i = hash(id) & mascara; ; i = (i + 1) & mascara) {
+            if (claves[i] == id) {
+                return i;
+            }
+            if (claves[i] == 0) {
+                return NINGUNO;
+            }
+        }
+    }
+
+    private void insertarEnTabla(long id, int nodo) {
+        int i = hash(id) & mascara;
+        while (claves[i] != 0) {
+            i = (i + 1) & mascara;
+        }
+        claves[i] = id;
+        nodosPorClave[i] = nodo;
+    }
+
+    /**
+     * Elimina por desplazamiento hacia atrás (sin lápidas): corre a la
+     * posición liberada las claves posteriores del mismo grupo que puedan ocuparla.
+     */
+    private void eliminarDeTabla(int posicion) {
+        int hueco = posicion;
+        for (int i = (hueco + 1) & mascara; claves[i] != 0; i = (i + 1) & mascara) {
+            int ideal = hash(claves[i]) & mascara;
+            // La clave en i puede moverse al hueco si su posición ideal no está en (hueco, i]
+            if (((i - ideal) & mascara) >= ((i - hueco) & mascara)) {
+                claves[hueco] = claves[i];
+                nodosPorClave[hueco] = nodosPorClave[i];
+                hueco = i;
+            }
+        }
+        claves[hueco] = 0;
+    }
+
+    private void redimensionar(int capacidad) {
+        long[] clavesViejas = claves;
+        int[] nodosViejos = nodosPorClave;
+        claves = new long[capacidad];
+        nodosPorClave = new int[capacidad];
+        mascara = capacidad - 1;
+        for (int i = 0; i < clavesViejas.length; i++) {
+            if (clavesViejas[i] != 0) {
+                insertarEnTabla(clavesViejas[i], nodosViejos[i]);
+            }
+        }
+    }
+}
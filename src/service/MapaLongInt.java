@@ -0,0 +1,83 @@
+package service;
+
+/**
+ * Mapa long → int sobre arreglos primitivos (direccionamiento abierto con
+ * sondeo lineal), sin objetos por entrada. Las claves deben ser distintas de
+ * 0 y los valores no negativos. No es thread-safe ni admite eliminar: para
+ * quitar una clave se le asigna {@link #AUSENTE} (la entrada sigue ocupada).
+ *
+ * @version 1.0
+ */
+final class MapaLongInt {
+
+    static final int AUSENTE = -1;
+
+    private long[] claves;
+    private int[] valores;
+    private int mascara;
+    private int tamano;
+
+    MapaLongInt(int capacidadInicial) {
+        int capacidad = Integer.highestOneBit(Math.max(16, capacidadInicial * 2 - 1)) << 1;
+        claves = new long[capacidad];
+        valores = new int[capacidad];
+        mascara = capacidad - 1;
+    }
+
+    /**
+     * @return el valor asociado, o {@link #AUSENTE}
+     */
+    int get(long clave) {
+        for (int i = hash(clave) & mascara; ; i = (i + 1) & mascara) {
+            if (claves[i] == clave) {
+                return valores[i];
+            }
+            if (claves[i] == 0) {
+                return AUSENTE;
+            }
+        }
+    }
+
+    void put(long clave, int valor) {
+        int i = hash(clave) & mascara;
+        while (claves[i] != 0) {
+            if (claves[i] == clave) {
+                valores[i] = valor;
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+        claves[i] = clave;
+        valores[i] = valor;
+        if (++tamano * 2 > claves.length) {
+            redimensionar();
+        }
+    }
+
+    int tamano() {
+        return tamano;
+    }
+
+    private void redimensionar() {
+        long[] clavesViejas = claves;
+        int[] valoresViejos = valores;
+        claves = new long[clavesViejas.length * 2];
+        valores = new int[clavesViejas.length * 2];
+        mascara = claves.length - 1;
+        for (int j = 0; j < clavesViejas.length; j++) {
+            if (clavesViejas[j] != 0) {
+                int i = hash(clavesViejas[j]) & mascara;
+                while (claves[i] != 0) {
+                    i = (i + 1) & mascara;
+                }
+                claves[i] = clavesViejas[j];
+                valores[i] = valoresViejos[j];
+            }
+        }
+    }
+
+    private static int hash(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
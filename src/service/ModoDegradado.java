@@ -0,0 +1,325 @@
+package service;
+
+import config.DatabaseConnection;
+import exceptions.DataAccessException;
+import exceptions.ServicioNoDisponibleException;
+import metrics.MetricsRegistry;
+import store.SnapshotFlota;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Modo degradado de solo lectura para cuando MySQL no está disponible.
+ *
+ * <ul>
+ *   <li>Copia local: el inventario activo se exporta periódicamente
+ *       (degradado.refrescoSegundos) a un snapshot binario ({@link SnapshotFlota},
+ *       archivo snapshot.archivo) que sobrevive a reinicios.</li>
+ *   <li>Al detectar una falla de conexión (en una lectura, una escritura o la
+ *       verificación periódica) se pasa a modo degradado: las lecturas de
+ *       DispositivoIoTService y ConfiguracionRedService se responden desde la
+ *       copia, informando su antigüedad, y las escrituras se rechazan con
+ *       {@link ServicioNoDisponibleException}.</li>
+ *   <li>Cada degradado.verificacionSegundos se prueba la conexión; cuando la
+ *       BD vuelve, se sale del modo degradado y se refresca la copia.</li>
+ * </ul>
+ *
+ * Las escrituras se rechazan en lugar de encolarse: sin la BD no pueden
+ * validarse la unicidad de seriales e IPs ni ordenarse contra los cambios de
+ * otras instancias.
+ *
+ * @version 1.0
+ */
+public final class ModoDegradado {
+
+    private static final LongAdder LECTURAS_LOCALES = MetricsRegistry.contador("ModoDegradado.lecturasLocales");
+    private static final LongAdder ESCRITURAS_RECHAZADAS = MetricsRegistry.contador("ModoDegradado.escriturasRechazadas");
+
+    private static final ModoDegradado INSTANCIA = new ModoDegradado();
+
+    /**
+     * Lectura contra la BD con la conexión de lectura del servicio.
+     *
+     * @param <T> tipo de resultado
+     */
+    @FunctionalInterface
+    interface LecturaBD<T> {
+
+        T leer(Connection conn) throws SQLException;
+    }
+
+    private final SnapshotService snapshots = new SnapshotService();
+    private final Path archivo = SnapshotService.archivoConfigurado();
+
+    private volatile boolean habilitado;
+    private volatile boolean degradado;
+    private volatile SnapshotFlota copia;
+    private volatile long desde;
+    private long refrescoMs;
+    private ScheduledExecutorService scheduler;
+
+    private ModoDegradado() {
+        MetricsRegistry.registrarIndicador("ModoDegradado.activo", () -> degradado ? 1 : 0);
+        MetricsRegistry.registrarIndicador("ModoDegradado.antiguedadSegundos", () -> getAntiguedadMs() / 1000.0);
+    }
+
+    /**
+     * @return el modo degradado compartido por toda la aplicación
+     */
+    public static ModoDegradado getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Carga la copia local (si existe), verifica la conexión y programa la
+     * verificación periódica en un hilo daemon, que también refresca la copia
+     * cada {@code refrescoSegundos} (no hace nada si ya está iniciado).
+     *
+     * @param verificacionSegundos intervalo de la verificación de la conexión
+     * @param refrescoSegundos antigüedad a partir de la cual se vuelve a exportar la copia
+     */
+    public synchronized void iniciar(long verificacionSegundos, long refrescoSegundos) {
+        if (scheduler != null) {
+            return;
+        }
+        refrescoMs = TimeUnit.SECONDS.toMillis(refrescoSegundos);
+        if (Files.exists(archivo)) {
+            try {
+                copia = snapshots.cargar(archivo);
+            } catch (IOException e) {
+                System.err.println("[ModoDegradado] No se pudo cargar la copia local: " + e.getMessage());
+            }
+        }
+        habilitado = true;
+        if (!probarConexion()) {
+            entrar();
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "modo-degradado");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                verificar();
+            } catch (Exception e) {
+                System.err.println("[ModoDegradado] Error en la verificación: " + e.getMessage());
+            }
+        }, 0, verificacionSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Detiene la verificación periódica (las lecturas ya no recurren a la copia).
+     */
+    public synchronized void detener() {
+        if (scheduler == null) {
+            return;
+        }
+        habilitado = false;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+    }
+
+    /**
+     * @return true si la BD no está disponible y se opera con la copia local
+     */
+    public boolean estaDegradado() {
+        return degradado;
+    }
+
+    /**
+     * @return true si hay una copia local cargada
+     */
+    public boolean tieneCopia() {
+        return copia != null;
+    }
+
+    /**
+     * @return antigüedad de la copia local en milisegundos (-1 si no hay copia)
+     */
+    public long getAntiguedadMs() {
+        SnapshotFlota actual = copia;
+        return actual == null ? -1 : System.currentTimeMillis() - actual.getGenerado();
+    }
+
+    /**
+     * @return instante (epoch ms) en que se entró en modo degradado (0 si no lo está)
+     */
+    public long getDesde() {
+        return degradado ? desde : 0;
+    }
+
+    /**
+     * Indica si un error de JDBC se debe a que la BD no es alcanzable (y no a
+     * la sentencia): SQLState de clase 08 o excepciones de conexión, en la
+     * excepción o en su causa.
+     */
+    public static boolean esFallaDeConexion(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String estado = ((SQLException) t).getSQLState();
+                if (estado != null && estado.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registra el error de una operación: si es una falla de conexión, pasa a
+     * modo degradado hasta que la verificación periódica vea la BD disponible.
+     */
+    void registrarFallo(SQLException e) {
+        if (habilitado && !degradado && esFallaDeConexion(e)) {
+            entrar();
+        }
+    }
+
+    /**
+     * Rechaza la escritura si se está en modo degradado.
+     *
+     * @throws SQLTransientConnectionException si la BD no está disponible
+     */
+    void verificarEscritura() throws SQLTransientConnectionException {
+        if (degradado) {
+            ESCRITURAS_RECHAZADAS.increment();
+            throw new SQLTransientConnectionException("modo degradado de solo lectura", "08000");
+        }
+    }
+
+    /**
+     * Ejecuta una lectura contra la BD o, en modo degradado (o si la conexión
+     * falla), contra la copia local. Dentro de una unidad de trabajo siempre se
+     * lee de la BD, para ver los cambios de la transacción.
+     *
+     * @param bd lectura con la conexión de lectura del servicio
+     * @param local la misma lectura sobre la copia local
+     * @param mensajeError mensaje de la DataAccessException si la lectura falla por otra causa
+     * @return el resultado de la BD o de la copia
+     * @throws DataAccessException si falla la lectura, o ServicioNoDisponibleException
+     *         si la BD no está disponible y no hay copia local
+     */
+    <T> T leer(LecturaBD<T> bd, Function<SnapshotFlota, T> local, String mensajeError) throws DataAccessException {
+        boolean puedeDegradar = habilitado && !TransactionTemplate.enTransaccion();
+        if (puedeDegradar && degradado) {
+            return local.apply(copiaParaLectura());
+        }
+
+        Connection conn = null;
+        try {
+            conn = TransactionTemplate.obtenerConexionLectura();
+            return bd.leer(conn);
+        } catch (SQLException e) {
+            if (puedeDegradar && esFallaDeConexion(e)) {
+                if (!degradado) {
+                    entrar();
+                }
+                return local.apply(copiaParaLectura());
+            }
+            throw new DataAccessException(mensajeError, e);
+        } finally {
+            TransactionTemplate.liberar(conn);
+        }
+    }
+
+    // ===== Estado =====
+
+    private SnapshotFlota copiaParaLectura() throws ServicioNoDisponibleException {
+        SnapshotFlota actual = copia;
+        if (actual == null) {
+            throw new ServicioNoDisponibleException("Base de datos no disponible y no hay copia local del inventario");
+        }
+        LECTURAS_LOCALES.increment();
+        System.out.println("[ModoDegradado] Datos de la copia local (antigüedad: " + describir(getAntiguedadMs()) + ")");
+        return actual;
+    }
+
+    private synchronized void entrar() {
+        if (degradado) {
+            return;
+        }
+        desde = System.currentTimeMillis();
+        degradado = true;
+        System.err.println("[ModoDegradado] Base de datos no disponible: modo de solo lectura"
+                + (copia != null ? " con la copia local (antigüedad: " + describir(getAntiguedadMs()) + ")"
+                                 : " sin copia local"));
+    }
+
+    /**
+     * Prueba la conexión; sale del modo degradado si la BD volvió y refresca
+     * la copia si está vencida.
+     */
+    private void verificar() {
+        if (!probarConexion()) {
+            entrar();
+            return;
+        }
+        boolean volvio = false;
+        synchronized (this) {
+            if (degradado) {
+                degradado = false;
+                volvio = true;
+                System.out.println("[ModoDegradado] Base de datos disponible: se reanudan las escrituras (caída de "
+                        + describir(System.currentTimeMillis() - desde) + ")");
+            }
+        }
+        if (volvio || copia == null || getAntiguedadMs() >= refrescoMs) {
+            refrescar();
+        }
+    }
+
+    private void refrescar() {
+        try {
+            snapshots.exportar(archivo);
+            copia = snapshots.cargar(archivo);
+        } catch (Exception e) {
+            System.err.println("[ModoDegradado] No se pudo refrescar la copia local: " + e.getMessage());
+            if (e.getCause() instanceof SQLException) {
+                registrarFallo((SQLException) e.getCause());
+            }
+        }
+    }
+
+    private static boolean probarConexion() {
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            return conn.isValid(5);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static String describir(long ms) {
+        if (ms < 0) {
+            return "desconocida";
+        }
+        long segundos = ms / 1000;
+        if (segundos < 120) {
+            return segundos + " s";
+        }
+        if (segundos < 7200) {
+            return segundos / 60 + " min";
+        }
+        return segundos / 3600 + " h";
+    }
+}
@@ -0,0 +1,417 @@
+package service;
+
+import dao.DaoFactory;
+import dao.DispositivoIoTDao;
+import entities.Alerta;
+import entities.ReglaAlerta;
+import exceptions.ValidationException;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import util.Validator;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoublePredicate;
+
+/**
+ * Motor de reglas de alerta sobre la telemetría entrante.
+ *
+ * <ul>
+ *   <li>Las reglas se compilan una sola vez: cada condición queda como un
+ *       {@link DoublePredicate} con el umbral capturado, y los filtros de
+ *       modelo y ubicación se resuelven al registrar cada dispositivo, que
+ *       guarda la lista de reglas que le aplican. Evaluar una lectura no
+ *       compara strings ni interpreta la regla.</li>
+ *   <li>El estado por dispositivo vive en arreglos primitivos: un slot por
+ *       dispositivo (ID → slot en {@link MapaLongInt}), el último instante
+ *       evaluado y un contador de racha por cada par (dispositivo, regla).
+ *       Evaluar un lote no crea objetos salvo las alertas emitidas.</li>
+ *   <li>Una regla dispara una vez por racha: al llegar a sus lecturas
+ *       consecutivas; vuelve a disparar solo tras una lectura que no cumpla.</li>
+ *   <li>Las lecturas de un dispositivo anteriores a la última evaluada se
+ *       ignoran (no se puede hablar de "consecutivas" fuera de orden).</li>
+ *   <li>Los dispositivos se cargan al iniciar y después se registran o
+ *       quitan con cada alta, modificación o baja confirmada (ver
+ *       {@link ObservadorDispositivos}).</li>
+ * </ul>
+ *
+ * {@link TelemetriaIngestor} llama a {@link #evaluar} con cada lote antes de
+ * escribirlo; las alertas se entregan al {@link ConsumidorAlertas}.
+ *
+ * @version 1.0
+ */
+public class MotorReglas {
+
+    private static final OperationMetrics METRICA_EVALUAR = MetricsRegistry.operacion("MotorReglas.evaluar");
+    private static final OperationMetrics METRICA_CARGAR_DISPOSITIVOS = MetricsRegistry.operacion("MotorReglas.cargarDispositivos");
+
+    private static final LongAdder EVALUADAS = MetricsRegistry.contador("Reglas.evaluadas");
+    private static final LongAdder ALERTAS = MetricsRegistry.contador("Reglas.alertas");
+    private static final LongAdder SIN_DISPOSITIVO = MetricsRegistry.contador("Reglas.sinDispositivo");
+
+    /**
+     * Regla lista para evaluar.
+     */
+    private static final class ReglaCompilada {
+
+        private final String nombre;
+        private final String modelo;
+        private final String ubicacion;
+        private final DoublePredicate condicion;
+        private final int consecutivas;
+
+        ReglaCompilada(ReglaAlerta regla) {
+            this.nombre = regla.getNombre();
+            this.modelo = Validator.normalizarString(regla.getModelo());
+            this.ubicacion = Validator.normalizarString(regla.getUbicacion());
+            this.condicion = compilar(regla.getOperador(), regla.getUmbral());
+            this.consecutivas = regla.getConsecutivas();
+        }
+
+        boolean aplicaA(String modeloDispositivo, String ubicacionDispositivo) {
+            return (modelo == null || modelo.equals(modeloDispositivo))
+                    && (ubicacion == null || ubicacion.equals(ubicacionDispositivo));
+        }
+
+        private static DoublePredicate compilar(ReglaAlerta.Operador operador, double umbral) {
+            switch (operador) {
+                case MAYOR:
+                    return v -> v > umbral;
+                case MAYOR_IGUAL:
+                    return v -> v >= umbral;
+                case MENOR:
+                    return v -> v < umbral;
+                case MENOR_IGUAL:
+                    return v -> v <= umbral;
+                default:
+                    throw new IllegalArgumentException("Operador no soportado: " + operador);
+            }
+        }
+    }
+
+    private final ReglaCompilada[] reglas;
+    private final DispositivoIoTDao dispositivoDao = DaoFactory.dispositivos();
+    private volatile ConsumidorAlertas consumidor = alertas -> alertas.forEach(
+            alerta -> System.out.println("[MotorReglas] " + alerta));
+
+    // Estado (protegido por this)
+    private final MapaLongInt slots;
+    private long[] ultimaMarca;
+    private int[] inicioPares;
+    private int[] cantidadPares;
+    private int[] capacidadPares;
+    private int dispositivos;
+    private int[] libres = new int[0];
+    private int cantidadLibres;
+
+    private int[] reglaDePar;
+    private int[] racha;
+    private int pares;
+
+    /**
+     * Compila las reglas.
+     *
+     * @param reglas reglas a evaluar
+     * @throws ValidationException si alguna regla es inválida
+     */
+    public MotorReglas(List<ReglaAlerta> reglas) throws ValidationException {
+        this.reglas = new ReglaCompilada[reglas.size()];
+        for (int i = 0; i < reglas.size(); i++) {
+            ReglaAlerta regla = reglas.get(i);
+            Validator.validarNoVacio(regla.getNombre(), "nombre");
+            Validator.validarNoNulo(regla.getOperador(), "operador");
+            Validator.validarPositivo(regla.getConsecutivas(), "consecutivas");
+            if (Double.isNaN(regla.getUmbral())) {
+                throw new ValidationException("Umbral inválido en la regla '" + regla.getNombre() + "'");
+            }
+            this.reglas[i] = new ReglaCompilada(regla);
+        }
+
+        this.slots = new MapaLongInt(1024);
+        this.ultimaMarca = new long[1024];
+        this.inicioPares = new int[1024];
+        this.cantidadPares = new int[1024];
+        this.capacidadPares = new int[1024];
+        this.reglaDePar = new int[1024];
+        this.racha = new int[1024];
+    }
+
+    /**
+     * Interpreta definiciones de reglas separadas por ';', cada una con la forma
+     * {@code nombre: operador umbral[, xN][, modelo=M][, ubicacion=U]}
+     * (ej: {@code temperatura-alta: > 70, x3, modelo=SENSOR-T1, ubicacion=Planta Norte}).
+     *
+     * @param definiciones texto de las reglas (vacío = ninguna)
+     * @return reglas interpretadas
+     * @throws ValidationException si alguna definición es inválida
+     */
+    public static List<ReglaAlerta> parsear(String definiciones) throws ValidationException {
+        List<ReglaAlerta> resultado = new ArrayList<>();
+        if (definiciones == null) {
+            return resultado;
+        }
+
+        for (String definicion : definiciones.split(";")) {
+            if (definicion.trim().isEmpty()) {
+                continue;
+            }
+            int dosPuntos = definicion.indexOf(':');
+            if (dosPuntos < 0) {
+                throw new ValidationException("Regla sin nombre: '" + definicion.trim() + "'");
+            }
+
+            ReglaAlerta regla = new ReglaAlerta();
+            regla.setNombre(definicion.substring(0, dosPuntos).trim());
+            String[] partes = definicion.substring(dosPuntos + 1).split(",");
+
+            String[] condicion = partes[0].trim().split("\\s+");
+            ReglaAlerta.Operador operador = condicion.length == 2 ? ReglaAlerta.Operador.desdeSimbolo(condicion[0]) : null;
+            if (operador == null) {
+                throw new ValidationException("Condición inválida en la regla '" + regla.getNombre()
+                        + "' (se espera 'operador umbral'): " + partes[0].trim());
+            }
+            regla.setOperador(operador);
+            regla.setUmbral(parsearNumero(condicion[1], regla.getNombre()));
+
+            for (int i = 1; i < partes.length; i++) {
+                String parte = partes[i].trim();
+                if (parte.startsWith("x")) {
+                    regla.setConsecutivas((int) parsearNumero(parte.substring(1), regla.getNombre()));
+                } else if (parte.startsWith("modelo=")) {
+                    regla.setModelo(parte.substring("modelo=".length()));
+                } else if (parte.startsWith("ubicacion=")) {
+                    regla.setUbicacion(parte.substring("ubicacion=".length()));
+                } else {
+                    throw new ValidationException("Opción desconocida en la regla '" + regla.getNombre() + "': " + parte);
+                }
+            }
+            resultado.add(regla);
+        }
+        return resultado;
+    }
+
+    private static double parsearNumero(String texto, String regla) throws ValidationException {
+        try {
+            return Double.parseDouble(texto.trim());
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Número inválido en la regla '" + regla + "': " + texto.trim());
+        }
+    }
+
+    /**
+     * Reemplaza el destino de las alertas (por defecto, la consola).
+     */
+    public void setConsumidor(ConsumidorAlertas consumidor) {
+        this.consumidor = consumidor;
+    }
+
+    /**
+     * Registra los dispositivos activos de la BD.
+     *
+     * @return cantidad de dispositivos registrados
+     * @throws Exception si hay un error de BD
+     */
+    public long cargarDispositivos() throws Exception {
+        long inicio = System.nanoTime();
+        Connection conn = null;
+        try {
+            conn = TransactionTemplate.obtenerConexionLectura();
+            return dispositivoDao.recorrerActivos(conn,
+                    d -> registrarDispositivo(d.getId(), d.getModelo(), d.getUbicacion()));
+        } catch (Exception e) {
+            METRICA_CARGAR_DISPOSITIVOS.registrarError();
+            throw e;
+        } finally {
+            TransactionTemplate.liberar(conn);
+            METRICA_CARGAR_DISPOSITIVOS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Registra (o actualiza) un dispositivo: resuelve qué reglas le aplican.
+     * Las lecturas de dispositivos no registrados se ignoran.
+     *
+     * Si le siguen aplicando las mismas reglas (ej: cambió el firmware o el
+     * serial), conserva sus rachas. Si no, reescribe sus pares en el lugar que
+     * ya tenía y solo toma lugar nuevo al final cuando no le alcanza.
+     *
+     * @param dispositivoId ID del dispositivo (mayor que 0)
+     * @param modelo modelo del dispositivo
+     * @param ubicacion ubicación del dispositivo
+     */
+    public synchronized void registrarDispositivo(long dispositivoId, String modelo, String ubicacion) {
+        if (dispositivoId <= 0) {
+            throw new IllegalArgumentException("ID de dispositivo inválido: " + dispositivoId);
+        }
+        String modeloNormalizado = Validator.normalizarString(modelo);
+        String ubicacionNormalizada = Validator.normalizarString(ubicacion);
+
+        int[] aplican = new int[reglas.length];
+        int cantidad = 0;
+        for (int r = 0; r < reglas.length; r++) {
+            if (reglas[r].aplicaA(modeloNormalizado, ubicacionNormalizada)) {
+                aplican[cantidad++] = r;
+            }
+        }
+
+        int slot = slots.get(dispositivoId);
+        if (slot == MapaLongInt.AUSENTE) {
+            slot = nuevoSlot();
+            slots.put(dispositivoId, slot);
+            ultimaMarca[slot] = Long.MIN_VALUE;
+            cantidadPares[slot] = 0;
+        } else if (mismasReglas(slot, aplican, cantidad)) {
+            return;
+        }
+
+        if (cantidad > capacidadPares[slot]) {
+            while (pares + cantidad > reglaDePar.length) {
+                reglaDePar = Arrays.copyOf(reglaDePar, reglaDePar.length * 2);
+                racha = Arrays.copyOf(racha, racha.length * 2);
+            }
+            // El lugar anterior (más chico) queda sin uso
+            inicioPares[slot] = pares;
+            capacidadPares[slot] = cantidad;
+            pares += cantidad;
+        }
+        for (int k = 0; k < cantidad; k++) {
+            reglaDePar[inicioPares[slot] + k] = aplican[k];
+            racha[inicioPares[slot] + k] = 0;
+        }
+        cantidadPares[slot] = cantidad;
+    }
+
+    /**
+     * Quita un dispositivo dado de baja: sus lecturas se ignoran como las de
+     * uno no registrado. Su slot (con el lugar de sus pares) se reutiliza en
+     * el próximo registro de un dispositivo nuevo.
+     *
+     * @param dispositivoId ID del dispositivo (mayor que 0)
+     */
+    public synchronized void eliminarDispositivo(long dispositivoId) {
+        if (dispositivoId <= 0) {
+            throw new IllegalArgumentException("ID de dispositivo inválido: " + dispositivoId);
+        }
+        int slot = slots.get(dispositivoId);
+        if (slot != MapaLongInt.AUSENTE) {
+            slots.put(dispositivoId, MapaLongInt.AUSENTE);
+            if (cantidadLibres == libres.length) {
+                libres = Arrays.copyOf(libres, Math.max(16, cantidadLibres * 2));
+            }
+            libres[cantidadLibres++] = slot;
+        }
+    }
+
+    /**
+     * @return un slot liberado por una baja, o uno nuevo (sin lugar para pares)
+     */
+    private int nuevoSlot() {
+        if (cantidadLibres > 0) {
+            return libres[--cantidadLibres];
+        }
+        int slot = dispositivos++;
+        if (slot == ultimaMarca.length) {
+            ultimaMarca = Arrays.copyOf(ultimaMarca, slot * 2);
+            inicioPares = Arrays.copyOf(inicioPares, slot * 2);
+            cantidadPares = Arrays.copyOf(cantidadPares, slot * 2);
+            capacidadPares = Arrays.copyOf(capacidadPares, slot * 2);
+        }
+        return slot;
+    }
+
+    private boolean mismasReglas(int slot, int[] aplican, int cantidad) {
+        if (cantidadPares[slot] != cantidad) {
+            return false;
+        }
+        for (int k = 0; k < cantidad; k++) {
+            if (reglaDePar[inicioPares[slot] + k] != aplican[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evalúa un lote de lecturas y entrega las alertas resultantes al consumidor.
+     *
+     * @param dispositivos IDs de dispositivo
+     * @param marcas instantes en milisegundos epoch
+     * @param valores valores medidos
+     * @param cantidad cantidad de lecturas (desde la posición 0)
+     * @return cantidad de alertas emitidas
+     */
+    public int evaluar(long[] dispositivos, long[] marcas, double[] valores, int cantidad) {
+        long inicio = System.nanoTime();
+        try {
+            List<Alerta> alertas = evaluarLote(dispositivos, marcas, valores, cantidad);
+            EVALUADAS.add(cantidad);
+            if (alertas == null) {
+                return 0;
+            }
+            ALERTAS.add(alertas.size());
+            consumidor.recibir(alertas);
+            return alertas.size();
+        } catch (RuntimeException e) {
+            METRICA_EVALUAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_EVALUAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * @return alertas del lote, o null si no hubo (sin crear la lista)
+     */
+    private synchronized List<Alerta> evaluarLote(long[] dispositivos, long[] marcas, double[] valores,
+                                                  int cantidad) {
+        List<Alerta> alertas = null;
+        int sinDispositivo = 0;
+
+        for (int i = 0; i < cantidad; i++) {
+            int slot = slots.get(dispositivos[i]);
+            if (slot == MapaLongInt.AUSENTE) {
+                sinDispositivo++;
+                continue;
+            }
+            if (marcas[i] < ultimaMarca[slot]) {
+                continue;
+            }
+            ultimaMarca[slot] = marcas[i];
+
+            double valor = valores[i];
+            for (int p = inicioPares[slot], fin = p + cantidadPares[slot]; p < fin; p++) {
+                ReglaCompilada regla = reglas[reglaDePar[p]];
+                if (!regla.condicion.test(valor)) {
+                    racha[p] = 0;
+                } else if (racha[p] < regla.consecutivas && ++racha[p] == regla.consecutivas) {
+                    if (alertas == null) {
+                        alertas = new ArrayList<>();
+                    }
+                    alertas.add(new Alerta(regla.nombre, dispositivos[i], marcas[i], valor, regla.consecutivas));
+                }
+            }
+        }
+
+        if (sinDispositivo > 0) {
+            SIN_DISPOSITIVO.add(sinDispositivo);
+        }
+        return alertas;
+    }
+
+    /**
+     * @return cantidad de dispositivos registrados
+     */
+    public synchronized int getDispositivos() {
+        return dispositivos - cantidadLibres;
+    }
+
+    /**
+     * @return cantidad de reglas
+     */
+    public int getReglas() {
+        return reglas.length;
+    }
+}
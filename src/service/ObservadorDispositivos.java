@@ -0,0 +1,45 @@
+package service;
+
+import entities.DispositivoIoT;
+
+/**
+ * Recibe las altas, modificaciones y bajas de dispositivos de
+ * {@link DispositivoIoTService}, después de que la transacción confirmó
+ * (dentro de una unidad de trabajo, cuando esta termina; si hace rollback,
+ * no se avisa nada).
+ *
+ * Se llama desde el hilo que hizo el cambio: una implementación no debe
+ * bloquear ni lanzar excepciones (las que lance se informan y se ignoran:
+ * el cambio ya está confirmado).
+ *
+ * @version 1.0
+ */
+public interface ObservadorDispositivos {
+
+    /**
+     * Alta o modificación de un dispositivo activo (un cambio de serial llega
+     * por {@link #serialCambiado}).
+     *
+     * @param dispositivo dispositivo con sus datos confirmados
+     */
+    void registrado(DispositivoIoT dispositivo);
+
+    /**
+     * Baja lógica de un dispositivo (o su serial anterior, en un cambio de serial).
+     *
+     * @param dispositivo dispositivo con los datos que tenía antes del cambio
+     */
+    void eliminado(DispositivoIoT dispositivo);
+
+    /**
+     * Modificación que cambió el serial. Por defecto se avisa como la baja
+     * del serial anterior y el registro del nuevo.
+     *
+     * @param anterior dispositivo con los datos que tenía antes del cambio
+     * @param dispositivo dispositivo con sus datos confirmados
+     */
+    default void serialCambiado(DispositivoIoT anterior, DispositivoIoT dispositivo) {
+        eliminado(anterior);
+        registrado(dispositivo);
+    }
+}
@@ -0,0 +1,201 @@
+package service;
+
+import config.AppConfig;
+import config.DatabaseConnection;
+import dao.OutboxDao;
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+import entities.EventoCambio;
+import entities.EventoCambio.Entidad;
+import entities.EventoCambio.Operacion;
+import exceptions.ValidationException;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outbox de cambios del inventario (change data capture).
+ *
+ * DispositivoIoTService y ConfiguracionRedService registran un
+ * {@link EventoCambio} por cada alta, modificación o baja lógica dentro de la
+ * misma transacción que el cambio: si la transacción se revierte, el evento
+ * también. Los sistemas externos leen los eventos posteriores a la última
+ * secuencia que procesaron ({@link #leer}/{@link #procesar}) en lugar de
+ * recorrer todo el inventario.
+ *
+ * Con outbox.enabled=false, con dao.almacen=memoria o archivo (el outbox es una tabla
+ * de MySQL) o con shards (el evento quedaría en db.url y el cambio en un shard,
+ * en transacciones distintas), no se registran eventos.
+ *
+ * @version 1.0
+ */
+public class OutboxService {
+
+    private static final OperationMetrics METRICA_LEER = MetricsRegistry.operacion("OutboxService.leer");
+    private static final OperationMetrics METRICA_PROCESAR = MetricsRegistry.operacion("OutboxService.procesar");
+
+    static final boolean HABILITADO = AppConfig.getBoolean("outbox.enabled", true) && !DatabaseConnection.enMemoria()
+            && DatabaseConnection.shards() == null;
+
+    private static final int MAX_LOTE = 10000;
+
+    /**
+     * Procesa un lote de eventos leído del outbox.
+     */
+    @FunctionalInterface
+    public interface ConsumidorCambios {
+
+        /**
+         * @param eventos eventos en orden de secuencia
+         * @throws Exception si el lote no pudo procesarse (se detiene la lectura)
+         */
+        void procesar(List<EventoCambio> eventos) throws Exception;
+    }
+
+    private final OutboxDao outboxDao = new OutboxDao();
+    private final int tamanoLote = Math.max(1, Math.min(MAX_LOTE, AppConfig.getInt("outbox.loteLectura", 500)));
+
+    /**
+     * Registra eventos en la transacción de {@code conn} (no hace nada si el
+     * outbox está deshabilitado).
+     */
+    void registrar(List<EventoCambio> eventos, Connection conn) throws SQLException {
+        if (HABILITADO && !eventos.isEmpty()) {
+            outboxDao.insertarLote(eventos, conn);
+        }
+    }
+
+    void registrar(EventoCambio evento, Connection conn) throws SQLException {
+        registrar(Collections.singletonList(evento), conn);
+    }
+
+    /**
+     * Lee hasta {@code limite} eventos con secuencia mayor a {@code despuesDe}.
+     *
+     * @param despuesDe última secuencia procesada por el consumidor (0 = desde el principio)
+     * @param limite cantidad máxima de eventos (1 a 10000)
+     * @return eventos en orden de secuencia (vacía si no hay nuevos)
+     * @throws Exception si los parámetros son inválidos o hay un error de BD
+     */
+    public List<EventoCambio> leer(long despuesDe, int limite) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            if (despuesDe < 0) {
+                throw new ValidationException("La secuencia no puede ser negativa: " + despuesDe);
+            }
+            if (limite <= 0 || limite > MAX_LOTE) {
+                throw new ValidationException("El límite debe estar entre 1 y " + MAX_LOTE + ": " + limite);
+            }
+
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexionLectura();
+                return outboxDao.leerDespuesDe(despuesDe, limite, conn);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_LEER.registrarError();
+            throw e;
+        } finally {
+            METRICA_LEER.registrar(inicio);
+        }
+    }
+
+    /**
+     * Entrega al consumidor, en lotes de outbox.loteLectura, todos los eventos
+     * posteriores a {@code despuesDe} hasta ponerse al día.
+     *
+     * El consumidor debe guardar la secuencia del último evento de cada lote
+     * procesado para retomar desde ahí (entrega al menos una vez: un lote cuyo
+     * procesamiento falló se vuelve a entregar en la próxima llamada).
+     *
+     * @param despuesDe última secuencia procesada (0 = desde el principio)
+     * @param consumidor recibe cada lote
+     * @return secuencia del último evento procesado (despuesDe si no había nuevos)
+     * @throws Exception si hay un error de BD o el consumidor falla
+     */
+    public long procesar(long despuesDe, ConsumidorCambios consumidor) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            long ultima = despuesDe;
+            while (true) {
+                List<EventoCambio> lote = leer(ultima, tamanoLote);
+                if (lote.isEmpty()) {
+                    return ultima;
+                }
+                consumidor.procesar(lote);
+                ultima = lote.get(lote.size() - 1).getSecuencia();
+                if (lote.size() < tamanoLote) {
+                    return ultima;
+                }
+            }
+        } catch (Exception e) {
+            METRICA_PROCESAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_PROCESAR.registrar(inicio);
+        }
+    }
+
+    // ===== Construcción de eventos =====
+    // El payload tiene las columnas de la entidad; la relación 1:1 viaja en
+    // el dispositivoId de la configuración.
+
+    static EventoCambio evento(Operacion operacion, DispositivoIoT dispositivo) {
+        StringBuilder json = new StringBuilder("{");
+        campo(json, "id", dispositivo.getId());
+        campo(json, "serial", dispositivo.getSerial());
+        campo(json, "modelo", dispositivo.getModelo());
+        campo(json, "ubicacion", dispositivo.getUbicacion());
+        campo(json, "firmwareVersion", dispositivo.getFirmwareVersion());
+        campo(json, "eliminado", operacion == Operacion.DELETE);
+        json.setCharAt(json.length() - 1, '}');
+        return new EventoCambio(Entidad.DISPOSITIVO, dispositivo.getId(), operacion, json.toString());
+    }
+
+    static EventoCambio evento(Operacion operacion, ConfiguracionRed configuracion) {
+        StringBuilder json = new StringBuilder("{");
+        campo(json, "id", configuracion.getId());
+        campo(json, "ip", configuracion.getIp());
+        campo(json, "mascara", configuracion.getMascara());
+        campo(json, "gateway", configuracion.getGateway());
+        campo(json, "dnsPrimario", configuracion.getDnsPrimario());
+        campo(json, "dhcpHabilitado", configuracion.getDhcpHabilitado());
+        campo(json, "dispositivoId", configuracion.getDispositivoId());
+        campo(json, "eliminado", operacion == Operacion.DELETE);
+        json.setCharAt(json.length() - 1, '}');
+        return new EventoCambio(Entidad.CONFIGURACION, configuracion.getId(), operacion, json.toString());
+    }
+
+    /**
+     * Agrega {@code "nombre":valor,} (strings escapados, null como null).
+     */
+    private static void campo(StringBuilder json, String nombre, Object valor) {
+        json.append('"').append(nombre).append("\":");
+        if (valor == null) {
+            json.append("null");
+        } else if (valor instanceof String) {
+            json.append('"');
+            String texto = (String) valor;
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        } else {
+            json.append(valor);
+        }
+        json.append(',');
+    }
+}
@@ -0,0 +1,97 @@
+package service;
+
+import config.AppConfig;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de una sincronización incremental: las filas modificadas después de
+ * una marca (incluidas las bajas lógicas, con eliminado = true) y la marca
+ * desde la que pedir la página siguiente.
+ *
+ * Uso típico:
+ * <pre>
+ * PaginaCambios&lt;DispositivoIoT&gt; pagina = servicio.modificadosDesde(marca, ultimoId, 1000);
+ * aplicar(pagina.getCambios());
+ * guardar(pagina.getMarca(), pagina.getUltimoId());   // se pasan en la próxima llamada
+ * </pre>
+ *
+ * @param <T> entidad sincronizada
+ * @version 1.0
+ */
+public class PaginaCambios<T> {
+
+    /** Máximo de filas por página. */
+    static final int MAX_LIMITE = 10000;
+
+    /** Antigüedad mínima (segundos) de los cambios devueltos; ver DispositivoIoTDao.buscarModificadosDesde. */
+    static final int MARGEN_SEGUNDOS = Math.max(0, AppConfig.getInt("sync.margenSegundos", 5));
+
+    private final List<T> cambios;
+    private final Timestamp marca;
+    private final long ultimoId;
+    private final boolean hayMas;
+
+    PaginaCambios(List<T> cambios, Timestamp marca, long ultimoId, boolean hayMas) {
+        this.cambios = cambios;
+        this.marca = marca;
+        this.ultimoId = ultimoId;
+        this.hayMas = hayMas;
+    }
+
+    /**
+     * Arma la página a partir de las filas leídas.
+     *
+     * @param cambios filas en orden de (actualizado, id)
+     * @param marca marca recibida
+     * @param ultimoId ID recibido
+     * @param limite límite usado en la consulta
+     * @param actualizado obtiene el updated_at de una fila
+     * @param id obtiene el ID de una fila
+     */
+    static <T> PaginaCambios<T> de(List<T> cambios, Timestamp marca, long ultimoId, int limite,
+                                   Function<T, Timestamp> actualizado, Function<T, Long> id) {
+        if (cambios.isEmpty()) {
+            return new PaginaCambios<>(cambios, marca, ultimoId, false);
+        }
+        T ultima = cambios.get(cambios.size() - 1);
+        return new PaginaCambios<>(cambios, actualizado.apply(ultima), id.apply(ultima), cambios.size() == limite);
+    }
+
+    /**
+     * @return filas modificadas en orden de (actualizado, id); las de
+     *         eliminado = true son lápidas a borrar de la copia
+     */
+    public List<T> getCambios() {
+        return cambios;
+    }
+
+    /**
+     * @return updated_at de la última fila (la marca recibida si la página está vacía)
+     */
+    public Timestamp getMarca() {
+        return marca;
+    }
+
+    /**
+     * @return ID de la última fila (el recibido si la página está vacía)
+     */
+    public long getUltimoId() {
+        return ultimoId;
+    }
+
+    /**
+     * @return true si la página vino llena y puede haber más cambios ya disponibles
+     */
+    public boolean hayMas() {
+        return hayMas;
+    }
+
+    @Override
+    public String toString() {
+        return "PaginaCambios{cambios=" + cambios.size() + ", marca=" + marca + ", ultimoId=" + ultimoId
+                + ", hayMas=" + hayMas + "}";
+    }
+}
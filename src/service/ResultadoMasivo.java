@@ -0,0 +1,83 @@
+package service;
+
+/**
+ * Resultado de una operación masiva sobre dispositivos: filas afectadas
+ * en cada tabla, cantidad de lotes (transacciones) ejecutados y, para las
+ * operaciones reanudables, el último ID procesado.
+ *
+ * @version 1.0
+ */
+public class ResultadoMasivo {
+
+    private long dispositivos;
+    private long configuraciones;
+    private long revisados;
+    private long omitidos;
+    private long ultimoId;
+    private int lotes;
+
+    /**
+     * Acumula el resultado de un lote.
+     *
+     * @param dispositivos dispositivos afectados en el lote
+     * @param configuraciones configuraciones afectadas en el lote
+     */
+    void sumarLote(long dispositivos, long configuraciones) {
+        this.dispositivos += dispositivos;
+        this.configuraciones += configuraciones;
+        this.lotes++;
+    }
+
+    /**
+     * Registra el avance de un recorrido por ID.
+     *
+     * @param revisados dispositivos examinados en el lote
+     * @param omitidos dispositivos examinados que no requerían (o no admitían) cambios
+     * @param ultimoId último ID del lote
+     */
+    void avanzar(long revisados, long omitidos, long ultimoId) {
+        this.revisados += revisados;
+        this.omitidos += omitidos;
+        this.ultimoId = ultimoId;
+    }
+
+    public long getDispositivos() {
+        return dispositivos;
+    }
+
+    public long getConfiguraciones() {
+        return configuraciones;
+    }
+
+    public long getRevisados() {
+        return revisados;
+    }
+
+    public long getOmitidos() {
+        return omitidos;
+    }
+
+    /**
+     * Último ID procesado (y confirmado). Para reanudar una operación
+     * interrumpida, pasarlo como "desdeId".
+     */
+    public long getUltimoId() {
+        return ultimoId;
+    }
+
+    public int getLotes() {
+        return lotes;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoMasivo{" +
+                "dispositivos=" + dispositivos +
+                ", configuraciones=" + configuraciones +
+                ", revisados=" + revisados +
+                ", omitidos=" + omitidos +
+                ", ultimoId=" + ultimoId +
+                ", lotes=" + lotes +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+package service;
+
+import java.util.List;
+
+/**
+ * Envía la orden de actualización de firmware a los dispositivos de un rollout.
+ *
+ * El planificador llama a {@link #enviar} fuera de toda transacción, con
+ * lotes que respetan el límite de concurrencia del rollout. Los dispositivos
+ * informan luego el resultado con RolloutService.reportarResultado.
+ *
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface RolloutDespachador {
+
+    /**
+     * Ordena a los dispositivos instalar el firmware.
+     *
+     * @param rolloutId ID del rollout
+     * @param firmware versión a instalar
+     * @param dispositivoIds dispositivos del lote
+     */
+    void enviar(long rolloutId, String firmware, List<Long> dispositivoIds);
+}
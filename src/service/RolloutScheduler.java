@@ -0,0 +1,357 @@
+package service;
+
+import config.AppConfig;
+import dao.DaoFactory;
+import dao.DispositivoIoTDao;
+import dao.RolloutDao;
+import entities.DispositivoIoT;
+import entities.EventoCambio;
+import entities.EventoCambio.Operacion;
+import entities.Rollout;
+import entities.RolloutOla;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planificador de rollouts: atiende cada rollout activo con una tarea
+ * periódica (rollout.tickMs) en un único hilo daemon.
+ *
+ * En cada ciclo, dentro de una transacción corta:
+ * <ol>
+ *   <li>Registra los resultados informados por los dispositivos (en lote) y
+ *       aplica el firmware a DispositivoIoT para los exitosos (con su evento
+ *       en el outbox).</li>
+ *   <li>Marca como fallidos los envíos sin respuesta tras rollout.timeoutSegundos.</li>
+ *   <li>Si la ola actual terminó, la cierra y programa la siguiente (tras
+ *       rollout.pausaEntreOlasSegundos), o pausa el rollout si superó
+ *       rollout.maxFallosPorcentaje de fallos.</li>
+ *   <li>Si no, toma pendientes hasta completar max_concurrencia envíos en vuelo.</li>
+ * </ol>
+ * Luego, fuera de la transacción, entrega el lote al {@link RolloutDespachador}.
+ *
+ * El estado vive en la BD (los objetivos se leen por páginas y se cuentan con
+ * agregados), por lo que la memoria no depende de la cantidad de objetivos y
+ * un rollout se retoma tras un reinicio con {@link #iniciar()}.
+ *
+ * @version 1.0
+ */
+public class RolloutScheduler {
+
+    private static final OperationMetrics METRICA_CICLO = MetricsRegistry.operacion("RolloutScheduler.ciclo");
+
+    private static final RolloutScheduler INSTANCIA = new RolloutScheduler();
+
+    private final long tickMs = Math.max(50, AppConfig.getLong("rollout.tickMs", 1000));
+    private final int timeoutSegundos = AppConfig.getInt("rollout.timeoutSegundos", 600);
+    private final int pausaEntreOlasSegundos = AppConfig.getInt("rollout.pausaEntreOlasSegundos", 60);
+    private final int maxFallosPorcentaje = AppConfig.getInt("rollout.maxFallosPorcentaje", 5);
+    private final int tamanoLote = Math.max(1, AppConfig.getInt("bulk.chunkSize", 1000));
+
+    private final RolloutDao rolloutDao = new RolloutDao();
+    private final DispositivoIoTDao dispositivoDao = DaoFactory.dispositivos();
+    private final OutboxService outbox = new OutboxService();
+    private final ConcurrentMap<Long, ScheduledFuture<?>> tareas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, ConcurrentLinkedQueue<Reporte>> reportes = new ConcurrentHashMap<>();
+    private volatile RolloutDespachador despachador = (rolloutId, firmware, ids) ->
+            System.out.println("[RolloutScheduler] Rollout " + rolloutId + ": enviando " + firmware
+                    + " a " + ids.size() + " dispositivos");
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Resultado informado por un dispositivo.
+     */
+    private static final class Reporte {
+
+        private final long dispositivoId;
+        private final boolean exito;
+
+        Reporte(long dispositivoId, boolean exito) {
+            this.dispositivoId = dispositivoId;
+            this.exito = exito;
+        }
+    }
+
+    /**
+     * @return el planificador compartido por toda la aplicación
+     */
+    public static RolloutScheduler getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Inicia el planificador y retoma los rollouts en curso o pausados.
+     */
+    public synchronized void iniciar() {
+        asegurarScheduler();
+        try {
+            List<Rollout> activos = TransactionTemplate.ejecutar(
+                    () -> rolloutDao.buscarActivos(TransactionTemplate.conexionActual()));
+            for (Rollout rollout : activos) {
+                programar(rollout.getId());
+            }
+            if (!activos.isEmpty()) {
+                System.out.println("[RolloutScheduler] Retomados " + activos.size() + " rollouts activos");
+            }
+        } catch (Exception e) {
+            System.err.println("[RolloutScheduler] No se pudieron retomar los rollouts: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Detiene el planificador. Los rollouts quedan en la BD y se retoman con iniciar().
+     */
+    public synchronized void detener() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        tareas.clear();
+    }
+
+    /**
+     * Reemplaza el despachador (por defecto solo informa por consola).
+     */
+    public void setDespachador(RolloutDespachador despachador) {
+        this.despachador = despachador;
+    }
+
+    /**
+     * Comienza a atender un rollout (no hace nada si ya se lo atiende).
+     */
+    public synchronized void programar(long rolloutId) {
+        asegurarScheduler();
+        if (!tareas.containsKey(rolloutId)) {
+            tareas.put(rolloutId, scheduler.scheduleWithFixedDelay(
+                    () -> ciclo(rolloutId), 0, tickMs, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Encola el resultado informado por un dispositivo; se registra en el próximo ciclo.
+     */
+    public void reportar(long rolloutId, long dispositivoId, boolean exito) {
+        reportes.computeIfAbsent(rolloutId, k -> new ConcurrentLinkedQueue<>())
+                .add(new Reporte(dispositivoId, exito));
+        if (!tareas.containsKey(rolloutId)) {
+            // Resultado tardío de un rollout que ya no se atiende: se registra igual
+            programar(rolloutId);
+        }
+    }
+
+    private void asegurarScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rollout-scheduler");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private synchronized void cancelar(long rolloutId) {
+        ScheduledFuture<?> tarea = tareas.remove(rolloutId);
+        if (tarea != null) {
+            tarea.cancel(false);
+        }
+    }
+
+    /**
+     * Un ciclo de un rollout. Nunca propaga excepciones (cancelarían la tarea).
+     */
+    private void ciclo(long rolloutId) {
+        long inicio = System.nanoTime();
+        List<Reporte> tomados = tomarReportes(rolloutId);
+        try {
+            Rollout[] rollout = new Rollout[1];
+            List<Long> aEnviar = TransactionTemplate.ejecutar(() -> {
+                Connection conn = TransactionTemplate.conexionActual();
+                rollout[0] = rolloutDao.leer(rolloutId, conn);
+                if (rollout[0] == null) {
+                    return Collections.<Long>emptyList();
+                }
+                registrarReportes(rollout[0], tomados, conn);
+                return avanzar(rollout[0], conn);
+            });
+
+            if (rollout[0] == null) {
+                cancelar(rolloutId);
+            } else if (!aEnviar.isEmpty()) {
+                despachador.enviar(rolloutId, rollout[0].getFirmwareDestino(), aEnviar);
+            }
+        } catch (Exception e) {
+            METRICA_CICLO.registrarError();
+            // Se devuelven los reportes para reintentarlos en el próximo ciclo
+            if (!tomados.isEmpty()) {
+                reportes.computeIfAbsent(rolloutId, k -> new ConcurrentLinkedQueue<>()).addAll(tomados);
+            }
+            System.err.println("[RolloutScheduler] Error en el rollout " + rolloutId + ": " + e.getMessage());
+        } finally {
+            METRICA_CICLO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Retira de la cola hasta 10 lotes de reportes para este ciclo.
+     */
+    private List<Reporte> tomarReportes(long rolloutId) {
+        ConcurrentLinkedQueue<Reporte> cola = reportes.get(rolloutId);
+        if (cola == null) {
+            return Collections.emptyList();
+        }
+        List<Reporte> tomados = new ArrayList<>();
+        Reporte reporte;
+        while (tomados.size() < tamanoLote * 10 && (reporte = cola.poll()) != null) {
+            tomados.add(reporte);
+        }
+        return tomados;
+    }
+
+    /**
+     * Registra los resultados en lotes y aplica el firmware a los exitosos.
+     */
+    private void registrarReportes(Rollout rollout, List<Reporte> tomados, Connection conn) throws Exception {
+        List<Long> exitosos = new ArrayList<>();
+        List<Long> fallidos = new ArrayList<>();
+        for (Reporte reporte : tomados) {
+            (reporte.exito ? exitosos : fallidos).add(reporte.dispositivoId);
+        }
+
+        for (int desde = 0; desde < exitosos.size(); desde += tamanoLote) {
+            List<Long> lote = exitosos.subList(desde, Math.min(desde + tamanoLote, exitosos.size()));
+            rolloutDao.registrarResultados(rollout.getId(), lote, true, conn);
+            aplicarFirmware(rollout, rolloutDao.filtrarExitosos(rollout.getId(), lote, conn), conn);
+        }
+        for (int desde = 0; desde < fallidos.size(); desde += tamanoLote) {
+            List<Long> lote = fallidos.subList(desde, Math.min(desde + tamanoLote, fallidos.size()));
+            rolloutDao.registrarResultados(rollout.getId(), lote, false, conn);
+        }
+    }
+
+    /**
+     * Aplica el firmware destino a los objetivos exitosos que siguen activos y
+     * no lo tienen, con un evento UPDATE en el outbox por cada uno (como
+     * DispositivoIoTService.actualizarFirmwarePorModelo). Con shards, el DAO
+     * fragmentado bloquea y actualiza cada dispositivo en el suyo.
+     */
+    private void aplicarFirmware(Rollout rollout, List<Long> exitosos, Connection conn) throws Exception {
+        if (exitosos.isEmpty()) {
+            return;
+        }
+        String firmware = rollout.getFirmwareDestino();
+        List<Long> ids = new ArrayList<>();
+        List<EventoCambio> eventos = new ArrayList<>();
+        for (DispositivoIoT dispositivo : dispositivoDao.bloquearActivosPorIds(exitosos, conn)) {
+            if (!firmware.equals(dispositivo.getFirmwareVersion())) {
+                ids.add(dispositivo.getId());
+                dispositivo.setFirmwareVersion(firmware);
+                eventos.add(OutboxService.evento(Operacion.UPDATE, dispositivo));
+            }
+        }
+        if (!ids.isEmpty()) {
+            dispositivoDao.actualizarFirmwarePorIds(ids, firmware, conn);
+            outbox.registrar(eventos, conn);
+        }
+    }
+
+    /**
+     * Vence envíos sin respuesta, cierra la ola si terminó y toma los
+     * pendientes a enviar según el límite de concurrencia.
+     *
+     * @return IDs de dispositivo a despachar (ya marcados como ENVIADO)
+     */
+    private List<Long> avanzar(Rollout rollout, Connection conn) throws Exception {
+        long id = rollout.getId();
+        int ola = rollout.getOlaActual();
+        if (timeoutSegundos > 0) {
+            rolloutDao.vencerEnviados(id, ola, timeoutSegundos, conn);
+        }
+        long[] conteos = rolloutDao.contarPorEstado(id, ola, conn);
+        long pendientes = conteos[0];
+        long enviados = conteos[1];
+
+        if (rollout.getEstado().esFinal()) {
+            // Solo se esperan los resultados de lo ya enviado
+            ConcurrentLinkedQueue<Reporte> cola = reportes.get(id);
+            if (enviados == 0 && (cola == null || cola.isEmpty())) {
+                cancelar(id);
+            }
+            return Collections.emptyList();
+        }
+        if (rollout.getEstado() != Rollout.Estado.EN_CURSO) {
+            return Collections.emptyList();
+        }
+
+        if (pendientes == 0 && enviados == 0) {
+            cerrarOla(rollout, conteos, conn);
+            return Collections.emptyList();
+        }
+
+        RolloutOla actual = buscarOla(rolloutDao.leerOlas(id, conn), ola);
+        if (actual != null && actual.getInicio() != null && LocalDateTime.now().isBefore(actual.getInicio())) {
+            return Collections.emptyList();
+        }
+
+        long libres = rollout.getMaxConcurrencia() - enviados;
+        if (pendientes == 0 || libres <= 0) {
+            return Collections.emptyList();
+        }
+        List<Long> lote = rolloutDao.buscarPendientes(id, ola, (int) Math.min(libres, tamanoLote), conn);
+        if (!lote.isEmpty()) {
+            rolloutDao.marcarEnviados(id, lote, conn);
+        }
+        return lote;
+    }
+
+    /**
+     * Cierra la ola actual y pasa a la siguiente, o completa el rollout.
+     */
+    private void cerrarOla(Rollout rollout, long[] conteos, Connection conn) throws Exception {
+        long id = rollout.getId();
+        int ola = rollout.getOlaActual();
+        long exitosos = conteos[2];
+        long fallidos = conteos[3];
+        rolloutDao.completarOla(id, ola, exitosos, fallidos, conn);
+        System.out.println("[RolloutScheduler] Rollout " + id + ": ola " + ola + " completada ("
+                + exitosos + " exitosos, " + fallidos + " fallidos)");
+
+        List<RolloutOla> olas = rolloutDao.leerOlas(id, conn);
+        if (buscarOla(olas, ola + 1) == null) {
+            rolloutDao.cambiarEstado(id, Rollout.Estado.COMPLETADO, new Rollout.Estado[]{Rollout.Estado.EN_CURSO}, conn);
+            System.out.println("[RolloutScheduler] Rollout " + id + " completado");
+            return;
+        }
+
+        rolloutDao.actualizarOlaActual(id, ola + 1, conn);
+        rolloutDao.iniciarOla(id, ola + 1, LocalDateTime.now().plusSeconds(pausaEntreOlasSegundos), conn);
+
+        long total = exitosos + fallidos;
+        if (total > 0 && fallidos * 100 > (long) maxFallosPorcentaje * total) {
+            rolloutDao.cambiarEstado(id, Rollout.Estado.PAUSADO, new Rollout.Estado[]{Rollout.Estado.EN_CURSO}, conn);
+            System.out.println("[RolloutScheduler] Rollout " + id + " PAUSADO: la ola " + ola + " superó el "
+                    + maxFallosPorcentaje + "% de fallos. Reanudar para continuar con la ola " + (ola + 1));
+        }
+    }
+
+    private static RolloutOla buscarOla(List<RolloutOla> olas, int numero) {
+        for (RolloutOla ola : olas) {
+            if (ola.getNumero() == numero) {
+                return ola;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,378 @@
+package service;
+
+import config.AppConfig;
+import config.DatabaseConnection;
+import dao.DaoFactory;
+import dao.DispositivoIoTDao;
+import dao.RolloutDao;
+import entities.DispositivoIoT;
+import entities.Rollout;
+import entities.RolloutOla;
+import exceptions.*;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import util.Validator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio para los rollouts de firmware por olas.
+ *
+ * Un rollout se crea para un modelo: sus dispositivos activos se reparten en
+ * olas (rollout.olas, porcentajes acumulados, por defecto canario 1%, 10% y
+ * el resto) asignando ubicaciones completas a cada ola. Luego
+ * {@link RolloutScheduler} despacha cada ola respetando el límite de
+ * concurrencia y aplica el firmware a medida que los dispositivos informan
+ * el resultado.
+ *
+ * @version 1.0
+ */
+public class RolloutService {
+
+    private static final OperationMetrics METRICA_CREAR = MetricsRegistry.operacion("RolloutService.crear");
+    private static final OperationMetrics METRICA_INICIAR = MetricsRegistry.operacion("RolloutService.iniciar");
+    private static final OperationMetrics METRICA_CAMBIAR_ESTADO = MetricsRegistry.operacion("RolloutService.cambiarEstado");
+    private static final OperationMetrics METRICA_GET_BY_ID = MetricsRegistry.operacion("RolloutService.getById");
+    private static final OperationMetrics METRICA_OBTENER_OLAS = MetricsRegistry.operacion("RolloutService.obtenerOlas");
+
+    private final int tamanoLote = Math.max(1, AppConfig.getInt("bulk.chunkSize", 1000));
+
+    private final RolloutDao rolloutDao;
+    private final DispositivoIoTDao dispositivoDao;
+    private final RolloutScheduler scheduler;
+
+    public RolloutService() {
+        this.rolloutDao = new RolloutDao();
+        this.dispositivoDao = DaoFactory.dispositivos();
+        this.scheduler = RolloutScheduler.getInstancia();
+    }
+
+    /**
+     * Crea un rollout (en estado PENDIENTE) con sus olas y objetivos.
+     * Los objetivos se insertan en el servidor, sin cargar los dispositivos
+     * (con shards, por lotes de bulk.chunkSize leídos de los shards).
+     *
+     * @param modelo modelo a actualizar
+     * @param firmwareDestino versión a desplegar (vX.Y.Z)
+     * @param maxConcurrencia dispositivos actualizándose a la vez como máximo
+     * @return el rollout creado
+     * @throws Exception si los datos son inválidos, no hay dispositivos o hay un error de BD
+     */
+    public Rollout crear(String modelo, String firmwareDestino, int maxConcurrencia) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            // Validaciones
+            Validator.validarNoVacio(modelo, "Modelo");
+            Validator.validarNoVacio(firmwareDestino, "Firmware destino");
+            Validator.validarFormatoFirmware(firmwareDestino);
+            Validator.validarPositivo(maxConcurrencia, "Concurrencia máxima");
+            int[] porcentajes = leerPorcentajes();
+
+            Rollout rollout = new Rollout(Validator.normalizarString(modelo), firmwareDestino, maxConcurrencia);
+
+            TransactionTemplate.ejecutar(() -> {
+                Connection conn = TransactionTemplate.conexionActual();
+                try {
+                    Map<String, Long> porUbicacion = dispositivoDao.contarPorUbicacion(rollout.getModelo(), conn);
+                    if (porUbicacion.isEmpty()) {
+                        throw new ValidationException("No hay dispositivos activos del modelo " + rollout.getModelo());
+                    }
+
+                    List<RolloutOla> olas = new ArrayList<>();
+                    Map<String, Integer> olaPorUbicacion = asignarOlas(porUbicacion, porcentajes, olas);
+                    long total = 0;
+                    for (long cantidad : porUbicacion.values()) {
+                        total += cantidad;
+                    }
+                    rollout.setTotalDispositivos(total);
+
+                    rolloutDao.crear(rollout, conn);
+                    rolloutDao.crearOlas(rollout.getId(), olas, conn);
+                    if (DatabaseConnection.shards() == null) {
+                        rolloutDao.insertarTargets(rollout.getId(), rollout.getModelo(), olaPorUbicacion, conn);
+                    } else {
+                        insertarTargetsPorLotes(rollout, olaPorUbicacion, conn);
+                    }
+                } catch (SQLException e) {
+                    throw new DataAccessException("Error al crear el rollout: " + e.getMessage(), e);
+                }
+                return null;
+            });
+
+            System.out.println("[RolloutService] Rollout creado: " + rollout);
+            return rollout;
+        } catch (Exception e) {
+            METRICA_CREAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CREAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Inicia un rollout PENDIENTE: la primera ola se despacha de inmediato.
+     *
+     * @throws Exception si el rollout no existe o no está PENDIENTE
+     */
+    public void iniciar(long id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            TransactionTemplate.ejecutar(() -> {
+                Connection conn = TransactionTemplate.conexionActual();
+                try {
+                    if (!rolloutDao.cambiarEstado(id, Rollout.Estado.EN_CURSO,
+                            new Rollout.Estado[]{Rollout.Estado.PENDIENTE}, conn)) {
+                        throw estadoInvalido(id, "iniciar", conn);
+                    }
+                    rolloutDao.iniciarOla(id, 1, LocalDateTime.now(), conn);
+                } catch (SQLException e) {
+                    throw new DataAccessException("Error al iniciar el rollout: " + e.getMessage(), e);
+                }
+                return null;
+            });
+            scheduler.programar(id);
+            System.out.println("[RolloutService] Rollout " + id + " iniciado");
+        } catch (Exception e) {
+            METRICA_INICIAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_INICIAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Pausa un rollout EN_CURSO: no se envían más dispositivos, pero se siguen
+     * registrando los resultados de lo ya enviado.
+     *
+     * @throws Exception si el rollout no existe o no está EN_CURSO
+     */
+    public void pausar(long id) throws Exception {
+        cambiarEstado(id, Rollout.Estado.PAUSADO, "pausar", Rollout.Estado.EN_CURSO);
+    }
+
+    /**
+     * Reanuda un rollout PAUSADO.
+     *
+     * @throws Exception si el rollout no existe o no está PAUSADO
+     */
+    public void reanudar(long id) throws Exception {
+        cambiarEstado(id, Rollout.Estado.EN_CURSO, "reanudar", Rollout.Estado.PAUSADO);
+        scheduler.programar(id);
+    }
+
+    /**
+     * Aborta un rollout: no se envían más dispositivos. Los pendientes quedan
+     * sin actualizar y los ya enviados siguen registrando su resultado.
+     *
+     * @throws Exception si el rollout no existe o ya terminó
+     */
+    public void abortar(long id) throws Exception {
+        cambiarEstado(id, Rollout.Estado.ABORTADO, "abortar",
+                Rollout.Estado.PENDIENTE, Rollout.Estado.EN_CURSO, Rollout.Estado.PAUSADO);
+    }
+
+    /**
+     * Registra el resultado de la actualización informado por un dispositivo.
+     * Es asíncrono: se persiste en lote en el próximo ciclo del planificador.
+     *
+     * @param rolloutId ID del rollout
+     * @param dispositivoId ID del dispositivo
+     * @param exito true si el firmware se instaló correctamente
+     */
+    public void reportarResultado(long rolloutId, long dispositivoId, boolean exito) {
+        scheduler.reportar(rolloutId, dispositivoId, exito);
+    }
+
+    /**
+     * Obtiene un rollout por su ID.
+     *
+     * @throws Exception si no existe o hay un error de BD
+     */
+    public Rollout getById(long id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexionLectura();
+                Rollout rollout = rolloutDao.leer(id, conn);
+
+                if (rollout == null) {
+                    throw new EntityNotFoundException("No se encontró el rollout con ID: " + id);
+                }
+
+                return rollout;
+
+            } catch (SQLException e) {
+                throw new DataAccessException("Error al obtener el rollout", e);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_GET_BY_ID.registrarError();
+            throw e;
+        } finally {
+            METRICA_GET_BY_ID.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene las olas de un rollout. La ola en curso incluye los conteos actuales.
+     *
+     * @throws Exception si hay un error de BD
+     */
+    public List<RolloutOla> obtenerOlas(long id) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Connection conn = null;
+            try {
+                conn = TransactionTemplate.obtenerConexionLectura();
+                List<RolloutOla> olas = rolloutDao.leerOlas(id, conn);
+
+                for (RolloutOla ola : olas) {
+                    if (ola.getEstado() == RolloutOla.Estado.EN_CURSO) {
+                        long[] conteos = rolloutDao.contarPorEstado(id, ola.getNumero(), conn);
+                        ola.setExitosos(conteos[2]);
+                        ola.setFallidos(conteos[3]);
+                    }
+                }
+                return olas;
+
+            } catch (SQLException e) {
+                throw new DataAccessException("Error al obtener las olas del rollout", e);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_OBTENER_OLAS.registrarError();
+            throw e;
+        } finally {
+            METRICA_OBTENER_OLAS.registrar(inicio);
+        }
+    }
+
+    /**
+     * Con shards, DispositivoIoT no está en la BD de los rollouts: lee los
+     * dispositivos del modelo por lotes (de todos los shards) e inserta sus
+     * objetivos. Los de ubicaciones que no se contaron (altas posteriores) se omiten.
+     */
+    private void insertarTargetsPorLotes(Rollout rollout, Map<String, Integer> olaPorUbicacion, Connection conn)
+            throws SQLException {
+        long desdeId = 0;
+        List<DispositivoIoT> lote;
+        do {
+            lote = dispositivoDao.buscarLotePorModelo(rollout.getModelo(), desdeId, tamanoLote, conn);
+            Map<Long, Integer> olaPorDispositivo = new HashMap<>();
+            for (DispositivoIoT dispositivo : lote) {
+                Integer ola = olaPorUbicacion.get(dispositivo.getUbicacion());
+                if (ola != null) {
+                    olaPorDispositivo.put(dispositivo.getId(), ola);
+                }
+                desdeId = dispositivo.getId();
+            }
+            rolloutDao.insertarTargetsPorIds(rollout.getId(), olaPorDispositivo, conn);
+        } while (lote.size() == tamanoLote);
+    }
+
+    /**
+     * Reparte las ubicaciones en olas según porcentajes acumulados. Las
+     * ubicaciones se recorren de menor a mayor cantidad de dispositivos, así
+     * el canario queda formado por los sitios más chicos; una ubicación
+     * nunca se divide entre olas.
+     *
+     * @param porUbicacion cantidad de dispositivos por ubicación (ordenado)
+     * @param porcentajes porcentajes acumulados de cada ola (el último es 100)
+     * @param olas recibe las olas creadas, con su total
+     * @return ola asignada a cada ubicación
+     */
+    static Map<String, Integer> asignarOlas(Map<String, Long> porUbicacion, int[] porcentajes, List<RolloutOla> olas) {
+        long total = 0;
+        for (long cantidad : porUbicacion.values()) {
+            total += cantidad;
+        }
+        for (int i = 0; i < porcentajes.length; i++) {
+            olas.add(new RolloutOla(i + 1, porcentajes[i]));
+        }
+
+        Map<String, Integer> asignacion = new LinkedHashMap<>();
+        long acumulado = 0;
+        int ola = 0;
+        for (Map.Entry<String, Long> entrada : porUbicacion.entrySet()) {
+            // Se pasa a la siguiente ola cuando la actual ya cubrió su porcentaje
+            while (ola < porcentajes.length - 1
+                    && acumulado >= Math.max(1, (total * porcentajes[ola] + 99) / 100)) {
+                ola++;
+            }
+            asignacion.put(entrada.getKey(), ola + 1);
+            RolloutOla destino = olas.get(ola);
+            destino.setTotal(destino.getTotal() + entrada.getValue());
+            acumulado += entrada.getValue();
+        }
+        return asignacion;
+    }
+
+    /**
+     * Lee rollout.olas (porcentajes acumulados, ej: "1,10,100").
+     */
+    private static int[] leerPorcentajes() throws ValidationException {
+        String[] partes = AppConfig.getString("rollout.olas", "1,10,100").split(",");
+        int[] porcentajes = new int[partes.length];
+        int anterior = 0;
+        try {
+            for (int i = 0; i < partes.length; i++) {
+                porcentajes[i] = Integer.parseInt(partes[i].trim());
+                if (porcentajes[i] <= anterior || porcentajes[i] > 100) {
+                    throw new ValidationException("rollout.olas debe ser creciente y entre 1 y 100: "
+                            + AppConfig.getString("rollout.olas", ""));
+                }
+                anterior = porcentajes[i];
+            }
+        } catch (NumberFormatException e) {
+            throw new ValidationException("rollout.olas inválido: " + e.getMessage(), e);
+        }
+        porcentajes[porcentajes.length - 1] = 100;
+        return porcentajes;
+    }
+
+    private void cambiarEstado(long id, Rollout.Estado nuevo, String accion, Rollout.Estado... esperados)
+            throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            TransactionTemplate.ejecutar(() -> {
+                Connection conn = TransactionTemplate.conexionActual();
+                try {
+                    if (!rolloutDao.cambiarEstado(id, nuevo, esperados, conn)) {
+                        throw estadoInvalido(id, accion, conn);
+                    }
+                } catch (SQLException e) {
+                    throw new DataAccessException("Error al " + accion + " el rollout: " + e.getMessage(), e);
+                }
+                return null;
+            });
+            System.out.println("[RolloutService] Rollout " + id + ": " + nuevo);
+        } catch (Exception e) {
+            METRICA_CAMBIAR_ESTADO.registrarError();
+            throw e;
+        } finally {
+            METRICA_CAMBIAR_ESTADO.registrar(inicio);
+        }
+    }
+
+    /**
+     * Construye la excepción para una transición rechazada.
+     */
+    private Exception estadoInvalido(long id, String accion, Connection conn) throws SQLException {
+        Rollout rollout = rolloutDao.leer(id, conn);
+        if (rollout == null) {
+            return new EntityNotFoundException("No se encontró el rollout con ID: " + id);
+        }
+        return new ValidationException("No se puede " + accion + " el rollout " + id
+                + " en estado " + rollout.getEstado());
+    }
+}
@@ -0,0 +1,103 @@
+package service;
+
+import config.AppConfig;
+import dao.DaoFactory;
+import dao.DispositivoIoTDao;
+import exceptions.DataAccessException;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import store.EscritorSnapshot;
+import store.SnapshotFlota;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Exporta la flota activa a un snapshot binario ({@link SnapshotFlota}) y lo
+ * carga, para que una réplica de solo lectura arranque desde un archivo local
+ * en lugar de consultar toda la BD.
+ *
+ * @version 1.0
+ */
+public class SnapshotService {
+
+    private static final OperationMetrics METRICA_EXPORTAR = MetricsRegistry.operacion("SnapshotService.exportar");
+    private static final OperationMetrics METRICA_CARGAR = MetricsRegistry.operacion("SnapshotService.cargar");
+
+    private final DispositivoIoTDao dispositivoDao = DaoFactory.dispositivos();
+
+    /**
+     * @return archivo configurado en snapshot.archivo
+     */
+    public static Path archivoConfigurado() {
+        return Paths.get(AppConfig.getString("snapshot.archivo", "snapshot/flota.snap"));
+    }
+
+    /**
+     * Exporta los dispositivos activos con su configuración de red en una sola
+     * consulta en streaming (sin cargar la flota en memoria). El destino se
+     * reemplaza recién cuando el snapshot está completo.
+     *
+     * @param destino archivo del snapshot
+     * @return cantidad de dispositivos exportados
+     * @throws Exception si hay un error de BD o de escritura, o datos que no
+     *         admiten el formato (serial o IP inválidos)
+     */
+    public int exportar(Path destino) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Connection conn = null;
+            try (EscritorSnapshot escritor = new EscritorSnapshot(destino)) {
+                conn = TransactionTemplate.obtenerConexionLectura();
+                dispositivoDao.recorrerActivosConConfiguracion(conn, dispositivo -> {
+                    try {
+                        escritor.agregar(dispositivo);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                int cantidad = escritor.terminar();
+                System.out.println("[SnapshotService] Snapshot exportado: " + cantidad + " dispositivos en " + destino);
+                return cantidad;
+
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (SQLException e) {
+                throw new DataAccessException("Error al exportar el snapshot", e);
+            } finally {
+                TransactionTemplate.liberar(conn);
+            }
+        } catch (Exception e) {
+            METRICA_EXPORTAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_EXPORTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Mapea un snapshot y verifica su checksum.
+     *
+     * @param archivo archivo del snapshot
+     * @return el snapshot listo para consultas por ID, serial o IP
+     * @throws IOException si el archivo no existe o está dañado
+     */
+    public SnapshotFlota cargar(Path archivo) throws IOException {
+        long inicio = System.nanoTime();
+        try {
+            SnapshotFlota snapshot = SnapshotFlota.abrir(archivo);
+            System.out.println("[SnapshotService] Snapshot cargado: " + snapshot.cantidad() + " dispositivos ("
+                    + (System.nanoTime() - inicio) / 1_000_000 + " ms)");
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            METRICA_CARGAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CARGAR.registrar(inicio);
+        }
+    }
+}
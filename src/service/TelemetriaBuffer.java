@@ -0,0 +1,124 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Buffer circular acotado y sin locks para lecturas de telemetría: muchos
+ * productores, un único consumidor (el escritor de TelemetriaIngestor).
+ *
+ * Las lecturas se guardan en arreglos primitivos paralelos (sin un objeto por
+ * lectura). Cada celda tiene un número de secuencia que indica de quién es el
+ * turno: un productor reserva la posición con CAS sobre la cola, escribe los
+ * datos y publica la celda con la secuencia pos + 1; el consumidor la lee y la
+ * libera para la siguiente vuelta con pos + capacidad.
+ *
+ * @version 1.0
+ */
+final class TelemetriaBuffer {
+
+    private final int capacidad;
+    private final int mascara;
+    private final long[] dispositivos;
+    private final long[] marcas;
+    private final double[] valores;
+    private final AtomicLongArray secuencias;
+
+    /** Próxima posición a reservar por los productores. */
+    private final AtomicLong cola = new AtomicLong();
+    /** Próxima posición a leer; solo la escribe el consumidor. */
+    private final AtomicLong cabeza = new AtomicLong();
+
+    /**
+     * @param capacidadMinima capacidad deseada (se redondea a la potencia de 2 siguiente)
+     */
+    TelemetriaBuffer(int capacidadMinima) {
+        int c = Math.max(2, capacidadMinima);
+        this.capacidad = Integer.bitCount(c) == 1 ? c : Integer.highestOneBit(c) << 1;
+        this.mascara = capacidad - 1;
+        this.dispositivos = new long[capacidad];
+        this.marcas = new long[capacidad];
+        this.valores = new double[capacidad];
+        this.secuencias = new AtomicLongArray(capacidad);
+        for (int i = 0; i < capacidad; i++) {
+            secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * Agrega una lectura sin bloquear.
+     *
+     * @return true si se agregó, false si el buffer está lleno
+     */
+    boolean ofrecer(long dispositivoId, long timestamp, double valor) {
+        long pos = cola.get();
+        int celda;
+
+        while (true) {
+            celda = (int) (pos & mascara);
+            long diferencia = secuencias.get(celda) - pos;
+
+            if (diferencia == 0) {
+                if (cola.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = cola.get();
+            } else if (diferencia < 0) {
+                // La celda aún no fue leída de la vuelta anterior: lleno
+                return false;
+            } else {
+                // Otro productor ganó la posición
+                pos = cola.get();
+            }
+        }
+
+        dispositivos[celda] = dispositivoId;
+        marcas[celda] = timestamp;
+        valores[celda] = valor;
+        secuencias.lazySet(celda, pos + 1);
+        return true;
+    }
+
+    /**
+     * Mueve a los arreglos destino las lecturas publicadas, en orden, hasta
+     * {@code max}. Solo debe llamarlo el hilo consumidor.
+     *
+     * @param desde primera posición libre en los arreglos destino
+     * @return cantidad de lecturas movidas (0 si el buffer está vacío)
+     */
+    int drenar(long[] destDispositivos, long[] destMarcas, double[] destValores, int desde, int max) {
+        long pos = cabeza.get();
+        int n = 0;
+
+        while (n < max) {
+            int celda = (int) (pos & mascara);
+            if (secuencias.get(celda) != pos + 1) {
+                // Vacía, o reservada por un productor que aún no la publicó
+                break;
+            }
+            destDispositivos[desde + n] = dispositivos[celda];
+            destMarcas[desde + n] = marcas[celda];
+            destValores[desde + n] = valores[celda];
+            secuencias.lazySet(celda, pos + capacidad);
+            pos++;
+            n++;
+        }
+
+        if (n > 0) {
+            cabeza.lazySet(pos);
+        }
+        return n;
+    }
+
+    /**
+     * @return lecturas en el buffer (aproximado mientras hay productores activos)
+     */
+    int tamano() {
+        long n = cola.get() - cabeza.get();
+        return (int) Math.max(0, Math.min(n, capacidad));
+    }
+
+    int capacidad() {
+        return capacidad;
+    }
+}
@@ -0,0 +1,312 @@
+package service;
+
+import config.AppConfig;
+import dao.TelemetriaDao;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import store.SerieTemporalStore;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ingesta de telemetría: recibe lecturas desde muchos hilos productores y las
+ * escribe en la tabla Telemetria con un único hilo escritor.
+ *
+ * <ul>
+ *   <li>Los productores dejan cada lectura en un buffer circular acotado y sin
+ *       locks ({@link TelemetriaBuffer}); no tocan la BD.</li>
+ *   <li>El escritor drena el buffer y confirma hasta telemetria.loteFilas
+ *       lecturas por transacción (INSERT multi-fila, un solo commit por lote).
+ *       Mientras espera el commit, el buffer se sigue llenando, así que el
+ *       lote siguiente crece con la carga (group commit). Con poca carga, un
+ *       lote incompleto se escribe tras telemetria.maxEsperaMs.</li>
+ *   <li>Contrapresión: con el buffer lleno, {@link #ofrecer} rechaza la lectura
+ *       y {@link #publicar} espera hasta que haya lugar o venza el plazo.</li>
+ * </ul>
+ *
+ * Un lote que falla se reintenta (el INSERT es idempotente) y, agotados los
+ * reintentos, se descarta y se contabiliza en Telemetria.descartadas.
+ *
+ * Si hay un {@link MotorReglas} asignado, cada lote se evalúa contra las
+ * reglas de alerta antes de escribirse.
+ *
+ * Con telemetria.destino=LOCAL (gateways de borde) las lecturas se escriben
+ * en un {@link SerieTemporalStore} en disco en lugar de MySQL.
+ *
+ * @version 1.0
+ */
+public class TelemetriaIngestor {
+
+    private static final OperationMetrics METRICA_ESCRIBIR_LOTE = MetricsRegistry.operacion("TelemetriaIngestor.escribirLote");
+
+    private static final LongAdder ACEPTADAS = MetricsRegistry.contador("Telemetria.aceptadas");
+    private static final LongAdder RECHAZADAS = MetricsRegistry.contador("Telemetria.rechazadas");
+    private static final LongAdder ESCRITAS = MetricsRegistry.contador("Telemetria.escritas");
+    private static final LongAdder DESCARTADAS = MetricsRegistry.contador("Telemetria.descartadas");
+
+    /** Espera del escritor cuando el buffer está vacío. */
+    private static final long PAUSA_ESCRITOR_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    /** Espera de un productor bloqueado por contrapresión. */
+    private static final long PAUSA_PRODUCTOR_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final TelemetriaIngestor INSTANCIA = new TelemetriaIngestor();
+
+    private final int loteFilas = Math.max(1, AppConfig.getInt("telemetria.loteFilas", 5000));
+    private final long maxEsperaNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(1, AppConfig.getLong("telemetria.maxEsperaMs", 20)));
+    private final int reintentos = Math.max(1, AppConfig.getInt("telemetria.reintentos", 3));
+
+    private final TelemetriaBuffer buffer = new TelemetriaBuffer(
+            Math.max(2, AppConfig.getInt("telemetria.capacidadBuffer", 262144)));
+    private final TelemetriaDao telemetriaDao = new TelemetriaDao();
+
+    private volatile boolean activo;
+    private Thread escritor;
+    private volatile SerieTemporalStore almacenLocal;
+    private volatile MotorReglas motorReglas;
+
+    private TelemetriaIngestor() {
+        MetricsRegistry.registrarIndicador("Telemetria.ocupacionBuffer",
+                () -> 100.0 * buffer.tamano() / buffer.capacidad());
+    }
+
+    /**
+     * @return el ingestor compartido por toda la aplicación
+     */
+    public static TelemetriaIngestor getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Inicia el hilo escritor (no hace nada si ya está iniciado).
+     */
+    public synchronized void iniciar() {
+        if (escritor != null) {
+            return;
+        }
+        if ("LOCAL".equalsIgnoreCase(AppConfig.getString("telemetria.destino", "MYSQL"))) {
+            try {
+                almacenLocal = SerieTemporalStore.abrir();
+                almacenLocal.iniciarMantenimiento(Math.max(1, AppConfig.getLong("tsdb.mantenimientoSegundos", 300)),
+                        AppConfig.getLong("tsdb.retencionHoras", 168));
+            } catch (IOException e) {
+                System.err.println("[TelemetriaIngestor] No se pudo abrir el almacén local: " + e.getMessage());
+                return;
+            }
+        }
+        activo = true;
+        escritor = new Thread(this::escribir, "telemetria-escritor");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Deja de aceptar lecturas, escribe las que quedan en el buffer y detiene
+     * el escritor (espera hasta {@code esperaMs}).
+     */
+    public synchronized void detener(long esperaMs) {
+        if (escritor == null) {
+            return;
+        }
+        activo = false;
+        try {
+            escritor.join(esperaMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        escritor = null;
+
+        if (almacenLocal != null) {
+            almacenLocal.close();
+            almacenLocal = null;
+        }
+    }
+
+    /**
+     * Agrega una lectura sin bloquear.
+     *
+     * @param dispositivoId ID del dispositivo (mayor que 0)
+     * @param timestamp instante de la lectura (milisegundos epoch)
+     * @param valor valor medido (finito)
+     * @return true si se aceptó, false si el buffer está lleno o el ingestor detenido
+     * @throws IllegalArgumentException si el ID o el valor son inválidos
+     */
+    public boolean ofrecer(long dispositivoId, long timestamp, double valor) {
+        validar(dispositivoId, valor);
+        if (activo && buffer.ofrecer(dispositivoId, timestamp, valor)) {
+            ACEPTADAS.increment();
+            return true;
+        }
+        RECHAZADAS.increment();
+        return false;
+    }
+
+    /**
+     * Agrega una lectura, esperando hasta {@code timeoutMs} si el buffer está lleno.
+     *
+     * @param dispositivoId ID del dispositivo (mayor que 0)
+     * @param timestamp instante de la lectura (milisegundos epoch)
+     * @param valor valor medido (finito)
+     * @param timeoutMs espera máxima por lugar en el buffer
+     * @return true si se aceptó, false si venció el plazo o el ingestor está detenido
+     * @throws IllegalArgumentException si el ID o el valor son inválidos
+     * @throws InterruptedException si el hilo es interrumpido mientras espera
+     */
+    public boolean publicar(long dispositivoId, long timestamp, double valor, long timeoutMs)
+            throws InterruptedException {
+        validar(dispositivoId, valor);
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        while (activo) {
+            if (buffer.ofrecer(dispositivoId, timestamp, valor)) {
+                ACEPTADAS.increment();
+                return true;
+            }
+            if (System.nanoTime() - limite >= 0) {
+                break;
+            }
+            LockSupport.parkNanos(PAUSA_PRODUCTOR_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        RECHAZADAS.increment();
+        return false;
+    }
+
+    /**
+     * @return el almacén local (telemetria.destino=LOCAL), o null si se escribe en MySQL
+     */
+    public SerieTemporalStore getAlmacenLocal() {
+        return almacenLocal;
+    }
+
+    /**
+     * Asigna el motor de reglas que evalúa cada lote (null = sin reglas).
+     */
+    public void setMotorReglas(MotorReglas motorReglas) {
+        this.motorReglas = motorReglas;
+    }
+
+    /**
+     * @return lecturas a la espera de ser escritas
+     */
+    public int pendientes() {
+        return buffer.tamano();
+    }
+
+    private static void validar(long dispositivoId, double valor) {
+        if (dispositivoId <= 0) {
+            throw new IllegalArgumentException("ID de dispositivo inválido: " + dispositivoId);
+        }
+        if (Double.isNaN(valor) || Double.isInfinite(valor)) {
+            throw new IllegalArgumentException("Valor de telemetría inválido: " + valor);
+        }
+    }
+
+    /**
+     * Bucle del escritor: acumula un lote y lo confirma. Al detenerse, vacía el buffer.
+     */
+    private void escribir() {
+        long[] dispositivos = new long[loteFilas];
+        long[] marcas = new long[loteFilas];
+        double[] valores = new double[loteFilas];
+
+        while (true) {
+            int n = 0;
+            long primera = 0;
+
+            while (n < loteFilas) {
+                int movidas = buffer.drenar(dispositivos, marcas, valores, n, loteFilas - n);
+                if (movidas > 0) {
+                    if (n == 0) {
+                        primera = System.nanoTime();
+                    }
+                    n += movidas;
+                } else if (!activo || (n > 0 && System.nanoTime() - primera >= maxEsperaNanos)) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(PAUSA_ESCRITOR_NANOS);
+                }
+            }
+
+            if (n > 0) {
+                evaluarReglas(dispositivos, marcas, valores, n);
+                escribirLote(dispositivos, marcas, valores, n);
+            } else if (!activo) {
+                return;
+            }
+        }
+    }
+
+    private void evaluarReglas(long[] dispositivos, long[] marcas, double[] valores, int n) {
+        MotorReglas motor = motorReglas;
+        if (motor == null) {
+            return;
+        }
+        try {
+            motor.evaluar(dispositivos, marcas, valores, n);
+        } catch (RuntimeException e) {
+            // Un error en las reglas o en el consumidor de alertas no debe frenar la escritura
+            System.err.println("[TelemetriaIngestor] Error al evaluar reglas de alerta: " + e.getMessage());
+        }
+    }
+
+    private void escribirLote(long[] dispositivos, long[] marcas, double[] valores, int n) {
+        long inicio = System.nanoTime();
+        try {
+            SerieTemporalStore almacen = almacenLocal;
+            if (almacen != null) {
+                escribirLocal(almacen, dispositivos, marcas, valores, n);
+                return;
+            }
+
+            for (int intento = 1; ; intento++) {
+                try {
+                    TransactionTemplate.ejecutar(() -> {
+                        telemetriaDao.insertarLote(dispositivos, marcas, valores, 0, n,
+                                TransactionTemplate.conexionActual());
+                        return null;
+                    });
+                    ESCRITAS.add(n);
+                    return;
+                } catch (Exception e) {
+                    METRICA_ESCRIBIR_LOTE.registrarError();
+                    if (intento >= reintentos) {
+                        DESCARTADAS.add(n);
+                        System.err.println("[TelemetriaIngestor] Lote de " + n + " lecturas descartado tras "
+                                + intento + " intentos: " + e.getMessage());
+                        return;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100L * intento));
+                }
+            }
+        } finally {
+            METRICA_ESCRIBIR_LOTE.registrar(inicio);
+        }
+    }
+
+    /**
+     * Escribe el lote en el almacén local; las lecturas fuera de orden se descartan.
+     */
+    private void escribirLocal(SerieTemporalStore almacen, long[] dispositivos, long[] marcas, double[] valores,
+                               int n) {
+        int escritas = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                if (almacen.agregar(dispositivos[i], marcas[i], valores[i])) {
+                    escritas++;
+                }
+            }
+        } catch (IOException e) {
+            METRICA_ESCRIBIR_LOTE.registrarError();
+            System.err.println("[TelemetriaIngestor] Error en el almacén local: " + e.getMessage());
+        }
+        ESCRITAS.add(escritas);
+        DESCARTADAS.add(n - escritas);
+    }
+}
@@ -0,0 +1,378 @@
+package service;
+
+import config.AppConfig;
+import config.DatabaseConnection;
+import dao.TelemetriaRollupDao;
+import entities.AgregadoTelemetria;
+import entities.AgregadoTelemetria.Dimension;
+import entities.AgregadoTelemetria.Nivel;
+import exceptions.DataAccessException;
+import exceptions.ValidationException;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+import util.Validator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rollups de telemetría: agrega la telemetría cruda en buckets de 1 minuto,
+ * 1 hora y 1 día (mínimo/máximo/promedio/cantidad por dispositivo, por
+ * ubicación y por modelo) y responde consultas por intervalo.
+ *
+ * <h3>Agregación incremental</h3>
+ * Cada nivel tiene un watermark: el instante hasta el cual ya fue agregado.
+ * Cada pasada agrega solo [watermark, límite) en ventanas de
+ * rollup.bucketsPorLote buckets, y avanza el watermark en la misma transacción
+ * (cada intervalo se suma exactamente una vez). El límite de MINUTO es
+ * "ahora - rollup.retrasoSegundos" (margen para lecturas demoradas; las que
+ * llegan después quedan solo en la tabla cruda), y el de cada nivel siguiente
+ * es el watermark del anterior.
+ *
+ * Con shards (shards.cantidad > 0) no hay rollups por ubicación ni por
+ * modelo: DispositivoIoT no está en la BD de la telemetría y no se puede
+ * unir con ella. Los rollups por dispositivo funcionan igual.
+ *
+ * <h3>Consultas</h3>
+ * Se sirve desde el nivel más grueso cuyo bucket no supera la resolución
+ * pedida. El tramo todavía no agregado en ese nivel se completa con los
+ * niveles más finos y, al final, con la telemetría cruda, combinando todo en
+ * buckets del nivel elegido.
+ *
+ * @version 1.0
+ */
+public class TelemetriaRollupService {
+
+    private static final OperationMetrics METRICA_PROCESAR = MetricsRegistry.operacion("TelemetriaRollupService.procesar");
+    private static final OperationMetrics METRICA_CONSULTAR = MetricsRegistry.operacion("TelemetriaRollupService.consultar");
+    private static final OperationMetrics METRICA_CONSULTAR_GRUPO = MetricsRegistry.operacion("TelemetriaRollupService.consultarGrupo");
+
+    private static final long MS_POR_DIA = TimeUnit.DAYS.toMillis(1);
+
+    /** Rollups por ubicación y modelo: requieren DispositivoIoT en la misma BD que la telemetría. */
+    private static final boolean GRUPOS = DatabaseConnection.shards() == null;
+
+    private final long retrasoMs = TimeUnit.SECONDS.toMillis(Math.max(0, AppConfig.getLong("rollup.retrasoSegundos", 120)));
+    private final int bucketsPorLote = Math.max(1, AppConfig.getInt("rollup.bucketsPorLote", 60));
+    private final int retencionCrudoDias = AppConfig.getInt("rollup.retencionCrudoDias", 0);
+    private final int retencionMinutoDias = AppConfig.getInt("rollup.retencionMinutoDias", 0);
+    private final int tamanoLote = Math.max(1, AppConfig.getInt("bulk.chunkSize", 1000));
+
+    private final TelemetriaRollupDao rollupDao = new TelemetriaRollupDao();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Programa una pasada de {@link #procesar()} cada {@code intervaloSegundos}
+     * en un hilo daemon (no hace nada si ya está programado).
+     */
+    public synchronized void iniciar(long intervaloSegundos) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "telemetria-rollup");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                procesar();
+            } catch (Exception e) {
+                System.err.println("[TelemetriaRollupService] Error al agregar telemetría: " + e.getMessage());
+            }
+        }, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Detiene la agregación periódica.
+     */
+    public synchronized void detener() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Agrega todos los niveles hasta ponerse al día y aplica la retención.
+     *
+     * @return cantidad de ventanas agregadas (0 si no había datos nuevos)
+     * @throws Exception si hay un error de BD (lo ya confirmado queda agregado)
+     */
+    public int procesar() throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            long ahora = System.currentTimeMillis();
+            int ventanas = 0;
+
+            for (Nivel nivel : Nivel.values()) {
+                while (agregarVentana(nivel, ahora)) {
+                    ventanas++;
+                }
+            }
+
+            aplicarRetencion(ahora);
+            return ventanas;
+        } catch (Exception e) {
+            METRICA_PROCESAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_PROCESAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Consulta la serie de un dispositivo.
+     *
+     * @param dispositivoId ID del dispositivo
+     * @param desde inicio del intervalo (ms epoch; se alinea al bucket)
+     * @param hasta fin del intervalo (ms epoch, exclusive)
+     * @param resolucionMs tamaño de bucket deseado (se usa el nivel más grueso que no lo supera)
+     * @return agregados ordenados por bucket
+     * @throws Exception si los parámetros son inválidos o hay un error de BD
+     */
+    public List<AgregadoTelemetria> consultar(long dispositivoId, long desde, long hasta, long resolucionMs)
+            throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            Validator.validarId(dispositivoId);
+            validarIntervalo(desde, hasta, resolucionMs);
+
+            return consultar(desde, hasta, resolucionMs, new Fuente() {
+                @Override
+                public List<AgregadoTelemetria> rollup(Nivel nivel, long d, long h, Connection conn) throws SQLException {
+                    return rollupDao.buscar(nivel, dispositivoId, d, h, conn);
+                }
+
+                @Override
+                public List<AgregadoTelemetria> crudo(long duracionMs, long d, long h, Connection conn) throws SQLException {
+                    return rollupDao.agregarCrudo(dispositivoId, duracionMs, d, h, conn);
+                }
+            });
+        } catch (Exception e) {
+            METRICA_CONSULTAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CONSULTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Consulta la serie agregada de todos los dispositivos de una ubicación.
+     *
+     * @see #consultar(long, long, long, long)
+     */
+    public List<AgregadoTelemetria> consultarPorUbicacion(String ubicacion, long desde, long hasta, long resolucionMs)
+            throws Exception {
+        Validator.validarNoVacio(ubicacion, "Ubicación");
+        return consultarGrupo(Dimension.UBICACION, ubicacion.trim(), desde, hasta, resolucionMs);
+    }
+
+    /**
+     * Consulta la serie agregada de todos los dispositivos de un modelo.
+     *
+     * @see #consultar(long, long, long, long)
+     */
+    public List<AgregadoTelemetria> consultarPorModelo(String modelo, long desde, long hasta, long resolucionMs)
+            throws Exception {
+        Validator.validarNoVacio(modelo, "Modelo");
+        return consultarGrupo(Dimension.MODELO, Validator.normalizarString(modelo), desde, hasta, resolucionMs);
+    }
+
+    /**
+     * Nivel más grueso cuyo bucket no supera la resolución pedida, o null si
+     * la resolución es menor a un minuto (se sirve desde la telemetría cruda).
+     */
+    static Nivel nivelPara(long resolucionMs) {
+        Nivel elegido = null;
+        for (Nivel nivel : Nivel.values()) {
+            if (nivel.getDuracionMs() <= resolucionMs) {
+                elegido = nivel;
+            }
+        }
+        return elegido;
+    }
+
+    /**
+     * Origen de los datos de una consulta: rollups de un nivel o telemetría cruda.
+     */
+    private interface Fuente {
+
+        List<AgregadoTelemetria> rollup(Nivel nivel, long desde, long hasta, Connection conn) throws SQLException;
+
+        List<AgregadoTelemetria> crudo(long duracionMs, long desde, long hasta, Connection conn) throws SQLException;
+    }
+
+    private List<AgregadoTelemetria> consultarGrupo(Dimension dimension, String clave, long desde, long hasta,
+                                                    long resolucionMs) throws Exception {
+        long inicio = System.nanoTime();
+        try {
+            if (!GRUPOS) {
+                throw new UnsupportedOperationException("Consultas de telemetría por ubicación o modelo no disponibles "
+                        + "con shards (shards.cantidad > 0): los dispositivos no están en la BD de la telemetría");
+            }
+            validarIntervalo(desde, hasta, resolucionMs);
+
+            return consultar(desde, hasta, resolucionMs, new Fuente() {
+                @Override
+                public List<AgregadoTelemetria> rollup(Nivel nivel, long d, long h, Connection conn) throws SQLException {
+                    return rollupDao.buscarGrupo(nivel, dimension, clave, d, h, conn);
+                }
+
+                @Override
+                public List<AgregadoTelemetria> crudo(long duracionMs, long d, long h, Connection conn) throws SQLException {
+                    return rollupDao.agregarCrudoGrupo(dimension, clave, duracionMs, d, h, conn);
+                }
+            });
+        } catch (Exception e) {
+            METRICA_CONSULTAR_GRUPO.registrarError();
+            throw e;
+        } finally {
+            METRICA_CONSULTAR_GRUPO.registrar(inicio);
+        }
+    }
+
+    private List<AgregadoTelemetria> consultar(long desde, long hasta, long resolucionMs, Fuente fuente)
+            throws Exception {
+        Nivel elegido = nivelPara(resolucionMs);
+        long duracion = elegido != null ? elegido.getDuracionMs() : resolucionMs;
+        long cursor = Math.floorDiv(desde, duracion) * duracion;
+
+        Connection conn = null;
+        try {
+            conn = TransactionTemplate.obtenerConexionLectura();
+            TreeMap<Long, AgregadoTelemetria> buckets = new TreeMap<>();
+
+            // Del nivel elegido hacia los más finos, cada uno cubre hasta su watermark
+            for (Nivel nivel = elegido; nivel != null && cursor < hasta; nivel = nivel.getAnterior()) {
+                long watermark = rollupDao.leerWatermark(nivel, conn);
+                long tramoHasta = Math.min(hasta, watermark);
+                if (tramoHasta > cursor) {
+                    combinar(buckets, fuente.rollup(nivel, cursor, tramoHasta, conn), duracion);
+                    cursor = tramoHasta;
+                }
+            }
+
+            if (cursor < hasta) {
+                long duracionCruda = elegido != null ? Nivel.MINUTO.getDuracionMs() : duracion;
+                combinar(buckets, fuente.crudo(duracionCruda, cursor, hasta, conn), duracion);
+            }
+
+            return new ArrayList<>(buckets.values());
+
+        } catch (SQLException e) {
+            throw new DataAccessException("Error al consultar la telemetría", e);
+        } finally {
+            TransactionTemplate.liberar(conn);
+        }
+    }
+
+    /**
+     * Combina agregados (de buckets iguales o menores) en buckets de {@code duracion}.
+     */
+    private static void combinar(Map<Long, AgregadoTelemetria> buckets, List<AgregadoTelemetria> agregados,
+                                 long duracion) {
+        for (AgregadoTelemetria agregado : agregados) {
+            long bucket = Math.floorDiv(agregado.getBucket(), duracion) * duracion;
+            AgregadoTelemetria destino = buckets.get(bucket);
+            if (destino == null) {
+                destino = new AgregadoTelemetria();
+                destino.setBucket(bucket);
+                buckets.put(bucket, destino);
+            }
+            destino.combinar(agregado);
+        }
+    }
+
+    private static void validarIntervalo(long desde, long hasta, long resolucionMs) throws ValidationException {
+        if (desde >= hasta) {
+            throw new ValidationException("El inicio del intervalo debe ser anterior al fin");
+        }
+        Validator.validarPositivo(resolucionMs, "Resolución");
+    }
+
+    /**
+     * Agrega una ventana de un nivel en su propia transacción.
+     *
+     * @return true si agregó una ventana (puede haber más pendientes)
+     */
+    private boolean agregarVentana(Nivel nivel, long ahora) throws Exception {
+        return TransactionTemplate.ejecutar(() -> {
+            Connection conn = TransactionTemplate.conexionActual();
+            long duracion = nivel.getDuracionMs();
+
+            long desde = rollupDao.bloquearWatermark(nivel, conn);
+            if (desde == TelemetriaRollupDao.SIN_VALOR) {
+                long primero = rollupDao.primerInstante(nivel, conn);
+                if (primero == TelemetriaRollupDao.SIN_VALOR) {
+                    return false;
+                }
+                rollupDao.inicializarWatermark(nivel, nivel.inicioBucket(primero), conn);
+                desde = rollupDao.bloquearWatermark(nivel, conn);
+            }
+
+            long limite;
+            Nivel anterior = nivel.getAnterior();
+            if (anterior == null) {
+                limite = nivel.inicioBucket(ahora - retrasoMs);
+            } else {
+                long watermarkAnterior = rollupDao.leerWatermark(anterior, conn);
+                if (watermarkAnterior == TelemetriaRollupDao.SIN_VALOR) {
+                    return false;
+                }
+                limite = nivel.inicioBucket(watermarkAnterior);
+            }
+
+            long hasta = Math.min(limite, desde + duracion * bucketsPorLote);
+            if (hasta <= desde) {
+                return false;
+            }
+
+            rollupDao.agregar(nivel, desde, hasta, conn);
+            if (GRUPOS) {
+                rollupDao.agregarGrupos(nivel, desde, hasta, conn);
+            }
+            rollupDao.guardarWatermark(nivel, hasta, conn);
+            return true;
+        });
+    }
+
+    /**
+     * Elimina, en lotes, la telemetría cruda y los buckets de MINUTO más
+     * antiguos que su retención (0 = conservar todo). Nunca elimina datos que
+     * el nivel siguiente aún no agregó.
+     */
+    private void aplicarRetencion(long ahora) throws Exception {
+        if (retencionCrudoDias > 0) {
+            long corte = Math.min(ahora - retencionCrudoDias * MS_POR_DIA, watermark(Nivel.MINUTO));
+            while (TransactionTemplate.ejecutar(() ->
+                    rollupDao.eliminarCrudoAnteriorA(corte, tamanoLote, TransactionTemplate.conexionActual()))
+                    >= tamanoLote) {
+                // Un lote por transacción
+            }
+        }
+
+        if (retencionMinutoDias > 0) {
+            long corte = Math.min(ahora - retencionMinutoDias * MS_POR_DIA, watermark(Nivel.HORA));
+            while (TransactionTemplate.ejecutar(() ->
+                    rollupDao.eliminarRollupsAnteriorA(Nivel.MINUTO, corte, tamanoLote, TransactionTemplate.conexionActual()))
+                    >= tamanoLote) {
+                // Un lote por transacción
+            }
+        }
+    }
+
+    private long watermark(Nivel nivel) throws Exception {
+        long valor = TransactionTemplate.ejecutar(() ->
+                rollupDao.leerWatermark(nivel, TransactionTemplate.conexionActual()));
+        // Sin watermark no hay nada agregado: no se puede eliminar nada
+        return valor == TelemetriaRollupDao.SIN_VALOR ? Long.MIN_VALUE : valor;
+    }
+}
@@ -0,0 +1,302 @@
+package service;
+
+import config.DatabaseConnection;
+import exceptions.DataAccessException;
+import exceptions.ServicioNoDisponibleException;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unidad de trabajo: agrupa varias operaciones de servicio en UNA transacción.
+ *
+ * {@link #ejecutar(Trabajo)} asocia una conexión al hilo actual. Mientras dura,
+ * los servicios obtienen esa misma conexión (ver {@link #obtenerConexion()}),
+ * y sus commit/rollback/close pasan a ser de la transacción externa:
+ * <ul>
+ *   <li>commit: solo lo hace la unidad de trabajo más externa, al terminar.</li>
+ *   <li>rollback: cualquier fallo marca la transacción como "solo rollback".</li>
+ *   <li>anidamiento: un ejecutar() dentro de otro se une a la transacción existente.</li>
+ * </ul>
+ * Fuera de una unidad de trabajo, cada operación de servicio sigue siendo
+ * una transacción independiente como antes.
+ *
+ * En modo degradado ({@link ModoDegradado}) las escrituras se rechazan antes
+ * de pedir una conexión.
+ *
+ * Con réplicas de lectura, las lecturas fuera de una unidad de trabajo van a
+ * una réplica ({@link #obtenerConexionLectura()}); las escrituras y las
+ * lecturas dentro de una unidad de trabajo, a la BD principal. Cada commit
+ * registra la escritura para que el mismo hilo lea sus cambios de la principal
+ * durante replicas.lecturaPropiaMs.
+ *
+ * Las acciones de {@link #despuesDeConfirmar(Runnable)} (ej: avisar a los
+ * {@link ObservadorDispositivos}) se ejecutan recién después del commit de
+ * la unidad de trabajo, y se descartan si hace rollback.
+ *
+ * Ejemplo:
+ * <pre>
+ * TransactionTemplate.ejecutar(() -&gt; {
+ *     for (DispositivoIoT d : dispositivos) {
+ *         dispositivoService.actualizar(d);
+ *     }
+ *     return null;
+ * });
+ * </pre>
+ *
+ * @version 1.0
+ */
+public final class TransactionTemplate {
+
+    private static final OperationMetrics METRICA_EJECUTAR = MetricsRegistry.operacion("TransactionTemplate.ejecutar");
+
+    private static final ThreadLocal<Contexto> ACTUAL = new ThreadLocal<>();
+
+    /**
+     * Trabajo a ejecutar dentro de la transacción.
+     *
+     * @param <T> tipo de resultado
+     */
+    @FunctionalInterface
+    public interface Trabajo<T> {
+
+        T ejecutar() throws Exception;
+    }
+
+    /**
+     * Constructor privado para prevenir instanciación.
+     */
+    private TransactionTemplate() {
+        throw new UnsupportedOperationException("Esta es una clase de utilidad y no debe ser instanciada");
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción asociada al hilo actual.
+     * Si ya hay una en curso, se une a ella (el commit lo hace la más externa).
+     *
+     * @param trabajo operaciones a ejecutar
+     * @return resultado del trabajo
+     * @throws Exception la excepción del trabajo (tras el rollback), o
+     *                   DataAccessException si falla el commit o la transacción
+     *                   quedó marcada para rollback por una operación anidada
+     */
+    public static <T> T ejecutar(Trabajo<T> trabajo) throws Exception {
+        Contexto contexto = ACTUAL.get();
+        if (contexto != null) {
+            // Transacción anidada: se une a la externa
+            try {
+                return trabajo.ejecutar();
+            } catch (Exception e) {
+                contexto.soloRollback = true;
+                throw e;
+            }
+        }
+
+        long inicio = System.nanoTime();
+        Connection conn = null;
+        try {
+            ModoDegradado.getInstancia().verificarEscritura();
+            conn = DatabaseConnection.getConnection();
+            conn.setAutoCommit(false);
+            contexto = new Contexto(conn);
+            ACTUAL.set(contexto);
+
+            T resultado = trabajo.ejecutar();
+
+            if (contexto.soloRollback) {
+                throw new DataAccessException(
+                        "La transacción fue marcada para rollback por una operación que falló");
+            }
+            conn.commit();
+            DatabaseConnection.registrarEscritura();
+            ejecutarPosteriores(contexto.posteriores);
+            return resultado;
+
+        } catch (Exception e) {
+            METRICA_EJECUTAR.registrarError();
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                    System.out.println("[TransactionTemplate] Rollback ejecutado debido a error: " + e.getMessage());
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            if (e instanceof SQLException && ModoDegradado.esFallaDeConexion((SQLException) e)) {
+                ModoDegradado.getInstancia().registrarFallo((SQLException) e);
+                throw new ServicioNoDisponibleException("Base de datos no disponible: " + e.getMessage(), e);
+            }
+            if (e instanceof SQLException) {
+                throw new DataAccessException("Error en la unidad de trabajo: " + e.getMessage(), e);
+            }
+            throw e;
+        } finally {
+            ACTUAL.remove();
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            METRICA_EJECUTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Indica si el hilo actual está dentro de una unidad de trabajo.
+     */
+    public static boolean enTransaccion() {
+        return ACTUAL.get() != null;
+    }
+
+    /**
+     * Conexión de la unidad de trabajo actual, para usar DAOs directamente.
+     *
+     * @return la conexión asociada al hilo
+     * @throws IllegalStateException si no hay una unidad de trabajo en curso
+     */
+    public static Connection conexionActual() {
+        Contexto contexto = ACTUAL.get();
+        if (contexto == null) {
+            throw new IllegalStateException("No hay una unidad de trabajo en curso");
+        }
+        return contexto.conexion;
+    }
+
+    /**
+     * Conexión para una operación transaccional de servicio: la de la unidad de
+     * trabajo actual o, si no hay, una nueva con autocommit desactivado.
+     *
+     * @throws SQLException si no se puede obtener la conexión, o
+     *         SQLTransientConnectionException en modo degradado ({@link ModoDegradado})
+     */
+    static Connection obtenerConexion() throws SQLException {
+        Contexto contexto = ACTUAL.get();
+        if (contexto != null) {
+            return contexto.conexion;
+        }
+        ModoDegradado.getInstancia().verificarEscritura();
+        Connection conn = DatabaseConnection.getConnection();
+        conn.setAutoCommit(false);
+        return conn;
+    }
+
+    /**
+     * Conexión para una lectura: la de la unidad de trabajo actual (para ver
+     * sus cambios aún no confirmados) o, si no hay, una nueva en autocommit,
+     * a una réplica si están configuradas (ver {@link DatabaseConnection#getConnectionLectura()}).
+     *
+     * @throws SQLException si no se puede obtener la conexión
+     */
+    static Connection obtenerConexionLectura() throws SQLException {
+        Contexto contexto = ACTUAL.get();
+        return contexto != null ? contexto.conexion : DatabaseConnection.getConnectionLectura();
+    }
+
+    /**
+     * Conexión para una lectura que no tolera el atraso de las réplicas: la de
+     * la unidad de trabajo actual o, si no hay, una nueva a db.url en autocommit.
+     *
+     * @throws SQLException si no se puede obtener la conexión
+     */
+    static Connection obtenerConexionPrincipal() throws SQLException {
+        Contexto contexto = ACTUAL.get();
+        return contexto != null ? contexto.conexion : DatabaseConnection.getConnection();
+    }
+
+    /**
+     * Confirma la operación: commit si la conexión es propia; si pertenece a la
+     * unidad de trabajo, el commit queda para cuando esta termine.
+     */
+    static void confirmar(Connection conn) throws SQLException {
+        if (!esDeUnidadActual(conn)) {
+            conn.commit();
+            DatabaseConnection.registrarEscritura();
+        }
+    }
+
+    /**
+     * Ejecuta una acción después del commit: al terminar la unidad de trabajo
+     * actual (se descarta si hace rollback) o, si no hay, enseguida (el
+     * llamador ya confirmó su transacción).
+     */
+    static void despuesDeConfirmar(Runnable accion) {
+        Contexto contexto = ACTUAL.get();
+        if (contexto != null) {
+            contexto.posteriores.add(accion);
+        } else {
+            ejecutarPosteriores(Collections.singletonList(accion));
+        }
+    }
+
+    /**
+     * Las transacciones ya confirmaron: un error de una acción se informa y no
+     * impide las demás.
+     */
+    private static void ejecutarPosteriores(List<Runnable> acciones) {
+        for (Runnable accion : acciones) {
+            try {
+                accion.run();
+            } catch (RuntimeException e) {
+                System.err.println("[TransactionTemplate] Error después del commit: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Revierte la operación: rollback si la conexión es propia; si pertenece a
+     * la unidad de trabajo, la marca para rollback.
+     */
+    static void revertir(Connection conn) throws SQLException {
+        Contexto contexto = ACTUAL.get();
+        if (contexto != null && contexto.conexion == conn) {
+            contexto.soloRollback = true;
+        } else {
+            conn.rollback();
+        }
+    }
+
+    /**
+     * Libera la conexión: la cierra (restableciendo autocommit) si es propia;
+     * no hace nada si pertenece a la unidad de trabajo.
+     */
+    static void liberar(Connection conn) {
+        if (conn == null || esDeUnidadActual(conn)) {
+            return;
+        }
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.setAutoCommit(true);
+            }
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean esDeUnidadActual(Connection conn) {
+        Contexto contexto = ACTUAL.get();
+        return contexto != null && contexto.conexion == conn;
+    }
+
+    /**
+     * Estado de la unidad de trabajo del hilo.
+     */
+    private static final class Contexto {
+
+        private final Connection conexion;
+        private boolean soloRollback;
+        private final List<Runnable> posteriores = new ArrayList<>();
+
+        Contexto(Connection conexion) {
+            this.conexion = conexion;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * Cola de prioridad de eventos (instante, evento) sobre arreglos primitivos:
+ * un heap binario de mínimos, sin un objeto por evento. No es thread-safe;
+ * cada hilo del simulador tiene la suya.
+ *
+ * @version 1.0
+ */
+final class AgendaEventos {
+
+    private long[] instantes;
+    private int[] eventos;
+    private int tamano;
+
+    AgendaEventos(int capacidad) {
+        instantes = new long[Math.max(16, capacidad)];
+        eventos = new int[instantes.length];
+    }
+
+    void agregar(long instante, int evento) {
+        if (tamano == instantes.length) {
+            instantes = Arrays.copyOf(instantes, tamano * 2);
+            eventos = Arrays.copyOf(eventos, tamano * 2);
+        }
+        int i = tamano++;
+        while (i > 0) {
+            int padre = (i - 1) >>> 1;
+            if (instantes[padre] <= instante) {
+                break;
+            }
+            instantes[i] = instantes[padre];
+            eventos[i] = eventos[padre];
+            i = padre;
+        }
+        instantes[i] = instante;
+        eventos[i] = evento;
+    }
+
+    boolean estaVacia() {
+        return tamano == 0;
+    }
+
+    /**
+     * @return instante del próximo evento (la agenda no debe estar vacía)
+     */
+    long proximoInstante() {
+        return instantes[0];
+    }
+
+    /**
+     * @return el próximo evento, quitándolo de la agenda
+     */
+    int quitar() {
+        int evento = eventos[0];
+        long ultimoInstante = instantes[--tamano];
+        int ultimoEvento = eventos[tamano];
+
+        int i = 0;
+        int mitad = tamano >>> 1;
+        while (i < mitad) {
+            int hijo = 2 * i + 1;
+            if (hijo + 1 < tamano && instantes[hijo + 1] < instantes[hijo]) {
+                hijo++;
+            }
+            if (ultimoInstante <= instantes[hijo]) {
+                break;
+            }
+            instantes[i] = instantes[hijo];
+            eventos[i] = eventos[hijo];
+            i = hijo;
+        }
+        instantes[i] = ultimoInstante;
+        eventos[i] = ultimoEvento;
+        return evento;
+    }
+}
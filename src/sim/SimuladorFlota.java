@@ -0,0 +1,335 @@
+package sim;
+
+import config.AppConfig;
+import net.Protocolo;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Flota de dispositivos simulados para pruebas de carga: cada dispositivo
+ * envía heartbeats y lecturas al {@link net.ServidorDispositivos} por TCP.
+ *
+ * <ul>
+ *   <li>Sin un hilo por dispositivo: sim.hilos hilos, cada uno con una
+ *       {@link AgendaEventos} de los próximos envíos de sus dispositivos. El
+ *       estado de cada dispositivo vive en arreglos primitivos, así 100.000
+ *       dispositivos caben en una JVM.</li>
+ *   <li>Los dispositivos comparten conexiones (el serial va en cada trama):
+ *       el dispositivo i usa la conexión i % conexiones.</li>
+ *   <li>Los intervalos (sim.heartbeatMs, sim.lecturaMs) varían ±sim.jitterPorcentaje y
+ *       el primer envío se reparte al azar dentro del intervalo.</li>
+ *   <li>Cada dispositivo tiene un desfase de reloj fijo de hasta
+ *       ±sim.desfaseMaxMs en los instantes de sus lecturas.</li>
+ *   <li>Cada sim.tormentaSegundos, cada hilo cierra y reabre a la vez una
+ *       fracción sim.tormentaPorcentaje de sus conexiones (tormenta de reconexión).</li>
+ * </ul>
+ *
+ * Los seriales tienen el formato de Validator.validarFormatoSerial:
+ * sim.prefijoSerial + "-" + el índice en base 36 (ej: SIM-002S).
+ *
+ * @version 1.0
+ */
+public class SimuladorFlota {
+
+    private static final String[] MODELOS = {"SENSORTEMP", "SENSORHUMEDAD", "ACTUADORLUZ", "GATEWAY", "CAMARAIP"};
+
+    private static final int TAMANO_SALIDA = 16 * 1024;
+    private static final long MAX_ESPERA_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final String host;
+    private final int puerto;
+    private final int dispositivos;
+    private final int conexiones;
+    private final int hilos = Math.max(1, AppConfig.getInt("sim.hilos", 2));
+
+    private final long heartbeatMs = Math.max(1, AppConfig.getLong("sim.heartbeatMs", 30000));
+    private final long lecturaMs = Math.max(1, AppConfig.getLong("sim.lecturaMs", 10000));
+    private final double jitter = Math.min(0.99, Math.max(0, AppConfig.getInt("sim.jitterPorcentaje", 20) / 100.0));
+    private final long desfaseMaxMs = Math.max(0, AppConfig.getLong("sim.desfaseMaxMs", 5000));
+    private final long tormentaMs = TimeUnit.SECONDS.toMillis(Math.max(0, AppConfig.getLong("sim.tormentaSegundos", 0)));
+    private final double tormentaFraccion = Math.min(1, Math.max(0, AppConfig.getInt("sim.tormentaPorcentaje", 30) / 100.0));
+    private final String prefijoSerial = AppConfig.getString("sim.prefijoSerial", "SIM");
+
+    // Estado por dispositivo
+    private final long[] seriales;
+    private final long[] desfases;
+    private final double[] valores;
+
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder lecturas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+    private final LongAdder reconexiones = new LongAdder();
+    private final LongAdder erroresConexion = new LongAdder();
+
+    private volatile boolean activo;
+    private Thread[] trabajadores;
+
+    /**
+     * @param host dirección del servidor
+     * @param puerto puerto del servidor
+     * @param dispositivos cantidad de dispositivos simulados
+     * @param conexiones conexiones TCP que comparten los dispositivos
+     * @throws IllegalArgumentException si las cantidades son inválidas
+     */
+    public SimuladorFlota(String host, int puerto, int dispositivos, int conexiones) {
+        if (dispositivos <= 0 || conexiones <= 0) {
+            throw new IllegalArgumentException("Cantidades inválidas: " + dispositivos + " dispositivos, "
+                    + conexiones + " conexiones");
+        }
+        this.host = host;
+        this.puerto = puerto;
+        this.dispositivos = dispositivos;
+        this.conexiones = Math.min(conexiones, dispositivos);
+
+        seriales = new long[dispositivos];
+        desfases = new long[dispositivos];
+        valores = new double[dispositivos];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < dispositivos; i++) {
+            seriales[i] = Protocolo.empaquetarSerial(serial(i));
+            desfases[i] = desfaseMaxMs == 0 ? 0 : random.nextLong(-desfaseMaxMs, desfaseMaxMs + 1);
+            valores[i] = 20 + random.nextDouble() * 10;
+        }
+    }
+
+    /**
+     * @return serial del dispositivo simulado {@code indice}
+     */
+    public String serial(int indice) {
+        String base36 = Integer.toString(indice, 36).toUpperCase(Locale.ROOT);
+        if (base36.length() > 4) {
+            throw new IllegalArgumentException("Índice fuera del rango de seriales: " + indice);
+        }
+        return prefijoSerial + "-" + "0000".substring(base36.length()) + base36;
+    }
+
+    /**
+     * @return modelo del dispositivo simulado {@code indice}
+     */
+    public String modelo(int indice) {
+        return MODELOS[indice % MODELOS.length];
+    }
+
+    public int getDispositivos() {
+        return dispositivos;
+    }
+
+    /**
+     * Abre las conexiones y empieza a enviar (no hace nada si ya está iniciado).
+     */
+    public synchronized void iniciar() {
+        if (trabajadores != null) {
+            return;
+        }
+        activo = true;
+        trabajadores = new Thread[hilos];
+        for (int h = 0; h < hilos; h++) {
+            int hilo = h;
+            trabajadores[h] = new Thread(() -> simular(hilo), "sim-flota-" + h);
+            trabajadores[h].setDaemon(true);
+            trabajadores[h].start();
+        }
+    }
+
+    /**
+     * Detiene los envíos y cierra las conexiones.
+     */
+    public synchronized void detener() {
+        if (trabajadores == null) {
+            return;
+        }
+        activo = false;
+        for (Thread trabajador : trabajadores) {
+            try {
+                trabajador.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        trabajadores = null;
+    }
+
+    public long getHeartbeats() {
+        return heartbeats.sum();
+    }
+
+    public long getLecturas() {
+        return lecturas.sum();
+    }
+
+    public long getDescartadas() {
+        return descartadas.sum();
+    }
+
+    public long getReconexiones() {
+        return reconexiones.sum();
+    }
+
+    public long getErroresConexion() {
+        return erroresConexion.sum();
+    }
+
+    // ===== Hilo trabajador =====
+
+    /**
+     * Atiende las conexiones {@code c} con c % hilos == hilo y sus dispositivos.
+     * El evento 2*d es el heartbeat del dispositivo d y 2*d+1 su lectura.
+     */
+    private void simular(int hilo) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int propias = (conexiones - hilo + hilos - 1) / hilos;
+        SocketChannel[] canales = new SocketChannel[propias];
+        ByteBuffer[] salidas = new ByteBuffer[propias];
+        boolean[] pendiente = new boolean[propias];
+        int[] pendientes = new int[propias];
+        int cantidadPendientes = 0;
+
+        for (int k = 0; k < propias && activo; k++) {
+            salidas[k] = ByteBuffer.allocate(TAMANO_SALIDA);
+            canales[k] = conectar();
+        }
+
+        long ahora = System.currentTimeMillis();
+        AgendaEventos agenda = new AgendaEventos(2 * (dispositivos / hilos + 1));
+        for (int d = 0; d < dispositivos; d++) {
+            if ((d % conexiones) % hilos == hilo) {
+                agenda.agregar(ahora + (long) (random.nextDouble() * heartbeatMs), 2 * d);
+                agenda.agregar(ahora + (long) (random.nextDouble() * lecturaMs), 2 * d + 1);
+            }
+        }
+        long proximaTormenta = tormentaMs > 0 ? ahora + tormentaMs : Long.MAX_VALUE;
+
+        while (activo) {
+            ahora = System.currentTimeMillis();
+
+            while (!agenda.estaVacia() && agenda.proximoInstante() <= ahora) {
+                int evento = agenda.quitar();
+                int d = evento >>> 1;
+                int k = (d % conexiones) / hilos;
+                boolean esLectura = (evento & 1) == 1;
+
+                ByteBuffer salida = salidas[k];
+                if (canales[k] == null || salida.remaining() < Protocolo.TAMANO_MAXIMO) {
+                    descartadas.increment();
+                } else if (esLectura) {
+                    valores[d] += random.nextGaussian() * 0.5;
+                    Protocolo.escribirTelemetria(salida, seriales[d], ahora + desfases[d], valores[d]);
+                    lecturas.increment();
+                } else {
+                    Protocolo.escribirHeartbeat(salida, seriales[d]);
+                    heartbeats.increment();
+                }
+                if (!pendiente[k]) {
+                    pendiente[k] = true;
+                    pendientes[cantidadPendientes++] = k;
+                }
+
+                long intervalo = esLectura ? lecturaMs : heartbeatMs;
+                agenda.agregar(ahora + Math.max(1, (long) (intervalo * (1 + jitter * (2 * random.nextDouble() - 1)))),
+                        evento);
+            }
+
+            // Enviar lo acumulado; lo que no entra en el socket queda para la próxima vuelta
+            int siguen = 0;
+            for (int i = 0; i < cantidadPendientes; i++) {
+                int k = pendientes[i];
+                if (enviar(canales, salidas, k)) {
+                    pendientes[siguen++] = k;
+                } else {
+                    pendiente[k] = false;
+                }
+            }
+            cantidadPendientes = siguen;
+
+            if (ahora >= proximaTormenta) {
+                for (int k = 0; k < propias; k++) {
+                    if (random.nextDouble() < tormentaFraccion) {
+                        enviar(canales, salidas, k);
+                        cerrar(canales[k]);
+                        salidas[k].clear();
+                        canales[k] = conectar();
+                        reconexiones.increment();
+                    }
+                }
+                proximaTormenta = ahora + tormentaMs;
+            }
+
+            // Reintentar las conexiones caídas
+            for (int k = 0; k < propias && activo; k++) {
+                if (canales[k] == null && random.nextInt(100) == 0) {
+                    canales[k] = conectar();
+                }
+            }
+
+            long espera = agenda.estaVacia() ? MAX_ESPERA_NANOS
+                    : TimeUnit.MILLISECONDS.toNanos(agenda.proximoInstante() - System.currentTimeMillis());
+            if (cantidadPendientes == 0 && espera > 0) {
+                LockSupport.parkNanos(Math.min(espera, MAX_ESPERA_NANOS));
+            } else if (cantidadPendientes > 0) {
+                Thread.yield();
+            }
+        }
+
+        for (SocketChannel canal : canales) {
+            cerrar(canal);
+        }
+    }
+
+    /**
+     * Escribe lo acumulado para la conexión {@code k} sin bloquear.
+     *
+     * @return true si quedaron bytes sin enviar
+     */
+    private boolean enviar(SocketChannel[] canales, ByteBuffer[] salidas, int k) {
+        ByteBuffer salida = salidas[k];
+        if (canales[k] == null) {
+            salida.clear();
+            return false;
+        }
+        salida.flip();
+        try {
+            canales[k].write(salida);
+        } catch (IOException e) {
+            erroresConexion.increment();
+            cerrar(canales[k]);
+            canales[k] = null;
+            salida.clear();
+            return false;
+        }
+        salida.compact();
+        return salida.position() > 0;
+    }
+
+    /**
+     * @return la conexión no bloqueante, o null si no se pudo conectar
+     */
+    private SocketChannel conectar() {
+        try {
+            SocketChannel canal = SocketChannel.open(new InetSocketAddress(host, puerto));
+            canal.configureBlocking(false);
+            return canal;
+        } catch (IOException e) {
+            erroresConexion.increment();
+            return null;
+        }
+    }
+
+    private static void cerrar(SocketChannel canal) {
+        if (canal == null) {
+            return;
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // La conexión ya no se usa
+        }
+    }
+}
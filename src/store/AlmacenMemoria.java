@@ -0,0 +1,774 @@
+package store;
+
+import config.InMemoryConnection;
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Almacén en memoria de DispositivoIoT y ConfiguracionRed para dao.almacen=memoria
+ * y archivo (ver DispositivoIoTDaoMemoria y ConfiguracionRedDaoMemoria).
+ *
+ * <ul>
+ *   <li>Filas: mapas concurrentes ordenados por ID, con copias inmutables por
+ *       convención; las lecturas devuelven copias y no bloquean.</li>
+ *   <li>Índices únicos (sobre todas las filas, como las claves UNIQUE de
+ *       sql/schema.sql): serial, ip y dispositivo_id.</li>
+ *   <li>Índices secundarios (solo filas activas): ubicación (sin distinguir
+ *       mayúsculas, como la intercalación de MySQL), modelo y dhcpHabilitado.</li>
+ *   <li>Escrituras serializadas por un único candado: las restricciones se
+ *       verifican y los índices se actualizan atómicamente. Las violaciones
+ *       lanzan SQLException con los códigos de MySQL (1062, 1048, 1452, 3819),
+ *       así los servicios las traducen igual que con la BD.</li>
+ *   <li>Cada cambio registra en la conexión cómo deshacerse
+ *       ({@link InMemoryConnection#registrarDeshacer}), para que el rollback
+ *       de los servicios funcione.</li>
+ *   <li>Con un {@link Observador} (dao.almacen=archivo, ver {@link DiarioAlmacen})
+ *       cada cambio de fila, incluidas las restauraciones del rollback, se le
+ *       informa con un número de cambio creciente.</li>
+ * </ul>
+ *
+ * @version 1.0
+ */
+public final class AlmacenMemoria {
+
+    private static final AlmacenMemoria COMPARTIDO = new AlmacenMemoria();
+
+    private static final Pattern FORMATO_IP = Pattern.compile("^([0-9]{1,3}\\.){3}[0-9]{1,3}$");
+
+    private final Object escritura = new Object();
+
+    private final ConcurrentSkipListMap<Long, DispositivoIoT> dispositivos = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, ConfiguracionRed> configuraciones = new ConcurrentSkipListMap<>();
+    private final AtomicLong secuenciaDispositivos = new AtomicLong();
+    private final AtomicLong secuenciaConfiguraciones = new AtomicLong();
+
+    // Únicos (todas las filas)
+    private final Map<String, Long> dispositivoPorSerial = new ConcurrentHashMap<>();
+    private final Map<String, Long> configuracionPorIp = new ConcurrentHashMap<>();
+    private final Map<Long, Long> configuracionPorDispositivo = new ConcurrentHashMap<>();
+
+    // Secundarios (filas activas)
+    private final Map<String, NavigableSet<Long>> dispositivosPorUbicacion = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> dispositivosPorModelo = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> configuracionesConDhcp = new ConcurrentSkipListSet<>();
+    private final NavigableSet<Long> configuracionesSinDhcp = new ConcurrentSkipListSet<>();
+
+    private volatile Observador observador;
+    private long cambios;  // con el candado de escritura
+
+    /**
+     * Recibe los cambios de filas del almacén para persistirlos.
+     */
+    interface Observador {
+
+        /**
+         * Una fila cambió (con el candado de escritura tomado: no debe bloquear).
+         *
+         * @param cambio número de cambio, creciente en todo el almacén
+         * @param fila nueva versión, o null si la fila se quitó (rollback de un alta)
+         * @param conn conexión del cambio (null en las restauraciones del rollback)
+         */
+        void dispositivo(long cambio, long id, DispositivoIoT fila, Connection conn);
+
+        void configuracion(long cambio, long id, ConfiguracionRed fila, Connection conn);
+
+        /**
+         * Fin de una escritura (sin el candado): si la conexión no está en una
+         * transacción, el cambio debe quedar persistido al volver.
+         */
+        void despuesDeEscribir(Connection conn) throws SQLException;
+    }
+
+    /**
+     * @return el almacén que comparten los DAOs en memoria de la aplicación
+     */
+    public static AlmacenMemoria getCompartido() {
+        return COMPARTIDO;
+    }
+
+    // ===== Dispositivos: lecturas =====
+
+    /**
+     * @return copia del dispositivo (activo o no, sin su configuración), o null
+     */
+    public DispositivoIoT dispositivo(long id) {
+        DispositivoIoT dispositivo = dispositivos.get(id);
+        return dispositivo != null ? copiar(dispositivo) : null;
+    }
+
+    /**
+     * @return copia del dispositivo activo con ese serial, o null
+     */
+    public DispositivoIoT dispositivoActivoPorSerial(String serial) {
+        Long id = serial != null ? dispositivoPorSerial.get(serial) : null;
+        DispositivoIoT dispositivo = id != null ? dispositivos.get(id) : null;
+        return activo(dispositivo) ? copiar(dispositivo) : null;
+    }
+
+    /**
+     * @return vista de los dispositivos activos en orden de ID: cada elemento es
+     *         una copia que se crea al recorrerla (no se materializa la lista)
+     */
+    public Iterable<DispositivoIoT> dispositivosActivos() {
+        return () -> new Iterator<DispositivoIoT>() {
+            private final Iterator<DispositivoIoT> filas = dispositivos.values().iterator();
+            private DispositivoIoT siguiente = avanzar();
+
+            @Override
+            public boolean hasNext() {
+                return siguiente != null;
+            }
+
+            @Override
+            public DispositivoIoT next() {
+                if (siguiente == null) {
+                    throw new NoSuchElementException();
+                }
+                DispositivoIoT actual = copiar(siguiente);
+                siguiente = avanzar();
+                return actual;
+            }
+
+            private DispositivoIoT avanzar() {
+                while (filas.hasNext()) {
+                    DispositivoIoT fila = filas.next();
+                    if (activo(fila)) {
+                        return fila;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Dispositivos modificados después de una marca, con la misma semántica que
+     * DispositivoIoTDao.buscarModificadosDesde: incluye las bajas lógicas, omite
+     * los cambios de los últimos margenSegundos y ordena por (actualizado, id).
+     */
+    public List<DispositivoIoT> dispositivosModificadosDesde(Timestamp marca, long desdeId, int margenSegundos,
+            int limite) {
+        List<DispositivoIoT> resultado = new ArrayList<>();
+        for (DispositivoIoT dispositivo : modificadosDesde(dispositivos.values(), DispositivoIoT::getActualizado,
+                DispositivoIoT::getId, marca, desdeId, margenSegundos, limite)) {
+            resultado.add(copiar(dispositivo));
+        }
+        return resultado;
+    }
+
+    /**
+     * @return copias de todos los dispositivos (activos y eliminados) en orden de ID
+     */
+    public List<DispositivoIoT> todosLosDispositivos() {
+        List<DispositivoIoT> resultado = new ArrayList<>(dispositivos.size());
+        for (DispositivoIoT dispositivo : dispositivos.values()) {
+            resultado.add(copiar(dispositivo));
+        }
+        return resultado;
+    }
+
+    /**
+     * @return copias de los dispositivos activos cuya ubicación contiene el texto
+     *         (sin distinguir mayúsculas), en orden de ID
+     */
+    public List<DispositivoIoT> dispositivosActivosPorUbicacionParcial(String texto) {
+        String buscado = clave(texto);
+        NavigableSet<Long> ids = new TreeSet<>();
+        for (Map.Entry<String, NavigableSet<Long>> entrada : dispositivosPorUbicacion.entrySet()) {
+            if (entrada.getKey().contains(buscado)) {
+                ids.addAll(entrada.getValue());
+            }
+        }
+        return activosPorIds(ids, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return copias de los dispositivos activos en una ubicación exacta (sin
+     *         distinguir mayúsculas) con ID mayor a desdeId, hasta limite, en orden de ID
+     */
+    public List<DispositivoIoT> dispositivosActivosPorUbicacion(String ubicacion, long desdeId, int limite) {
+        return activosPorIds(dispositivosPorUbicacion.get(clave(ubicacion)), desdeId, limite);
+    }
+
+    /**
+     * @return copias de los dispositivos activos de un modelo con ID mayor a
+     *         desdeId, hasta limite, en orden de ID
+     */
+    public List<DispositivoIoT> dispositivosActivosPorModelo(String modelo, long desdeId, int limite) {
+        return activosPorIds(dispositivosPorModelo.get(modelo), desdeId, limite);
+    }
+
+    // ===== Dispositivos: escrituras =====
+
+    /**
+     * Inserta un dispositivo (sin su configuración) y le asigna el ID.
+     *
+     * @throws SQLException si falta un campo obligatorio o el serial ya existe
+     */
+    public long insertar(DispositivoIoT dispositivo, Connection conn) throws SQLException {
+        synchronized (escritura) {
+            DispositivoIoT nuevo = copiar(dispositivo);
+            nuevo.setId(secuenciaDispositivos.incrementAndGet());
+            if (nuevo.getEliminado() == null) {
+                nuevo.setEliminado(false);
+            }
+            Timestamp ahora = ahora();
+            nuevo.setCreado(ahora);
+            nuevo.setActualizado(ahora);
+            verificar(nuevo);
+            guardar(null, nuevo, conn);
+            dispositivo.setId(nuevo.getId());
+        }
+        escrito(conn);
+        return dispositivo.getId();
+    }
+
+    /**
+     * Modifica un dispositivo aplicando el cambio a una copia de la fila actual.
+     *
+     * @param id ID del dispositivo
+     * @param cambio modificación (no debe cambiar el ID)
+     * @return false si el dispositivo no existe
+     * @throws SQLException si el resultado viola una restricción (el dispositivo no cambia)
+     */
+    public boolean modificarDispositivo(long id, Consumer<DispositivoIoT> cambio, Connection conn) throws SQLException {
+        return modificarDispositivo(id, d -> true, cambio, conn);
+    }
+
+    /**
+     * Modifica un dispositivo solo si la fila actual cumple la condición,
+     * evaluada con el lock de escritura (como un UPDATE ... WHERE).
+     *
+     * @param id ID del dispositivo
+     * @param condicion condición sobre la fila actual (no debe modificarla)
+     * @param cambio modificación (no debe cambiar el ID)
+     * @return false si el dispositivo no existe o no cumple la condición
+     * @throws SQLException si el resultado viola una restricción (el dispositivo no cambia)
+     */
+    public boolean modificarDispositivo(long id, Predicate<DispositivoIoT> condicion, Consumer<DispositivoIoT> cambio,
+                                        Connection conn) throws SQLException {
+        synchronized (escritura) {
+            DispositivoIoT anterior = dispositivos.get(id);
+            if (anterior == null || !condicion.test(anterior)) {
+                return false;
+            }
+            DispositivoIoT nuevo = copiar(anterior);
+            cambio.accept(nuevo);
+            nuevo.setId(id);
+            nuevo.setCreado(anterior.getCreado());
+            nuevo.setActualizado(ahora());
+            verificar(nuevo);
+            guardar(anterior, nuevo, conn);
+        }
+        escrito(conn);
+        return true;
+    }
+
+    // ===== Configuraciones: lecturas =====
+
+    /**
+     * @return copia de la configuración (activa o no), o null
+     */
+    public ConfiguracionRed configuracion(long id) {
+        ConfiguracionRed configuracion = configuraciones.get(id);
+        return configuracion != null ? copiar(configuracion) : null;
+    }
+
+    /**
+     * @return copia de la configuración activa de un dispositivo, o null
+     */
+    public ConfiguracionRed configuracionActivaDe(long dispositivoId) {
+        Long id = configuracionPorDispositivo.get(dispositivoId);
+        ConfiguracionRed configuracion = id != null ? configuraciones.get(id) : null;
+        return activa(configuracion) ? copiar(configuracion) : null;
+    }
+
+    /**
+     * @return copia de la configuración activa con esa IP, o null
+     */
+    public ConfiguracionRed configuracionActivaPorIp(String ip) {
+        Long id = ip != null ? configuracionPorIp.get(ip) : null;
+        ConfiguracionRed configuracion = id != null ? configuraciones.get(id) : null;
+        return activa(configuracion) ? copiar(configuracion) : null;
+    }
+
+    /**
+     * @return copias de las configuraciones activas en orden de ID
+     */
+    public List<ConfiguracionRed> configuracionesActivas() {
+        List<ConfiguracionRed> resultado = new ArrayList<>();
+        for (ConfiguracionRed configuracion : configuraciones.values()) {
+            if (activa(configuracion)) {
+                resultado.add(copiar(configuracion));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Configuraciones modificadas después de una marca (ver
+     * {@link #dispositivosModificadosDesde}).
+     */
+    public List<ConfiguracionRed> configuracionesModificadasDesde(Timestamp marca, long desdeId, int margenSegundos,
+            int limite) {
+        List<ConfiguracionRed> resultado = new ArrayList<>();
+        for (ConfiguracionRed configuracion : modificadosDesde(configuraciones.values(), ConfiguracionRed::getActualizado,
+                ConfiguracionRed::getId, marca, desdeId, margenSegundos, limite)) {
+            resultado.add(copiar(configuracion));
+        }
+        return resultado;
+    }
+
+    /**
+     * @return copias de todas las configuraciones (activas y eliminadas) en orden de ID
+     */
+    public List<ConfiguracionRed> todasLasConfiguraciones() {
+        List<ConfiguracionRed> resultado = new ArrayList<>(configuraciones.size());
+        for (ConfiguracionRed configuracion : configuraciones.values()) {
+            resultado.add(copiar(configuracion));
+        }
+        return resultado;
+    }
+
+    /**
+     * @return copias de las configuraciones activas con o sin DHCP, en orden de ID
+     */
+    public List<ConfiguracionRed> configuracionesActivasPorDhcp(boolean dhcpHabilitado) {
+        List<ConfiguracionRed> resultado = new ArrayList<>();
+        for (Long id : dhcpHabilitado ? configuracionesConDhcp : configuracionesSinDhcp) {
+            ConfiguracionRed configuracion = configuraciones.get(id);
+            if (activa(configuracion) && configuracion.getDhcpHabilitado() == dhcpHabilitado) {
+                resultado.add(copiar(configuracion));
+            }
+        }
+        return resultado;
+    }
+
+    // ===== Configuraciones: escrituras =====
+
+    /**
+     * Inserta una configuración y le asigna el ID.
+     *
+     * @throws SQLException si falta un campo obligatorio, la IP es inválida o
+     *         está repetida, el dispositivo no existe o ya tiene configuración
+     */
+    public long insertar(ConfiguracionRed configuracion, Connection conn) throws SQLException {
+        synchronized (escritura) {
+            ConfiguracionRed nueva = copiar(configuracion);
+            nueva.setId(secuenciaConfiguraciones.incrementAndGet());
+            if (nueva.getEliminado() == null) {
+                nueva.setEliminado(false);
+            }
+            Timestamp ahora = ahora();
+            nueva.setCreado(ahora);
+            nueva.setActualizado(ahora);
+            verificar(nueva);
+            guardar(null, nueva, conn);
+            configuracion.setId(nueva.getId());
+        }
+        escrito(conn);
+        return configuracion.getId();
+    }
+
+    /**
+     * Modifica una configuración aplicando el cambio a una copia de la fila actual.
+     *
+     * @param id ID de la configuración
+     * @param cambio modificación (no debe cambiar el ID)
+     * @return false si la configuración no existe
+     * @throws SQLException si el resultado viola una restricción (la configuración no cambia)
+     */
+    public boolean modificarConfiguracion(long id, Consumer<ConfiguracionRed> cambio, Connection conn)
+            throws SQLException {
+        return modificarConfiguracion(id, c -> true, cambio, conn);
+    }
+
+    /**
+     * Modifica una configuración solo si la fila actual cumple la condición,
+     * evaluada con el lock de escritura (como un UPDATE ... WHERE).
+     *
+     * @param id ID de la configuración
+     * @param condicion condición sobre la fila actual (no debe modificarla)
+     * @param cambio modificación (no debe cambiar el ID)
+     * @return false si la configuración no existe o no cumple la condición
+     * @throws SQLException si el resultado viola una restricción (la configuración no cambia)
+     */
+    public boolean modificarConfiguracion(long id, Predicate<ConfiguracionRed> condicion,
+                                          Consumer<ConfiguracionRed> cambio, Connection conn) throws SQLException {
+        synchronized (escritura) {
+            ConfiguracionRed anterior = configuraciones.get(id);
+            if (anterior == null || !condicion.test(anterior)) {
+                return false;
+            }
+            ConfiguracionRed nueva = copiar(anterior);
+            cambio.accept(nueva);
+            nueva.setId(id);
+            nueva.setCreado(anterior.getCreado());
+            nueva.setActualizado(ahora());
+            verificar(nueva);
+            guardar(anterior, nueva, conn);
+        }
+        escrito(conn);
+        return true;
+    }
+
+    /**
+     * Borra todas las filas e índices (para pruebas y benchmarks).
+     */
+    public void vaciar() throws SQLException {
+        synchronized (escritura) {
+            Observador actual = observador;
+            if (actual != null) {
+                for (Long id : configuraciones.keySet()) {
+                    actual.configuracion(++cambios, id, null, null);
+                }
+                for (Long id : dispositivos.keySet()) {
+                    actual.dispositivo(++cambios, id, null, null);
+                }
+            }
+            dispositivos.clear();
+            configuraciones.clear();
+            dispositivoPorSerial.clear();
+            configuracionPorIp.clear();
+            configuracionPorDispositivo.clear();
+            dispositivosPorUbicacion.clear();
+            dispositivosPorModelo.clear();
+            configuracionesConDhcp.clear();
+            configuracionesSinDhcp.clear();
+            secuenciaDispositivos.set(0);
+            secuenciaConfiguraciones.set(0);
+        }
+        escrito(null);
+    }
+
+    public int cantidadDispositivos() {
+        return dispositivos.size();
+    }
+
+    public int cantidadConfiguraciones() {
+        return configuraciones.size();
+    }
+
+    // ===== Persistencia (DiarioAlmacen) =====
+
+    void setObservador(Observador observador) {
+        this.observador = observador;
+    }
+
+    /**
+     * Carga una fila recuperada, sin verificar restricciones ni informar al
+     * observador (las filas vienen de un estado que ya las cumplía).
+     */
+    void cargar(DispositivoIoT dispositivo) {
+        synchronized (escritura) {
+            reemplazar(dispositivos.get(dispositivo.getId()), dispositivo);
+        }
+    }
+
+    void cargar(ConfiguracionRed configuracion) {
+        synchronized (escritura) {
+            reemplazar(configuraciones.get(configuracion.getId()), configuracion);
+        }
+    }
+
+    /**
+     * Continúa las secuencias de IDs y de cambios después de una recuperación.
+     */
+    void continuarDesde(long ultimoDispositivo, long ultimaConfiguracion, long ultimoCambio) {
+        synchronized (escritura) {
+            secuenciaDispositivos.set(Math.max(secuenciaDispositivos.get(), ultimoDispositivo));
+            secuenciaConfiguraciones.set(Math.max(secuenciaConfiguraciones.get(), ultimaConfiguracion));
+            cambios = Math.max(cambios, ultimoCambio);
+        }
+    }
+
+    private void escrito(Connection conn) throws SQLException {
+        Observador actual = observador;
+        if (actual != null) {
+            actual.despuesDeEscribir(conn);
+        }
+    }
+
+    // ===== Restricciones =====
+
+    private void verificar(DispositivoIoT dispositivo) throws SQLException {
+        obligatorio(dispositivo.getSerial(), "serial");
+        obligatorio(dispositivo.getModelo(), "modelo");
+        obligatorio(dispositivo.getUbicacion(), "ubicacion");
+        Long otro = dispositivoPorSerial.get(dispositivo.getSerial());
+        if (otro != null && !otro.equals(dispositivo.getId())) {
+            throw duplicado(dispositivo.getSerial(), "DispositivoIoT.serial");
+        }
+    }
+
+    private void verificar(ConfiguracionRed configuracion) throws SQLException {
+        obligatorio(configuracion.getDhcpHabilitado(), "dhcpHabilitado");
+        obligatorio(configuracion.getDispositivoId(), "dispositivo_id");
+        String ip = configuracion.getIp();
+        if (ip != null) {
+            if (!FORMATO_IP.matcher(ip).matches()) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Check constraint 'chk_ip_formato' is violated.", "HY000", 3819);
+            }
+            Long otra = configuracionPorIp.get(ip);
+            if (otra != null && !otra.equals(configuracion.getId())) {
+                throw duplicado(ip, "ConfiguracionRed.ip");
+            }
+        }
+        if (!dispositivos.containsKey(configuracion.getDispositivoId())) {
+            throw new SQLIntegrityConstraintViolationException("Cannot add or update a child row: a foreign key "
+                    + "constraint fails (fk_configuracion_dispositivo)", "23000", 1452);
+        }
+        Long otra = configuracionPorDispositivo.get(configuracion.getDispositivoId());
+        if (otra != null && !otra.equals(configuracion.getId())) {
+            throw duplicado(String.valueOf(configuracion.getDispositivoId()), "ConfiguracionRed.dispositivo_id");
+        }
+    }
+
+    private static void obligatorio(Object valor, String columna) throws SQLException {
+        if (valor == null) {
+            throw new SQLIntegrityConstraintViolationException("Column '" + columna + "' cannot be null", "23000", 1048);
+        }
+    }
+
+    private static SQLException duplicado(String valor, String clave) {
+        return new SQLIntegrityConstraintViolationException(
+                "Duplicate entry '" + valor + "' for key '" + clave + "'", "23000", 1062);
+    }
+
+    // ===== Filas e índices (con el candado de escritura) =====
+
+    /**
+     * Reemplaza la fila y sus índices, y registra en la conexión cómo volver a
+     * la fila anterior (null: no existía).
+     */
+    private void guardar(DispositivoIoT anterior, DispositivoIoT nuevo, Connection conn) {
+        reemplazar(anterior, nuevo);
+        informar(nuevo.getId(), nuevo, conn);
+        InMemoryConnection.registrarDeshacer(conn, () -> {
+            synchronized (escritura) {
+                reemplazar(dispositivos.get(nuevo.getId()), anterior);
+                if (anterior == null) {
+                    dispositivos.remove(nuevo.getId());
+                }
+                informar(nuevo.getId(), anterior, null);
+            }
+        });
+    }
+
+    private void guardar(ConfiguracionRed anterior, ConfiguracionRed nueva, Connection conn) {
+        reemplazar(anterior, nueva);
+        informar(nueva.getId(), nueva, conn);
+        InMemoryConnection.registrarDeshacer(conn, () -> {
+            synchronized (escritura) {
+                reemplazar(configuraciones.get(nueva.getId()), anterior);
+                if (anterior == null) {
+                    configuraciones.remove(nueva.getId());
+                }
+                informar(nueva.getId(), anterior, null);
+            }
+        });
+    }
+
+    private void informar(long id, DispositivoIoT fila, Connection conn) {
+        Observador actual = observador;
+        if (actual != null) {
+            actual.dispositivo(++cambios, id, fila, conn);
+        }
+    }
+
+    private void informar(long id, ConfiguracionRed fila, Connection conn) {
+        Observador actual = observador;
+        if (actual != null) {
+            actual.configuracion(++cambios, id, fila, conn);
+        }
+    }
+
+    /**
+     * Reemplaza una fila en los índices: primero agrega las entradas nuevas y
+     * después quita las que ya no corresponden, así una lectura concurrente no
+     * deja de ver una fila cuyas claves no cambiaron.
+     */
+    private void reemplazar(DispositivoIoT anterior, DispositivoIoT nuevo) {
+        boolean nuevoActivo = activo(nuevo);
+        if (nuevo != null) {
+            dispositivos.put(nuevo.getId(), nuevo);
+            dispositivoPorSerial.put(nuevo.getSerial(), nuevo.getId());
+            if (nuevoActivo) {
+                agregar(dispositivosPorUbicacion, clave(nuevo.getUbicacion()), nuevo.getId());
+                agregar(dispositivosPorModelo, nuevo.getModelo(), nuevo.getId());
+            }
+        }
+        if (anterior != null) {
+            if (nuevo == null || !anterior.getSerial().equals(nuevo.getSerial())) {
+                dispositivoPorSerial.remove(anterior.getSerial(), anterior.getId());
+            }
+            if (activo(anterior)) {
+                if (!nuevoActivo || !clave(anterior.getUbicacion()).equals(clave(nuevo.getUbicacion()))) {
+                    quitar(dispositivosPorUbicacion, clave(anterior.getUbicacion()), anterior.getId());
+                }
+                if (!nuevoActivo || !anterior.getModelo().equals(nuevo.getModelo())) {
+                    quitar(dispositivosPorModelo, anterior.getModelo(), anterior.getId());
+                }
+            }
+        }
+    }
+
+    private void reemplazar(ConfiguracionRed anterior, ConfiguracionRed nueva) {
+        if (nueva != null) {
+            configuraciones.put(nueva.getId(), nueva);
+            if (nueva.getIp() != null) {
+                configuracionPorIp.put(nueva.getIp(), nueva.getId());
+            }
+            configuracionPorDispositivo.put(nueva.getDispositivoId(), nueva.getId());
+            if (activa(nueva)) {
+                (nueva.getDhcpHabilitado() ? configuracionesConDhcp : configuracionesSinDhcp).add(nueva.getId());
+            }
+        }
+        if (anterior != null) {
+            if (anterior.getIp() != null && (nueva == null || !anterior.getIp().equals(nueva.getIp()))) {
+                configuracionPorIp.remove(anterior.getIp(), anterior.getId());
+            }
+            if (nueva == null || !anterior.getDispositivoId().equals(nueva.getDispositivoId())) {
+                configuracionPorDispositivo.remove(anterior.getDispositivoId(), anterior.getId());
+            }
+            if (activa(anterior) && (!activa(nueva) || !anterior.getDhcpHabilitado().equals(nueva.getDhcpHabilitado()))) {
+                (anterior.getDhcpHabilitado() ? configuracionesConDhcp : configuracionesSinDhcp).remove(anterior.getId());
+            }
+        }
+    }
+
+    private static void agregar(Map<String, NavigableSet<Long>> indice, String clave, long id) {
+        indice.computeIfAbsent(clave, k -> new ConcurrentSkipListSet<>()).add(id);
+    }
+
+    private static void quitar(Map<String, NavigableSet<Long>> indice, String clave, long id) {
+        indice.computeIfPresent(clave, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    // ===== Auxiliares =====
+
+    /**
+     * Resuelve IDs de un índice secundario, volviendo a comprobar que cada
+     * fila siga activa (las lecturas no toman el candado de escritura).
+     */
+    private List<DispositivoIoT> activosPorIds(NavigableSet<Long> ids, long desdeId, int limite) {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<DispositivoIoT> resultado = new ArrayList<>();
+        for (Long id : ids.tailSet(desdeId, false)) {
+            if (resultado.size() >= limite) {
+                break;
+            }
+            DispositivoIoT dispositivo = dispositivos.get(id);
+            if (activo(dispositivo)) {
+                resultado.add(copiar(dispositivo));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Filas con (actualizado, id) posterior a (marca, desdeId) y actualizado
+     * anterior a ahora - margen, ordenadas por (actualizado, id). Recorre todas
+     * las filas: no hay índice por fecha de modificación.
+     */
+    private static <T> List<T> modificadosDesde(Collection<T> filas, Function<T, Timestamp> actualizado,
+            Function<T, Long> id, Timestamp marca, long desdeId, int margenSegundos, int limite) {
+        Timestamp tope = new Timestamp(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(margenSegundos));
+        Comparator<T> orden = Comparator.comparing(actualizado).thenComparing(id);
+        PriorityQueue<T> primeros = new PriorityQueue<>(orden.reversed());
+        for (T fila : filas) {
+            Timestamp cambio = actualizado.apply(fila);
+            if (!cambio.before(tope)) {
+                continue;
+            }
+            if (marca != null && (cambio.before(marca) || (cambio.equals(marca) && id.apply(fila) <= desdeId))) {
+                continue;
+            }
+            primeros.add(fila);
+            if (primeros.size() > limite) {
+                primeros.poll();
+            }
+        }
+        List<T> resultado = new ArrayList<>(primeros);
+        resultado.sort(orden);
+        return resultado;
+    }
+
+    private static boolean activo(DispositivoIoT dispositivo) {
+        return dispositivo != null && !dispositivo.getEliminado();
+    }
+
+    private static boolean activa(ConfiguracionRed configuracion) {
+        return configuracion != null && !configuracion.getEliminado();
+    }
+
+    private static String clave(String ubicacion) {
+        return ubicacion.toLowerCase(Locale.ROOT);
+    }
+
+    private static Timestamp ahora() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * Copia de un dispositivo sin su configuración.
+     */
+    private static DispositivoIoT copiar(DispositivoIoT origen) {
+        DispositivoIoT copia = new DispositivoIoT();
+        copia.setId(origen.getId());
+        copia.setEliminado(origen.getEliminado());
+        copia.setSerial(origen.getSerial());
+        copia.setModelo(origen.getModelo());
+        copia.setUbicacion(origen.getUbicacion());
+        copia.setFirmwareVersion(origen.getFirmwareVersion());
+        copia.setCreado(origen.getCreado());
+        copia.setActualizado(origen.getActualizado());
+        return copia;
+    }
+
+    private static ConfiguracionRed copiar(ConfiguracionRed origen) {
+        ConfiguracionRed copia = new ConfiguracionRed();
+        copia.setId(origen.getId());
+        copia.setEliminado(origen.getEliminado());
+        copia.setIp(origen.getIp());
+        copia.setMascara(origen.getMascara());
+        copia.setGateway(origen.getGateway());
+        copia.setDnsPrimario(origen.getDnsPrimario());
+        copia.setDhcpHabilitado(origen.getDhcpHabilitado());
+        copia.setDispositivoId(origen.getDispositivoId());
+        copia.setCreado(origen.getCreado());
+        copia.setActualizado(origen.getActualizado());
+        return copia;
+    }
+}
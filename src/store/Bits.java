@@ -0,0 +1,90 @@
+package store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lectura y escritura de campos de ancho arbitrario (1 a 64 bits) sobre un
+ * ByteBuffer, a partir de un desplazamiento fijo. Usa accesos absolutos, así
+ * que no altera la posición del buffer.
+ *
+ * @version 1.0
+ */
+final class Bits {
+
+    private final ByteBuffer buffer;
+    private final int inicio;
+    private final long capacidadBits;
+    private long posicion;
+
+    /**
+     * @param buffer buffer de datos
+     * @param inicio desplazamiento en bytes del primer bit
+     * @param limite byte siguiente al último utilizable
+     */
+    Bits(ByteBuffer buffer, int inicio, int limite) {
+        this.buffer = buffer;
+        this.inicio = inicio;
+        this.capacidadBits = (long) (limite - inicio) * 8;
+    }
+
+    long getPosicion() {
+        return posicion;
+    }
+
+    void setPosicion(long posicion) {
+        this.posicion = posicion;
+    }
+
+    long getCapacidadBits() {
+        return capacidadBits;
+    }
+
+    /**
+     * Escribe los {@code cantidad} bits menos significativos de {@code valor}
+     * (el más significativo primero). Los bits siguientes del último byte
+     * quedan en cero, aunque el archivo tuviera restos de una escritura anterior.
+     */
+    void escribir(long valor, int cantidad) {
+        while (cantidad > 0) {
+            int indice = inicio + (int) (posicion >>> 3);
+            int ocupados = (int) (posicion & 7);
+            int libres = 8 - ocupados;
+            int tomar = Math.min(libres, cantidad);
+
+            int trozo = (int) ((valor >>> (cantidad - tomar)) & ((1 << tomar) - 1));
+            int actual = ocupados == 0 ? 0 : buffer.get(indice) & (0xFF << libres) & 0xFF;
+            buffer.put(indice, (byte) (actual | (trozo << (libres - tomar))));
+
+            posicion += tomar;
+            cantidad -= tomar;
+        }
+    }
+
+    /**
+     * Lee {@code cantidad} bits como entero sin signo.
+     */
+    long leer(int cantidad) {
+        long valor = 0;
+        while (cantidad > 0) {
+            int indice = inicio + (int) (posicion >>> 3);
+            int ocupados = (int) (posicion & 7);
+            int libres = 8 - ocupados;
+            int tomar = Math.min(libres, cantidad);
+
+            int trozo = ((buffer.get(indice) & 0xFF) >>> (libres - tomar)) & ((1 << tomar) - 1);
+            valor = (valor << tomar) | trozo;
+
+            posicion += tomar;
+            cantidad -= tomar;
+        }
+        return valor;
+    }
+
+    /**
+     * Lee {@code cantidad} bits como entero con signo (complemento a 2).
+     */
+    long leerConSigno(int cantidad) {
+        long valor = leer(cantidad);
+        return (valor << (64 - cantidad)) >> (64 - cantidad);
+    }
+}
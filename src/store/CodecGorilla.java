@@ -0,0 +1,152 @@
+package store;
+
+/**
+ * Compresión de una serie (instante, valor) al estilo Gorilla:
+ * <ul>
+ *   <li>Instantes: delta de deltas. Con lecturas periódicas la mayoría cuesta
+ *       1 bit ('0'); el resto usa prefijos '10' (7 bits), '110' (9 bits),
+ *       '1110' (12 bits) o '1111' (64 bits).</li>
+ *   <li>Valores: XOR con el valor anterior. Un valor repetido cuesta 1 bit; si
+ *       los bits significativos caben en la ventana del XOR previo, se
+ *       escriben solo esos ('10'); si no, se escribe la nueva ventana ('11' +
+ *       5 bits de ceros iniciales + 6 bits de largo).</li>
+ * </ul>
+ * El primer punto se escribe completo (64 + 64 bits).
+ *
+ * La misma instancia codifica o decodifica: el estado (instante, delta y
+ * valor previos, ventana del XOR) es idéntico en ambos sentidos, por lo que
+ * tras decodificar un segmento se puede seguir escribiendo en él.
+ *
+ * @version 1.0
+ */
+final class CodecGorilla {
+
+    /** Peor caso de un punto (salvo el primero): 4 + 64 bits de instante y 2 + 5 + 6 + 64 de valor. */
+    static final int MAX_BITS_PUNTO = 145;
+
+    private int cantidad;
+    private long timestamp;
+    private long delta;
+    private long valorBits;
+    private int ceros = -1;
+    private int finales;
+
+    int getCantidad() {
+        return cantidad;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    double getValor() {
+        return Double.longBitsToDouble(valorBits);
+    }
+
+    /**
+     * Codifica un punto a continuación del anterior. El instante no debe ser
+     * menor que el del punto anterior.
+     */
+    void escribir(Bits bits, long ts, double valor) {
+        long nuevoValor = Double.doubleToRawLongBits(valor);
+
+        if (cantidad == 0) {
+            bits.escribir(ts, 64);
+            bits.escribir(nuevoValor, 64);
+        } else {
+            long nuevoDelta = ts - timestamp;
+            escribirDeltaDeDelta(bits, nuevoDelta - delta);
+            delta = nuevoDelta;
+            escribirXor(bits, nuevoValor ^ valorBits);
+        }
+
+        timestamp = ts;
+        valorBits = nuevoValor;
+        cantidad++;
+    }
+
+    /**
+     * Decodifica el punto siguiente; quedan disponibles en {@link #getTimestamp()} y {@link #getValor()}.
+     */
+    void leer(Bits bits) {
+        if (cantidad == 0) {
+            timestamp = bits.leer(64);
+            valorBits = bits.leer(64);
+        } else {
+            delta += leerDeltaDeDelta(bits);
+            timestamp += delta;
+            valorBits ^= leerXor(bits);
+        }
+        cantidad++;
+    }
+
+    private static void escribirDeltaDeDelta(Bits bits, long dod) {
+        if (dod == 0) {
+            bits.escribir(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            bits.escribir(0b10, 2);
+            bits.escribir(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            bits.escribir(0b110, 3);
+            bits.escribir(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            bits.escribir(0b1110, 4);
+            bits.escribir(dod, 12);
+        } else {
+            bits.escribir(0b1111, 4);
+            bits.escribir(dod, 64);
+        }
+    }
+
+    private static long leerDeltaDeDelta(Bits bits) {
+        if (bits.leer(1) == 0) {
+            return 0;
+        }
+        if (bits.leer(1) == 0) {
+            return bits.leerConSigno(7);
+        }
+        if (bits.leer(1) == 0) {
+            return bits.leerConSigno(9);
+        }
+        if (bits.leer(1) == 0) {
+            return bits.leerConSigno(12);
+        }
+        return bits.leer(64);
+    }
+
+    private void escribirXor(Bits bits, long xor) {
+        if (xor == 0) {
+            bits.escribir(0, 1);
+            return;
+        }
+
+        int nuevosCeros = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int nuevosFinales = Long.numberOfTrailingZeros(xor);
+
+        if (ceros >= 0 && nuevosCeros >= ceros && nuevosFinales >= finales) {
+            // Cabe en la ventana anterior
+            bits.escribir(0b10, 2);
+            bits.escribir(xor >>> finales, 64 - ceros - finales);
+        } else {
+            int significativos = 64 - nuevosCeros - nuevosFinales;
+            bits.escribir(0b11, 2);
+            bits.escribir(nuevosCeros, 5);
+            bits.escribir(significativos - 1, 6);
+            bits.escribir(xor >>> nuevosFinales, significativos);
+            ceros = nuevosCeros;
+            finales = nuevosFinales;
+        }
+    }
+
+    private long leerXor(Bits bits) {
+        if (bits.leer(1) == 0) {
+            return 0;
+        }
+        if (bits.leer(1) == 1) {
+            ceros = (int) bits.leer(5);
+            int significativos = (int) bits.leer(6) + 1;
+            finales = 64 - ceros - significativos;
+        }
+        return bits.leer(64 - ceros - finales) << finales;
+    }
+}
@@ -0,0 +1,834 @@
+package store;
+
+import config.AppConfig;
+import config.InMemoryConnection;
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Persistencia de un {@link AlmacenMemoria} para dao.almacen=archivo: diario
+ * de solo agregado (WAL) más snapshots compactados, en almacen.directorio.
+ *
+ * <ul>
+ *   <li>Registros: {@code [longitud:int][crc32:int][tipo:byte][cambio:long][id:long][fila]},
+ *       con la imagen completa de la fila (o su baja física, si se deshizo un
+ *       alta). El número de cambio lo asigna el almacén; al reproducir se
+ *       aplica, por fila, solo el registro de mayor número, así el orden en que
+ *       se confirman las transacciones no importa.</li>
+ *   <li>Confirmación: los cambios de una transacción se acumulan en la
+ *       conexión y se escriben juntos en el commit; los de autocommit (y las
+ *       restauraciones del rollback), al terminar la escritura. Con
+ *       almacen.fsync=true el commit espera el fsync, compartido entre los
+ *       commits concurrentes (group commit): mientras un hilo fuerza el
+ *       archivo, los demás agregan sus registros y el siguiente fsync cubre a todos.</li>
+ *   <li>Segmentos: {@code wal-NNNNNNNN.log}; al superar almacen.segmentoBytes
+ *       se abre uno nuevo y, en segundo plano, el snapshot anterior más los
+ *       segmentos cerrados se compactan en {@code almacen.snap} (una imagen por
+ *       fila, escrita en un temporal y movida atómicamente), y los segmentos se borran.</li>
+ *   <li>Recuperación ({@link #abrir}): snapshot más los segmentos posteriores;
+ *       un registro incompleto o con CRC inválido al final del último segmento
+ *       (escritura interrumpida por una caída) se descarta y el archivo se trunca.</li>
+ * </ul>
+ *
+ * Si una escritura o un fsync fallan, el diario deja de aceptar confirmaciones
+ * (los commits lanzan SQLException): no se sigue escribiendo detrás de un
+ * registro que pudo quedar a medias.
+ *
+ * @version 1.0
+ */
+public final class DiarioAlmacen implements AlmacenMemoria.Observador, AutoCloseable {
+
+    private static final OperationMetrics METRICA_CONFIRMAR = MetricsRegistry.operacion("DiarioAlmacen.confirmar");
+    private static final OperationMetrics METRICA_COMPACTAR = MetricsRegistry.operacion("DiarioAlmacen.compactar");
+
+    private static final LongAdder REGISTROS = MetricsRegistry.contador("DiarioAlmacen.registros");
+    private static final LongAdder FSYNCS = MetricsRegistry.contador("DiarioAlmacen.fsync");
+
+    private static final int MAGIA = 0x494F5444;  // "IOTD"
+    private static final int VERSION = 1;
+
+    private static final String SNAPSHOT = "almacen.snap";
+    private static final Pattern SEGMENTO = Pattern.compile("wal-(\\d{8})\\.log");
+    private static final int CABECERA_SNAPSHOT = 4 + 4 + 8 * 5 + 4;
+    private static final int MAX_REGISTRO = 1 << 20;
+
+    private static final byte DISPOSITIVO = 1;
+    private static final byte CONFIGURACION = 2;
+    private static final byte SIN_DISPOSITIVO = 3;
+    private static final byte SIN_CONFIGURACION = 4;
+
+    /**
+     * Última imagen de una fila (cuerpo del registro) durante la recuperación
+     * o la compactación.
+     */
+    private static final class Fila {
+        final long cambio;
+        final byte[] cuerpo;
+
+        Fila(long cambio, byte[] cuerpo) {
+            this.cambio = cambio;
+            this.cuerpo = cuerpo;
+        }
+    }
+
+    /**
+     * Estado reconstruido a partir del snapshot y los segmentos.
+     */
+    private static final class Estado {
+        final Map<Long, Fila> dispositivos = new HashMap<>();
+        final Map<Long, Fila> configuraciones = new HashMap<>();
+        long segmento;
+        long ultimoCambio;
+        long ultimoDispositivo;
+        long ultimaConfiguracion;
+        long registros;
+
+        void aplicar(byte[] cuerpo) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(cuerpo);
+            byte tipo = buffer.get();
+            long cambio = buffer.getLong();
+            long id = buffer.getLong();
+            Map<Long, Fila> filas;
+            switch (tipo) {
+                case DISPOSITIVO:
+                case SIN_DISPOSITIVO:
+                    filas = dispositivos;
+                    ultimoDispositivo = Math.max(ultimoDispositivo, id);
+                    break;
+                case CONFIGURACION:
+                case SIN_CONFIGURACION:
+                    filas = configuraciones;
+                    ultimaConfiguracion = Math.max(ultimaConfiguracion, id);
+                    break;
+                default:
+                    throw new IOException("Tipo de registro desconocido: " + tipo);
+            }
+            Fila actual = filas.get(id);
+            if (actual == null || actual.cambio < cambio) {
+                filas.put(id, new Fila(cambio, cuerpo));
+            }
+            ultimoCambio = Math.max(ultimoCambio, cambio);
+            registros++;
+        }
+    }
+
+    /**
+     * Registros de una transacción, pendientes de su commit.
+     */
+    private static final class Lote {
+        final List<byte[]> registros = new ArrayList<>();
+    }
+
+    private final Path directorio;
+    private final AlmacenMemoria almacen;
+    private final long segmentoBytes;
+    private final boolean fsync;
+
+    private final Map<Connection, Lote> lotes = new ConcurrentHashMap<>();
+    private final Queue<byte[]> sueltos = new ConcurrentLinkedQueue<>();
+    private final Object sincronizacion = new Object();
+    private final Object compactacion = new Object();
+    private final ExecutorService compactador;
+
+    // Con el candado del diario (this)
+    private FileChannel canal;
+    private long numeroSegmento;
+    private long bytesSegmento;
+    private long escrito;
+    private IOException fallo;
+    private boolean compactacionPendiente;
+    private boolean cerrado;
+
+    // Con el candado de sincronización
+    private long sincronizado;
+
+    // Con el candado de compactación
+    private long segmentoSnapshot;
+
+    private DiarioAlmacen(Path directorio, AlmacenMemoria almacen, long segmentoBytes, boolean fsync) {
+        this.directorio = directorio;
+        this.almacen = almacen;
+        this.segmentoBytes = Math.max(64 * 1024, segmentoBytes);
+        this.fsync = fsync;
+        this.compactador = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "diario-almacen");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Abre (o crea) el almacén persistente con la configuración de
+     * config.properties (almacen.*).
+     *
+     * @throws IOException si no se puede leer el directorio o un archivo está dañado
+     */
+    public static DiarioAlmacen abrir() throws IOException {
+        return abrir(Paths.get(AppConfig.getString("almacen.directorio", "almacen")),
+                AppConfig.getLong("almacen.segmentoBytes", 64L * 1024 * 1024),
+                AppConfig.getBoolean("almacen.fsync", true));
+    }
+
+    /**
+     * Abre (o crea) el almacén persistente: recupera el snapshot y reproduce
+     * los segmentos posteriores en un {@link AlmacenMemoria} nuevo, y abre un
+     * segmento para los cambios siguientes.
+     *
+     * @param directorio directorio del diario (se crea si no existe)
+     * @param segmentoBytes tamaño a partir del cual se cambia de segmento y se compacta
+     * @param fsync si los commits esperan a que el diario esté en disco
+     * @throws IOException si no se puede leer el directorio o el snapshot o un
+     *         segmento que no es el último están dañados
+     */
+    public static DiarioAlmacen abrir(Path directorio, long segmentoBytes, boolean fsync) throws IOException {
+        Files.createDirectories(directorio);
+        Files.deleteIfExists(directorio.resolve(SNAPSHOT + ".tmp"));
+
+        Estado estado = new Estado();
+        leerSnapshot(directorio.resolve(SNAPSHOT), estado);
+        long registrosSnapshot = estado.registros;
+
+        TreeMap<Long, Path> segmentos = listarSegmentos(directorio);
+        long ultimoSegmento = estado.segmento;
+        boolean hayAnteriores = false;
+        for (Map.Entry<Long, Path> segmento : segmentos.entrySet()) {
+            if (segmento.getKey() <= estado.segmento) {
+                // Ya incluido en el snapshot (la compactación se interrumpió antes de borrarlo)
+                Files.delete(segmento.getValue());
+                continue;
+            }
+            boolean ultimo = segmento.getKey().equals(segmentos.lastKey());
+            long valido = reproducir(segmento.getValue(), estado, ultimo);
+            if (valido < Files.size(segmento.getValue())) {
+                System.err.println("[DiarioAlmacen] Se descarta el final incompleto de " + segmento.getValue()
+                        + " (" + (Files.size(segmento.getValue()) - valido) + " bytes)");
+                try (FileChannel truncar = FileChannel.open(segmento.getValue(), StandardOpenOption.WRITE)) {
+                    truncar.truncate(valido);
+                    truncar.force(true);
+                }
+            }
+            ultimoSegmento = segmento.getKey();
+            hayAnteriores = true;
+        }
+
+        AlmacenMemoria almacen = new AlmacenMemoria();
+        int dispositivos = 0;
+        int configuraciones = 0;
+        for (Fila fila : estado.dispositivos.values()) {
+            if (fila.cuerpo[0] == DISPOSITIVO) {
+                almacen.cargar(leerDispositivo(fila.cuerpo));
+                dispositivos++;
+            }
+        }
+        for (Fila fila : estado.configuraciones.values()) {
+            if (fila.cuerpo[0] == CONFIGURACION) {
+                almacen.cargar(leerConfiguracion(fila.cuerpo));
+                configuraciones++;
+            }
+        }
+        almacen.continuarDesde(estado.ultimoDispositivo, estado.ultimaConfiguracion, estado.ultimoCambio);
+
+        DiarioAlmacen diario = new DiarioAlmacen(directorio, almacen, segmentoBytes, fsync);
+        diario.segmentoSnapshot = estado.segmento;
+        diario.numeroSegmento = ultimoSegmento + 1;
+        diario.canal = FileChannel.open(diario.rutaSegmento(diario.numeroSegmento), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        forzarDirectorio(directorio);
+        almacen.setObservador(diario);
+
+        System.out.println("[DiarioAlmacen] Recuperados " + dispositivos + " dispositivos y " + configuraciones
+                + " configuraciones (" + registrosSnapshot + " del snapshot, "
+                + (estado.registros - registrosSnapshot) + " registros del diario)");
+        if (hayAnteriores) {
+            diario.solicitarCompactacion();
+        }
+        return diario;
+    }
+
+    /**
+     * @return el almacén cuyas escrituras se persisten en este diario
+     */
+    public AlmacenMemoria getAlmacen() {
+        return almacen;
+    }
+
+    // ===== Observador del almacén (con su candado de escritura) =====
+
+    @Override
+    public void dispositivo(long cambio, long id, DispositivoIoT fila, Connection conn) {
+        registrar(fila != null ? codificar(cambio, fila) : codificarBaja(SIN_DISPOSITIVO, cambio, id), conn);
+    }
+
+    @Override
+    public void configuracion(long cambio, long id, ConfiguracionRed fila, Connection conn) {
+        registrar(fila != null ? codificar(cambio, fila) : codificarBaja(SIN_CONFIGURACION, cambio, id), conn);
+    }
+
+    @Override
+    public void despuesDeEscribir(Connection conn) throws SQLException {
+        if (!InMemoryConnection.esTransaccional(conn)) {
+            confirmar(Collections.<byte[]>emptyList());
+        }
+    }
+
+    private void registrar(byte[] registro, Connection conn) {
+        Lote lote = conn != null ? lotes.get(conn) : null;
+        if (lote == null && InMemoryConnection.esTransaccional(conn)) {
+            Lote nuevo = new Lote();
+            lotes.put(conn, nuevo);
+            InMemoryConnection.registrarConfirmacion(conn, () -> {
+                lotes.remove(conn, nuevo);
+                confirmar(nuevo.registros);
+            });
+            InMemoryConnection.registrarDeshacer(conn, () -> lotes.remove(conn, nuevo));
+            lote = nuevo;
+        }
+        if (lote != null) {
+            lote.registros.add(registro);
+        } else {
+            sueltos.add(registro);
+        }
+    }
+
+    // ===== Escritura =====
+
+    /**
+     * Escribe los registros sueltos y los de un lote y, con almacen.fsync,
+     * espera a que estén en disco.
+     */
+    private void confirmar(List<byte[]> registros) throws SQLException {
+        long inicio = System.nanoTime();
+        try {
+            esperarDisco(escribir(registros));
+        } catch (IOException e) {
+            METRICA_CONFIRMAR.registrarError();
+            throw new SQLException("Error al escribir el diario del almacén: " + e.getMessage(), e);
+        } finally {
+            METRICA_CONFIRMAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * @return posición lógica (bytes escritos desde la apertura) hasta la que
+     *         deben estar en disco los registros
+     */
+    private synchronized long escribir(List<byte[]> registros) throws IOException {
+        if (fallo != null) {
+            throw new IOException("El diario quedó inutilizable tras un error anterior", fallo);
+        }
+        if (cerrado) {
+            throw new IOException("El diario está cerrado");
+        }
+        List<byte[]> todos = new ArrayList<>(registros);
+        for (byte[] suelto; (suelto = sueltos.poll()) != null; ) {
+            todos.add(suelto);
+        }
+        if (todos.isEmpty()) {
+            return escrito;
+        }
+        int total = 0;
+        for (byte[] registro : todos) {
+            total += registro.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] registro : todos) {
+            buffer.put(registro);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+        } catch (IOException e) {
+            fallo = e;
+            throw e;
+        }
+        REGISTROS.add(todos.size());
+        bytesSegmento += total;
+        escrito += total;
+        if (bytesSegmento >= segmentoBytes) {
+            solicitarCompactacion();
+        }
+        return escrito;
+    }
+
+    /**
+     * Fuerza el segmento a disco si todavía no lo está hasta {@code posicion}.
+     * Un solo hilo hace el fsync; los que esperan el candado suelen encontrar
+     * su posición ya cubierta al entrar.
+     */
+    private void esperarDisco(long posicion) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        synchronized (sincronizacion) {
+            if (sincronizado >= posicion) {
+                return;
+            }
+            FileChannel actual;
+            long objetivo;
+            synchronized (this) {
+                actual = canal;
+                objetivo = escrito;
+            }
+            try {
+                actual.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    fallo = e;
+                }
+                throw e;
+            }
+            FSYNCS.increment();
+            sincronizado = objetivo;
+        }
+    }
+
+    // ===== Compactación =====
+
+    private synchronized void solicitarCompactacion() {
+        if (compactacionPendiente || cerrado) {
+            return;
+        }
+        compactacionPendiente = true;
+        compactador.execute(() -> {
+            try {
+                compactar();
+            } catch (Exception e) {
+                System.err.println("[DiarioAlmacen] Error en la compactación: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Cierra el segmento actual (si tiene registros) y compacta el snapshot y
+     * los segmentos cerrados en un snapshot nuevo; después borra esos segmentos.
+     * Las escrituras solo se detienen mientras se cambia de segmento.
+     *
+     * @return cantidad de segmentos compactados
+     * @throws IOException si falla la lectura o la escritura
+     */
+    public int compactar() throws IOException {
+        long inicio = System.nanoTime();
+        try {
+            synchronized (compactacion) {
+                long hasta;
+                synchronized (sincronizacion) {
+                    synchronized (this) {
+                        compactacionPendiente = false;
+                        if (bytesSegmento > 0) {
+                            rotar();
+                        }
+                        hasta = numeroSegmento - 1;
+                    }
+                }
+                if (hasta <= segmentoSnapshot) {
+                    return 0;
+                }
+
+                Estado estado = new Estado();
+                leerSnapshot(directorio.resolve(SNAPSHOT), estado);
+                TreeMap<Long, Path> segmentos = listarSegmentos(directorio);
+                List<Path> compactados = new ArrayList<>();
+                for (Map.Entry<Long, Path> segmento : segmentos.headMap(hasta, true).entrySet()) {
+                    if (segmento.getKey() > estado.segmento) {
+                        reproducir(segmento.getValue(), estado, false);
+                    }
+                    compactados.add(segmento.getValue());
+                }
+                estado.segmento = hasta;
+                escribirSnapshot(estado);
+                segmentoSnapshot = hasta;
+
+                for (Path segmento : compactados) {
+                    Files.deleteIfExists(segmento);
+                }
+                return compactados.size();
+            }
+        } catch (IOException | RuntimeException e) {
+            METRICA_COMPACTAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_COMPACTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Fuerza y cierra el segmento actual y abre el siguiente (con los
+     * candados de sincronización y del diario).
+     */
+    private void rotar() throws IOException {
+        try {
+            canal.force(false);
+            canal.close();
+            sincronizado = escrito;
+            numeroSegmento++;
+            canal = FileChannel.open(rutaSegmento(numeroSegmento), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            bytesSegmento = 0;
+            forzarDirectorio(directorio);
+        } catch (IOException e) {
+            fallo = e;
+            throw e;
+        }
+    }
+
+    private void escribirSnapshot(Estado estado) throws IOException {
+        Path destino = directorio.resolve(SNAPSHOT);
+        Path temporal = directorio.resolve(SNAPSHOT + ".tmp");
+        long cantidad = estado.dispositivos.size() + estado.configuraciones.size();
+
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA_SNAPSHOT);
+        cabecera.putInt(MAGIA)
+                .putInt(VERSION)
+                .putLong(estado.segmento)
+                .putLong(estado.ultimoCambio)
+                .putLong(estado.ultimoDispositivo)
+                .putLong(estado.ultimaConfiguracion)
+                .putLong(cantidad);
+        cabecera.putInt(crc(cabecera.array(), 0, CABECERA_SNAPSHOT - 4));
+
+        try (FileOutputStream archivo = new FileOutputStream(temporal.toFile());
+             DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(archivo, 64 * 1024))) {
+            salida.write(cabecera.array());
+            // Se conservan también las bajas físicas, con su número de cambio
+            for (Fila fila : estado.dispositivos.values()) {
+                escribirRegistro(salida, fila.cuerpo);
+            }
+            for (Fila fila : estado.configuraciones.values()) {
+                escribirRegistro(salida, fila.cuerpo);
+            }
+            salida.flush();
+            archivo.getChannel().force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forzarDirectorio(directorio);
+    }
+
+    /**
+     * Escribe los registros pendientes, fuerza el segmento a disco y detiene
+     * la compactación en segundo plano.
+     */
+    @Override
+    public void close() {
+        compactador.shutdown();
+        try {
+            compactador.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (sincronizacion) {
+            synchronized (this) {
+                if (cerrado) {
+                    return;
+                }
+                try {
+                    escribir(Collections.<byte[]>emptyList());
+                    canal.force(false);
+                    sincronizado = escrito;
+                } catch (IOException e) {
+                    System.err.println("[DiarioAlmacen] Error al cerrar el diario: " + e.getMessage());
+                } finally {
+                    cerrado = true;
+                    try {
+                        canal.close();
+                    } catch (IOException e) {
+                        System.err.println("[DiarioAlmacen] Error al cerrar el segmento: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    // ===== Lectura =====
+
+    private static void leerSnapshot(Path archivo, Estado estado) throws IOException {
+        if (!Files.exists(archivo)) {
+            return;
+        }
+        try (DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(archivo), 64 * 1024))) {
+            byte[] cabecera = new byte[CABECERA_SNAPSHOT];
+            if (leer(entrada, cabecera) < CABECERA_SNAPSHOT) {
+                throw new IOException("Snapshot truncado: " + archivo);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(cabecera);
+            if (buffer.getInt() != MAGIA || buffer.getInt() != VERSION) {
+                throw new IOException("No es un snapshot del almacén (o es de otra versión): " + archivo);
+            }
+            if (buffer.getInt(CABECERA_SNAPSHOT - 4) != crc(cabecera, 0, CABECERA_SNAPSHOT - 4)) {
+                throw new IOException("CRC inválido en la cabecera del snapshot: " + archivo);
+            }
+            estado.segmento = buffer.getLong();
+            estado.ultimoCambio = buffer.getLong();
+            estado.ultimoDispositivo = buffer.getLong();
+            estado.ultimaConfiguracion = buffer.getLong();
+            long cantidad = buffer.getLong();
+            for (long i = 0; i < cantidad; i++) {
+                byte[] cuerpo = leerRegistro(entrada);
+                if (cuerpo == null) {
+                    throw new IOException("Snapshot dañado en el registro " + i + ": " + archivo);
+                }
+                estado.aplicar(cuerpo);
+            }
+        }
+    }
+
+    /**
+     * Aplica los registros de un segmento.
+     *
+     * @param ultimo si es el último segmento (un final incompleto es esperable tras una caída)
+     * @return bytes válidos del segmento
+     * @throws IOException si un segmento que no es el último tiene un registro dañado
+     */
+    private static long reproducir(Path segmento, Estado estado, boolean ultimo) throws IOException {
+        long valido = 0;
+        try (DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(segmento), 64 * 1024))) {
+            while (true) {
+                entrada.mark(1);
+                if (entrada.read() < 0) {
+                    return valido;
+                }
+                entrada.reset();
+                byte[] cuerpo = leerRegistro(entrada);
+                if (cuerpo == null) {
+                    if (ultimo) {
+                        return valido;
+                    }
+                    throw new IOException("Segmento dañado en la posición " + valido + ": " + segmento);
+                }
+                estado.aplicar(cuerpo);
+                valido += 8 + cuerpo.length;
+            }
+        }
+    }
+
+    /**
+     * @return el cuerpo del registro, o null si está incompleto o su CRC no coincide
+     */
+    private static byte[] leerRegistro(DataInputStream entrada) throws IOException {
+        byte[] cabecera = new byte[8];
+        if (leer(entrada, cabecera) < cabecera.length) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(cabecera);
+        int longitud = buffer.getInt();
+        int crc = buffer.getInt();
+        if (longitud < 17 || longitud > MAX_REGISTRO) {
+            return null;
+        }
+        byte[] cuerpo = new byte[longitud];
+        if (leer(entrada, cuerpo) < longitud || crc(cuerpo, 0, longitud) != crc) {
+            return null;
+        }
+        return cuerpo;
+    }
+
+    private static int leer(InputStream entrada, byte[] destino) throws IOException {
+        int leidos = 0;
+        while (leidos < destino.length) {
+            int n = entrada.read(destino, leidos, destino.length - leidos);
+            if (n < 0) {
+                break;
+            }
+            leidos += n;
+        }
+        return leidos;
+    }
+
+    private static TreeMap<Long, Path> listarSegmentos(Path directorio) throws IOException {
+        TreeMap<Long, Path> segmentos = new TreeMap<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, "wal-*.log")) {
+            for (Path archivo : archivos) {
+                Matcher m = SEGMENTO.matcher(archivo.getFileName().toString());
+                if (m.matches()) {
+                    segmentos.put(Long.parseLong(m.group(1)), archivo);
+                }
+            }
+        }
+        return segmentos;
+    }
+
+    private Path rutaSegmento(long numero) {
+        return directorio.resolve(String.format("wal-%08d.log", numero));
+    }
+
+    /**
+     * Fuerza las entradas del directorio (archivos creados o renombrados). No
+     * todos los sistemas permiten abrir un directorio: ahí se omite.
+     */
+    private static void forzarDirectorio(Path directorio) {
+        try (FileChannel dir = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Sin soporte (p. ej. Windows): la durabilidad del rename queda a cargo del sistema de archivos
+        }
+    }
+
+    // ===== Formato de los registros =====
+
+    private static byte[] codificar(long cambio, DispositivoIoT fila) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream salida = comenzar(bytes, DISPOSITIVO, cambio, fila.getId());
+            salida.writeBoolean(fila.getEliminado());
+            salida.writeUTF(fila.getSerial());
+            salida.writeUTF(fila.getModelo());
+            salida.writeUTF(fila.getUbicacion());
+            escribirOpcional(salida, fila.getFirmwareVersion());
+            salida.writeLong(fila.getCreado().getTime());
+            salida.writeLong(fila.getActualizado().getTime());
+            return enmarcar(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // ByteArrayOutputStream no falla
+        }
+    }
+
+    private static byte[] codificar(long cambio, ConfiguracionRed fila) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+            DataOutputStream salida = comenzar(bytes, CONFIGURACION, cambio, fila.getId());
+            salida.writeBoolean(fila.getEliminado());
+            escribirOpcional(salida, fila.getIp());
+            escribirOpcional(salida, fila.getMascara());
+            escribirOpcional(salida, fila.getGateway());
+            escribirOpcional(salida, fila.getDnsPrimario());
+            salida.writeBoolean(fila.getDhcpHabilitado());
+            salida.writeLong(fila.getDispositivoId());
+            salida.writeLong(fila.getCreado().getTime());
+            salida.writeLong(fila.getActualizado().getTime());
+            return enmarcar(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] codificarBaja(byte tipo, long cambio, long id) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(17);
+            comenzar(bytes, tipo, cambio, id);
+            return enmarcar(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DataOutputStream comenzar(ByteArrayOutputStream bytes, byte tipo, long cambio, long id)
+            throws IOException {
+        DataOutputStream salida = new DataOutputStream(bytes);
+        salida.writeByte(tipo);
+        salida.writeLong(cambio);
+        salida.writeLong(id);
+        return salida;
+    }
+
+    private static byte[] enmarcar(byte[] cuerpo) {
+        return ByteBuffer.allocate(8 + cuerpo.length)
+                .putInt(cuerpo.length)
+                .putInt(crc(cuerpo, 0, cuerpo.length))
+                .put(cuerpo)
+                .array();
+    }
+
+    private static void escribirRegistro(DataOutputStream salida, byte[] cuerpo) throws IOException {
+        salida.writeInt(cuerpo.length);
+        salida.writeInt(crc(cuerpo, 0, cuerpo.length));
+        salida.write(cuerpo);
+    }
+
+    private static DispositivoIoT leerDispositivo(byte[] cuerpo) throws IOException {
+        DataInputStream entrada = cuerpoDe(cuerpo);
+        DispositivoIoT dispositivo = new DispositivoIoT();
+        dispositivo.setId(entrada.readLong());
+        dispositivo.setEliminado(entrada.readBoolean());
+        dispositivo.setSerial(entrada.readUTF());
+        dispositivo.setModelo(entrada.readUTF());
+        dispositivo.setUbicacion(entrada.readUTF());
+        dispositivo.setFirmwareVersion(leerOpcional(entrada));
+        dispositivo.setCreado(new Timestamp(entrada.readLong()));
+        dispositivo.setActualizado(new Timestamp(entrada.readLong()));
+        return dispositivo;
+    }
+
+    private static ConfiguracionRed leerConfiguracion(byte[] cuerpo) throws IOException {
+        DataInputStream entrada = cuerpoDe(cuerpo);
+        ConfiguracionRed configuracion = new ConfiguracionRed();
+        configuracion.setId(entrada.readLong());
+        configuracion.setEliminado(entrada.readBoolean());
+        configuracion.setIp(leerOpcional(entrada));
+        configuracion.setMascara(leerOpcional(entrada));
+        configuracion.setGateway(leerOpcional(entrada));
+        configuracion.setDnsPrimario(leerOpcional(entrada));
+        configuracion.setDhcpHabilitado(entrada.readBoolean());
+        configuracion.setDispositivoId(entrada.readLong());
+        configuracion.setCreado(new Timestamp(entrada.readLong()));
+        configuracion.setActualizado(new Timestamp(entrada.readLong()));
+        return configuracion;
+    }
+
+    /**
+     * @return el cuerpo posicionado en el ID (después del tipo y el número de cambio)
+     */
+    private static DataInputStream cuerpoDe(byte[] cuerpo) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(cuerpo));
+        entrada.skipBytes(9);
+        return entrada;
+    }
+
+    private static void escribirOpcional(DataOutputStream salida, String valor) throws IOException {
+        salida.writeBoolean(valor != null);
+        if (valor != null) {
+            salida.writeUTF(valor);
+        }
+    }
+
+    private static String leerOpcional(DataInputStream entrada) throws IOException {
+        return entrada.readBoolean() ? entrada.readUTF() : null;
+    }
+
+    private static int crc(byte[] bytes, int desde, int longitud) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, desde, longitud);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,273 @@
+package store;
+
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Genera un {@link SnapshotFlota} a partir de los dispositivos en orden de ID.
+ *
+ * Los registros se escriben al archivo a medida que llegan; en memoria solo
+ * quedan el diccionario de cadenas y, por dispositivo, su serial y su IP
+ * empaquetados (16 bytes) para armar los índices al terminar. Se escribe en
+ * un temporal que reemplaza al destino recién en {@link #terminar()}, así un
+ * lector nunca ve un snapshot a medias.
+ *
+ * @version 1.0
+ */
+public final class EscritorSnapshot implements AutoCloseable {
+
+    private static final int TAMANO_BUFFER = 64 * 1024;
+
+    private final Path destino;
+    private final Path temporal;
+    private final FileChannel canal;
+    private final ByteBuffer salida = ByteBuffer.allocate(TAMANO_BUFFER);
+    private final CRC32 crc = new CRC32();
+
+    private final Map<String, Integer> indiceCadenas = new HashMap<>();
+    private final List<String> cadenas = new ArrayList<>();
+
+    private long[] seriales = new long[1024];
+    private long[] ips = new long[1024];
+    private int cantidad;
+    private int cantidadIps;
+    private long ultimoId = Long.MIN_VALUE;
+    private boolean terminado;
+
+    /**
+     * @param destino archivo del snapshot (se reemplaza al terminar)
+     * @throws IOException si no se puede crear el temporal
+     */
+    public EscritorSnapshot(Path destino) throws IOException {
+        this.destino = destino.toAbsolutePath();
+        Files.createDirectories(this.destino.getParent());
+        this.temporal = this.destino.resolveSibling(this.destino.getFileName() + ".tmp");
+        this.canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        canal.position(SnapshotFlota.CABECERA);
+    }
+
+    /**
+     * Agrega un dispositivo con su configuración (si tiene).
+     *
+     * @param dispositivo dispositivo activo; los IDs deben llegar en orden ascendente
+     * @throws IOException si falla la escritura
+     * @throws IllegalArgumentException si el ID no es ascendente, el serial no
+     *         tiene 8 caracteres ASCII o una dirección no es IPv4
+     */
+    public void agregar(DispositivoIoT dispositivo) throws IOException {
+        if (terminado) {
+            throw new IllegalStateException("El snapshot ya fue terminado");
+        }
+        long id = dispositivo.getId();
+        if (id <= ultimoId) {
+            throw new IllegalArgumentException("Los dispositivos deben llegar en orden de ID: " + id
+                    + " después de " + ultimoId);
+        }
+        long serial = SnapshotFlota.empaquetarSerial(dispositivo.getSerial());
+
+        ConfiguracionRed configuracion = dispositivo.getConfiguracionRed();
+        int banderas = 0;
+        int ip = 0;
+        int mascara = 0;
+        int gateway = 0;
+        int dns = 0;
+        if (configuracion != null) {
+            banderas |= SnapshotFlota.CON_CONFIGURACION;
+            if (Boolean.TRUE.equals(configuracion.getDhcpHabilitado())) {
+                banderas |= SnapshotFlota.DHCP;
+            }
+            if (presente(configuracion.getIp())) {
+                ip = SnapshotFlota.empaquetarIp(configuracion.getIp());
+                banderas |= SnapshotFlota.CON_IP;
+            }
+            if (presente(configuracion.getMascara())) {
+                mascara = SnapshotFlota.empaquetarIp(configuracion.getMascara());
+                banderas |= SnapshotFlota.CON_MASCARA;
+            }
+            if (presente(configuracion.getGateway())) {
+                gateway = SnapshotFlota.empaquetarIp(configuracion.getGateway());
+                banderas |= SnapshotFlota.CON_GATEWAY;
+            }
+            if (presente(configuracion.getDnsPrimario())) {
+                dns = SnapshotFlota.empaquetarIp(configuracion.getDnsPrimario());
+                banderas |= SnapshotFlota.CON_DNS;
+            }
+        }
+
+        if (salida.remaining() < SnapshotFlota.TAMANO_REGISTRO) {
+            vaciar();
+        }
+        salida.putLong(id)
+                .putLong(serial)
+                .putLong(configuracion != null && configuracion.getId() != null ? configuracion.getId() : 0)
+                .putInt(cadena(dispositivo.getModelo()))
+                .putInt(cadena(dispositivo.getUbicacion()))
+                .putInt(dispositivo.getFirmwareVersion() == null ? -1 : cadena(dispositivo.getFirmwareVersion()))
+                .putInt(ip)
+                .putInt(mascara)
+                .putInt(gateway)
+                .putInt(dns)
+                .putInt(banderas);
+
+        if (cantidad == seriales.length) {
+            seriales = Arrays.copyOf(seriales, cantidad * 2);
+        }
+        seriales[cantidad] = serial;
+        // Las IPs de configuraciones DHCP no son únicas: solo se indexan las estáticas
+        if ((banderas & (SnapshotFlota.CON_IP | SnapshotFlota.DHCP)) == SnapshotFlota.CON_IP) {
+            if (cantidadIps == ips.length) {
+                ips = Arrays.copyOf(ips, cantidadIps * 2);
+            }
+            ips[cantidadIps++] = ((long) ip << 32) | cantidad;
+        }
+        cantidad++;
+        ultimoId = id;
+    }
+
+    /**
+     * Escribe el diccionario y los índices, fuerza el archivo a disco y lo
+     * mueve al destino.
+     *
+     * @return cantidad de dispositivos escritos
+     * @throws IOException si falla la escritura o hay seriales/IPs repetidos
+     */
+    public int terminar() throws IOException {
+        if (terminado) {
+            return cantidad;
+        }
+        long posDiccionario = SnapshotFlota.CABECERA + (long) cantidad * SnapshotFlota.TAMANO_REGISTRO;
+        long posTabla = posDiccionario;
+        for (String cadena : cadenas) {
+            byte[] bytes = cadena.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > TAMANO_BUFFER - 2) {
+                throw new IOException("Cadena demasiado larga para el snapshot: " + cadena.substring(0, 50) + "...");
+            }
+            asegurar(2 + bytes.length);
+            salida.putShort((short) bytes.length).put(bytes);
+            posTabla += 2 + bytes.length;
+        }
+
+        // Tabla de seriales: sondeo lineal con carga <= 0,5
+        int ranuras = 2;
+        while (ranuras < 2L * cantidad) {
+            ranuras <<= 1;
+        }
+        int[] tabla = new int[ranuras];
+        for (int i = 0; i < cantidad; i++) {
+            int ranura = SnapshotFlota.ranuraSerial(seriales[i], ranuras - 1);
+            while (tabla[ranura] != 0) {
+                if (seriales[tabla[ranura] - 1] == seriales[i]) {
+                    throw new IOException("Serial repetido en el snapshot: "
+                            + SnapshotFlota.desempaquetarSerial(seriales[i]));
+                }
+                ranura = (ranura + 1) & (ranuras - 1);
+            }
+            tabla[ranura] = i + 1;
+        }
+        for (int valor : tabla) {
+            asegurar(4);
+            salida.putInt(valor);
+        }
+
+        long posIps = posTabla + 4L * ranuras;
+        Arrays.sort(ips, 0, cantidadIps);
+        for (int i = 0; i < cantidadIps; i++) {
+            if (i > 0 && (ips[i] >> 32) == (ips[i - 1] >> 32)) {
+                throw new IOException("IP repetida en el snapshot: " + SnapshotFlota.desempaquetarIp((int) (ips[i] >> 32)));
+            }
+            asegurar(8);
+            salida.putLong(ips[i]);
+        }
+        vaciar();
+
+        ByteBuffer cabecera = ByteBuffer.allocate(SnapshotFlota.CABECERA);
+        cabecera.putInt(0, SnapshotFlota.MAGIA)
+                .putInt(SnapshotFlota.POS_VERSION, SnapshotFlota.VERSION)
+                .putInt(SnapshotFlota.POS_CANTIDAD, cantidad)
+                .putInt(SnapshotFlota.POS_CADENAS, cadenas.size())
+                .putLong(SnapshotFlota.POS_GENERADO, System.currentTimeMillis())
+                .putLong(SnapshotFlota.POS_DICCIONARIO, posDiccionario)
+                .putLong(SnapshotFlota.POS_TABLA_SERIALES, posTabla)
+                .putInt(SnapshotFlota.POS_RANURAS, ranuras)
+                .putInt(SnapshotFlota.POS_ENTRADAS_IP, cantidadIps)
+                .putLong(SnapshotFlota.POS_INDICE_IPS, posIps)
+                .putLong(SnapshotFlota.POS_CRC, crc.getValue());
+        canal.position(0);
+        escribir(cabecera);
+        canal.force(true);
+        canal.close();
+
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        terminado = true;
+        return cantidad;
+    }
+
+    /**
+     * Descarta el temporal si el snapshot no se terminó.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!terminado) {
+            canal.close();
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    // ===== Auxiliares =====
+
+    private static boolean presente(String direccion) {
+        return direccion != null && !direccion.isEmpty();
+    }
+
+    private int cadena(String valor) {
+        Integer indice = indiceCadenas.get(valor);
+        if (indice == null) {
+            indice = cadenas.size();
+            cadenas.add(valor);
+            indiceCadenas.put(valor, indice);
+        }
+        return indice;
+    }
+
+    private void asegurar(int bytes) throws IOException {
+        if (salida.remaining() < bytes) {
+            vaciar();
+        }
+    }
+
+    /**
+     * Escribe el buffer de salida, acumulando el checksum.
+     */
+    private void vaciar() throws IOException {
+        salida.flip();
+        crc.update(salida.duplicate());
+        escribir(salida);
+        salida.clear();
+    }
+
+    private void escribir(ByteBuffer datos) throws IOException {
+        while (datos.hasRemaining()) {
+            canal.write(datos);
+        }
+    }
+}
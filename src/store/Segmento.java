@@ -0,0 +1,325 @@
+package store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Archivo de segmento de una serie: cabecera fija seguida de un flujo
+ * Gorilla ({@link CodecGorilla}) de puntos con instantes no decrecientes.
+ *
+ * <pre>
+ *  0  int   magia ("TSD1")
+ *  4  int   cantidad de puntos
+ *  8  long  primer instante
+ * 16  long  último instante
+ * 24  long  bits de datos usados
+ * 32  long  ID de dispositivo
+ * 40  int   secuencia de origen desde  (segmento compactado: rango de
+ * 44  int   secuencia de origen hasta   secuencias que reemplaza)
+ * 48  datos
+ * </pre>
+ *
+ * El segmento activo se crea con tamaño fijo y se mapea en lectura/escritura;
+ * cada punto se escribe primero en los datos y recién después se actualiza la
+ * cabecera (la cantidad al final), así un lector concurrente o una
+ * recuperación tras caída del proceso ven siempre un prefijo consistente.
+ * Los segmentos sellados o compactados se mapean solo lectura.
+ *
+ * @version 1.0
+ */
+final class Segmento {
+
+    static final int MAGIA = 0x54534431;
+    static final int CABECERA = 48;
+    static final String EXTENSION = ".seg";
+
+    private static final int POS_CANTIDAD = 4;
+    private static final int POS_PRIMER_TS = 8;
+    private static final int POS_ULTIMO_TS = 16;
+    private static final int POS_BITS = 24;
+    private static final int POS_DISPOSITIVO = 32;
+    private static final int POS_ORIGEN_DESDE = 40;
+    private static final int POS_ORIGEN_HASTA = 44;
+
+    /**
+     * Recibe los puntos de un recorrido.
+     */
+    @FunctionalInterface
+    interface Consumidor {
+
+        void aceptar(long timestamp, double valor);
+    }
+
+    private final Path archivo;
+    private final int secuencia;
+    private final MappedByteBuffer buffer;
+    private final int origenDesde;
+    private final int origenHasta;
+
+    /** Estado de escritura (null si el segmento está sellado). */
+    private CodecGorilla codec;
+    private Bits bits;
+
+    private volatile int cantidad;
+    private volatile long primerTs;
+    private volatile long ultimoTs;
+    private volatile long bitsUsados;
+
+    private Segmento(Path archivo, int secuencia, MappedByteBuffer buffer) {
+        this.archivo = archivo;
+        this.secuencia = secuencia;
+        this.buffer = buffer;
+        this.cantidad = buffer.getInt(POS_CANTIDAD);
+        this.primerTs = buffer.getLong(POS_PRIMER_TS);
+        this.ultimoTs = buffer.getLong(POS_ULTIMO_TS);
+        this.bitsUsados = buffer.getLong(POS_BITS);
+        this.origenDesde = buffer.getInt(POS_ORIGEN_DESDE);
+        this.origenHasta = buffer.getInt(POS_ORIGEN_HASTA);
+    }
+
+    /**
+     * Crea un segmento activo vacío de {@code capacidad} bytes.
+     */
+    static Segmento crear(Path directorio, int secuencia, long dispositivoId, int capacidad) throws IOException {
+        Path archivo = directorio.resolve(nombre(secuencia));
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, capacidad);
+            buffer.putInt(0, MAGIA);
+            buffer.putLong(POS_DISPOSITIVO, dispositivoId);
+            buffer.putInt(POS_ORIGEN_DESDE, secuencia);
+            buffer.putInt(POS_ORIGEN_HASTA, secuencia);
+
+            Segmento segmento = new Segmento(archivo, secuencia, buffer);
+            segmento.codec = new CodecGorilla();
+            segmento.bits = new Bits(buffer, CABECERA, capacidad);
+            return segmento;
+        }
+    }
+
+    /**
+     * Abre un segmento existente. Si {@code escribible}, lo mapea en
+     * lectura/escritura y reconstruye el estado del codec decodificando sus
+     * puntos, para seguir agregando.
+     *
+     * @throws IOException si el archivo no es un segmento válido
+     */
+    static Segmento abrir(Path archivo, boolean escribible) throws IOException {
+        int secuencia = secuencia(archivo);
+        try (FileChannel canal = escribible
+                ? FileChannel.open(archivo, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano < CABECERA) {
+                throw new IOException("Segmento truncado: " + archivo);
+            }
+            MappedByteBuffer buffer = canal.map(escribible ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY, 0, tamano);
+            if (buffer.getInt(0) != MAGIA) {
+                throw new IOException("Segmento inválido (magia): " + archivo);
+            }
+
+            Segmento segmento = new Segmento(archivo, secuencia, buffer);
+            if (segmento.bitsUsados < 0 || segmento.bitsUsados > (tamano - CABECERA) * 8 || segmento.cantidad < 0) {
+                throw new IOException("Segmento inválido (cabecera): " + archivo);
+            }
+
+            if (escribible) {
+                segmento.codec = new CodecGorilla();
+                segmento.bits = new Bits(buffer, CABECERA, (int) tamano);
+                for (int i = 0; i < segmento.cantidad; i++) {
+                    segmento.codec.leer(segmento.bits);
+                }
+                if (segmento.bits.getPosicion() != segmento.bitsUsados) {
+                    throw new IOException("Segmento inválido (datos): " + archivo);
+                }
+            }
+            return segmento;
+        }
+    }
+
+    /**
+     * Escribe un segmento compactado con los puntos de {@code origenes}
+     * (ordenados y consecutivos): primero en un archivo temporal, que se
+     * renombra de forma atómica una vez forzado a disco.
+     */
+    static Segmento compactar(Path directorio, int secuencia, long dispositivoId, Iterable<Segmento> origenes,
+                              int origenDesde, int origenHasta) throws IOException {
+        long bytesDatos = 0;
+        int fuentes = 0;
+        for (Segmento origen : origenes) {
+            bytesDatos += (origen.bitsUsados + 7) / 8;
+            fuentes++;
+        }
+        // El primer punto de cada origen pasa de 128 bits a lo sumo MAX_BITS_PUNTO
+        int capacidad = (int) (CABECERA + bytesDatos + fuentes * ((CodecGorilla.MAX_BITS_PUNTO + 7) / 8) + 8);
+
+        ByteBuffer datos = ByteBuffer.allocate(capacidad);
+        Bits bits = new Bits(datos, CABECERA, capacidad);
+        CodecGorilla codec = new CodecGorilla();
+        long primero = 0;
+        for (Segmento origen : origenes) {
+            if (codec.getCantidad() == 0 && origen.cantidad > 0) {
+                primero = origen.primerTs;
+            }
+            origen.recorrer(Long.MIN_VALUE, Long.MAX_VALUE, (ts, valor) -> codec.escribir(bits, ts, valor));
+        }
+
+        datos.putInt(0, MAGIA);
+        datos.putInt(POS_CANTIDAD, codec.getCantidad());
+        datos.putLong(POS_PRIMER_TS, primero);
+        datos.putLong(POS_ULTIMO_TS, codec.getTimestamp());
+        datos.putLong(POS_BITS, bits.getPosicion());
+        datos.putLong(POS_DISPOSITIVO, dispositivoId);
+        datos.putInt(POS_ORIGEN_DESDE, origenDesde);
+        datos.putInt(POS_ORIGEN_HASTA, origenHasta);
+        datos.limit(CABECERA + (int) ((bits.getPosicion() + 7) / 8));
+
+        Path archivo = directorio.resolve(nombre(secuencia));
+        Path temporal = directorio.resolve(nombre(secuencia) + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (datos.hasRemaining()) {
+                canal.write(datos);
+            }
+            canal.force(true);
+        }
+        Files.move(temporal, archivo, StandardCopyOption.ATOMIC_MOVE);
+
+        return abrir(archivo, false);
+    }
+
+    /**
+     * Agrega un punto al segmento activo.
+     *
+     * @return false si no queda lugar (hay que rotar a un segmento nuevo)
+     */
+    boolean agregar(long ts, double valor) {
+        long necesarios = cantidad == 0 ? 128 : CodecGorilla.MAX_BITS_PUNTO;
+        if (bits.getPosicion() + necesarios > bits.getCapacidadBits()) {
+            return false;
+        }
+
+        codec.escribir(bits, ts, valor);
+
+        if (cantidad == 0) {
+            buffer.putLong(POS_PRIMER_TS, ts);
+            primerTs = ts;
+        }
+        buffer.putLong(POS_ULTIMO_TS, ts);
+        buffer.putLong(POS_BITS, bits.getPosicion());
+        buffer.putInt(POS_CANTIDAD, cantidad + 1);
+        ultimoTs = ts;
+        bitsUsados = bits.getPosicion();
+        cantidad = cantidad + 1;
+        return true;
+    }
+
+    /**
+     * Recorre los puntos con instante en [desde, hasta). Puede ejecutarse en
+     * paralelo con {@link #agregar}: solo lee los puntos ya publicados.
+     */
+    void recorrer(long desde, long hasta, Consumidor consumidor) {
+        int total = cantidad;
+        if (total == 0 || primerTs >= hasta || ultimoTs < desde) {
+            return;
+        }
+
+        CodecGorilla lector = new CodecGorilla();
+        Bits entrada = new Bits(buffer, CABECERA, buffer.capacity());
+        for (int i = 0; i < total; i++) {
+            lector.leer(entrada);
+            long ts = lector.getTimestamp();
+            if (ts >= hasta) {
+                return;
+            }
+            if (ts >= desde) {
+                consumidor.aceptar(ts, lector.getValor());
+            }
+        }
+    }
+
+    /**
+     * Fuerza a disco las páginas modificadas.
+     */
+    void forzar() {
+        if (codec != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Sella el segmento: no admite más puntos.
+     */
+    void sellar() {
+        forzar();
+        codec = null;
+        bits = null;
+    }
+
+    boolean estaSellado() {
+        return codec == null;
+    }
+
+    /**
+     * @return true si el archivo tiene espacio reservado sin usar (candidato a compactación)
+     */
+    boolean tieneEspacioLibre() {
+        return buffer.capacity() > CABECERA + (bitsUsados + 7) / 8;
+    }
+
+    void eliminar() throws IOException {
+        Files.deleteIfExists(archivo);
+    }
+
+    Path getArchivo() {
+        return archivo;
+    }
+
+    int getSecuencia() {
+        return secuencia;
+    }
+
+    int getOrigenDesde() {
+        return origenDesde;
+    }
+
+    int getOrigenHasta() {
+        return origenHasta;
+    }
+
+    int getCantidad() {
+        return cantidad;
+    }
+
+    long getPrimerTs() {
+        return primerTs;
+    }
+
+    long getUltimoTs() {
+        return ultimoTs;
+    }
+
+    long getBytesDatos() {
+        return (bitsUsados + 7) / 8;
+    }
+
+    static String nombre(int secuencia) {
+        return String.format("%010d%s", secuencia, EXTENSION);
+    }
+
+    static int secuencia(Path archivo) throws IOException {
+        String nombre = archivo.getFileName().toString();
+        try {
+            return Integer.parseInt(nombre.substring(0, nombre.length() - EXTENSION.length()));
+        } catch (RuntimeException e) {
+            throw new IOException("Nombre de segmento inválido: " + nombre, e);
+        }
+    }
+}
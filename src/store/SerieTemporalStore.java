@@ -0,0 +1,513 @@
+package store;
+
+import config.AppConfig;
+import entities.Telemetria;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Almacén local de series temporales para gateways de borde, donde escribir
+ * cada lectura en MySQL es demasiado costoso.
+ *
+ * Cada dispositivo (DispositivoIoT.id) tiene un directorio con archivos de
+ * segmento mapeados en memoria ({@link Segmento}), comprimidos con delta de
+ * deltas para los instantes y XOR para los valores ({@link CodecGorilla}).
+ * Solo se agrega al final: los instantes de un dispositivo no pueden
+ * retroceder. Un índice en memoria guarda el rango de tiempo de cada
+ * segmento, así una consulta por intervalo solo decodifica los que se superponen.
+ *
+ * <ul>
+ *   <li>Rotación: se abre un segmento nuevo cuando el activo se llena
+ *       (tsdb.segmentoBytes) o abarca más de tsdb.segmentoMinutos.</li>
+ *   <li>Compactación: los segmentos sellados consecutivos se reescriben en
+ *       uno solo de tamaño exacto (hasta tsdb.compactadoBytes), eliminando el
+ *       espacio reservado sin usar y la cantidad de archivos mapeados.</li>
+ *   <li>Retención: se eliminan los segmentos cuyo último punto es anterior a
+ *       tsdb.retencionHoras.</li>
+ *   <li>Recuperación: al abrir, se descartan temporales de una compactación
+ *       interrumpida y los segmentos ya reemplazados por uno compactado; el
+ *       último segmento se reabre como activo.</li>
+ * </ul>
+ *
+ * Durabilidad: ante una caída del proceso se conserva todo lo escrito (las
+ * páginas mapeadas son del sistema operativo); ante una caída del sistema,
+ * hasta el último forzado a disco (rotación o mantenimiento periódico).
+ *
+ * @version 1.0
+ */
+public class SerieTemporalStore implements AutoCloseable {
+
+    private static final OperationMetrics METRICA_CONSULTAR = MetricsRegistry.operacion("SerieTemporalStore.consultar");
+    private static final OperationMetrics METRICA_COMPACTAR = MetricsRegistry.operacion("SerieTemporalStore.compactar");
+    private static final OperationMetrics METRICA_RETENCION = MetricsRegistry.operacion("SerieTemporalStore.aplicarRetencion");
+
+    private static final LongAdder PUNTOS = MetricsRegistry.contador("SerieTemporalStore.puntos");
+    private static final LongAdder FUERA_DE_ORDEN = MetricsRegistry.contador("SerieTemporalStore.fueraDeOrden");
+
+    /**
+     * Recibe las lecturas de una consulta sin crear un objeto por lectura.
+     */
+    @FunctionalInterface
+    public interface ConsumidorLectura {
+
+        void aceptar(long timestamp, double valor);
+    }
+
+    /**
+     * Serie de un dispositivo: segmentos ordenados por tiempo; el último puede ser el activo.
+     */
+    private static final class Serie {
+
+        private final long dispositivoId;
+        private final Path directorio;
+        private final List<Segmento> segmentos = new ArrayList<>();
+        private Segmento activo;
+        private int proximaSecuencia;
+        private long ultimoTs = Long.MIN_VALUE;
+
+        Serie(long dispositivoId, Path directorio) {
+            this.dispositivoId = dispositivoId;
+            this.directorio = directorio;
+        }
+    }
+
+    private final Path directorio;
+    private final int capacidadSegmento;
+    private final long duracionSegmentoMs;
+    private final long maxBytesCompactado;
+    private final ConcurrentMap<Long, Serie> series = new ConcurrentHashMap<>();
+    /** Serializa compactación y retención entre sí (no bloquea escrituras ni consultas). */
+    private final Object lockMantenimiento = new Object();
+    private ScheduledExecutorService mantenimiento;
+
+    /**
+     * @param directorio directorio raíz (se crea si no existe)
+     * @param capacidadSegmento bytes de cada segmento activo
+     * @param duracionSegmentoMs tiempo máximo abarcado por un segmento
+     * @param maxBytesCompactado bytes de datos máximos de un segmento compactado
+     */
+    private SerieTemporalStore(Path directorio, int capacidadSegmento, long duracionSegmentoMs,
+                               long maxBytesCompactado) {
+        this.directorio = directorio;
+        this.capacidadSegmento = Math.max(Segmento.CABECERA + 64, capacidadSegmento);
+        this.duracionSegmentoMs = Math.max(1, duracionSegmentoMs);
+        this.maxBytesCompactado = Math.max(this.capacidadSegmento, maxBytesCompactado);
+    }
+
+    /**
+     * Abre (o crea) el almacén con la configuración de config.properties (tsdb.*).
+     *
+     * @throws IOException si no se puede leer el directorio
+     */
+    public static SerieTemporalStore abrir() throws IOException {
+        return abrir(Paths.get(AppConfig.getString("tsdb.directorio", "tsdb")),
+                AppConfig.getInt("tsdb.segmentoBytes", 64 * 1024),
+                TimeUnit.MINUTES.toMillis(AppConfig.getLong("tsdb.segmentoMinutos", 60)),
+                AppConfig.getLong("tsdb.compactadoBytes", 1024 * 1024));
+    }
+
+    /**
+     * Abre (o crea) el almacén y recupera sus series.
+     *
+     * @throws IOException si no se puede leer el directorio
+     */
+    public static SerieTemporalStore abrir(Path directorio, int capacidadSegmento, long duracionSegmentoMs,
+                                           long maxBytesCompactado) throws IOException {
+        SerieTemporalStore store = new SerieTemporalStore(directorio, capacidadSegmento, duracionSegmentoMs,
+                maxBytesCompactado);
+        Files.createDirectories(directorio);
+
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directorio)) {
+            for (Path dir : dirs) {
+                long id;
+                try {
+                    id = Long.parseLong(dir.getFileName().toString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (Files.isDirectory(dir)) {
+                    store.series.put(id, recuperar(id, dir));
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Agrega una lectura.
+     *
+     * @return false si el instante es anterior a la última lectura del dispositivo (se descarta)
+     * @throws IOException si no se puede crear un segmento
+     */
+    public boolean agregar(long dispositivoId, long timestamp, double valor) throws IOException {
+        Serie serie = obtenerSerie(dispositivoId);
+
+        synchronized (serie) {
+            if (timestamp < serie.ultimoTs) {
+                FUERA_DE_ORDEN.increment();
+                return false;
+            }
+
+            Segmento activo = serie.activo;
+            boolean rotar = activo == null
+                    || (activo.getCantidad() > 0 && timestamp - activo.getPrimerTs() >= duracionSegmentoMs)
+                    || !activo.agregar(timestamp, valor);
+
+            if (rotar) {
+                if (activo != null) {
+                    activo.sellar();
+                }
+                activo = Segmento.crear(serie.directorio, serie.proximaSecuencia++, dispositivoId, capacidadSegmento);
+                serie.segmentos.add(activo);
+                serie.activo = activo;
+                activo.agregar(timestamp, valor);
+            }
+
+            serie.ultimoTs = timestamp;
+        }
+
+        PUNTOS.increment();
+        return true;
+    }
+
+    /**
+     * Recorre las lecturas de un dispositivo con instante en [desde, hasta), en orden.
+     */
+    public void recorrer(long dispositivoId, long desde, long hasta, ConsumidorLectura consumidor) {
+        long inicio = System.nanoTime();
+        try {
+            for (Segmento segmento : segmentosEn(dispositivoId, desde, hasta)) {
+                segmento.recorrer(desde, hasta, consumidor::aceptar);
+            }
+        } catch (RuntimeException e) {
+            METRICA_CONSULTAR.registrarError();
+            throw e;
+        } finally {
+            METRICA_CONSULTAR.registrar(inicio);
+        }
+    }
+
+    /**
+     * Obtiene las lecturas de un dispositivo con instante en [desde, hasta).
+     *
+     * @return lecturas ordenadas por instante
+     */
+    public List<Telemetria> consultar(long dispositivoId, long desde, long hasta) {
+        List<Telemetria> resultado = new ArrayList<>();
+        recorrer(dispositivoId, desde, hasta, (ts, valor) -> resultado.add(new Telemetria(dispositivoId, ts, valor)));
+        return resultado;
+    }
+
+    /**
+     * Reescribe los segmentos sellados consecutivos de cada dispositivo en
+     * segmentos compactados de tamaño exacto.
+     *
+     * @return cantidad de segmentos compactados creados
+     * @throws IOException si falla la escritura (los segmentos originales se conservan)
+     */
+    public int compactar() throws IOException {
+        long inicio = System.nanoTime();
+        synchronized (lockMantenimiento) {
+            try {
+                return compactarSeries();
+            } catch (IOException | RuntimeException e) {
+                METRICA_COMPACTAR.registrarError();
+                throw e;
+            } finally {
+                METRICA_COMPACTAR.registrar(inicio);
+            }
+        }
+    }
+
+    private int compactarSeries() throws IOException {
+        int creados = 0;
+
+        for (Serie serie : series.values()) {
+            for (List<Segmento> corrida : corridasACompactar(serie)) {
+                int secuencia;
+                synchronized (serie) {
+                    secuencia = serie.proximaSecuencia++;
+                }
+
+                int desde = Integer.MAX_VALUE;
+                int hasta = Integer.MIN_VALUE;
+                for (Segmento segmento : corrida) {
+                    desde = Math.min(desde, segmento.getSecuencia());
+                    hasta = Math.max(hasta, segmento.getSecuencia());
+                }
+
+                Segmento compactado = Segmento.compactar(serie.directorio, secuencia, serie.dispositivoId,
+                        corrida, desde, hasta);
+
+                synchronized (serie) {
+                    int posicion = serie.segmentos.indexOf(corrida.get(0));
+                    serie.segmentos.subList(posicion, posicion + corrida.size()).clear();
+                    serie.segmentos.add(posicion, compactado);
+                }
+                for (Segmento segmento : corrida) {
+                    segmento.eliminar();
+                }
+                creados++;
+            }
+        }
+        return creados;
+    }
+
+    /**
+     * Elimina los segmentos cuyo último punto es anterior a {@code antesDe}.
+     *
+     * @return cantidad de segmentos eliminados
+     * @throws IOException si no se puede borrar un archivo
+     */
+    public int aplicarRetencion(long antesDe) throws IOException {
+        long inicio = System.nanoTime();
+        synchronized (lockMantenimiento) {
+            try {
+                return eliminarVencidos(antesDe);
+            } catch (IOException | RuntimeException e) {
+                METRICA_RETENCION.registrarError();
+                throw e;
+            } finally {
+                METRICA_RETENCION.registrar(inicio);
+            }
+        }
+    }
+
+    private int eliminarVencidos(long antesDe) throws IOException {
+        List<Segmento> vencidos = new ArrayList<>();
+
+        for (Serie serie : series.values()) {
+            synchronized (serie) {
+                while (!serie.segmentos.isEmpty() && serie.segmentos.get(0).getUltimoTs() < antesDe) {
+                    Segmento segmento = serie.segmentos.remove(0);
+                    if (segmento == serie.activo) {
+                        serie.activo = null;
+                    }
+                    vencidos.add(segmento);
+                }
+            }
+        }
+
+        for (Segmento segmento : vencidos) {
+            segmento.eliminar();
+        }
+        return vencidos.size();
+    }
+
+    /**
+     * Fuerza a disco los segmentos activos.
+     */
+    public void forzar() {
+        for (Serie serie : series.values()) {
+            synchronized (serie) {
+                if (serie.activo != null) {
+                    serie.activo.forzar();
+                }
+            }
+        }
+    }
+
+    /**
+     * Programa retención (si {@code retencionHoras} > 0), compactación y
+     * forzado a disco cada {@code intervaloSegundos} en un hilo daemon.
+     */
+    public synchronized void iniciarMantenimiento(long intervaloSegundos, long retencionHoras) {
+        if (mantenimiento != null) {
+            return;
+        }
+        mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tsdb-mantenimiento");
+            t.setDaemon(true);
+            return t;
+        });
+        mantenimiento.scheduleWithFixedDelay(() -> {
+            try {
+                if (retencionHoras > 0) {
+                    aplicarRetencion(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retencionHoras));
+                }
+                compactar();
+                forzar();
+            } catch (Exception e) {
+                System.err.println("[SerieTemporalStore] Error en el mantenimiento: " + e.getMessage());
+            }
+        }, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Detiene el mantenimiento y fuerza a disco los segmentos activos. El
+     * último segmento de cada serie se reabre como activo en el próximo {@link #abrir}.
+     */
+    @Override
+    public synchronized void close() {
+        if (mantenimiento != null) {
+            mantenimiento.shutdownNow();
+            try {
+                mantenimiento.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mantenimiento = null;
+        }
+        forzar();
+    }
+
+    private Serie obtenerSerie(long dispositivoId) throws IOException {
+        Serie serie = series.get(dispositivoId);
+        if (serie == null) {
+            Path dir = directorio.resolve(Long.toString(dispositivoId));
+            Files.createDirectories(dir);
+            Serie nueva = new Serie(dispositivoId, dir);
+            serie = series.putIfAbsent(dispositivoId, nueva);
+            if (serie == null) {
+                serie = nueva;
+            }
+        }
+        return serie;
+    }
+
+    private List<Segmento> segmentosEn(long dispositivoId, long desde, long hasta) {
+        List<Segmento> resultado = new ArrayList<>();
+        Serie serie = series.get(dispositivoId);
+        if (serie == null) {
+            return resultado;
+        }
+
+        synchronized (serie) {
+            for (Segmento segmento : serie.segmentos) {
+                if (segmento.getPrimerTs() < hasta && segmento.getUltimoTs() >= desde) {
+                    resultado.add(segmento);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Agrupa los segmentos sellados y no compactados consecutivos en corridas
+     * de hasta maxBytesCompactado bytes de datos.
+     */
+    private List<List<Segmento>> corridasACompactar(Serie serie) {
+        List<List<Segmento>> corridas = new ArrayList<>();
+        List<Segmento> actual = new ArrayList<>();
+        long bytes = 0;
+
+        synchronized (serie) {
+            for (Segmento segmento : serie.segmentos) {
+                boolean candidato = segmento != serie.activo && esOriginal(segmento) && segmento.getCantidad() > 0;
+                if (!candidato || bytes + segmento.getBytesDatos() > maxBytesCompactado) {
+                    agregarCorrida(corridas, actual);
+                    actual = new ArrayList<>();
+                    bytes = 0;
+                }
+                if (candidato) {
+                    actual.add(segmento);
+                    bytes += segmento.getBytesDatos();
+                }
+            }
+        }
+        agregarCorrida(corridas, actual);
+        return corridas;
+    }
+
+    private static void agregarCorrida(List<List<Segmento>> corridas, List<Segmento> corrida) {
+        // Un segmento solo se reescribe si tiene espacio reservado que liberar
+        if (corrida.size() > 1 || (corrida.size() == 1 && corrida.get(0).tieneEspacioLibre())) {
+            corridas.add(corrida);
+        }
+    }
+
+    /**
+     * @return true si el segmento no es producto de una compactación
+     */
+    private static boolean esOriginal(Segmento segmento) {
+        return segmento.getOrigenDesde() == segmento.getSecuencia() && segmento.getOrigenHasta() == segmento.getSecuencia();
+    }
+
+    /**
+     * Abre los segmentos de un dispositivo tras un reinicio o una caída.
+     */
+    private static Serie recuperar(long dispositivoId, Path dir) throws IOException {
+        Serie serie = new Serie(dispositivoId, dir);
+        List<Segmento> abiertos = new ArrayList<>();
+        int maxSecuencia = -1;
+
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(dir)) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                if (nombre.endsWith(".tmp")) {
+                    // Compactación interrumpida antes del renombrado: los originales siguen intactos
+                    Files.deleteIfExists(archivo);
+                } else if (nombre.endsWith(Segmento.EXTENSION)) {
+                    try {
+                        Segmento segmento = Segmento.abrir(archivo, false);
+                        maxSecuencia = Math.max(maxSecuencia, Math.max(segmento.getSecuencia(), segmento.getOrigenHasta()));
+                        if (segmento.getCantidad() == 0) {
+                            // Creado pero sin puntos (caída antes de la primera escritura)
+                            segmento.eliminar();
+                        } else {
+                            abiertos.add(segmento);
+                        }
+                    } catch (IOException e) {
+                        System.err.println("[SerieTemporalStore] " + e.getMessage() + " (se aparta como .corrupto)");
+                        Files.move(archivo, archivo.resolveSibling(nombre + ".corrupto"), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+
+        // Compactación interrumpida después del renombrado: los originales ya están en el compactado
+        List<Segmento> reemplazados = new ArrayList<>();
+        for (Segmento compactado : abiertos) {
+            if (!esOriginal(compactado)) {
+                for (Segmento segmento : abiertos) {
+                    if (esOriginal(segmento) && segmento.getSecuencia() >= compactado.getOrigenDesde()
+                            && segmento.getSecuencia() <= compactado.getOrigenHasta()) {
+                        reemplazados.add(segmento);
+                    }
+                }
+            }
+        }
+        for (Segmento segmento : reemplazados) {
+            abiertos.remove(segmento);
+            segmento.eliminar();
+        }
+
+        abiertos.sort(Comparator.comparingLong(Segmento::getPrimerTs).thenComparingInt(Segmento::getSecuencia));
+
+        // El último segmento original vuelve a ser el activo
+        if (!abiertos.isEmpty()) {
+            int ultimo = abiertos.size() - 1;
+            Segmento segmento = abiertos.get(ultimo);
+            if (esOriginal(segmento)) {
+                try {
+                    segmento = Segmento.abrir(segmento.getArchivo(), true);
+                    abiertos.set(ultimo, segmento);
+                    serie.activo = segmento;
+                } catch (IOException e) {
+                    System.err.println("[SerieTemporalStore] " + e.getMessage() + " (queda solo lectura)");
+                }
+            }
+            serie.ultimoTs = abiertos.get(ultimo).getUltimoTs();
+        }
+
+        serie.segmentos.addAll(abiertos);
+        serie.proximaSecuencia = maxSecuencia + 1;
+        return serie;
+    }
+}
@@ -0,0 +1,387 @@
+package store;
+
+import entities.ConfiguracionRed;
+import entities.DispositivoIoT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot binario de solo lectura de la flota activa (DispositivoIoT con su
+ * ConfiguracionRed), generado por {@link EscritorSnapshot}.
+ *
+ * El archivo se mapea en memoria y las búsquedas se resuelven directamente
+ * sobre él: por ID con búsqueda binaria sobre los registros, por serial con
+ * una tabla hash y por IP con búsqueda binaria sobre un índice ordenado. Al
+ * abrir solo se decodifica el diccionario de cadenas y se verifica el
+ * checksum, así una réplica queda lista sin consultar la BD.
+ *
+ * <pre>
+ * Cabecera (64 bytes)
+ *  0  int   magia ("IOF1")
+ *  4  int   versión del formato
+ *  8  int   cantidad de registros
+ * 12  int   cantidad de cadenas del diccionario
+ * 16  long  generado (epoch ms)
+ * 24  long  posición del diccionario
+ * 32  long  posición de la tabla de seriales
+ * 40  int   ranuras de la tabla de seriales (potencia de 2)
+ * 44  int   entradas del índice de IPs
+ * 48  long  posición del índice de IPs
+ * 56  long  CRC32 de todo lo que sigue a la cabecera
+ *
+ * Registros (64 en adelante, 56 bytes cada uno, por ID ascendente)
+ *  0  long  id
+ *  8  long  serial (8 caracteres ASCII)
+ * 16  long  ID de la configuración (0 = sin configuración)
+ * 24  int   modelo     (índice en el diccionario)
+ * 28  int   ubicación  (índice en el diccionario)
+ * 32  int   firmware   (índice en el diccionario, -1 = sin versión)
+ * 36  int   ip         (IPv4 empaquetada)
+ * 40  int   máscara
+ * 44  int   gateway
+ * 48  int   DNS primario
+ * 52  int   banderas (configuración, DHCP y qué direcciones están presentes)
+ *
+ * Diccionario: por cadena, short largo + UTF-8 (modelos, ubicaciones, firmwares)
+ * Tabla de seriales: int por ranura (índice de registro + 1, 0 = libre), sondeo lineal
+ * Índice de IPs: long por entrada (ip &lt;&lt; 32 | índice de registro), ordenado
+ * </pre>
+ *
+ * Los seriales deben tener el formato de Validator.validarFormatoSerial
+ * (8 caracteres). Las direcciones vacías se guardan como ausentes.
+ *
+ * @version 1.0
+ */
+public final class SnapshotFlota {
+
+    static final int MAGIA = 0x494F4631;
+    static final int VERSION = 1;
+    static final int CABECERA = 64;
+    static final int TAMANO_REGISTRO = 56;
+
+    static final int POS_VERSION = 4;
+    static final int POS_CANTIDAD = 8;
+    static final int POS_CADENAS = 12;
+    static final int POS_GENERADO = 16;
+    static final int POS_DICCIONARIO = 24;
+    static final int POS_TABLA_SERIALES = 32;
+    static final int POS_RANURAS = 40;
+    static final int POS_ENTRADAS_IP = 44;
+    static final int POS_INDICE_IPS = 48;
+    static final int POS_CRC = 56;
+
+    static final int REG_ID = 0;
+    static final int REG_SERIAL = 8;
+    static final int REG_CONFIGURACION = 16;
+    static final int REG_MODELO = 24;
+    static final int REG_UBICACION = 28;
+    static final int REG_FIRMWARE = 32;
+    static final int REG_IP = 36;
+    static final int REG_MASCARA = 40;
+    static final int REG_GATEWAY = 44;
+    static final int REG_DNS = 48;
+    static final int REG_BANDERAS = 52;
+
+    static final int CON_CONFIGURACION = 1;
+    static final int DHCP = 1 << 1;
+    static final int CON_IP = 1 << 2;
+    static final int CON_MASCARA = 1 << 3;
+    static final int CON_GATEWAY = 1 << 4;
+    static final int CON_DNS = 1 << 5;
+
+    private static final int LONGITUD_SERIAL = 8;
+
+    private final Path archivo;
+    private final MappedByteBuffer buffer;
+    private final int cantidad;
+    private final long generado;
+    private final String[] diccionario;
+    private final int posTablaSeriales;
+    private final int mascaraRanuras;
+    private final int entradasIp;
+    private final int posIndiceIps;
+
+    private SnapshotFlota(Path archivo, MappedByteBuffer buffer, String[] diccionario) {
+        this.archivo = archivo;
+        this.buffer = buffer;
+        this.cantidad = buffer.getInt(POS_CANTIDAD);
+        this.generado = buffer.getLong(POS_GENERADO);
+        this.diccionario = diccionario;
+        this.posTablaSeriales = (int) buffer.getLong(POS_TABLA_SERIALES);
+        this.mascaraRanuras = buffer.getInt(POS_RANURAS) - 1;
+        this.entradasIp = buffer.getInt(POS_ENTRADAS_IP);
+        this.posIndiceIps = (int) buffer.getLong(POS_INDICE_IPS);
+    }
+
+    /**
+     * Mapea un snapshot y verifica su estructura y checksum.
+     *
+     * @param archivo archivo generado por EscritorSnapshot
+     * @return el snapshot listo para consultas
+     * @throws IOException si el archivo no existe, está truncado o dañado
+     */
+    public static SnapshotFlota abrir(Path archivo) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano < CABECERA || tamano > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot con tamaño inválido (" + tamano + " bytes): " + archivo);
+            }
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+        }
+
+        if (buffer.getInt(0) != MAGIA) {
+            throw new IOException("No es un snapshot de la flota: " + archivo);
+        }
+        if (buffer.getInt(POS_VERSION) != VERSION) {
+            throw new IOException("Versión de snapshot no soportada (" + buffer.getInt(POS_VERSION) + "): " + archivo);
+        }
+
+        int tamano = buffer.capacity();
+        int cantidad = buffer.getInt(POS_CANTIDAD);
+        long posDiccionario = buffer.getLong(POS_DICCIONARIO);
+        long posTabla = buffer.getLong(POS_TABLA_SERIALES);
+        int ranuras = buffer.getInt(POS_RANURAS);
+        int entradasIp = buffer.getInt(POS_ENTRADAS_IP);
+        long posIps = buffer.getLong(POS_INDICE_IPS);
+        if (cantidad < 0 || posDiccionario != CABECERA + (long) cantidad * TAMANO_REGISTRO
+                || posTabla < posDiccionario || ranuras <= cantidad || Integer.bitCount(ranuras) != 1
+                || posIps != posTabla + 4L * ranuras || entradasIp < 0 || entradasIp > cantidad
+                || posIps + 8L * entradasIp != tamano) {
+            throw new IOException("Snapshot con cabecera inconsistente: " + archivo);
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer cuerpo = buffer.duplicate();
+        cuerpo.position(CABECERA);
+        crc.update(cuerpo);
+        if (crc.getValue() != buffer.getLong(POS_CRC)) {
+            throw new IOException("Snapshot dañado (checksum): " + archivo);
+        }
+
+        String[] diccionario = new String[buffer.getInt(POS_CADENAS)];
+        int posicion = (int) posDiccionario;
+        for (int i = 0; i < diccionario.length; i++) {
+            int largo = buffer.getShort(posicion) & 0xFFFF;
+            byte[] bytes = new byte[largo];
+            ByteBuffer lectura = buffer.duplicate();
+            lectura.position(posicion + 2);
+            lectura.get(bytes);
+            diccionario[i] = new String(bytes, StandardCharsets.UTF_8);
+            posicion += 2 + largo;
+        }
+        if (posicion != posTabla) {
+            throw new IOException("Snapshot con diccionario inconsistente: " + archivo);
+        }
+
+        return new SnapshotFlota(archivo, buffer, diccionario);
+    }
+
+    /**
+     * @return cantidad de dispositivos del snapshot
+     */
+    public int cantidad() {
+        return cantidad;
+    }
+
+    /**
+     * @return instante en que se generó el snapshot (epoch ms)
+     */
+    public long getGenerado() {
+        return generado;
+    }
+
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * @return el dispositivo con ese ID (con su configuración), o null si no está
+     */
+    public DispositivoIoT porId(long id) {
+        int desde = 0;
+        int hasta = cantidad - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            long actual = buffer.getLong(registro(medio) + REG_ID);
+            if (actual < id) {
+                desde = medio + 1;
+            } else if (actual > id) {
+                hasta = medio - 1;
+            } else {
+                return dispositivo(medio);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return el dispositivo con ese serial (con su configuración), o null si no está
+     */
+    public DispositivoIoT porSerial(String serial) {
+        if (serial == null || serial.length() != LONGITUD_SERIAL) {
+            return null;
+        }
+        long empaquetado = empaquetarSerial(serial);
+        for (int ranura = ranuraSerial(empaquetado, mascaraRanuras); ; ranura = (ranura + 1) & mascaraRanuras) {
+            int valor = buffer.getInt(posTablaSeriales + 4 * ranura);
+            if (valor == 0) {
+                return null;
+            }
+            if (buffer.getLong(registro(valor - 1) + REG_SERIAL) == empaquetado) {
+                return dispositivo(valor - 1);
+            }
+        }
+    }
+
+    /**
+     * @return el dispositivo cuya configuración tiene esa IP estática, o null si no está
+     */
+    public DispositivoIoT porIp(String ip) {
+        int buscada;
+        try {
+            buscada = empaquetarIp(ip);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int desde = 0;
+        int hasta = entradasIp - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            long entrada = buffer.getLong(posIndiceIps + 8 * medio);
+            int actual = (int) (entrada >> 32);
+            if (actual < buscada) {
+                desde = medio + 1;
+            } else if (actual > buscada) {
+                hasta = medio - 1;
+            } else {
+                return dispositivo((int) entrada);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recorre los dispositivos en orden de ID, materializando uno por vez.
+     */
+    public void recorrer(Consumer<? super DispositivoIoT> consumidor) {
+        for (int i = 0; i < cantidad; i++) {
+            consumidor.accept(dispositivo(i));
+        }
+    }
+
+    // ===== Registros =====
+
+    private static int registro(int indice) {
+        return CABECERA + indice * TAMANO_REGISTRO;
+    }
+
+    private DispositivoIoT dispositivo(int indice) {
+        int base = registro(indice);
+        int firmware = buffer.getInt(base + REG_FIRMWARE);
+
+        DispositivoIoT dispositivo = new DispositivoIoT();
+        dispositivo.setId(buffer.getLong(base + REG_ID));
+        dispositivo.setSerial(desempaquetarSerial(buffer.getLong(base + REG_SERIAL)));
+        dispositivo.setModelo(diccionario[buffer.getInt(base + REG_MODELO)]);
+        dispositivo.setUbicacion(diccionario[buffer.getInt(base + REG_UBICACION)]);
+        dispositivo.setFirmwareVersion(firmware < 0 ? null : diccionario[firmware]);
+
+        int banderas = buffer.getInt(base + REG_BANDERAS);
+        if ((banderas & CON_CONFIGURACION) != 0) {
+            ConfiguracionRed configuracion = new ConfiguracionRed();
+            configuracion.setId(buffer.getLong(base + REG_CONFIGURACION));
+            configuracion.setDispositivoId(dispositivo.getId());
+            configuracion.setDhcpHabilitado((banderas & DHCP) != 0);
+            configuracion.setIp(direccion(base + REG_IP, banderas, CON_IP));
+            configuracion.setMascara(direccion(base + REG_MASCARA, banderas, CON_MASCARA));
+            configuracion.setGateway(direccion(base + REG_GATEWAY, banderas, CON_GATEWAY));
+            configuracion.setDnsPrimario(direccion(base + REG_DNS, banderas, CON_DNS));
+            dispositivo.setConfiguracionRed(configuracion);
+        }
+        return dispositivo;
+    }
+
+    private String direccion(int posicion, int banderas, int bandera) {
+        return (banderas & bandera) != 0 ? desempaquetarIp(buffer.getInt(posicion)) : null;
+    }
+
+    // ===== Codificación =====
+
+    static int ranuraSerial(long empaquetado, int mascara) {
+        long h = empaquetado * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+
+    /**
+     * @throws IllegalArgumentException si el serial no tiene 8 caracteres ASCII
+     */
+    static long empaquetarSerial(String serial) {
+        if (serial.length() != LONGITUD_SERIAL) {
+            throw new IllegalArgumentException("Serial inválido para el snapshot: " + serial);
+        }
+        long empaquetado = 0;
+        for (int i = 0; i < LONGITUD_SERIAL; i++) {
+            char c = serial.charAt(i);
+            if (c > 0x7F) {
+                throw new IllegalArgumentException("Serial inválido para el snapshot: " + serial);
+            }
+            empaquetado = (empaquetado << 8) | c;
+        }
+        return empaquetado;
+    }
+
+    static String desempaquetarSerial(long empaquetado) {
+        char[] caracteres = new char[LONGITUD_SERIAL];
+        for (int i = LONGITUD_SERIAL - 1; i >= 0; i--) {
+            caracteres[i] = (char) (empaquetado & 0xFF);
+            empaquetado >>>= 8;
+        }
+        return new String(caracteres);
+    }
+
+    /**
+     * @throws IllegalArgumentException si no es una IPv4 en notación decimal con puntos
+     */
+    static int empaquetarIp(String ip) {
+        if (ip == null) {
+            throw new IllegalArgumentException("IP nula");
+        }
+        int resultado = 0;
+        int octeto = -1;
+        int octetos = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (octeto < 0 || ++octetos > 4) {
+                    throw new IllegalArgumentException("IP inválida: " + ip);
+                }
+                resultado = (resultado << 8) | octeto;
+                octeto = -1;
+            } else if (c >= '0' && c <= '9') {
+                octeto = (octeto < 0 ? 0 : octeto * 10) + (c - '0');
+                if (octeto > 255) {
+                    throw new IllegalArgumentException("IP inválida: " + ip);
+                }
+            } else {
+                throw new IllegalArgumentException("IP inválida: " + ip);
+            }
+        }
+        if (octetos != 4) {
+            throw new IllegalArgumentException("IP inválida: " + ip);
+        }
+        return resultado;
+    }
+
+    static String desempaquetarIp(int ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+}
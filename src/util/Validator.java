@@ -113,6 +113,36 @@ public class Validator {
         }
     }
 
+    /**
+     * Indica si una versión de firmware tiene el formato vX.Y.Z.
+     *
+     * @param firmware versión de firmware
+     * @return true si el formato es válido
+     */
+    public static boolean esFirmwareValido(String firmware) {
+        return firmware != null && PATRON_FIRMWARE.matcher(firmware).matches();
+    }
+
+    /**
+     * Compara dos versiones de firmware con formato vX.Y.Z de forma numérica
+     * (v1.10.0 es mayor que v1.9.0, a diferencia de la comparación de texto).
+     *
+     * @param a primera versión (formato válido)
+     * @param b segunda versión (formato válido)
+     * @return negativo si a &lt; b, 0 si son iguales, positivo si a &gt; b
+     */
+    public static int compararFirmware(String a, String b) {
+        String[] partesA = a.substring(1).split("\\.");
+        String[] partesB = b.substring(1).split("\\.");
+        for (int i = 0; i < 3; i++) {
+            int comparacion = Long.compare(Long.parseLong(partesA[i]), Long.parseLong(partesB[i]));
+            if (comparacion != 0) {
+                return comparacion;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Valida que la longitud de un string esté dentro de un rango.
      *